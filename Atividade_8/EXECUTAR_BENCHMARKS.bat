@@ -0,0 +1,32 @@
+@echo off
+rem Define a página de código para UTF-8 para garantir que os acentos apareçam corretamente.
+chcp 65001 > nul
+
+echo --- Instalando o projeto principal e empacotando os benchmarks... ---
+echo.
+
+rem O módulo de benchmarks depende do artefacto principal instalado no repositório Maven local.
+call mvn -q install
+if %errorlevel% neq 0 goto falha
+cd benchmarks
+call mvn -q package
+if %errorlevel% neq 0 goto falha
+
+echo.
+echo --- Executando os benchmarks (resultados em benchmarks\resultados.json) ---
+echo.
+
+rem Argumentos extra são passados ao JMH, ex: EXECUTAR_BENCHMARKS.bat CodecBenchmark -f 1 -i 3
+java -jar target/benchmarks.jar -rf json -rff resultados.json %*
+cd ..
+goto fim
+
+:falha
+echo.
+echo ----------------------------------------------------
+echo ***** FALHA NA COMPILACAO DOS BENCHMARKS! *****
+echo ----------------------------------------------------
+
+:fim
+echo.
+pause > nul
\ No newline at end of file
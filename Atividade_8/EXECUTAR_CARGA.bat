@@ -0,0 +1,19 @@
+@echo off
+chcp 65001 > nul
+
+set JAR_FILE=target/servico-mensagens-a8-1.0-SNAPSHOT-jar-with-dependencies.jar
+
+if not exist "%JAR_FILE%" (
+    echo ***** ERRO: O ficheiro %JAR_FILE% nao foi encontrado! *****
+    echo Por favor, execute o COMPILAR.bat primeiro.
+    pause
+    exit
+)
+
+echo --- Iniciando o Gerador de Carga contra a rede local (portas 8001, 8002, 8003) ---
+echo.
+rem Sem argumentos usa os valores padrao (modo fechado, 16 threads, 30 segundos).
+rem Exemplo: EXECUTAR_CARGA.bat --modo aberto --taxa 2000 --threads 32 --mistura login=10,postar=30,ultimas=60
+java -cp %JAR_FILE% mensageria.cliente.GeradorDeCarga %*
+
+pause
\ No newline at end of file
@@ -10,11 +10,11 @@ if not exist "%JAR_FILE%" (
     exit
 )
 
-set /p port="Digite a porta do no para conectar (ex: 8001, 8002, 8003): "
+set /p portas="Digite as portas dos nos, separadas por virgulas (ex: 8001,8002,8003): "
 
 echo.
-echo --- Iniciando Cliente na porta %port% ---
-rem Executa a classe Cliente, passando a porta como argumento
-java -cp %JAR_FILE% mensageria.cliente.Cliente %port%
+echo --- Iniciando Cliente para os nos %portas% ---
+rem Executa a classe Cliente com a lista de nos: se um no cair, o cliente passa aos outros
+java -cp %JAR_FILE% mensageria.cliente.Cliente %portas%
 
 pause
\ No newline at end of file
@@ -0,0 +1,81 @@
+package mensageria.benchmarks;
+
+import mensageria.comum.CodecBinario;
+import mensageria.comum.CodecJava;
+import mensageria.comum.CodecPacote;
+import mensageria.comum.Pacote;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de codificar e descodificar pacotes com cada codec, e o tamanho em bytes
+ * de cada pacote (contador auxiliar 'bytesPorPacote' no resultado).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({"BINARIO", "JAVA"})
+    public String codec;
+
+    // LOGIN: pacote pequeno; REPLICAR_MSG: uma mensagem; MURAL_100: MURAL_ATUALIZADO com 100 mensagens.
+    @Param({"LOGIN", "REPLICAR_MSG", "MURAL_100"})
+    public String pacote;
+
+    private CodecPacote codecPacote;
+    private Pacote original;
+    private byte[] codificado;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        codecPacote = "JAVA".equals(codec) ? CodecJava.INSTANCIA : CodecBinario.INSTANCIA;
+        switch (pacote) {
+            case "LOGIN":
+                original = new Pacote(Pacote.Tipo.LOGIN, "anderson;123", 1);
+                break;
+            case "REPLICAR_MSG":
+                original = new Pacote(Pacote.Tipo.REPLICAR_MSG, Dados.mensagem(7, 42), 2);
+                break;
+            default:
+                original = new Pacote(Pacote.Tipo.MURAL_ATUALIZADO, Dados.mensagens(100), 3);
+        }
+        codificado = codecPacote.codificar(original);
+    }
+
+    // Publica o tamanho do pacote codificado junto com o resultado do benchmark.
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Tamanho {
+        public long bytesPorPacote;
+    }
+
+    @Benchmark
+    public byte[] codificar(Tamanho tamanho) throws IOException {
+        byte[] bytes = codecPacote.codificar(original);
+        tamanho.bytesPorPacote = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Pacote decodificar() throws IOException {
+        return codecPacote.decodificar(codificado);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,43 @@
+package mensageria.benchmarks;
+
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Geração de dados para os benchmarks.
+ * As mensagens são criadas com IDs determinísticos (sem UUID.randomUUID, que é lento e
+ * partilha um gerador entre threads) para que o custo medido seja o do código do mural.
+ */
+final class Dados {
+
+    private Dados() {
+    }
+
+    static Mensagem mensagem(long semente, long numero) {
+        return new Mensagem(new UUID(semente, numero), "autor" + (numero % 16),
+                "Conteúdo da mensagem número " + numero, 1_700_000_000_000L + numero, 1, numero + 1);
+    }
+
+    static List<Mensagem> mensagens(int quantidade) {
+        List<Mensagem> mensagens = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            mensagens.add(mensagem(0, i));
+        }
+        return mensagens;
+    }
+
+    // Mural com 'quantidade' mensagens. Autor e conteúdo são partilhados para caber na memória a 10M.
+    static Mural muralCom(int quantidade) {
+        Mural mural = new Mural();
+        String autor = "autor";
+        String conteudo = "Conteúdo de tamanho típico de uma mensagem no mural";
+        for (int i = 0; i < quantidade; i++) {
+            mural.adicionarMensagem(new Mensagem(new UUID(1, i), autor, conteudo, 1_700_000_000_000L + i, 1, i + 1L));
+        }
+        return mural;
+    }
+}
\ No newline at end of file
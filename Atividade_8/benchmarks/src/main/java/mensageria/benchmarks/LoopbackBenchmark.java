@@ -0,0 +1,186 @@
+package mensageria.benchmarks;
+
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Pacote;
+import mensageria.no.ConfiguracaoNo;
+import mensageria.no.No;
+import mensageria.no.ProcessadorDePacotes;
+import mensageria.no.ServidorBloqueante;
+import mensageria.no.ServidorNio;
+import mensageria.no.ServidorNo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caminho completo de um pedido por sockets reais em loopback: cliente -> transporte do nó
+ * (TratadorDeConexao no bloqueante, ou o ServidorNio) -> ProcessadorDePacotes -> resposta.
+ *
+ * O nó é criado sem peers e o servidor é arrancado diretamente, sem a sincronização inicial.
+ * Os ficheiros do log de escrita do nó de teste são apagados no fim.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+
+    private static final int ID_NO = 901;
+    private static final int PORTA = 18901;
+
+    @State(Scope.Benchmark)
+    public static class NoDeTeste {
+        @Param({"BLOQUEANTE", "NIO"})
+        public String transporte;
+
+        No no;
+        ProcessadorDePacotes processador;
+        ServidorNo servidor;
+
+        @Setup(Level.Trial)
+        public void arrancar() throws Exception {
+            apagarFicheiros();
+            ConfiguracaoNo configuracao = new ConfiguracaoNo()
+                    .setTransporte(ConfiguracaoNo.Transporte.valueOf(transporte));
+            no = new No(ID_NO, PORTA, Collections.<Integer, Integer>emptyMap(), configuracao);
+            for (int i = 0; i < 1000; i++) {
+                no.getParticao(Pacote.MURAL_PADRAO).aceitarPostagem(Dados.mensagem(99, i));
+            }
+            processador = new ProcessadorDePacotes(no);
+            servidor = configuracao.getTransporte() == ConfiguracaoNo.Transporte.NIO
+                    ? new ServidorNio(ID_NO, PORTA, processador, configuracao)
+                    : new ServidorBloqueante(ID_NO, PORTA, processador, configuracao);
+            Thread thread = new Thread(servidor::executar, "servidor-benchmark");
+            thread.setDaemon(true);
+            thread.start();
+            esperarPorta();
+        }
+
+        @TearDown(Level.Trial)
+        public void parar() {
+            servidor.parar();
+            processador.parar();
+            no.parar();
+            apagarFicheiros();
+        }
+
+        private static void esperarPorta() throws InterruptedException {
+            for (int tentativa = 0; tentativa < 100; tentativa++) {
+                try (Socket socket = new Socket("localhost", PORTA)) {
+                    return;
+                } catch (IOException e) {
+                    Thread.sleep(50);
+                }
+            }
+            throw new IllegalStateException("O servidor de teste não abriu a porta " + PORTA);
+        }
+
+        private static void apagarFicheiros() {
+            File[] ficheiros = new File(".").listFiles((dir, nome) -> nome.startsWith("mural_no_" + ID_NO + "."));
+            if (ficheiros != null) {
+                for (File ficheiro : ficheiros) {
+                    ficheiro.delete();
+                }
+            }
+        }
+    }
+
+    // Uma conexão persistente por thread cliente, com a sessão iniciada (o token vai em cada pedido).
+    @State(Scope.Thread)
+    public static class Conexao {
+        CanalPacotes canal;
+        String sessao;
+        long proximoId;
+
+        @Setup(Level.Trial)
+        public void abrir(NoDeTeste noDeTeste) throws IOException {
+            canal = new CanalPacotes(new Socket("localhost", PORTA));
+            sessao = (String) pedir(Pacote.Tipo.LOGIN, "anderson;123").getConteudo();
+        }
+
+        @TearDown(Level.Trial)
+        public void fechar() throws IOException {
+            canal.close();
+        }
+
+        Pacote pedir(Pacote.Tipo tipo, Object conteudo) throws IOException {
+            canal.enviar(new Pacote(tipo, conteudo, ++proximoId, null, sessao));
+            return canal.receber();
+        }
+
+        // Envia 'quantidade' pedidos seguidos, sem esperar, e só depois lê as respostas.
+        Pacote pedirEmPipeline(Pacote.Tipo tipo, Object conteudo, int quantidade) throws IOException {
+            for (int i = 0; i < quantidade; i++) {
+                canal.escrever(new Pacote(tipo, conteudo, ++proximoId, null, sessao));
+            }
+            canal.descarregar();
+            Pacote ultima = null;
+            for (int i = 0; i < quantidade; i++) {
+                ultima = canal.receber();
+            }
+            return ultima;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Pacote login(Conexao conexao) throws IOException {
+        return conexao.pedir(Pacote.Tipo.LOGIN, "anderson;123");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Pacote loginQuatroClientes(Conexao conexao) throws IOException {
+        return conexao.pedir(Pacote.Tipo.LOGIN, "anderson;123");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Pacote lerUltimas(Conexao conexao) throws IOException {
+        return conexao.pedir(Pacote.Tipo.LER_ULTIMAS, 20L);
+    }
+
+    // 16 leituras em pipeline na mesma conexão: o tempo por operação é o de 16 pedidos.
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(16)
+    public Pacote lerUltimasEmPipeline(Conexao conexao) throws IOException {
+        return conexao.pedirEmPipeline(Pacote.Tipo.LER_ULTIMAS, 20L, 16);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Pacote postar(Conexao conexao) throws IOException {
+        return conexao.pedir(Pacote.Tipo.POSTAR_MENSAGEM, new Mensagem("anderson", "mensagem de benchmark"));
+    }
+
+    // Como o Cliente antes da SessaoCliente: uma conexão nova por pedido.
+    @Benchmark
+    @Threads(1)
+    public Pacote loginConexaoNova(NoDeTeste noDeTeste) throws IOException {
+        try (CanalPacotes canal = new CanalPacotes(new Socket("localhost", PORTA))) {
+            canal.enviar(new Pacote(Pacote.Tipo.LOGIN, "anderson;123", 1));
+            return canal.receber();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package mensageria.benchmarks;
+
+import mensageria.comum.Mural;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mural.adicionarMensagem com várias threads a escrever no mesmo mural
+ * (postagens de clientes e réplicas de peers a chegar ao mesmo tempo).
+ * O mural é recriado a cada iteração para que o tamanho não cresça sem limite.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MuralEscritaBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class MuralPartilhado {
+        Mural mural;
+        final AtomicLong proximaSemente = new AtomicLong(1);
+
+        @Setup(Level.Iteration)
+        public void criar() {
+            mural = new Mural();
+        }
+    }
+
+    // Cada thread gera os seus próprios IDs, para não haver duplicados entre threads.
+    @State(Scope.Thread)
+    public static class Escritor {
+        long semente;
+        long contador;
+
+        @Setup(Level.Iteration)
+        public void preparar(MuralPartilhado partilhado) {
+            semente = partilhado.proximaSemente.getAndIncrement();
+            contador = 0;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean adicionarUmaThread(MuralPartilhado partilhado, Escritor escritor) {
+        return partilhado.mural.adicionarMensagem(Dados.mensagem(escritor.semente, escritor.contador++));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean adicionarQuatroThreads(MuralPartilhado partilhado, Escritor escritor) {
+        return partilhado.mural.adicionarMensagem(Dados.mensagem(escritor.semente, escritor.contador++));
+    }
+
+    // Mensagem repetida: só a verificação de duplicados, que é o caso comum das réplicas.
+    @Benchmark
+    @Threads(4)
+    public boolean adicionarDuplicadaQuatroThreads(MuralPartilhado partilhado, Escritor escritor) {
+        return partilhado.mural.adicionarMensagem(Dados.mensagem(0, 0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,71 @@
+package mensageria.benchmarks;
+
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leituras do mural inteiro (o que um LER_MURAL faz) e de uma página, para murais de
+ * 10 mil, 1 milhão e 10 milhões de mensagens. Os casos grandes precisam de bastante
+ * memória (ver -Xmx no @Fork).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class MuralLeituraBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int mensagens;
+
+    private Mural mural;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        mural = Dados.muralCom(mensagens);
+    }
+
+    @Benchmark
+    public List<Mensagem> getTodasAsMensagens() {
+        return mural.getTodasAsMensagens();
+    }
+
+    // Obter a lista e percorrê-la, como faz o codec ao responder a um LER_MURAL.
+    @Benchmark
+    public void percorrerTodasAsMensagens(Blackhole bh) {
+        for (Mensagem mensagem : mural.getTodasAsMensagens()) {
+            bh.consume(mensagem);
+        }
+    }
+
+    @Benchmark
+    public Object getUltimas() {
+        return mural.getUltimas(20);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public String toStringDoMural() {
+        return mural.toString();
+    }
+}
\ No newline at end of file
@@ -1,5 +1,6 @@
 package mensageria;
 
+import mensageria.no.LigacaoPeer;
 import mensageria.no.No;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -14,34 +15,32 @@ import java.util.Map;
 public class Simulador {
 
     // --- Configurações da Simulação ---
-    // Define quantos nós serão criados na rede.
-    private static final int NUMERO_DE_NOS = 3;
+    // Define quantos nós serão criados na rede (-Dmensageria.nos=N para redes maiores).
+    // Com muitos nós, use também -Dmensageria.fatorReplicacao=K para que cada mural fique
+    // guardado só em K nós e a capacidade da rede cresça com o número de nós.
+    private static final int NUMERO_DE_NOS = Integer.getInteger("mensageria.nos", 3);
     // A porta inicial para os nós. O Nó 1 usará 8001, o Nó 2 usará 8002, e assim por diante.
     private static final int PORTA_BASE = 8000;
+    // Intervalo entre os relatórios do estado dos nós e das ligações entre eles.
+    private static final int INTERVALO_MONITOR_MS = 30 * 1000;
 
     // O método main é onde a execução do programa começa.
     public static void main(String[] args) throws InterruptedException {
         System.out.println("--- INICIANDO A REDE DE NÓS ---");
 
-        // 1. Mapeia as portas para cada nó da rede.
-        // Cria um mapa que associa o ID de cada nó (ex: 1) à sua porta correspondente (ex: 8001).
-        Map<Integer, Integer> peers = new HashMap<>();
-        for (int i = 1; i <= NUMERO_DE_NOS; i++) {
-            peers.put(i, PORTA_BASE + i);
-        }
+        // 1. Define a semente da rede: o Nó 1, na porta 8001.
+        // Os nós já não precisam de conhecer todos os outros: cada um entra na rede através da
+        // semente e descobre os restantes por rumores (ver MembrosDaRede).
+        Map<Integer, Integer> sementes = new HashMap<>();
+        sementes.put(1, PORTA_BASE + 1);
 
         // Guarda as instâncias dos objetos No para podermos interagir com eles mais tarde (ex: para pará-los).
         List<No> nos = new ArrayList<>();
 
         // 2. Cria e inicia cada nó em uma thread separada.
         for (int i = 1; i <= NUMERO_DE_NOS; i++) {
-            // Cria uma cópia do mapa de peers para cada nó.
-            Map<Integer, Integer> peersParaEsteNo = new HashMap<>(peers);
-            // Remove o próprio nó da sua lista de peers.
-            peersParaEsteNo.remove(i);
-
-            // Cria a instância do nó.
-            No no = new No(i, PORTA_BASE + i, peersParaEsteNo);
+            // Cria a instância do nó (o próprio Nó 1 ignora-se a si mesmo na lista de sementes).
+            No no = new No(i, PORTA_BASE + i, sementes);
             nos.add(no); // Adiciona a instância à nossa lista de controle.
 
             // Cria uma nova thread para executar a lógica do nó (o método no::iniciar).
@@ -50,12 +49,18 @@ public class Simulador {
             thread.start();
         }
 
+        // Mostra periodicamente o estado dos nós (servidor e conexões) e das ligações entre eles.
+        Thread monitor = new Thread(() -> monitorarNos(nos));
+        monitor.setDaemon(true);
+        monitor.start();
+
         System.out.println("\n>>> REDE DE NÓS INICIADA. OS SERVIDORES ESTÃO ATIVOS. <<<");
+        System.out.printf(">>> Semente da rede: Nó 1 (porta %d); os outros nós entram por ela. <<<%n", PORTA_BASE + 1);
         System.out.println(">>> Use o script EXECUTAR_CLIENTE.bat para interagir com a rede. <<<");
 
         // 3. Agenda e executa a simulação de falha.
         // Define qual nó será "derrubado".
-        int noParaDerrubar = 3;
+        int noParaDerrubar = Math.min(3, NUMERO_DE_NOS);
         // Define quanto tempo esperar antes de simular a falha (em milissegundos).
         int tempoAteFalha = 60 * 1000; // 60 segundos
         System.out.printf("%n>>> Simulação de falha agendada: Nó %d irá falhar em %d segundos.%n", noParaDerrubar, tempoAteFalha / 1000);
@@ -70,8 +75,33 @@ public class Simulador {
         // Chama o metodo 'parar()' do nó, que o encerra de forma controlada e segura.
         noQueVaiFalhar.parar();
 
-        System.out.println(">>> Para testar a reconciliação, reinicie a simulação. O Nó 3 irá se sincronizar com os outros. <<<");
+        System.out.printf(">>> Para testar a reconciliação, reinicie a simulação. O Nó %d irá se sincronizar com os outros. <<<%n", noParaDerrubar);
         // O método main termina aqui, mas o programa Java continua a executar
         // porque as threads dos nós restantes (Nó 1 e Nó 2) ainda estão ativas.
     }
+
+    // Imprime, a cada INTERVALO_MONITOR_MS, o estado do servidor de cada nó, um resumo das
+    // suas métricas e o estado de cada ligação persistente entre os nós.
+    // As métricas completas estão no JMX e em http://localhost:<porta + 1000>/metricas.
+    private static void monitorarNos(List<No> nos) {
+        while (true) {
+            try {
+                Thread.sleep(INTERVALO_MONITOR_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.out.println("\n--- ESTADO DOS NÓS ---");
+            for (No no : nos) {
+                System.out.println("  " + no.getServidor());
+                System.out.println("  " + no.getMetricas());
+            }
+            System.out.println("--- ESTADO DAS LIGAÇÕES ENTRE NÓS ---");
+            for (No no : nos) {
+                for (LigacaoPeer ligacao : no.getLigacoes()) {
+                    System.out.println("  " + ligacao);
+                }
+            }
+            System.out.println("-------------------------------------");
+        }
+    }
 }
\ No newline at end of file
@@ -1,65 +1,110 @@
 package mensageria.cliente;
 
+import mensageria.comum.Consistencia;
 import mensageria.comum.Mensagem;
 import mensageria.comum.Pacote;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.PedidoBusca;
+import mensageria.comum.PedidoPagina;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Cliente interativo de um mural. Recebe a lista de nós da rede e fala com eles através de um
+ * ClienteCluster: cada pedido vai para um nó disponível e, se um nó cair, os pedidos seguem para
+ * os outros sem o usuário dar por isso. O token de sessão do login vale em todos os nós.
+ */
 public class Cliente {
-    private final String host;
-    private final int porta;
+    // Quantas mensagens são mostradas (e pedidas ao nó) de cada vez.
+    private static final int TAMANHO_PAGINA = 20;
+    // Máximo de páginas pedidas sem esperar pela resposta (ver lerNovasMensagens).
+    private static final int PAGINAS_EM_VOO = 8;
+
+    private final int[] portas;
+    // Mural (canal) lido e escrito por este cliente; o nó reencaminha o pedido se não o guardar.
+    private final String mural;
+    // As sessões com os nós da rede, partilhadas por todos os pedidos deste cliente.
+    private final ClienteCluster cluster;
 
     private boolean autenticado = false;
     private String usuarioAutenticado = null;
+    // Última mensagem já mostrada (null se nenhuma). Ao contrário de uma posição no mural, o ID
+    // vale em qualquer nó, por isso a leitura continua certa quando os pedidos mudam de nó.
+    private UUID ultimaLida = null;
+    // Maior carimbo HLC das mensagens já mostradas: vai em cada postagem, para que o nó que a
+    // aceitar a ponha depois delas na ordem do mural, mesmo que tenham sido lidas noutro nó.
+    private long ultimoHlcVisto = 0;
+    // Nível de consistência pedido aos nós (ver Consistencia); null deixa o que cada nó tiver configurado.
+    private Consistencia consistencia = null;
 
     public Cliente(String host, int porta) {
-        this.host = host;
-        this.porta = porta;
+        this(host, new int[]{porta}, Pacote.MURAL_PADRAO);
+    }
+
+    public Cliente(String host, int[] portas, String mural) {
+        this.portas = portas.clone();
+        this.mural = mural;
+        this.cluster = new ClienteCluster(host, portas);
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Uso: java -jar <caminho_do_jar> <porta_do_no>");
-            System.err.println("Exemplo: java -jar NOME_DO_ARQUIVO.jar 8001");
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Uso: java -jar <caminho_do_jar> <portas_dos_nos> [mural]");
+            System.err.println("Exemplo: java -jar NOME_DO_ARQUIVO.jar 8001,8002,8003 esportes");
+            return;
+        }
+        String mural = args.length == 2 ? args[1] : Pacote.MURAL_PADRAO;
+        if (!Pacote.nomeDeMuralValido(mural)) {
+            System.err.println("O nome do mural só pode ter letras, dígitos, '_' e '-' (até 64).");
             return;
         }
         try {
-            int porta = Integer.parseInt(args[0]);
-            Cliente cliente = new Cliente("localhost", porta);
+            String[] partes = args[0].split(",");
+            int[] portas = new int[partes.length];
+            for (int i = 0; i < partes.length; i++) {
+                portas[i] = Integer.parseInt(partes[i].trim());
+            }
+            Cliente cliente = new Cliente("localhost", portas, mural);
             cliente.iniciar();
         } catch (NumberFormatException e) {
-            System.err.println("A porta deve ser um número.");
+            System.err.println("As portas devem ser números separados por vírgulas.");
         }
     }
 
-    // NOVO: Método que faz uma verificação rápida para ver se o nó está online.
+    // Abre as sessões com os nós ativos; se nenhum aceitar, a rede está offline.
+    // As conexões abertas aqui são as mesmas que os pedidos seguintes usam.
     private boolean verificarNoAtivo() {
-        // Tenta abrir e fechar um socket. Se conseguir, o nó está ativo.
-        try (Socket socket = new Socket(host, porta)) {
+        try {
+            int ativos = cluster.conectar();
+            System.out.printf("Conectado com sucesso a %d de %d nó(s) (mural '%s').%n", ativos, portas.length, mural);
             return true;
         } catch (IOException e) {
-            // Se falhar, o nó está offline. A mensagem de erro é mostrada aqui.
-            System.err.printf("Erro: Não foi possível conectar ao nó na porta %d. O nó está offline?%n", porta);
+            // Se falhar, nenhum nó está ativo. A mensagem de erro é mostrada aqui.
+            System.err.printf("Erro: Não foi possível conectar a nenhum dos nós %s. A rede está offline?%n", Arrays.toString(portas));
             return false;
         }
     }
 
     public void iniciar() {
-        System.out.printf("--- Iniciando Cliente para a porta %d ---\n", porta);
+        System.out.printf("--- Iniciando Cliente para os nós %s ---\n", Arrays.toString(portas));
 
         // ALTERAÇÃO: Verificação inicial antes de mostrar o menu.
         if (!verificarNoAtivo()) {
             System.out.println("Encerrando cliente.");
-            return; // Encerra se o nó alvo estiver inativo.
+            return; // Encerra se nenhum nó estiver ativo.
         }
 
-        System.out.printf("Conectado com sucesso ao nó na porta %d.%n", porta);
-
         Scanner scanner = new Scanner(System.in);
         while (true) {
             exibirMenu();
@@ -77,7 +122,23 @@ public class Cliente {
                     postarMensagem(scanner);
                     break;
                 case "4":
+                    lerNovasMensagens();
+                    break;
+                case "5":
+                    acompanharMural(scanner);
+                    break;
+                case "6":
+                    buscarMensagens(scanner);
+                    break;
+                case "7":
+                    mostrarEstadoDosNos();
+                    break;
+                case "8":
+                    escolherConsistencia(scanner);
+                    break;
+                case "9":
                     System.out.println("Encerrando cliente...");
+                    cluster.close();
                     return;
                 default:
                     System.out.println("Opção inválida. Tente novamente.");
@@ -88,9 +149,14 @@ public class Cliente {
     private void exibirMenu() {
         System.out.println("\n--- MENU DO CLIENTE ---");
         System.out.println("1. Fazer Login");
-        System.out.println("2. Ler Mural de Mensagens");
+        System.out.printf("2. Ler Mural de Mensagens (últimas %d)%n", TAMANHO_PAGINA);
         System.out.println("3. Postar Nova Mensagem");
-        System.out.println("4. Sair");
+        System.out.println("4. Ler Mensagens Novas (desde a última leitura)");
+        System.out.println("5. Acompanhar o Mural em Tempo Real");
+        System.out.println("6. Buscar Mensagens (por termos ou autor)");
+        System.out.println("7. Estado dos Nós");
+        System.out.printf("8. Nível de Consistência (atual: %s)%n", consistencia != null ? consistencia : "o do nó");
+        System.out.println("9. Sair");
         System.out.println("-----------------------");
         if (autenticado) {
             System.out.printf("Status: Logado como '%s'%n", usuarioAutenticado);
@@ -99,7 +165,7 @@ public class Cliente {
         }
     }
 
-    // Os métodos fazerLogin, lerMural e postarMensagem permanecem os mesmos
+    // O login devolve o token de sessão, que as sessões com todos os nós passam a enviar em cada pedido.
     private void fazerLogin(Scanner scanner) {
         System.out.print("Digite o usuário: ");
         String usuario = scanner.nextLine();
@@ -107,51 +173,295 @@ public class Cliente {
         String senha = scanner.nextLine();
         String credenciais = usuario + ";" + senha;
 
-        try (Socket socket = new Socket(host, porta);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-
-            out.writeObject(new Pacote(Pacote.Tipo.LOGIN, credenciais));
-            Pacote resposta = (Pacote) in.readObject();
+        try {
+            Pacote resposta = cluster.escrever(Pacote.Tipo.LOGIN, credenciais, null);
 
             if (resposta.getTipo() == Pacote.Tipo.LOGIN_OK) {
                 this.autenticado = true;
                 this.usuarioAutenticado = usuario;
-                System.out.println(">>> " + resposta.getConteudo());
+                cluster.setToken((String) resposta.getConteudo());
+                System.out.println(">>> Login bem-sucedido!");
             } else {
-                this.autenticado = false;
-                this.usuarioAutenticado = null;
+                terminarSessao();
                 System.err.println(">>> " + resposta.getConteudo());
             }
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Erro de comunicação ao tentar fazer login. O nó pode estar offline.");
+        } catch (IOException e) {
+            System.err.println("Erro de comunicação ao tentar fazer login. Nenhum nó respondeu.");
         }
     }
 
-    @SuppressWarnings("unchecked")
+    // Mostra apenas as últimas mensagens do mural, em vez de o transferir inteiro.
     private void lerMural() {
-        try (Socket socket = new Socket(host, porta);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-             ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-
-            out.writeObject(new Pacote(Pacote.Tipo.LER_MURAL, null));
-            Pacote resposta = (Pacote) in.readObject();
-
-            if (resposta.getTipo() == Pacote.Tipo.MURAL_ATUALIZADO) {
-                List<Mensagem> mensagens = (List<Mensagem>) resposta.getConteudo();
-                System.out.println("\n--- MURAL DE MENSAGENS ---");
-                if (mensagens.isEmpty()) {
-                    System.out.println("   (Mural vazio)");
-                } else {
+        try {
+            Pacote resposta = cluster.ler(Pacote.Tipo.LER_ULTIMAS, (long) TAMANHO_PAGINA, mural);
+
+            if (resposta.getTipo() == Pacote.Tipo.PAGINA_MURAL) {
+                PaginaMural pagina = (PaginaMural) resposta.getConteudo();
+                marcarLidas(pagina.getMensagens());
+                System.out.printf("%n--- MURAL '%s' (%d de %d) ---%n", mural, pagina.getMensagens().size(), pagina.getTotal());
+                imprimirMensagens(pagina.getMensagens(), "   (Mural vazio)");
+            } else {
+                System.err.println(">>> " + resposta.getConteudo());
+            }
+        } catch (IOException e) {
+            System.err.println("Erro de comunicação ao tentar ler o mural. Nenhum nó respondeu.");
+        }
+    }
+
+    /**
+     * Mostra as mensagens que chegaram desde a última leitura, pedindo-as página a página.
+     * A primeira página é pedida a seguir à última mensagem lida, na ordem total do mural, e diz
+     * em que posição continuar; as restantes são pedidas em pipeline ao mesmo nó, até
+     * PAGINAS_EM_VOO de cada vez. Se o nó cair a meio, a leitura recomeça noutro nó.
+     * Uma réplica que chegue ao nó com um carimbo anterior ao da última mensagem lida fica antes
+     * dela na ordem e não aparece aqui (aparece ao ler o mural).
+     *
+     * Com um nível de consistência acima de UM, as páginas seguintes são pedidas uma a uma a
+     * seguir à última mensagem recebida: só essas leituras passam pelas outras réplicas (uma
+     * posição só vale no mural do nó que a devolveu).
+     */
+    private void lerNovasMensagens() {
+        try {
+            List<Mensagem> novas = cluster.executar(this::lerNovasEm);
+            marcarLidas(novas);
+            System.out.printf("%n--- MENSAGENS NOVAS (%d) ---%n", novas.size());
+            imprimirMensagens(novas, "   (Nenhuma mensagem nova)");
+        } catch (ClienteCluster.TentarOutroNo e) {
+            System.err.println(">>> " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Erro de comunicação ao tentar ler o mural. Nenhum nó respondeu.");
+        }
+    }
+
+    private List<Mensagem> lerNovasEm(NoDoCluster no) throws IOException {
+        PedidoPagina primeiro = ultimaLida == null
+                ? new PedidoPagina(0, TAMANHO_PAGINA)
+                : new PedidoPagina(ultimaLida, TAMANHO_PAGINA);
+        PaginaMural pagina = lerPagina(no, no.pedirAssincrono(Pacote.Tipo.LER_PAGINA, primeiro, mural));
+        if (pagina.getProximoCursor() == PaginaMural.CURSOR_DESCONHECIDO) {
+            // A última mensagem lida ainda não chegou a este nó (ou foi postada noutro mural).
+            throw new ClienteCluster.TentarOutroNo("A última mensagem lida não foi encontrada em nenhum nó; use a opção 2 para recomeçar.");
+        }
+        List<Mensagem> novas = new ArrayList<>(pagina.getMensagens());
+        // Uma réplica que entre no meio da ordem durante a leitura desloca as posições seguintes,
+        // e a página a seguir pode repetir a última mensagem da anterior.
+        Set<UUID> vistas = new HashSet<>();
+        for (Mensagem msg : novas) {
+            vistas.add(msg.getId());
+        }
+        if (consistencia != null && consistencia != Consistencia.UM) {
+            while (pagina.getMensagens().size() == TAMANHO_PAGINA) {
+                UUID ultima = pagina.getMensagens().get(TAMANHO_PAGINA - 1).getId();
+                pagina = lerPagina(no, no.pedirAssincrono(Pacote.Tipo.LER_PAGINA, new PedidoPagina(ultima, TAMANHO_PAGINA), mural));
+                for (Mensagem msg : pagina.getMensagens()) {
+                    if (vistas.add(msg.getId())) {
+                        novas.add(msg);
+                    }
+                }
+            }
+            return novas;
+        }
+        long cursor = pagina.getProximoCursor();
+        long total = pagina.getTotal();
+        Deque<CompletableFuture<Pacote>> emVoo = new ArrayDeque<>();
+        long proximoPedido = cursor;
+        while (!pagina.getMensagens().isEmpty() && cursor < total) {
+            while (emVoo.size() < PAGINAS_EM_VOO && proximoPedido < total) {
+                emVoo.add(no.pedirAssincrono(Pacote.Tipo.LER_PAGINA, new PedidoPagina(proximoPedido, TAMANHO_PAGINA), mural));
+                proximoPedido += TAMANHO_PAGINA;
+            }
+            // As respostas são lidas pela ordem dos pedidos, por isso as páginas ficam contíguas.
+            pagina = lerPagina(no, emVoo.poll());
+            for (Mensagem msg : pagina.getMensagens()) {
+                if (vistas.add(msg.getId())) {
+                    novas.add(msg);
+                }
+            }
+            cursor = pagina.getProximoCursor();
+        }
+        return novas;
+    }
+
+    /**
+     * Assina o mural a partir da última leitura: o nó envia as mensagens novas assim que chegam,
+     * sem o cliente as pedir, até o usuário carregar em Enter. Se o nó da assinatura cair, ela
+     * continua noutro nó a partir da última mensagem recebida (ver ClienteCluster.Assinatura).
+     */
+    private void acompanharMural(Scanner scanner) {
+        System.out.printf("%n--- ACOMPANHANDO O MURAL '%s' (Enter para parar) ---%n", mural);
+        try {
+            // As mensagens chegam pela thread leitora da sessão, enquanto esta espera pelo Enter.
+            ClienteCluster.Assinatura assinatura = cluster.assinar(mural, ultimaLida, new ClienteCluster.OuvinteAssinatura() {
+                @Override
+                public void aoReceber(List<Mensagem> mensagens, long perdidas) {
+                    // Um salto indica mensagens que o nó não chegou a enviar por este cliente não
+                    // as ler ao ritmo a que chegavam.
+                    if (perdidas > 0) {
+                        System.out.printf("   (%d mensagem(ns) não recebida(s) por o cliente não acompanhar o ritmo)%n", perdidas);
+                    }
                     for (Mensagem msg : mensagens) {
                         System.out.println(msg);
                     }
+                    verCarimbos(mensagens);
+                }
+
+                @Override
+                public void aoMudarDeNo(int porta) {
+                    System.out.printf("   (O nó caiu; a assinatura continua no nó da porta %d.)%n", porta);
+                }
+            });
+            scanner.nextLine();
+            assinatura.cancelar();
+            ultimaLida = assinatura.getUltimaEntregue();
+            System.out.println("--------------------------");
+        } catch (ClienteCluster.TentarOutroNo e) {
+            System.err.println(">>> " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Erro de comunicação ao tentar assinar o mural. Nenhum nó respondeu.");
+        }
+    }
+
+    /**
+     * Procura mensagens no mural pelos termos do conteúdo e/ou pelo autor, com os índices do nó,
+     * sem descarregar o mural. Os resultados vêm página a página, a pedido do usuário; o cursor
+     * de cada página é uma posição no nó que a devolveu, por isso as páginas seguintes vão ao
+     * mesmo nó enquanto ele responder (se cair, a busca recomeça do início noutro nó).
+     */
+    private void buscarMensagens(Scanner scanner) {
+        System.out.print("Termos a procurar (Enter para nenhum): ");
+        String termos = scanner.nextLine();
+        System.out.print("Autor (Enter para qualquer): ");
+        String autor = scanner.nextLine();
+
+        try {
+            PedidoBusca inicial = new PedidoBusca(termos, autor, 0, 0, 0, TAMANHO_PAGINA);
+            PedidoBusca pedido = inicial;
+            AtomicReference<NoDoCluster> noDaBusca = new AtomicReference<>();
+            int encontradas = 0;
+            System.out.printf("%n--- RESULTADOS DA BUSCA NO MURAL '%s' ---%n", mural);
+            while (true) {
+                PedidoBusca pedidoAtual = pedido;
+                NoDoCluster anterior = noDaBusca.get();
+                Pacote resposta = cluster.executarEm(anterior, no -> {
+                    // Noutro nó, as posições do cursor não valem: a busca recomeça do início.
+                    PedidoBusca pedidoNoNo = anterior == null || no == anterior ? pedidoAtual : inicial;
+                    Pacote r = no.pedir(Pacote.Tipo.BUSCAR, pedidoNoNo, mural);
+                    noDaBusca.set(no);
+                    return r;
+                });
+                if (anterior != null && noDaBusca.get() != anterior) {
+                    System.out.println("   (O nó caiu; a busca recomeçou noutro nó.)");
+                    encontradas = 0;
+                }
+                if (resposta.getTipo() != Pacote.Tipo.PAGINA_MURAL) {
+                    System.err.println(">>> " + resposta.getConteudo());
+                    return;
+                }
+                PaginaMural pagina = (PaginaMural) resposta.getConteudo();
+                for (Mensagem msg : pagina.getMensagens()) {
+                    System.out.println(msg);
+                }
+                encontradas += pagina.getMensagens().size();
+                // Uma página incompleta é a última.
+                if (pagina.getMensagens().size() < TAMANHO_PAGINA) {
+                    break;
+                }
+                System.out.print("Enter para mais resultados, 'q' para parar: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
                 }
-                System.out.println("--------------------------");
+                pedido = inicial.aPartirDe(pagina.getProximoCursor());
+            }
+            System.out.printf("   (%d mensagem(ns) encontrada(s))%n", encontradas);
+            System.out.println("--------------------------");
+        } catch (IOException e) {
+            System.err.println("Erro de comunicação ao tentar buscar no mural. Nenhum nó respondeu.");
+        }
+    }
+
+    // Mostra a saúde de cada nó vista por este cliente (latência, pedidos, falhas).
+    /**
+     * Escolhe quantas réplicas do mural têm de responder às postagens e leituras seguintes:
+     * mais réplicas dão mais garantias (uma postagem confirmada sobrevive à queda do nó, uma
+     * leitura vê o que as outras réplicas já confirmaram), à custa de respostas mais lentas.
+     */
+    private void escolherConsistencia(Scanner scanner) {
+        System.out.println("\n--- NÍVEL DE CONSISTÊNCIA ---");
+        System.out.println("0. O configurado em cada nó");
+        Consistencia[] niveis = Consistencia.values();
+        for (int i = 0; i < niveis.length; i++) {
+            System.out.printf("%d. %s (%s)%n", i + 1, niveis[i], niveis[i].getDescricao());
+        }
+        System.out.print("Escolha um nível: ");
+        String escolha = scanner.nextLine().trim();
+        try {
+            int indice = Integer.parseInt(escolha);
+            if (indice < 0 || indice > niveis.length) {
+                throw new NumberFormatException(escolha);
+            }
+            consistencia = indice == 0 ? null : niveis[indice - 1];
+            cluster.setConsistencia(consistencia);
+            System.out.println(">>> Consistência: " + (consistencia != null ? consistencia : "a configurada em cada nó") + ".");
+        } catch (NumberFormatException e) {
+            System.out.println("Opção inválida; o nível não foi alterado.");
+        }
+    }
+
+    private void mostrarEstadoDosNos() {
+        System.out.println("\n--- ESTADO DOS NÓS ---");
+        for (NoDoCluster no : cluster.getNos()) {
+            System.out.println(no);
+        }
+        System.out.println("--------------------------");
+    }
+
+    /**
+     * Espera pela resposta a um LER_PAGINA. Uma resposta que não é uma página (ex: o nó não
+     * chega às réplicas do mural) passa a leitura a outro nó.
+     */
+    private static PaginaMural lerPagina(NoDoCluster no, CompletableFuture<Pacote> pedido) throws IOException {
+        Pacote resposta = SessaoCliente.esperar(pedido);
+        if (resposta.getTipo() != Pacote.Tipo.PAGINA_MURAL) {
+            throw new ClienteCluster.TentarOutroNo("Nó na porta " + no.getPorta() + ": " + resposta.getConteudo());
+        }
+        return (PaginaMural) resposta.getConteudo();
+    }
+
+    // Avança a última leitura para a última das mensagens mostradas.
+    private void marcarLidas(List<Mensagem> mensagens) {
+        if (!mensagens.isEmpty()) {
+            ultimaLida = mensagens.get(mensagens.size() - 1).getId();
+        }
+        verCarimbos(mensagens);
+    }
+
+    // Chamado também na thread leitora da sessão, com as mensagens de uma assinatura.
+    private synchronized void verCarimbos(List<Mensagem> mensagens) {
+        for (Mensagem msg : mensagens) {
+            ultimoHlcVisto = Math.max(ultimoHlcVisto, msg.getHlc());
+        }
+    }
+
+    private synchronized long getUltimoHlcVisto() {
+        return ultimoHlcVisto;
+    }
+
+    // O nó recusou a sessão (ou o login falhou): os pedidos seguintes vão sem token.
+    private void terminarSessao() {
+        this.autenticado = false;
+        this.usuarioAutenticado = null;
+        cluster.setToken(null);
+    }
+
+    private static void imprimirMensagens(List<Mensagem> mensagens, String avisoSeVazio) {
+        if (mensagens.isEmpty()) {
+            System.out.println(avisoSeVazio);
+        } else {
+            for (Mensagem msg : mensagens) {
+                System.out.println(msg);
             }
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Erro de comunicação ao tentar ler o mural. O nó pode estar offline.");
         }
+        System.out.println("--------------------------");
     }
 
     private void postarMensagem(Scanner scanner) {
@@ -161,14 +471,23 @@ public class Cliente {
         }
         System.out.print("Digite sua mensagem: ");
         String conteudo = scanner.nextLine();
-        Mensagem novaMensagem = new Mensagem(this.usuarioAutenticado, conteudo);
+        Mensagem novaMensagem = new Mensagem(this.usuarioAutenticado, conteudo).depoisDe(getUltimoHlcVisto());
 
-        try (Socket socket = new Socket(host, porta);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            out.writeObject(new Pacote(Pacote.Tipo.POSTAR_MENSAGEM, novaMensagem));
-            System.out.println("Mensagem enviada para o mural!");
+        try {
+            // O nó confirma depois de gravar a mensagem (e, acima de UM, de as outras réplicas a gravarem);
+            // a réplica para os outros nós segue em fundo. Se o nó cair, a mesma mensagem (com o
+            // mesmo ID) vai para outro nó, sem se duplicar.
+            Pacote resposta = cluster.escrever(Pacote.Tipo.POSTAR_MENSAGEM, novaMensagem, mural);
+            if (resposta.getTipo() == Pacote.Tipo.POSTAGEM_OK) {
+                System.out.println(">>> " + resposta.getConteudo());
+            } else {
+                if (resposta.getTipo() == Pacote.Tipo.LOGIN_FALHA) {
+                    terminarSessao(); // O token expirou (ou não foi aceite): é preciso novo login.
+                }
+                System.err.println(">>> " + resposta.getConteudo());
+            }
         } catch (IOException e) {
-            System.err.println("Erro de comunicação ao tentar postar a mensagem. O nó pode estar offline.");
+            System.err.println("Erro de comunicação ao tentar postar a mensagem. Nenhum nó respondeu.");
         }
     }
 }
\ No newline at end of file
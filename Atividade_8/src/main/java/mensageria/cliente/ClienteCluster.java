@@ -0,0 +1,414 @@
+package mensageria.cliente;
+
+import mensageria.comum.Consistencia;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Pacote;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.PedidoPagina;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Acesso de um cliente ao cluster inteiro, em vez de a um único nó: recebe a lista de nós e
+ * escolhe, pedido a pedido, a quem o enviar, com uma SessaoCliente por nó (ver NoDoCluster).
+ *
+ * - Cada pedido vai para o melhor de dois nós disponíveis escolhidos ao acaso, pelo custo
+ *   (latência média vezes pedidos em curso): a carga espalha-se pelos nós sem que todos os
+ *   clientes corram para o mesmo nó mais rápido.
+ * - Uma leitura sem resposta dentro do tempo habitual desse nó é repetida noutro nó, e vale a
+ *   primeira resposta; se o nó falhar (conexão recusada ou perdida), passa logo ao seguinte.
+ * - Uma escrita (login, postagem) passa ao nó seguinte quando o nó falha. A postagem leva o
+ *   seu ID, e um nó que já a tem não a carimba de novo. Um nó que ainda não a tem carimba-a,
+ *   mesmo que o primeiro já o tenha feito antes de falhar. Os nós ficam então com o carimbo menor
+ *   e guardam o outro só para as marcas de água (ver Mural.juntarMensagem), por isso a mensagem
+ *   aparece uma vez no mural, mas pode mudar de lugar na ordem quando os dois se encontram.
+ *
+ * Assim, um nó que cai (ou fica lento) não se nota do lado do cliente: os pedidos seguem para
+ * os outros nós, e o nó é sondado de tempos a tempos até voltar.
+ */
+public class ClienteCluster implements Closeable {
+
+    // Tempo total de uma leitura, somando as tentativas em todos os nós.
+    private static final long TIMEOUT_LEITURA_MS = 10_000;
+    // Pedidos da mesma leitura em curso ao mesmo tempo (o original e uma repetição).
+    private static final int MAXIMO_TENTATIVAS_EM_PARALELO = 2;
+
+    /** Uma operação de vários pedidos que tem de ir toda ao mesmo nó (ver executar). */
+    public interface Operacao<T> {
+        T executar(NoDoCluster no) throws IOException;
+    }
+
+    /**
+     * O nó respondeu, mas não pode servir o pedido (ex: ainda não tem a mensagem usada como
+     * cursor): passa-se ao nó seguinte sem contar como falha do nó.
+     */
+    public static class TentarOutroNo extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public TentarOutroNo(String motivo) {
+            super(motivo);
+        }
+    }
+
+    /** Quem recebe as mensagens de uma assinatura feita com assinar. */
+    public interface OuvinteAssinatura {
+        // Mensagens novas do mural; 'perdidas' conta as que o nó saltou antes delas por o
+        // cliente não as ler ao ritmo a que chegavam.
+        void aoReceber(List<Mensagem> mensagens, long perdidas);
+
+        // O nó da assinatura deixou de responder e ela continua no nó indicado.
+        void aoMudarDeNo(int porta);
+    }
+
+    private final List<NoDoCluster> nos;
+
+    public ClienteCluster(String host, int[] portas) {
+        if (portas.length == 0) {
+            throw new IllegalArgumentException("É preciso pelo menos um nó.");
+        }
+        List<NoDoCluster> lista = new ArrayList<>();
+        for (int porta : portas) {
+            lista.add(new NoDoCluster(host, porta));
+        }
+        this.nos = Collections.unmodifiableList(lista);
+    }
+
+    /**
+     * Liga-se aos nós que estiverem ativos.
+     * @return Quantos nós aceitaram a conexão.
+     * @throws IOException Se nenhum nó estiver ativo.
+     */
+    public int conectar() throws IOException {
+        int ativos = 0;
+        IOException ultimaFalha = null;
+        for (NoDoCluster no : nos) {
+            try {
+                no.getSessao().conectar();
+                ativos++;
+            } catch (IOException e) {
+                ultimaFalha = e;
+            }
+        }
+        if (ativos == 0) {
+            throw ultimaFalha;
+        }
+        return ativos;
+    }
+
+    // O token do login vale em todos os nós (ver Sessoes), por isso segue para todas as sessões.
+    public void setToken(String token) {
+        for (NoDoCluster no : nos) {
+            no.setToken(token);
+        }
+    }
+
+    /**
+     * Nível de consistência das postagens e leituras seguintes, em todos os nós (null para o nível
+     * configurado em cada nó). Acima de UM, o nó que recebe o pedido espera pelas outras réplicas
+     * do mural (ver Consistencia): as respostas demoram mais, e um nó que não chegue a réplicas
+     * suficientes responde REJEITADO.
+     */
+    public void setConsistencia(Consistencia consistencia) {
+        for (NoDoCluster no : nos) {
+            no.setConsistencia(consistencia);
+        }
+    }
+
+    /**
+     * Envia uma leitura ao nó escolhido e, se ele não responder dentro do seu atraso de
+     * repetição (NoDoCluster.atrasoRepeticaoNs), também ao nó seguinte; devolve a primeira
+     * resposta útil. Um REJEITADO (ex: o nó não chega às réplicas do mural) também passa ao
+     * nó seguinte, e só é devolvido se nenhum nó responder melhor.
+     */
+    public Pacote ler(Pacote.Tipo tipo, Object conteudo, String mural) throws IOException {
+        List<NoDoCluster> ordem = ordemDeTentativa(null);
+        BlockingQueue<CompletableFuture<Pacote>> concluidos = new LinkedBlockingQueue<>();
+        List<CompletableFuture<Pacote>> pedidos = new ArrayList<>();
+        long prazo = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_LEITURA_MS);
+        int enviados = 0;
+        int emCurso = 0;
+        long repetirEm = 0;
+        Pacote rejeitado = null;
+        IOException ultimaFalha = null;
+
+        while (true) {
+            long agora = System.nanoTime();
+            // Envia ao nó seguinte se não há nenhum pedido em curso, ou se o último passou do
+            // seu tempo habitual sem resposta.
+            boolean repetir = emCurso == 0 || (emCurso < MAXIMO_TENTATIVAS_EM_PARALELO && agora - repetirEm >= 0);
+            if (repetir && enviados < ordem.size()) {
+                NoDoCluster no = ordem.get(enviados++);
+                CompletableFuture<Pacote> resposta = no.pedirAssincrono(tipo, conteudo, mural);
+                resposta.whenComplete((pacote, erro) -> concluidos.add(resposta));
+                pedidos.add(resposta);
+                emCurso++;
+                repetirEm = agora + no.atrasoRepeticaoNs();
+                continue;
+            }
+            if (emCurso == 0) {
+                break; // Todos os nós já foram tentados.
+            }
+            long espera = prazo - agora;
+            if (emCurso < MAXIMO_TENTATIVAS_EM_PARALELO && enviados < ordem.size()) {
+                espera = Math.min(espera, repetirEm - agora);
+            }
+            if (prazo - agora <= 0) {
+                // Os pedidos ainda sem resposta são dados como falhados (e deixam de estar pendentes).
+                IOException semResposta = new IOException("Nenhum nó respondeu a tempo.");
+                for (CompletableFuture<Pacote> pedido : pedidos) {
+                    pedido.completeExceptionally(semResposta);
+                }
+                throw semResposta;
+            }
+            CompletableFuture<Pacote> concluido;
+            try {
+                concluido = concluidos.poll(Math.max(espera, 0), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrompido à espera da resposta do nó.", e);
+            }
+            if (concluido == null) {
+                continue; // Passou o atraso de repetição: o ciclo envia ao nó seguinte.
+            }
+            emCurso--;
+            try {
+                Pacote resposta = SessaoCliente.esperar(concluido);
+                if (resposta.getTipo() != Pacote.Tipo.REJEITADO) {
+                    return resposta;
+                }
+                rejeitado = resposta;
+            } catch (IOException e) {
+                ultimaFalha = e;
+            }
+        }
+        if (rejeitado != null) {
+            return rejeitado;
+        }
+        throw ultimaFalha;
+    }
+
+    /**
+     * Envia uma escrita ao nó escolhido e, se ele falhar, ao seguinte, até um responder.
+     * A resposta é devolvida tal como vem (incluindo um REJEITADO ou LOGIN_FALHA).
+     */
+    public Pacote escrever(Pacote.Tipo tipo, Object conteudo, String mural) throws IOException {
+        return executar(no -> no.pedir(tipo, conteudo, mural));
+    }
+
+    // Executa a operação num nó escolhido e, se esse nó falhar, recomeça-a do início no seguinte.
+    public <T> T executar(Operacao<T> operacao) throws IOException {
+        return executarEm(null, operacao);
+    }
+
+    /**
+     * Como executar, mas tentando primeiro o nó 'preferido' (se estiver disponível), por
+     * exemplo o nó das páginas anteriores de uma busca, cujo cursor só vale nesse nó.
+     */
+    public <T> T executarEm(NoDoCluster preferido, Operacao<T> operacao) throws IOException {
+        IOException ultimaFalha = null;
+        for (NoDoCluster no : ordemDeTentativa(preferido)) {
+            try {
+                return operacao.executar(no);
+            } catch (IOException e) {
+                // A falha (se foi do nó) já ficou registada no estado dele pelo pedido que falhou.
+                ultimaFalha = e;
+            }
+        }
+        throw ultimaFalha;
+    }
+
+    /**
+     * Assina o mural a partir da mensagem 'aposMensagem' (null para o início do mural). Se o
+     * nó da assinatura cair, ela é reaberta noutro nó a partir da última mensagem entregue.
+     * As mensagens chegam a 'ouvinte' na thread leitora da sessão do nó.
+     */
+    public Assinatura assinar(String mural, UUID aposMensagem, OuvinteAssinatura ouvinte) throws IOException {
+        Assinatura assinatura = new Assinatura(mural, aposMensagem, ouvinte);
+        executar(assinatura::abrirEm);
+        return assinatura;
+    }
+
+    /**
+     * Ordem pela qual os nós são tentados: primeiro o preferido, ou o melhor de dois nós
+     * disponíveis ao acaso; depois os outros disponíveis, do mais barato para o mais caro; por
+     * fim os postos de parte, pelos que saem de espera mais cedo (são tentados mesmo assim,
+     * porque um nó pode ter voltado antes do fim da espera).
+     */
+    private List<NoDoCluster> ordemDeTentativa(NoDoCluster preferido) {
+        long agora = System.nanoTime();
+        List<NoDoCluster> disponiveis = new ArrayList<>();
+        List<NoDoCluster> emEspera = new ArrayList<>();
+        for (NoDoCluster no : nos) {
+            (no.isDisponivel(agora) ? disponiveis : emEspera).add(no);
+        }
+        List<NoDoCluster> ordem = new ArrayList<>(nos.size());
+        if (preferido != null && disponiveis.remove(preferido)) {
+            ordem.add(preferido);
+        } else if (disponiveis.size() >= 2) {
+            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+            int a = aleatorio.nextInt(disponiveis.size());
+            int b = aleatorio.nextInt(disponiveis.size() - 1);
+            if (b >= a) {
+                b++;
+            }
+            NoDoCluster escolhido = disponiveis.get(a).custo() <= disponiveis.get(b).custo() ? disponiveis.get(a) : disponiveis.get(b);
+            disponiveis.remove(escolhido);
+            ordem.add(escolhido);
+        }
+        disponiveis.sort(Comparator.comparingDouble(NoDoCluster::custo));
+        emEspera.sort(Comparator.comparingLong(no -> no.getIndisponivelAte() - agora));
+        ordem.addAll(disponiveis);
+        ordem.addAll(emEspera);
+        return ordem;
+    }
+
+    public List<NoDoCluster> getNos() {
+        return nos;
+    }
+
+    @Override
+    public void close() {
+        for (NoDoCluster no : nos) {
+            no.getSessao().close();
+        }
+    }
+
+    /**
+     * Uma assinatura de mural que sobrevive à queda do nó. As posições só valem no mural de um
+     * nó, por isso a assinatura guarda o ID da última mensagem entregue e, ao mudar de nó, pede
+     * ao nó novo a posição dessa mensagem antes de voltar a assinar. Mensagens que os dois nós
+     * receberam por ordens diferentes perto da mudança podem faltar ou repetir-se.
+     */
+    public final class Assinatura {
+        private final String mural;
+        private final OuvinteAssinatura ouvinte;
+
+        private volatile boolean ativa = true;
+        private volatile UUID ultimaEntregue;
+        // O nó e o id da assinatura atual, e a posição (pela ordem de chegada a esse nó) até onde
+        // já entregou; -1 até chegar a primeira página de uma assinatura aberta por ID.
+        private NoDoCluster no;
+        private long idAssinatura;
+        private long cursor;
+
+        private Assinatura(String mural, UUID aposMensagem, OuvinteAssinatura ouvinte) {
+            this.mural = mural;
+            this.ouvinte = ouvinte;
+            this.ultimaEntregue = aposMensagem;
+        }
+
+        // O nó recusa (REJEITADO) uma assinatura a seguir a uma mensagem que ainda não tem.
+        private Void abrirEm(NoDoCluster alvo) throws IOException {
+            UUID apos = ultimaEntregue;
+            CompletableFuture<Pacote> primeira = new CompletableFuture<>();
+            synchronized (this) {
+                no = alvo;
+                cursor = apos == null ? 0 : -1;
+            }
+            PedidoPagina desde = apos == null ? new PedidoPagina(0, 0) : new PedidoPagina(apos, 0);
+            long id = alvo.getSessao().assinar(desde, mural, pacote -> receber(alvo, primeira, pacote));
+            Pacote resposta = SessaoCliente.esperar(primeira);
+            if (resposta.getTipo() != Pacote.Tipo.PAGINA_MURAL) {
+                alvo.getSessao().cancelarAssinatura(id, mural);
+                throw new TentarOutroNo(String.valueOf(resposta.getConteudo()));
+            }
+            synchronized (this) {
+                idAssinatura = id;
+            }
+            return null;
+        }
+
+        // Chamado na thread leitora da sessão de 'origem', pela ordem em que os pacotes chegam.
+        private void receber(NoDoCluster origem, CompletableFuture<Pacote> primeira, Pacote pacote) {
+            if (pacote == null) {
+                primeira.completeExceptionally(new IOException("Conexão com o nó perdida."));
+                if (ativa && primeira.isDone() && !primeira.isCompletedExceptionally()) {
+                    reabrirEmFundo(origem);
+                }
+                return;
+            }
+            primeira.complete(pacote);
+            if (pacote.getTipo() != Pacote.Tipo.PAGINA_MURAL) {
+                return;
+            }
+            PaginaMural pagina = (PaginaMural) pacote.getConteudo();
+            long perdidas;
+            synchronized (this) {
+                if (!ativa || no != origem) {
+                    return; // Página atrasada de uma assinatura já substituída.
+                }
+                long inicio = pagina.getProximoCursor() - pagina.getMensagens().size();
+                perdidas = cursor < 0 ? 0 : Math.max(0, inicio - cursor);
+                cursor = pagina.getProximoCursor();
+            }
+            List<Mensagem> mensagens = pagina.getMensagens();
+            if (!mensagens.isEmpty()) {
+                ultimaEntregue = mensagens.get(mensagens.size() - 1).getId();
+            }
+            if (!mensagens.isEmpty() || perdidas > 0) {
+                ouvinte.aoReceber(mensagens, perdidas);
+            }
+        }
+
+        // Reabre a assinatura noutro nó, fora da thread leitora (que está a fechar a sessão).
+        private void reabrirEmFundo(NoDoCluster caido) {
+            Thread reabrir = new Thread(() -> {
+                while (ativa) {
+                    try {
+                        executar(this::abrirEm);
+                        if (!ativa) {
+                            cancelar(); // Foi cancelada enquanto era reaberta.
+                            return;
+                        }
+                        NoDoCluster atual;
+                        synchronized (this) {
+                            atual = no;
+                        }
+                        ouvinte.aoMudarDeNo(atual.getPorta());
+                        return;
+                    } catch (IOException e) {
+                        try {
+                            Thread.sleep(1_000); // Nenhum nó aceitou; tenta de novo daqui a pouco.
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                }
+            }, "reabrir-assinatura-" + caido.getPorta());
+            reabrir.setDaemon(true);
+            reabrir.start();
+        }
+
+        // A última mensagem entregue ao ouvinte (ou a dada ao assinar, se ainda não chegou nenhuma).
+        public UUID getUltimaEntregue() {
+            return ultimaEntregue;
+        }
+
+        // Termina a assinatura; não volta a ser reaberta.
+        public void cancelar() {
+            NoDoCluster atual;
+            long id;
+            synchronized (this) {
+                ativa = false;
+                atual = no;
+                id = idAssinatura;
+            }
+            try {
+                atual.getSessao().cancelarAssinatura(id, mural);
+            } catch (IOException ignorada) {
+                // O nó caiu: a assinatura já não existe lá.
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,337 @@
+package mensageria.cliente;
+
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.HistogramaLatencia;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Pacote;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cliente sem interface que gera carga sobre os nós, usando o mesmo protocolo (Pacote) do Cliente.
+ *
+ * Cada thread mantém uma conexão com um dos nós (distribuídas em rotação pelas portas indicadas),
+ * faz login ao abri-la e envia uma mistura configurável de pedidos, com o token de sessão
+ * recebido (as postagens são recusadas sem ele). Há dois modos:
+ * - fechado: cada thread envia o pedido seguinte assim que recebe a resposta ao anterior;
+ *   mede a capacidade máxima com 'threads' clientes simultâneos.
+ * - aberto: os pedidos são agendados a uma taxa fixa (--taxa pedidos/s no total), independente
+ *   das respostas. A latência é medida a partir do instante em que o pedido DEVIA ter saído,
+ *   para que um nó lento não esconda o atraso dos pedidos que ficaram à espera
+ *   (o problema da "omissão coordenada").
+ *
+ * Uso (com a rede do Simulador a correr):
+ *   java -cp <jar> mensageria.cliente.GeradorDeCarga --portas 8001,8002,8003 --modo aberto --taxa 2000
+ *        --threads 32 --duracao 30 --aquecimento 5 --mistura login=10,postar=30,ultimas=50,ler=10
+ *
+ * Com '--murais N' cada pedido vai para um de N murais ("carga-0" a "carga-(N-1)"), sorteado;
+ * com a rede arrancada com um fator de replicação menor do que o número de nós, os murais
+ * ficam espalhados pelos nós e dá para medir como a capacidade cresce com a rede.
+ * Sem esta opção, todos os pedidos vão para o mural padrão.
+ */
+public class GeradorDeCarga {
+
+    // Os tipos de pedido que podem entrar na mistura, com o nome usado em --mistura.
+    enum Operacao {
+        LOGIN("login", Pacote.Tipo.LOGIN_OK),
+        POSTAR("postar", Pacote.Tipo.POSTAGEM_OK),
+        LER_MURAL("ler", Pacote.Tipo.MURAL_ATUALIZADO),
+        LER_ULTIMAS("ultimas", Pacote.Tipo.PAGINA_MURAL);
+
+        private final String nome;
+        private final Pacote.Tipo respostaEsperada;
+
+        Operacao(String nome, Pacote.Tipo respostaEsperada) {
+            this.nome = nome;
+            this.respostaEsperada = respostaEsperada;
+        }
+
+        static Operacao porNome(String nome) {
+            for (Operacao operacao : values()) {
+                if (operacao.nome.equalsIgnoreCase(nome)) {
+                    return operacao;
+                }
+            }
+            throw new IllegalArgumentException("Operação desconhecida na mistura: " + nome);
+        }
+    }
+
+    enum Modo { FECHADO, ABERTO }
+
+    private static final long INTERVALO_RELATORIO_MS = 5_000;
+    private static final long ESPERA_RECONEXAO_MS = 200;
+
+    private final String host;
+    private final int[] portas;
+    private final Modo modo;
+    private final double taxa;
+    private final int threads;
+    private final int duracaoS;
+    private final int aquecimentoS;
+    private final Operacao[] operacoes;
+    private final double[] pesosAcumulados;
+    // Número de murais por onde os pedidos são espalhados (0 = só o mural padrão).
+    private final int murais;
+
+    private final Map<Operacao, HistogramaLatencia> latencias = new EnumMap<>(Operacao.class);
+    private final Map<Operacao, LongAdder> erros = new EnumMap<>(Operacao.class);
+    // Latências de todos os tipos no intervalo corrente, para o relatório periódico.
+    private final HistogramaLatencia intervalo = new HistogramaLatencia();
+    private volatile boolean executando = true;
+
+    public GeradorDeCarga(String host, int[] portas, Modo modo, double taxa, int threads,
+                          int duracaoS, int aquecimentoS, Map<Operacao, Integer> mistura, int murais) {
+        this.host = host;
+        this.portas = portas;
+        this.modo = modo;
+        this.taxa = taxa;
+        this.threads = threads;
+        this.duracaoS = duracaoS;
+        this.aquecimentoS = aquecimentoS;
+        this.murais = murais;
+        this.operacoes = mistura.keySet().toArray(new Operacao[0]);
+        this.pesosAcumulados = new double[operacoes.length];
+        double total = 0;
+        for (int i = 0; i < operacoes.length; i++) {
+            total += mistura.get(operacoes[i]);
+            pesosAcumulados[i] = total;
+        }
+        for (int i = 0; i < pesosAcumulados.length; i++) {
+            pesosAcumulados[i] /= total;
+        }
+        for (Operacao operacao : Operacao.values()) {
+            latencias.put(operacao, new HistogramaLatencia());
+            erros.put(operacao, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> opcoes = lerOpcoes(args);
+        String[] textoPortas = opcoes.getOrDefault("portas", "8001,8002,8003").split(",");
+        int[] portas = new int[textoPortas.length];
+        for (int i = 0; i < portas.length; i++) {
+            portas[i] = Integer.parseInt(textoPortas[i].trim());
+        }
+        Map<Operacao, Integer> mistura = new EnumMap<>(Operacao.class);
+        for (String parte : opcoes.getOrDefault("mistura", "login=10,postar=30,ultimas=50,ler=10").split(",")) {
+            String[] chaveValor = parte.split("=");
+            mistura.put(Operacao.porNome(chaveValor[0].trim()), Integer.parseInt(chaveValor[1].trim()));
+        }
+
+        GeradorDeCarga gerador = new GeradorDeCarga(
+                opcoes.getOrDefault("host", "localhost"),
+                portas,
+                Modo.valueOf(opcoes.getOrDefault("modo", "fechado").toUpperCase()),
+                Double.parseDouble(opcoes.getOrDefault("taxa", "1000")),
+                Integer.parseInt(opcoes.getOrDefault("threads", "16")),
+                Integer.parseInt(opcoes.getOrDefault("duracao", "30")),
+                Integer.parseInt(opcoes.getOrDefault("aquecimento", "5")),
+                mistura,
+                Integer.parseInt(opcoes.getOrDefault("murais", "0")));
+        gerador.executar();
+    }
+
+    // Lê argumentos no formato "--chave valor".
+    private static Map<String, String> lerOpcoes(String[] args) {
+        Map<String, String> opcoes = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Argumento inesperado: " + args[i]);
+            }
+            opcoes.put(args[i].substring(2), args[i + 1]);
+        }
+        return opcoes;
+    }
+
+    public void executar() throws InterruptedException {
+        System.out.printf("--- Gerador de carga: modo %s, %d thread(s), %s, portas %s, %s, %ds (+%ds de aquecimento) ---%n",
+                modo, threads, modo == Modo.ABERTO ? String.format("%.0f pedidos/s", taxa) : "sem limite de taxa",
+                Arrays.toString(portas), murais > 0 ? murais + " murais" : "mural padrão", duracaoS, aquecimentoS);
+
+        long inicio = System.nanoTime();
+        List<Thread> trabalhadores = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int indice = i;
+            Thread thread = new Thread(() -> trabalhar(indice, inicio), "carga-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            trabalhadores.add(thread);
+        }
+
+        if (aquecimentoS > 0) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(aquecimentoS));
+            descartarAmostras();
+            System.out.println("Aquecimento concluído; a medir.");
+        }
+        long inicioMedicao = System.nanoTime();
+        long fim = inicioMedicao + TimeUnit.SECONDS.toNanos(duracaoS);
+        long ultimoRelatorio = inicioMedicao;
+        while (System.nanoTime() < fim) {
+            Thread.sleep(Math.min(INTERVALO_RELATORIO_MS, Math.max(1, TimeUnit.NANOSECONDS.toMillis(fim - System.nanoTime()))));
+            HistogramaLatencia doIntervalo = intervalo.extrairEZerar();
+            long agora = System.nanoTime();
+            System.out.printf("[%5.1fs] %8.0f pedidos/s  p50=%s  p99=%s  max=%s%n",
+                    (agora - inicioMedicao) / 1e9,
+                    doIntervalo.getContagem() * 1e9 / (agora - ultimoRelatorio),
+                    ms(doIntervalo.percentil(50)), ms(doIntervalo.percentil(99)), ms(doIntervalo.getMaximo()));
+            ultimoRelatorio = agora;
+        }
+        executando = false;
+        double segundos = (System.nanoTime() - inicioMedicao) / 1e9;
+        for (Thread thread : trabalhadores) {
+            thread.join(2_000);
+        }
+        imprimirRelatorio(segundos);
+    }
+
+    private void descartarAmostras() {
+        for (Operacao operacao : Operacao.values()) {
+            latencias.get(operacao).extrairEZerar();
+            erros.get(operacao).reset();
+        }
+        intervalo.extrairEZerar();
+    }
+
+    // Ciclo de uma thread geradora: uma conexão persistente e um pedido de cada vez.
+    private void trabalhar(int indice, long inicio) {
+        int porta = portas[indice % portas.length];
+        // No modo aberto, cada thread fica com uma fração da taxa, desfasada das outras.
+        long intervaloNs = modo == Modo.ABERTO ? (long) (threads * 1e9 / taxa) : 0;
+        long proximoEnvio = inicio + intervaloNs * indice / Math.max(1, threads);
+        CanalPacotes canal = null;
+        String sessao = null;
+        long idCorrelacao = 0;
+
+        while (executando) {
+            Operacao operacao = sortear();
+            long instantePedido;
+            if (modo == Modo.ABERTO) {
+                esperarAte(proximoEnvio);
+                instantePedido = proximoEnvio;
+                proximoEnvio += intervaloNs;
+            } else {
+                instantePedido = System.nanoTime();
+            }
+
+            try {
+                if (canal == null) {
+                    canal = new CanalPacotes(new Socket(host, porta));
+                    sessao = iniciarSessao(canal, ++idCorrelacao);
+                }
+                canal.enviar(criarPedido(operacao, ++idCorrelacao, sessao));
+                Pacote resposta = canal.receber();
+                long latencia = System.nanoTime() - instantePedido;
+                if (resposta.getTipo() == Pacote.Tipo.LOGIN_OK) {
+                    sessao = (String) resposta.getConteudo();
+                }
+                if (resposta.getTipo() == operacao.respostaEsperada) {
+                    latencias.get(operacao).registrar(latencia);
+                    intervalo.registrar(latencia);
+                } else {
+                    erros.get(operacao).increment();
+                }
+            } catch (IOException e) {
+                erros.get(operacao).increment();
+                fecharEmSilencio(canal);
+                canal = null;
+                esperarAte(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESPERA_RECONEXAO_MS));
+            }
+        }
+        fecharEmSilencio(canal);
+    }
+
+    private Operacao sortear() {
+        double sorteio = ThreadLocalRandom.current().nextDouble();
+        for (int i = 0; i < pesosAcumulados.length; i++) {
+            if (sorteio < pesosAcumulados[i]) {
+                return operacoes[i];
+            }
+        }
+        return operacoes[operacoes.length - 1];
+    }
+
+    // Faz login numa conexão acabada de abrir e devolve o token de sessão.
+    private static String iniciarSessao(CanalPacotes canal, long idCorrelacao) throws IOException {
+        canal.enviar(new Pacote(Pacote.Tipo.LOGIN, "anderson;123", idCorrelacao));
+        Pacote resposta = canal.receber();
+        if (resposta.getTipo() != Pacote.Tipo.LOGIN_OK) {
+            throw new IOException("Login recusado: " + resposta.getConteudo());
+        }
+        return (String) resposta.getConteudo();
+    }
+
+    private Pacote criarPedido(Operacao operacao, long idCorrelacao, String sessao) {
+        String mural = murais > 0 ? "carga-" + ThreadLocalRandom.current().nextInt(murais) : Pacote.MURAL_PADRAO;
+        switch (operacao) {
+            case LOGIN:
+                return new Pacote(Pacote.Tipo.LOGIN, "anderson;123", idCorrelacao);
+            case POSTAR:
+                return new Pacote(Pacote.Tipo.POSTAR_MENSAGEM,
+                        new Mensagem("anderson", "Mensagem de carga " + idCorrelacao), idCorrelacao, mural, sessao);
+            case LER_MURAL:
+                return new Pacote(Pacote.Tipo.LER_MURAL, null, idCorrelacao, mural);
+            default:
+                return new Pacote(Pacote.Tipo.LER_ULTIMAS, 20L, idCorrelacao, mural);
+        }
+    }
+
+    private void esperarAte(long instante) {
+        long restante;
+        while (executando && (restante = instante - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(restante);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void fecharEmSilencio(CanalPacotes canal) {
+        if (canal == null) return;
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // A conexão já estava perdida.
+        }
+    }
+
+    private void imprimirRelatorio(double segundos) {
+        System.out.println();
+        System.out.println("--- RESULTADO ---");
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s %10s %8s%n",
+                "operação", "pedidos", "pedidos/s", "p50", "p90", "p99", "p99.9", "max", "erros");
+        HistogramaLatencia total = new HistogramaLatencia();
+        long totalErros = 0;
+        for (Operacao operacao : operacoes) {
+            HistogramaLatencia histograma = latencias.get(operacao);
+            long errosDaOperacao = erros.get(operacao).sum();
+            imprimirLinha(operacao.nome, histograma, errosDaOperacao, segundos);
+            total.adicionar(histograma);
+            totalErros += errosDaOperacao;
+        }
+        imprimirLinha("total", total, totalErros, segundos);
+        System.out.println("(latências em ms)");
+    }
+
+    private static void imprimirLinha(String nome, HistogramaLatencia histograma, long erros, double segundos) {
+        System.out.printf("%-10s %10d %10.0f %10s %10s %10s %10s %10s %8d%n",
+                nome, histograma.getContagem(), histograma.getContagem() / segundos,
+                ms(histograma.percentil(50)), ms(histograma.percentil(90)), ms(histograma.percentil(99)),
+                ms(histograma.percentil(99.9)), ms(histograma.getMaximo()), erros);
+    }
+
+    private static String ms(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
\ No newline at end of file
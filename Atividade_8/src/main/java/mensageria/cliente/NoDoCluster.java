@@ -0,0 +1,130 @@
+package mensageria.cliente;
+
+import mensageria.comum.Consistencia;
+import mensageria.comum.Pacote;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Um dos nós conhecidos pelo ClienteCluster: a sessão com ele e o seu estado de saúde visto
+ * pelo cliente.
+ *
+ * A latência de cada resposta alimenta uma média móvel exponencial e o seu desvio (como a
+ * estimativa do RTT no TCP), que dão o custo do nó na escolha entre dois nós e o atraso antes
+ * de repetir uma leitura noutro nó. Cada falha seguida (conexão recusada ou perdida, ou sem
+ * resposta a tempo) põe o nó de parte por um tempo que duplica a cada falha; passado esse
+ * tempo, o pedido seguinte que lhe calhar serve de sondagem, e uma resposta devolve-o ao normal.
+ */
+public class NoDoCluster {
+
+    private static final long ESPERA_INICIAL_NS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long ESPERA_MAXIMA_NS = TimeUnit.SECONDS.toNanos(10);
+    // Nunca se repete uma leitura noutro nó antes disto, mesmo com latências muito baixas.
+    private static final long ATRASO_MINIMO_REPETICAO_NS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final int porta;
+    private final SessaoCliente sessao;
+
+    // Média e desvio da latência, em nanossegundos; protegidos pelo monitor do nó.
+    private double latenciaMedia = TimeUnit.MILLISECONDS.toNanos(1);
+    private double desvioLatencia = TimeUnit.MILLISECONDS.toNanos(1) / 2.0;
+    private int falhasSeguidas;
+    private volatile long indisponivelAte;
+
+    private final AtomicInteger emCurso = new AtomicInteger();
+    private final AtomicLong respostas = new AtomicLong();
+    private final AtomicLong falhas = new AtomicLong();
+
+    NoDoCluster(String host, int porta) {
+        this.porta = porta;
+        this.sessao = new SessaoCliente(host, porta);
+    }
+
+    /**
+     * Envia um pedido a este nó sem esperar; a latência (ou a falha) da resposta fica registada
+     * no estado do nó quando o futuro terminar.
+     */
+    public CompletableFuture<Pacote> pedirAssincrono(Pacote.Tipo tipo, Object conteudo, String mural) {
+        emCurso.incrementAndGet();
+        long inicio = System.nanoTime();
+        CompletableFuture<Pacote> resposta = sessao.pedir(tipo, conteudo, mural);
+        resposta.whenComplete((pacote, erro) -> {
+            emCurso.decrementAndGet();
+            if (erro == null) {
+                registrarResposta(System.nanoTime() - inicio);
+            } else {
+                registrarFalha();
+            }
+        });
+        return resposta;
+    }
+
+    // Envia um pedido a este nó e espera pela resposta (ver SessaoCliente.esperar).
+    public Pacote pedir(Pacote.Tipo tipo, Object conteudo, String mural) throws IOException {
+        // Sem resposta a tempo, esperar conclui o pedido com a falha: conta como falha do nó.
+        return SessaoCliente.esperar(pedirAssincrono(tipo, conteudo, mural));
+    }
+
+    private synchronized void registrarResposta(long latencia) {
+        double erro = latencia - latenciaMedia;
+        latenciaMedia += erro / 8;
+        desvioLatencia += (Math.abs(erro) - desvioLatencia) / 4;
+        falhasSeguidas = 0;
+        indisponivelAte = 0;
+        respostas.incrementAndGet();
+    }
+
+    private synchronized void registrarFalha() {
+        falhas.incrementAndGet();
+        falhasSeguidas++;
+        long espera = Math.min(ESPERA_MAXIMA_NS, ESPERA_INICIAL_NS << Math.min(falhasSeguidas - 1, 16));
+        indisponivelAte = System.nanoTime() + espera;
+    }
+
+    // Verdadeiro se o nó não está posto de parte por falhas recentes.
+    boolean isDisponivel(long agora) {
+        return indisponivelAte == 0 || agora - indisponivelAte >= 0;
+    }
+
+    long getIndisponivelAte() {
+        return indisponivelAte;
+    }
+
+    // Custo de mandar mais um pedido a este nó: a latência esperada, agravada pelos pedidos já em curso.
+    synchronized double custo() {
+        return latenciaMedia * (emCurso.get() + 1);
+    }
+
+    // Quanto esperar por uma leitura antes de a repetir noutro nó: bem acima da latência habitual.
+    synchronized long atrasoRepeticaoNs() {
+        return Math.max(ATRASO_MINIMO_REPETICAO_NS, (long) (latenciaMedia + 4 * desvioLatencia));
+    }
+
+    void setToken(String token) {
+        sessao.setToken(token);
+    }
+
+    void setConsistencia(Consistencia consistencia) {
+        sessao.setConsistencia(consistencia);
+    }
+
+    public SessaoCliente getSessao() {
+        return sessao;
+    }
+
+    public int getPorta() {
+        return porta;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long agora = System.nanoTime();
+        return String.format("Nó na porta %d [%s] latência=%.2fms (±%.2f) em curso=%d respostas=%d falhas=%d",
+                porta, isDisponivel(agora) ? "disponível" : "em espera " + TimeUnit.NANOSECONDS.toMillis(indisponivelAte - agora) + "ms",
+                latenciaMedia / 1e6, desvioLatencia / 1e6, emCurso.get(), respostas.get(), falhas.get());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,228 @@
+package mensageria.cliente;
+
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.Consistencia;
+import mensageria.comum.Pacote;
+import mensageria.comum.PedidoPagina;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Sessão de um cliente com um nó: uma única conexão, aberta uma vez e usada por todos os
+ * pedidos, em vez de um socket novo por login, leitura ou postagem.
+ *
+ * Cada pedido leva um id de correlação e o token de sessão recebido no LOGIN (o nó verifica-o
+ * pedido a pedido). Os pedidos podem seguir uns atrás dos outros sem esperar pelas respostas
+ * (pedir devolve um futuro): uma thread leitora entrega cada resposta ao pedido com o mesmo id,
+ * como na LigacaoPeer entre nós. As assinaturas de murais usam a mesma conexão; as páginas que
+ * o nó empurra chegam com o id do ASSINAR e vão para quem assinou.
+ *
+ * Se a conexão cair, os pedidos em curso falham e o pedido seguinte abre uma conexão nova.
+ * O token continua válido nela (não depende da conexão), por isso não é preciso novo login.
+ */
+public class SessaoCliente implements Closeable {
+
+    private static final int TIMEOUT_CONEXAO_MS = 2_000;
+    // Tempo máximo de espera por uma resposta em pedirEEsperar.
+    private static final long TIMEOUT_RESPOSTA_MS = 10_000;
+
+    private final String host;
+    private final int porta;
+
+    private final Map<Long, CompletableFuture<Pacote>> pendentes = new ConcurrentHashMap<>();
+    // Quem recebe as páginas de cada assinatura, pelo id de correlação do ASSINAR.
+    private final Map<Long, Consumer<Pacote>> assinaturas = new ConcurrentHashMap<>();
+    private final AtomicLong proximoIdCorrelacao = new AtomicLong(1);
+
+    private volatile CanalPacotes canal;
+    // Token recebido no LOGIN_OK; null enquanto o usuário não fizer login.
+    private volatile String token;
+    // Nível de consistência pedido nas postagens e leituras; null deixa o nível configurado no nó.
+    private volatile Consistencia consistencia;
+
+    public SessaoCliente(String host, int porta) {
+        this.host = host;
+        this.porta = porta;
+    }
+
+    /**
+     * Abre a conexão com o nó, se ainda não estiver aberta.
+     * @throws IOException Se o nó não aceitar a conexão (ex: está offline).
+     */
+    public synchronized CanalPacotes conectar() throws IOException {
+        CanalPacotes atual = canal;
+        if (atual != null) {
+            return atual;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, porta), TIMEOUT_CONEXAO_MS);
+            socket.setTcpNoDelay(true);
+            CanalPacotes novo = new CanalPacotes(socket);
+            Thread leitor = new Thread(() -> cicloDeLeitura(novo), "sessao-cliente-" + porta);
+            leitor.setDaemon(true);
+            leitor.start();
+            canal = novo;
+            return novo;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Envia um pedido sem esperar pela resposta; vários pedidos podem estar em curso ao mesmo tempo.
+     * O futuro falha se a conexão cair antes de a resposta chegar.
+     */
+    public CompletableFuture<Pacote> pedir(Pacote.Tipo tipo, Object conteudo, String mural) {
+        long idCorrelacao = proximoIdCorrelacao.getAndIncrement();
+        CompletableFuture<Pacote> resposta = new CompletableFuture<>();
+        pendentes.put(idCorrelacao, resposta);
+        // Um pedido concluído de outra forma (ex: quem esperava desistiu) já não espera pela resposta.
+        resposta.whenComplete((pacote, erro) -> pendentes.remove(idCorrelacao, resposta));
+        try {
+            enviar(new Pacote(tipo, conteudo, idCorrelacao, mural, token, consistencia));
+        } catch (IOException e) {
+            pendentes.remove(idCorrelacao);
+            resposta.completeExceptionally(e);
+        }
+        return resposta;
+    }
+
+    // Envia um pedido e espera pela resposta (no máximo TIMEOUT_RESPOSTA_MS).
+    public Pacote pedirEEsperar(Pacote.Tipo tipo, Object conteudo, String mural) throws IOException {
+        return esperar(pedir(tipo, conteudo, mural));
+    }
+
+    /**
+     * Espera pela resposta de um pedido feito com pedir, convertendo as falhas em IOException.
+     * Sem resposta a tempo, o pedido é dado como falhado (e deixa de estar pendente).
+     */
+    public static Pacote esperar(CompletableFuture<Pacote> resposta) throws IOException {
+        try {
+            return resposta.get(TIMEOUT_RESPOSTA_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido à espera da resposta do nó.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            IOException semResposta = new IOException("O nó não respondeu a tempo.", e);
+            resposta.completeExceptionally(semResposta);
+            throw semResposta;
+        }
+    }
+
+    /**
+     * Assina o mural a partir do cursor do pedido: a posição pela ordem de chegada ao nó (-1 para
+     * só as mensagens novas) ou a mensagem a seguir à qual começar. Todos os pacotes da
+     * assinatura (a primeira página ou um REJEITADO, e depois as páginas empurradas pelo nó) são
+     * entregues a 'aoReceber', na thread leitora; se a conexão cair, recebe null.
+     * @return O id da assinatura, para a cancelar.
+     */
+    public long assinar(PedidoPagina desde, String mural, Consumer<Pacote> aoReceber) throws IOException {
+        long idCorrelacao = proximoIdCorrelacao.getAndIncrement();
+        assinaturas.put(idCorrelacao, aoReceber);
+        try {
+            enviar(new Pacote(Pacote.Tipo.ASSINAR, desde, idCorrelacao, mural, token));
+        } catch (IOException e) {
+            assinaturas.remove(idCorrelacao);
+            throw e;
+        }
+        return idCorrelacao;
+    }
+
+    // Termina a assinatura no nó; as páginas que ainda estejam a caminho são ignoradas.
+    public void cancelarAssinatura(long idAssinatura, String mural) throws IOException {
+        if (assinaturas.remove(idAssinatura) != null) {
+            enviar(new Pacote(Pacote.Tipo.CANCELAR_ASSINATURA, idAssinatura, 0L, mural, token));
+        }
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public void setConsistencia(Consistencia consistencia) {
+        this.consistencia = consistencia;
+    }
+
+    public Consistencia getConsistencia() {
+        return consistencia;
+    }
+
+    // Envia o pacote pela conexão da sessão (abrindo-a se foi perdida).
+    private void enviar(Pacote pacote) throws IOException {
+        CanalPacotes atual = conectar();
+        try {
+            atual.enviar(pacote);
+        } catch (IOException e) {
+            fecharCanal(atual, e);
+            throw e;
+        }
+    }
+
+    // Thread leitora: entrega cada pacote ao pedido, ou à assinatura, com o mesmo id de correlação.
+    private void cicloDeLeitura(CanalPacotes canalLido) {
+        try {
+            while (true) {
+                Pacote pacote = canalLido.receber();
+                CompletableFuture<Pacote> pedido = pendentes.remove(pacote.getIdCorrelacao());
+                if (pedido != null) {
+                    pedido.complete(pacote);
+                    continue;
+                }
+                Consumer<Pacote> assinatura = assinaturas.get(pacote.getIdCorrelacao());
+                if (assinatura != null) {
+                    assinatura.accept(pacote);
+                }
+            }
+        } catch (IOException e) {
+            fecharCanal(canalLido, new IOException("Conexão com o nó perdida.", e));
+        }
+    }
+
+    private synchronized void fecharCanal(CanalPacotes canalFechado, IOException causa) {
+        if (canal != canalFechado) {
+            return; // Já foi substituída por uma conexão nova.
+        }
+        canal = null;
+        try {
+            canalFechado.close();
+        } catch (IOException ignorada) {
+            // A conexão já está a ser descartada.
+        }
+        // Os pedidos em curso e as assinaturas nunca terão mais pacotes nesta conexão.
+        for (Long idCorrelacao : pendentes.keySet()) {
+            CompletableFuture<Pacote> pedido = pendentes.remove(idCorrelacao);
+            if (pedido != null) {
+                pedido.completeExceptionally(causa);
+            }
+        }
+        for (Long idCorrelacao : assinaturas.keySet()) {
+            Consumer<Pacote> assinatura = assinaturas.remove(idCorrelacao);
+            if (assinatura != null) {
+                assinatura.accept(null);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        CanalPacotes atual = canal;
+        if (atual != null) {
+            fecharCanal(atual, new IOException("Sessão encerrada."));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,75 @@
+package mensageria.comum;
+
+import java.util.UUID;
+
+/**
+ * Árvore de Merkle sobre os IDs das mensagens do mural, usada na anti-entropia entre nós.
+ *
+ * Os IDs são distribuídos por NUMERO_BALDES baldes (folhas) pelos bits mais altos do UUID.
+ * O hash de uma folha é a soma dos hashes dos IDs que contém, o que permite atualizá-la
+ * em O(1) a cada mensagem nova, sem depender da ordem de chegada. Os nós internos são
+ * recalculados só quando alguém os pede e houve alterações desde o último cálculo.
+ *
+ * Os nós são numerados como num heap: a raiz é 1, os filhos de i são 2i e 2i+1, e as
+ * folhas vão de NUMERO_BALDES a 2*NUMERO_BALDES - 1. Dois nós com a mesma raiz têm,
+ * com altíssima probabilidade, o mesmo conjunto de mensagens; se as raízes diferirem,
+ * basta descer pelos ramos diferentes para encontrar os baldes divergentes.
+ *
+ * Esta classe não é thread-safe; o Mural sincroniza o acesso.
+ */
+public class ArvoreMerkle {
+
+    public static final int PROFUNDIDADE = 12;
+    public static final int NUMERO_BALDES = 1 << PROFUNDIDADE;
+
+    // Índices 1..2*NUMERO_BALDES-1 (o 0 não é usado).
+    private final long[] hashes = new long[2 * NUMERO_BALDES];
+    private boolean internosDesatualizados = false;
+
+    public static int baldeDe(UUID id) {
+        return baldeDe(id.getMostSignificantBits());
+    }
+
+    // Balde a partir dos 64 bits mais altos do ID.
+    public static int baldeDe(long msb) {
+        return (int) (msb >>> (64 - PROFUNDIDADE));
+    }
+
+    public void adicionar(UUID id) {
+        adicionar(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    // Igual a adicionar(UUID), para quem tem o ID em duas metades (ex: o SnapshotColunar).
+    public void adicionar(long msb, long lsb) {
+        hashes[NUMERO_BALDES + baldeDe(msb)] += misturar(msb ^ misturar(lsb));
+        internosDesatualizados = true;
+    }
+
+    // Devolve o hash do nó com o índice (de heap) indicado.
+    public long hash(int no) {
+        if (no < 1 || no >= hashes.length) {
+            throw new IllegalArgumentException("Nó da árvore inválido: " + no);
+        }
+        if (internosDesatualizados) {
+            for (int i = NUMERO_BALDES - 1; i >= 1; i--) {
+                hashes[i] = misturar(hashes[2 * i] * 31 + hashes[2 * i + 1]);
+            }
+            internosDesatualizados = false;
+        }
+        return hashes[no];
+    }
+
+    public static boolean isFolha(int no) {
+        return no >= NUMERO_BALDES;
+    }
+
+    // Finalizador do MurmurHash3 (64 bits): espalha bem os bits de entrada.
+    private static long misturar(long valor) {
+        valor ^= valor >>> 33;
+        valor *= 0xff51afd7ed558ccdL;
+        valor ^= valor >>> 33;
+        valor *= 0xc4ceb9fe1a85ec53L;
+        valor ^= valor >>> 33;
+        return valor;
+    }
+}
\ No newline at end of file
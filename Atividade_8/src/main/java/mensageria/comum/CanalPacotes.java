@@ -0,0 +1,195 @@
+package mensageria.comum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal de comunicação sobre um socket, capaz de transportar vários pacotes
+ * ao longo da vida da conexão (em vez de um único pacote por conexão).
+ *
+ * Protocolo da conexão:
+ * - Quem abre a conexão envia 1 byte com o identificador do seu codec (ver CodecPacote);
+ *   quem a aceita responde com o mesmo byte e passa a usar esse codec.
+ * - Depois disso, cada pacote viaja num quadro [int tamanho][bytes codificados].
+ *
+ * A escrita é separada da descarga (flush) para que quem envia vários pacotes
+ * seguidos possa agrupá-los numa única escrita na rede.
+ *
+ * Os pacotes enviados com tentarEnviar (mensagens empurradas a um assinante) são escritos por
+ * uma thread própria do canal, criada no primeiro uso, para que quem os envia nunca fique
+ * preso num socket cheio. Com milhares de assinantes, o transporte NIO evita estas threads.
+ */
+public class CanalPacotes implements Closeable, SaidaPacotes {
+
+    // Limite de segurança para o tamanho de um quadro recebido.
+    public static final int TAMANHO_MAXIMO_QUADRO = 256 * 1024 * 1024;
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final CodecPacote codecSaida;
+    // Codec anunciado pelo outro lado; lido no primeiro 'receber' de quem abriu a conexão.
+    private CodecPacote codecEntrada;
+
+    // Quadros de tentarEnviar à espera da thread que os escreve, e quantos bytes ocupam.
+    private LinkedBlockingQueue<byte[]> filaEmFundo;
+    private final AtomicLong bytesEmFundo = new AtomicLong();
+    private Thread escritorEmFundo;
+
+    // Abre o canal do lado de quem iniciou a conexão, com o codec padrão.
+    public CanalPacotes(Socket socket) throws IOException {
+        this(socket, CodecPacote.padrao());
+    }
+
+    // Abre o canal do lado de quem iniciou a conexão, com o codec indicado.
+    public CanalPacotes(Socket socket, CodecPacote codec) throws IOException {
+        this(socket, codec, null);
+        out.writeByte(codec.getIdentificador());
+        out.flush();
+    }
+
+    private CanalPacotes(Socket socket, CodecPacote codecSaida, CodecPacote codecEntrada) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.codecSaida = codecSaida;
+        this.codecEntrada = codecEntrada;
+    }
+
+    /**
+     * Abre o canal do lado de quem aceitou a conexão: lê o codec anunciado pelo cliente,
+     * confirma-o e passa a usá-lo nos dois sentidos.
+     */
+    public static CanalPacotes aceitar(Socket socket) throws IOException {
+        DataInputStream entrada = new DataInputStream(socket.getInputStream());
+        CodecPacote codec = CodecPacote.porIdentificador(entrada.readByte());
+        CanalPacotes canal = new CanalPacotes(socket, codec, codec);
+        canal.out.writeByte(codec.getIdentificador());
+        canal.out.flush();
+        return canal;
+    }
+
+    /**
+     * Responde a uma conexão recém-aceite com um único pacote (ex: REJEITADO) e fecha-a,
+     * sem ler nada do cliente. Como o cliente descodifica com o codec anunciado pelo
+     * servidor, a resposta é sempre entendida, qualquer que seja o codec que ele pediu.
+     */
+    public static void recusar(Socket socket, Pacote aviso) {
+        try (Socket s = socket) {
+            CanalPacotes canal = new CanalPacotes(s, CodecBinario.INSTANCIA, null);
+            canal.out.writeByte(CodecBinario.INSTANCIA.getIdentificador());
+            canal.enviar(aviso);
+        } catch (IOException e) {
+            // O cliente já se foi; não há a quem avisar.
+        }
+    }
+
+    /**
+     * Escreve um pacote no buffer de saída, sem o enviar ainda pela rede.
+     */
+    @Override
+    public synchronized int escrever(Pacote pacote) throws IOException {
+        byte[] quadro = codecSaida.codificar(pacote);
+        out.writeInt(quadro.length);
+        out.write(quadro);
+        return 4 + quadro.length;
+    }
+
+    // Envia pela rede tudo o que foi escrito até agora.
+    @Override
+    public synchronized void descarregar() throws IOException {
+        out.flush();
+    }
+
+    // Escreve e envia imediatamente um único pacote.
+    public synchronized void enviar(Pacote pacote) throws IOException {
+        escrever(pacote);
+        descarregar();
+    }
+
+    @Override
+    public boolean tentarEnviar(Pacote pacote, long limiteBytes) throws IOException {
+        if (socket.isClosed()) {
+            throw new IOException("Conexão fechada.");
+        }
+        if (bytesEmFundo.get() > limiteBytes) {
+            return false;
+        }
+        synchronized (this) {
+            if (escritorEmFundo == null) {
+                filaEmFundo = new LinkedBlockingQueue<>();
+                escritorEmFundo = new Thread(this::escreverEmFundo, "canal-em-fundo-" + socket.getPort());
+                escritorEmFundo.setDaemon(true);
+                escritorEmFundo.start();
+            }
+        }
+        byte[] quadro = codecSaida.codificar(pacote);
+        bytesEmFundo.addAndGet(4 + quadro.length);
+        filaEmFundo.add(quadro);
+        return true;
+    }
+
+    // Ciclo da thread de tentarEnviar: escreve os quadros por ordem e descarrega quando a fila esvazia.
+    private void escreverEmFundo() {
+        try {
+            while (true) {
+                byte[] quadro = filaEmFundo.take();
+                synchronized (this) {
+                    out.writeInt(quadro.length);
+                    out.write(quadro);
+                    if (filaEmFundo.isEmpty()) {
+                        out.flush();
+                    }
+                }
+                bytesEmFundo.addAndGet(-(4 + quadro.length));
+            }
+        } catch (InterruptedException | IOException e) {
+            // O canal foi fechado.
+        }
+        try {
+            close();
+        } catch (IOException e) {
+            // Já fechado.
+        }
+    }
+
+    @Override
+    public boolean isAberta() {
+        return !socket.isClosed();
+    }
+
+    // Bloqueia até chegar o próximo pacote. Lança EOFException quando o outro lado fecha a conexão.
+    public Pacote receber() throws IOException {
+        if (codecEntrada == null) {
+            codecEntrada = CodecPacote.porIdentificador(in.readByte());
+        }
+        int tamanho = in.readInt();
+        if (tamanho < 0 || tamanho > TAMANHO_MAXIMO_QUADRO) {
+            throw new IOException("Tamanho de quadro inválido: " + tamanho);
+        }
+        byte[] quadro = new byte[tamanho];
+        in.readFully(quadro);
+        return codecEntrada.decodificar(quadro);
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        synchronized (this) {
+            if (escritorEmFundo != null) {
+                escritorEmFundo.interrupt();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,359 @@
+package mensageria.comum;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Codec binário compacto para os pacotes.
+ *
+ * Formato de cada pacote:
+ *   [byte versão][byte tipo][varint idCorrelacao][texto mural][texto sessão][byte consistência]
+ *   [byte presença][conteúdo]
+ *
+ * O mural vai vazio (1 byte) quando é o Pacote.MURAL_PADRAO, e a sessão quando o pacote não a tem.
+ * A consistência é 0 quando o pacote não a indica, ou o ordinal da Consistencia mais um.
+ *
+ * O formato do conteúdo é determinado apenas pelo Tipo do pacote (ver ESQUEMAS), por isso
+ * não viajam nomes de classes nem descritores. Um Tipo sem esquema próprio usa OBJETO,
+ * que embrulha o conteúdo em serialização Java.
+ */
+public class CodecBinario implements CodecPacote {
+
+    public static final byte IDENTIFICADOR = 2;
+    public static final CodecBinario INSTANCIA = new CodecBinario();
+
+    // Versão do formato; incrementada sempre que um esquema mudar de forma incompatível.
+    private static final byte VERSAO = 6;
+
+    // Os formatos possíveis para o conteúdo de um pacote.
+    enum Esquema {
+        VAZIO,            // Sem conteúdo.
+        TEXTO,            // String.
+        MENSAGEM,         // Uma Mensagem.
+        LISTA_MENSAGENS,  // List<Mensagem>: [varint quantidade][mensagem]...
+        NUMERO,           // Long: [varint]
+        MARCAS,           // Map<Integer, Long> (marcas de água): [varint quantidade]([varint origem][varint sequência])...
+        INTEIROS,         // int[]: [varint quantidade][varint]...
+        LONGS,            // long[]: [varint quantidade][long]...
+        LISTA_UUIDS,      // List<UUID>: [varint quantidade][uuid]...
+        PEDIDO_PAGINA,    // PedidoPagina: [bool tem ID][uuid]? [varint início][varint tamanho]
+        PEDIDO_BUSCA,     // PedidoBusca: [texto termos][texto autor][varint desde][varint até][varint início][varint tamanho]
+        PAGINA,           // PaginaMural: [varint próximo cursor][varint total][lista de mensagens]
+        RUMORES,          // Rumores: [varint alvo][varint quantidade]([varint id][texto host][varint porta][byte estado][varint encarnação])...
+        OBJETO            // Qualquer Serializable (recurso): [varint tamanho][bytes da serialização Java]
+    }
+
+    private static final Map<Pacote.Tipo, Esquema> ESQUEMAS = new EnumMap<>(Pacote.Tipo.class);
+
+    static {
+        ESQUEMAS.put(Pacote.Tipo.LOGIN, Esquema.TEXTO);
+        ESQUEMAS.put(Pacote.Tipo.POSTAR_MENSAGEM, Esquema.MENSAGEM);
+        ESQUEMAS.put(Pacote.Tipo.LER_MURAL, Esquema.VAZIO);
+        ESQUEMAS.put(Pacote.Tipo.LOGIN_OK, Esquema.TEXTO);
+        ESQUEMAS.put(Pacote.Tipo.LOGIN_FALHA, Esquema.TEXTO);
+        ESQUEMAS.put(Pacote.Tipo.MURAL_ATUALIZADO, Esquema.LISTA_MENSAGENS);
+        ESQUEMAS.put(Pacote.Tipo.REJEITADO, Esquema.TEXTO);
+        ESQUEMAS.put(Pacote.Tipo.REPLICAR_MSG, Esquema.MENSAGEM);
+        ESQUEMAS.put(Pacote.Tipo.PEDIDO_SYNC, Esquema.MARCAS);
+        ESQUEMAS.put(Pacote.Tipo.RESPOSTA_SYNC, Esquema.LISTA_MENSAGENS);
+        ESQUEMAS.put(Pacote.Tipo.FIM_SYNC, Esquema.NUMERO);
+        ESQUEMAS.put(Pacote.Tipo.PEDIDO_MERKLE, Esquema.INTEIROS);
+        ESQUEMAS.put(Pacote.Tipo.RESPOSTA_MERKLE, Esquema.LONGS);
+        ESQUEMAS.put(Pacote.Tipo.PEDIDO_IDS_BALDES, Esquema.INTEIROS);
+        ESQUEMAS.put(Pacote.Tipo.RESPOSTA_IDS_BALDES, Esquema.LISTA_UUIDS);
+        ESQUEMAS.put(Pacote.Tipo.PEDIDO_MENSAGENS, Esquema.LISTA_UUIDS);
+        ESQUEMAS.put(Pacote.Tipo.RESPOSTA_MENSAGENS, Esquema.LISTA_MENSAGENS);
+        ESQUEMAS.put(Pacote.Tipo.LER_ULTIMAS, Esquema.NUMERO);
+        ESQUEMAS.put(Pacote.Tipo.LER_PAGINA, Esquema.PEDIDO_PAGINA);
+        ESQUEMAS.put(Pacote.Tipo.PAGINA_MURAL, Esquema.PAGINA);
+        ESQUEMAS.put(Pacote.Tipo.REPLICAR_LOTE, Esquema.LISTA_MENSAGENS);
+        ESQUEMAS.put(Pacote.Tipo.POSTAGEM_OK, Esquema.TEXTO);
+        ESQUEMAS.put(Pacote.Tipo.PING, Esquema.RUMORES);
+        ESQUEMAS.put(Pacote.Tipo.PEDIDO_PING, Esquema.RUMORES);
+        ESQUEMAS.put(Pacote.Tipo.ACK_PING, Esquema.RUMORES);
+        ESQUEMAS.put(Pacote.Tipo.ASSINAR, Esquema.PEDIDO_PAGINA);
+        ESQUEMAS.put(Pacote.Tipo.CANCELAR_ASSINATURA, Esquema.NUMERO);
+        ESQUEMAS.put(Pacote.Tipo.BUSCAR, Esquema.PEDIDO_BUSCA);
+        ESQUEMAS.put(Pacote.Tipo.REPLICAR_CONFIRMADA, Esquema.MENSAGEM);
+        ESQUEMAS.put(Pacote.Tipo.REPLICA_OK, Esquema.TEXTO);
+    }
+
+    private CodecBinario() {
+    }
+
+    @Override
+    public byte getIdentificador() {
+        return IDENTIFICADOR;
+    }
+
+    @Override
+    public byte[] codificar(Pacote pacote) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + comprimentoConhecido(pacote.getConteudo()));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSAO);
+        out.writeByte(pacote.getTipo().ordinal());
+        FormatoBinario.escreverVarLong(out, pacote.getIdCorrelacao());
+        String mural = pacote.getMural();
+        FormatoBinario.escreverTexto(out, Pacote.MURAL_PADRAO.equals(mural) ? "" : mural);
+        FormatoBinario.escreverTexto(out, pacote.getSessao() != null ? pacote.getSessao() : "");
+        out.writeByte(pacote.getConsistencia() != null ? pacote.getConsistencia().ordinal() + 1 : 0);
+
+        Object conteudo = pacote.getConteudo();
+        out.writeBoolean(conteudo != null);
+        if (conteudo != null) {
+            escreverConteudo(out, esquemaDe(pacote.getTipo()), conteudo);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Pacote decodificar(byte[] dados) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(dados));
+        byte versao = in.readByte();
+        if (versao != VERSAO) {
+            throw new IOException("Versão do codec binário não suportada: " + versao);
+        }
+        int ordinal = in.readUnsignedByte();
+        Pacote.Tipo[] tipos = Pacote.Tipo.values();
+        if (ordinal >= tipos.length) {
+            throw new IOException("Tipo de pacote desconhecido: " + ordinal);
+        }
+        Pacote.Tipo tipo = tipos[ordinal];
+        long idCorrelacao = FormatoBinario.lerVarLong(in);
+        String mural = FormatoBinario.lerTexto(in);
+        String sessao = FormatoBinario.lerTexto(in);
+        int consistencia = in.readUnsignedByte();
+        Consistencia[] niveis = Consistencia.values();
+        if (consistencia > niveis.length) {
+            throw new IOException("Nível de consistência desconhecido: " + consistencia);
+        }
+
+        Object conteudo = null;
+        if (in.readBoolean()) {
+            conteudo = lerConteudo(in, esquemaDe(tipo));
+        }
+        return new Pacote(tipo, conteudo, idCorrelacao, mural.isEmpty() ? null : mural, sessao.isEmpty() ? null : sessao,
+                consistencia == 0 ? null : niveis[consistencia - 1]);
+    }
+
+    // Tamanho das mensagens já codificadas no conteúdo, para reservar o buffer de uma só vez.
+    private static int comprimentoConhecido(Object conteudo) {
+        if (conteudo instanceof PaginaMural) {
+            conteudo = ((PaginaMural) conteudo).getMensagens();
+        }
+        return conteudo instanceof MensagensCodificadas ? ((MensagensCodificadas) conteudo).getComprimento() : 0;
+    }
+
+    private static Esquema esquemaDe(Pacote.Tipo tipo) {
+        Esquema esquema = ESQUEMAS.get(tipo);
+        return esquema != null ? esquema : Esquema.OBJETO;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void escreverConteudo(DataOutputStream out, Esquema esquema, Object conteudo) throws IOException {
+        switch (esquema) {
+            case VAZIO:
+                break;
+            case TEXTO:
+                FormatoBinario.escreverTexto(out, (String) conteudo);
+                break;
+            case MENSAGEM:
+                FormatoBinario.escreverMensagem(out, (Mensagem) conteudo);
+                break;
+            case LISTA_MENSAGENS:
+                escreverMensagens(out, (List<Mensagem>) conteudo);
+                break;
+            case NUMERO:
+                FormatoBinario.escreverVarLong(out, (Long) conteudo);
+                break;
+            case MARCAS:
+                Map<Integer, Long> marcas = (Map<Integer, Long>) conteudo;
+                FormatoBinario.escreverVarLong(out, marcas.size());
+                for (Map.Entry<Integer, Long> marca : marcas.entrySet()) {
+                    FormatoBinario.escreverVarLong(out, marca.getKey());
+                    FormatoBinario.escreverVarLong(out, marca.getValue());
+                }
+                break;
+            case INTEIROS:
+                int[] inteiros = (int[]) conteudo;
+                FormatoBinario.escreverVarLong(out, inteiros.length);
+                for (int valor : inteiros) {
+                    FormatoBinario.escreverVarLong(out, valor);
+                }
+                break;
+            case LONGS:
+                long[] longs = (long[]) conteudo;
+                FormatoBinario.escreverVarLong(out, longs.length);
+                for (long valor : longs) {
+                    out.writeLong(valor);
+                }
+                break;
+            case LISTA_UUIDS:
+                List<UUID> ids = (List<UUID>) conteudo;
+                FormatoBinario.escreverVarLong(out, ids.size());
+                for (UUID id : ids) {
+                    FormatoBinario.escreverUuid(out, id);
+                }
+                break;
+            case PEDIDO_PAGINA:
+                PedidoPagina pedido = (PedidoPagina) conteudo;
+                out.writeBoolean(pedido.getAposMensagem() != null);
+                if (pedido.getAposMensagem() != null) {
+                    FormatoBinario.escreverUuid(out, pedido.getAposMensagem());
+                }
+                FormatoBinario.escreverVarLong(out, pedido.getInicio());
+                FormatoBinario.escreverVarLong(out, pedido.getTamanho());
+                break;
+            case PEDIDO_BUSCA:
+                PedidoBusca busca = (PedidoBusca) conteudo;
+                FormatoBinario.escreverTexto(out, busca.getTermos());
+                FormatoBinario.escreverTexto(out, busca.getAutor());
+                FormatoBinario.escreverVarLong(out, busca.getDesde());
+                FormatoBinario.escreverVarLong(out, busca.getAte());
+                FormatoBinario.escreverVarLong(out, busca.getInicio());
+                FormatoBinario.escreverVarLong(out, busca.getTamanho());
+                break;
+            case PAGINA:
+                PaginaMural pagina = (PaginaMural) conteudo;
+                FormatoBinario.escreverVarLong(out, pagina.getProximoCursor());
+                FormatoBinario.escreverVarLong(out, pagina.getTotal());
+                escreverMensagens(out, pagina.getMensagens());
+                break;
+            case RUMORES:
+                Rumores rumores = (Rumores) conteudo;
+                FormatoBinario.escreverVarLong(out, rumores.getAlvo());
+                FormatoBinario.escreverVarLong(out, rumores.getMembros().size());
+                for (Membro membro : rumores.getMembros()) {
+                    FormatoBinario.escreverVarLong(out, membro.getId());
+                    FormatoBinario.escreverTexto(out, membro.getHost());
+                    FormatoBinario.escreverVarLong(out, membro.getPorta());
+                    out.writeByte(membro.getEstado().ordinal());
+                    FormatoBinario.escreverVarLong(out, membro.getEncarnacao());
+                }
+                break;
+            case OBJETO:
+                ByteArrayOutputStream serializado = new ByteArrayOutputStream();
+                try (ObjectOutputStream oos = new ObjectOutputStream(serializado)) {
+                    oos.writeObject(conteudo);
+                }
+                FormatoBinario.escreverVarLong(out, serializado.size());
+                serializado.writeTo(out);
+                break;
+        }
+    }
+
+    private static Object lerConteudo(DataInputStream in, Esquema esquema) throws IOException {
+        switch (esquema) {
+            case VAZIO:
+                return null;
+            case TEXTO:
+                return FormatoBinario.lerTexto(in);
+            case MENSAGEM:
+                return FormatoBinario.lerMensagem(in);
+            case LISTA_MENSAGENS:
+                return lerMensagens(in);
+            case NUMERO:
+                return FormatoBinario.lerVarLong(in);
+            case MARCAS:
+                int origens = (int) FormatoBinario.lerVarLong(in);
+                HashMap<Integer, Long> marcas = new HashMap<>();
+                for (int i = 0; i < origens; i++) {
+                    marcas.put((int) FormatoBinario.lerVarLong(in), FormatoBinario.lerVarLong(in));
+                }
+                return marcas;
+            case INTEIROS:
+                int[] inteiros = new int[(int) FormatoBinario.lerVarLong(in)];
+                for (int i = 0; i < inteiros.length; i++) {
+                    inteiros[i] = (int) FormatoBinario.lerVarLong(in);
+                }
+                return inteiros;
+            case LONGS:
+                long[] longs = new long[(int) FormatoBinario.lerVarLong(in)];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = in.readLong();
+                }
+                return longs;
+            case LISTA_UUIDS:
+                int quantidadeIds = (int) FormatoBinario.lerVarLong(in);
+                List<UUID> ids = new ArrayList<>(Math.min(quantidadeIds, 4096));
+                for (int i = 0; i < quantidadeIds; i++) {
+                    ids.add(FormatoBinario.lerUuid(in));
+                }
+                return ids;
+            case PEDIDO_PAGINA:
+                UUID aposMensagem = in.readBoolean() ? FormatoBinario.lerUuid(in) : null;
+                long inicio = FormatoBinario.lerVarLong(in);
+                return new PedidoPagina(aposMensagem, inicio, (int) FormatoBinario.lerVarLong(in));
+            case PEDIDO_BUSCA:
+                String termos = FormatoBinario.lerTexto(in);
+                String autor = FormatoBinario.lerTexto(in);
+                long desde = FormatoBinario.lerVarLong(in);
+                long ate = FormatoBinario.lerVarLong(in);
+                long inicioBusca = FormatoBinario.lerVarLong(in);
+                return new PedidoBusca(termos, autor, desde, ate, inicioBusca, (int) FormatoBinario.lerVarLong(in));
+            case PAGINA:
+                long proximoCursor = FormatoBinario.lerVarLong(in);
+                long total = FormatoBinario.lerVarLong(in);
+                return new PaginaMural(lerMensagens(in), proximoCursor, total);
+            case RUMORES:
+                int alvo = (int) FormatoBinario.lerVarLong(in);
+                int quantidadeMembros = (int) FormatoBinario.lerVarLong(in);
+                Membro.Estado[] estados = Membro.Estado.values();
+                List<Membro> membros = new ArrayList<>(Math.min(quantidadeMembros, 256));
+                for (int i = 0; i < quantidadeMembros; i++) {
+                    int id = (int) FormatoBinario.lerVarLong(in);
+                    String host = FormatoBinario.lerTexto(in);
+                    int porta = (int) FormatoBinario.lerVarLong(in);
+                    int estado = in.readUnsignedByte();
+                    if (estado >= estados.length) {
+                        throw new IOException("Estado de membro desconhecido: " + estado);
+                    }
+                    membros.add(new Membro(id, host, porta, estados[estado], FormatoBinario.lerVarLong(in)));
+                }
+                return new Rumores(alvo, membros);
+            case OBJETO:
+                byte[] serializado = new byte[(int) FormatoBinario.lerVarLong(in)];
+                in.readFully(serializado);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serializado))) {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Classe desconhecida no conteúdo do pacote.", e);
+                }
+            default:
+                throw new IOException("Esquema desconhecido: " + esquema);
+        }
+    }
+
+    private static void escreverMensagens(DataOutputStream out, List<Mensagem> mensagens) throws IOException {
+        FormatoBinario.escreverVarLong(out, mensagens.size());
+        if (mensagens instanceof MensagensCodificadas) {
+            // Já estão neste formato: copia os bytes sem voltar a codificar.
+            ((MensagensCodificadas) mensagens).escreverEm(out);
+            return;
+        }
+        for (Mensagem mensagem : mensagens) {
+            FormatoBinario.escreverMensagem(out, mensagem);
+        }
+    }
+
+    private static List<Mensagem> lerMensagens(DataInputStream in) throws IOException {
+        int quantidade = (int) FormatoBinario.lerVarLong(in);
+        List<Mensagem> mensagens = new ArrayList<>(Math.min(quantidade, 4096));
+        for (int i = 0; i < quantidade; i++) {
+            mensagens.add(FormatoBinario.lerMensagem(in));
+        }
+        return mensagens;
+    }
+}
\ No newline at end of file
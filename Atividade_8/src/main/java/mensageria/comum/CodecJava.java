@@ -0,0 +1,44 @@
+package mensageria.comum;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Codec de recurso: cada pacote é serializado com a serialização padrão do Java.
+ * Aceita qualquer conteúdo Serializable, mas cada quadro leva os descritores de classe
+ * completos, o que o torna bem maior e mais lento do que o CodecBinario.
+ */
+public class CodecJava implements CodecPacote {
+
+    public static final byte IDENTIFICADOR = 1;
+    public static final CodecJava INSTANCIA = new CodecJava();
+
+    private CodecJava() {
+    }
+
+    @Override
+    public byte getIdentificador() {
+        return IDENTIFICADOR;
+    }
+
+    @Override
+    public byte[] codificar(Pacote pacote) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(pacote);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Pacote decodificar(byte[] dados) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(dados))) {
+            return (Pacote) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Classe desconhecida no pacote recebido.", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package mensageria.comum;
+
+import java.io.IOException;
+
+/**
+ * Define como um Pacote é convertido em bytes para atravessar a rede, e vice-versa.
+ *
+ * Cada conexão anuncia, no seu primeiro byte, o identificador do codec que vai usar,
+ * por isso os dois formatos podem conviver na mesma rede:
+ * - CodecBinario: formato compacto, com um esquema fixo por Pacote.Tipo (o padrão).
+ * - CodecJava: serialização Java, mantida como alternativa de recurso.
+ *
+ * O codec padrão pode ser escolhido com a propriedade de sistema 'mensageria.codec'
+ * ("binario" ou "java").
+ */
+public interface CodecPacote {
+
+    // Identificador do codec, enviado no início de cada conexão.
+    byte getIdentificador();
+
+    byte[] codificar(Pacote pacote) throws IOException;
+
+    Pacote decodificar(byte[] dados) throws IOException;
+
+    // Devolve o codec correspondente ao identificador recebido de uma conexão.
+    static CodecPacote porIdentificador(byte identificador) throws IOException {
+        if (identificador == CodecBinario.IDENTIFICADOR) {
+            return CodecBinario.INSTANCIA;
+        }
+        if (identificador == CodecJava.IDENTIFICADOR) {
+            return CodecJava.INSTANCIA;
+        }
+        throw new IOException("Codec desconhecido: " + identificador);
+    }
+
+    // Codec usado por omissão nas conexões iniciadas por este processo.
+    static CodecPacote padrao() {
+        return "java".equalsIgnoreCase(System.getProperty("mensageria.codec"))
+                ? CodecJava.INSTANCIA
+                : CodecBinario.INSTANCIA;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package mensageria.comum;
+
+/**
+ * Quantas réplicas de um mural têm de responder a um pedido de um cliente antes de o nó que o
+ * recebeu lhe responder (ver Pacote.getConsistencia). O nó que recebe o pedido conta como uma.
+ *
+ * - Numa postagem, as réplicas que confirmam são as que já gravaram a mensagem no seu log; uma
+ *   cópia que ficou só em memória não conta, nem a do nó que recebeu o pedido.
+ * - Numa leitura, as páginas das réplicas que responderam são juntadas, e as mensagens que
+ *   faltavam a alguma delas (ou a este nó) são-lhe enviadas (reparação na leitura). As leituras
+ *   que não se comparam entre réplicas (LER_MURAL, ou LER_PAGINA a partir de uma posição no meio
+ *   do mural) são recusadas acima de UM.
+ * Com QUORUM nas escritas e nas leituras, uma leitura vê sempre as postagens já confirmadas.
+ */
+public enum Consistencia {
+    UM("só o nó que recebeu o pedido"),
+    QUORUM("a maioria das réplicas do mural"),
+    TODAS("todas as réplicas do mural");
+
+    private final String descricao;
+
+    Consistencia(String descricao) {
+        this.descricao = descricao;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+
+    // Quantas das 'replicas' réplicas de um mural têm de responder (incluindo o nó que coordena).
+    public int respostasNecessarias(int replicas) {
+        switch (this) {
+            case QUORUM:
+                return replicas / 2 + 1;
+            case TODAS:
+                return replicas;
+            default:
+                return 1;
+        }
+    }
+}
\ No newline at end of file
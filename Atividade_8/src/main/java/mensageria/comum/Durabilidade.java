@@ -0,0 +1,21 @@
+package mensageria.comum;
+
+/**
+ * Até onde uma mensagem postada chegou quando o nó a confirmou ao cliente (ver POSTAGEM_OK).
+ * Depende do modo de durabilidade do nó (ConfiguracaoNo.ModoDurabilidade).
+ */
+public enum Durabilidade {
+    MEMORIA("só na memória do nó"),                 // A escrita no log falhou: perde-se se o nó parar.
+    ESCRITA("escrita no log, fsync ainda pendente"), // Sobrevive à paragem do nó, não à do sistema.
+    DISCO("gravada em disco com fsync");           // Sobrevive a uma falha de energia.
+
+    private final String descricao;
+
+    Durabilidade(String descricao) {
+        this.descricao = descricao;
+    }
+
+    public String getDescricao() {
+        return descricao;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package mensageria.comum;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Primitivas do formato binário compacto usado pelo CodecBinario.
+ *
+ * - Inteiros sem sinal como varint (7 bits por byte, o bit mais alto indica continuação).
+ * - Textos como [varint tamanho][bytes UTF-8].
+ * - UUID como dois longs fixos (16 bytes).
+ */
+public final class FormatoBinario {
+
+    private FormatoBinario() {
+    }
+
+    public static void escreverVarLong(DataOutput out, long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            out.writeByte((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        out.writeByte((int) valor);
+    }
+
+    public static long lerVarLong(DataInput in) throws IOException {
+        long valor = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            byte b = in.readByte();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IOException("Varint mal formado.");
+    }
+
+    public static void escreverTexto(DataOutput out, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String lerTexto(DataInput in) throws IOException {
+        long tamanho = lerVarLong(in);
+        if (tamanho < 0 || tamanho > Integer.MAX_VALUE) {
+            throw new IOException("Tamanho de texto inválido: " + tamanho);
+        }
+        byte[] bytes = new byte[(int) tamanho];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void escreverUuid(DataOutput out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    public static UUID lerUuid(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    // Mensagem: [uuid][varint timestamp][varint origem][varint sequência][varint hlc][texto autor][texto conteúdo]
+    public static void escreverMensagem(DataOutput out, Mensagem mensagem) throws IOException {
+        escreverUuid(out, mensagem.getId());
+        escreverVarLong(out, mensagem.getTimestamp());
+        escreverVarLong(out, mensagem.getOrigem());
+        escreverVarLong(out, mensagem.getSequencia());
+        escreverVarLong(out, mensagem.getHlc());
+        escreverTexto(out, mensagem.getAutor());
+        escreverTexto(out, mensagem.getConteudo());
+    }
+
+    public static Mensagem lerMensagem(DataInput in) throws IOException {
+        return lerMensagem(in, true);
+    }
+
+    // Mensagem gravada antes de existir o carimbo HLC (ex: registos antigos do log de escrita).
+    public static Mensagem lerMensagemSemHlc(DataInput in) throws IOException {
+        return lerMensagem(in, false);
+    }
+
+    private static Mensagem lerMensagem(DataInput in, boolean comHlc) throws IOException {
+        UUID id = lerUuid(in);
+        long timestamp = lerVarLong(in);
+        int origem = (int) lerVarLong(in);
+        long sequencia = lerVarLong(in);
+        long hlc = comHlc ? lerVarLong(in) : 0;
+        String autor = lerTexto(in);
+        String conteudo = lerTexto(in);
+        return new Mensagem(id, autor, conteudo, timestamp, origem, sequencia, hlc);
+    }
+}
\ No newline at end of file
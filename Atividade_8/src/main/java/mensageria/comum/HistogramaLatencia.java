@@ -0,0 +1,129 @@
+package mensageria.comum;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências (em nanossegundos) com baldes log-lineares, no estilo do HdrHistogram.
+ *
+ * Os valores abaixo de 256 têm um balde cada um; acima disso, cada potência de 2 é dividida
+ * em 128 baldes iguais. O erro relativo de um percentil fica assim abaixo de 1% para qualquer
+ * valor, com memória fixa (cerca de 7300 contadores) e sem guardar as amostras.
+ *
+ * Pode ser usado por várias threads ao mesmo tempo: 'registrar' só faz incrementos atómicos
+ * (a contagem e a soma usam LongAdder, e o máximo só é disputado quando aumenta), por isso
+ * pode ficar no caminho de cada pedido do nó.
+ */
+public class HistogramaLatencia {
+
+    private static final int BITS_SUBBALDE = 7;
+    private static final int SUBBALDES = 1 << BITS_SUBBALDE;        // 128
+    private static final int LIMITE_LINEAR = SUBBALDES << 1;        // 256
+    private static final int NUMERO_BALDES = LIMITE_LINEAR + (63 - BITS_SUBBALDE - 1) * SUBBALDES;
+
+    private final AtomicLongArray baldes = new AtomicLongArray(NUMERO_BALDES);
+    private final LongAdder contagem = new LongAdder();
+    private final LongAdder soma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    public void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        baldes.incrementAndGet(indiceDe(valor));
+        contagem.increment();
+        soma.add(valor);
+        if (valor > maximo.get()) {
+            maximo.accumulateAndGet(valor, Math::max);
+        }
+    }
+
+    public long getContagem() {
+        return contagem.sum();
+    }
+
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    public long getSoma() {
+        return soma.sum();
+    }
+
+    public double getMedia() {
+        long n = contagem.sum();
+        return n == 0 ? 0 : (double) soma.sum() / n;
+    }
+
+    /**
+     * Valor abaixo do qual está a fração 'percentil' (0-100) das amostras.
+     * Devolve o limite superior do balde onde esse ponto cai (nunca subestima a latência).
+     */
+    public long percentil(double percentil) {
+        long n = contagem.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long alvo = Math.max(1, (long) Math.ceil(percentil / 100.0 * n));
+        long acumulado = 0;
+        for (int i = 0; i < NUMERO_BALDES; i++) {
+            acumulado += baldes.get(i);
+            if (acumulado >= alvo) {
+                return Math.min(limiteSuperior(i), maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+
+    // Soma a este histograma as amostras de outro.
+    public void adicionar(HistogramaLatencia outro) {
+        for (int i = 0; i < NUMERO_BALDES; i++) {
+            long quantidade = outro.baldes.get(i);
+            if (quantidade != 0) {
+                baldes.addAndGet(i, quantidade);
+            }
+        }
+        contagem.add(outro.contagem.sum());
+        soma.add(outro.soma.sum());
+        maximo.accumulateAndGet(outro.maximo.get(), Math::max);
+    }
+
+    /**
+     * Devolve um histograma com as amostras registadas até agora e deixa este vazio.
+     * Serve para relatórios por intervalo enquanto outras threads continuam a registar.
+     */
+    public HistogramaLatencia extrairEZerar() {
+        HistogramaLatencia extraido = new HistogramaLatencia();
+        long n = 0;
+        for (int i = 0; i < NUMERO_BALDES; i++) {
+            long quantidade = baldes.getAndSet(i, 0);
+            if (quantidade != 0) {
+                extraido.baldes.set(i, quantidade);
+                n += quantidade;
+            }
+        }
+        // A contagem segue a dos baldes, para os percentis do extraído serem coerentes.
+        extraido.contagem.add(n);
+        contagem.add(-n);
+        extraido.soma.add(soma.sumThenReset());
+        extraido.maximo.set(maximo.getAndSet(0));
+        return extraido;
+    }
+
+    static int indiceDe(long valor) {
+        if (valor < LIMITE_LINEAR) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor) - BITS_SUBBALDE;
+        int sub = (int) (valor >>> expoente) - SUBBALDES;
+        return LIMITE_LINEAR + (expoente - 1) * SUBBALDES + sub;
+    }
+
+    static long limiteSuperior(int indice) {
+        if (indice < LIMITE_LINEAR) {
+            return indice;
+        }
+        int expoente = (indice - LIMITE_LINEAR) / SUBBALDES + 1;
+        long sub = (indice - LIMITE_LINEAR) % SUBBALDES + SUBBALDES;
+        return ((sub + 1) << expoente) - 1;
+    }
+}
\ No newline at end of file
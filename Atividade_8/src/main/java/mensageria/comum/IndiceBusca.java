@@ -0,0 +1,263 @@
+package mensageria.comum;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de busca de um intervalo contíguo de posições do mural: um índice invertido dos termos
+ * do conteúdo, um índice por autor e um índice por timestamp (ver Mural.buscar).
+ *
+ * Os termos são as palavras do conteúdo em minúsculas e sem acentos ("Ação" e "acao" são o mesmo
+ * termo). Cada termo e cada autor guardam as posições das suas mensagens por ordem crescente, num
+ * array primitivo só de acréscimo: como no SequenciaMensagens, o escritor grava primeiro e só
+ * depois publica o tamanho, por isso as buscas leem sem tranca nenhuma e nunca atrasam as
+ * postagens. Só o índice por timestamp (que pode receber mensagens fora de ordem) é lido sob a
+ * sua própria tranca, e só nas buscas que não indicam nenhum termo nem autor.
+ *
+ * Só pode haver um escritor de cada vez (o Mural indexa sob o seu monitor).
+ */
+final class IndiceBusca {
+
+    // Termos maiores do que isto não são indexados (ex: um texto sem espaços).
+    private static final int TAMANHO_MAXIMO_TERMO = 64;
+    private static final Pattern ACENTOS = Pattern.compile("\\p{M}+");
+    // Uma busca só por intervalo de tempo usa o índice por timestamp quando o intervalo tem até
+    // este número de mensagens por cada resultado pedido; acima disso é mais barato percorrer as
+    // posições, porque os resultados são densos.
+    private static final int MENSAGENS_POR_RESULTADO_NO_INDICE = 64;
+
+    /**
+     * Posições de mensagens por ordem crescente, só de acréscimo e lidas sem tranca.
+     */
+    private static final class ListaPosicoes {
+        private volatile int[] posicoes = new int[4];
+        private volatile int tamanho;
+
+        void acrescentar(int posicao) {
+            int[] atuais = posicoes;
+            if (tamanho == atuais.length) {
+                atuais = Arrays.copyOf(atuais, atuais.length * 2);
+                posicoes = atuais;
+            }
+            atuais[tamanho] = posicao;
+            tamanho = tamanho + 1;
+        }
+    }
+
+    private final int primeiraPosicao;
+    private final Map<String, ListaPosicoes> porTermo = new ConcurrentHashMap<>();
+    private final Map<String, ListaPosicoes> porAutor = new ConcurrentHashMap<>();
+    // Posições ordenadas pelo timestamp da mensagem; protegido pelo seu próprio monitor.
+    private final PosicoesOrdenadas porTempo = new PosicoesOrdenadas();
+    // Timestamp de cada posição indexada (índice = posição - primeiraPosicao).
+    private volatile long[] tempos = new long[1024];
+    private volatile int indexadas;
+
+    IndiceBusca(int primeiraPosicao) {
+        this.primeiraPosicao = primeiraPosicao;
+    }
+
+    /**
+     * Indexa a mensagem da posição seguinte às já indexadas.
+     */
+    void indexar(int posicao, Mensagem mensagem) {
+        int n = indexadas;
+        long[] atuais = tempos;
+        if (n == atuais.length) {
+            atuais = Arrays.copyOf(atuais, atuais.length * 2);
+            tempos = atuais;
+        }
+        atuais[n] = mensagem.getTimestamp();
+        for (String termo : termos(mensagem.getConteudo())) {
+            porTermo.computeIfAbsent(termo, t -> new ListaPosicoes()).acrescentar(posicao);
+        }
+        porAutor.computeIfAbsent(normalizar(mensagem.getAutor()), a -> new ListaPosicoes()).acrescentar(posicao);
+        synchronized (porTempo) {
+            porTempo.inserir(mensagem.getTimestamp(), posicao);
+        }
+        indexadas = n + 1; // Publica a posição às buscas.
+    }
+
+    /**
+     * Acrescenta a 'resultado', por ordem crescente, as posições a partir de 'inicio' cujas
+     * mensagens têm todos os termos, o autor e o timestamp pedidos, até haver 'maximo' resultados.
+     * @param termos Os termos já normalizados (ver termos); vazio se a busca não os usa.
+     * @param autor  O autor já normalizado, ou null.
+     * @return A posição onde a busca deve continuar: a seguir ao último resultado se 'resultado'
+     *         encheu, ou o fim das posições indexadas se não há mais resultados aqui.
+     */
+    int buscar(List<String> termos, String autor, long desde, long ate, int inicio, int maximo, List<Integer> resultado) {
+        int n = indexadas;
+        long[] tempos = this.tempos;
+        int fim = primeiraPosicao + n;
+        int de = Math.max(inicio, primeiraPosicao);
+        if (de >= fim || resultado.size() >= maximo) {
+            return de;
+        }
+        boolean filtraTempo = desde > Long.MIN_VALUE || ate < Long.MAX_VALUE;
+
+        List<ListaPosicoes> listas = new ArrayList<>();
+        for (String termo : termos) {
+            listas.add(porTermo.get(termo));
+        }
+        if (autor != null) {
+            listas.add(porAutor.get(autor));
+        }
+        if (listas.contains(null)) {
+            return fim; // Um dos termos (ou o autor) não aparece em nenhuma mensagem.
+        }
+        if (listas.isEmpty()) {
+            return buscarPorTempo(desde, ate, de, fim, tempos, maximo, resultado);
+        }
+
+        // Percorre a lista mais curta e confirma cada posição nas outras, avançando nelas por
+        // saltos (a posição seguinte de cada lista nunca está antes da anterior).
+        listas.sort(Comparator.comparingInt(l -> l.tamanho));
+        int[][] arrays = new int[listas.size()][];
+        int[] tamanhos = new int[listas.size()];
+        int[] cursores = new int[listas.size()];
+        for (int j = 0; j < listas.size(); j++) {
+            ListaPosicoes lista = listas.get(j);
+            tamanhos[j] = lista.tamanho; // O tamanho é lido antes do array (ver ListaPosicoes).
+            arrays[j] = lista.posicoes;
+            cursores[j] = primeiraNaoMenor(arrays[j], 0, tamanhos[j], de);
+        }
+        for (int i = cursores[0]; i < tamanhos[0]; i++) {
+            int posicao = arrays[0][i];
+            if (posicao >= fim) {
+                break;
+            }
+            boolean encontrada = true;
+            for (int j = 1; j < arrays.length && encontrada; j++) {
+                cursores[j] = primeiraNaoMenorPorSaltos(arrays[j], cursores[j], tamanhos[j], posicao);
+                encontrada = cursores[j] < tamanhos[j] && arrays[j][cursores[j]] == posicao;
+            }
+            if (encontrada && filtraTempo) {
+                long tempo = tempos[posicao - primeiraPosicao];
+                encontrada = tempo >= desde && tempo <= ate;
+            }
+            if (encontrada) {
+                resultado.add(posicao);
+                if (resultado.size() >= maximo) {
+                    return posicao + 1;
+                }
+            }
+        }
+        return fim;
+    }
+
+    private int buscarPorTempo(long desde, long ate, int de, int fim, long[] tempos, int maximo, List<Integer> resultado) {
+        int faltam = maximo - resultado.size();
+        List<Integer> noIntervalo = null;
+        synchronized (porTempo) {
+            int primeira = desde == Long.MIN_VALUE ? 0 : porTempo.primeiraAcima(desde - 1);
+            int ultima = porTempo.primeiraAcima(ate);
+            if ((long) (ultima - primeira) <= (long) faltam * MENSAGENS_POR_RESULTADO_NO_INDICE) {
+                noIntervalo = new ArrayList<>(ultima - primeira);
+                for (int i = primeira; i < ultima; i++) {
+                    int posicao = porTempo.posicao(i);
+                    if (posicao >= de && posicao < fim) {
+                        noIntervalo.add(posicao);
+                    }
+                }
+            }
+        }
+        if (noIntervalo != null) {
+            // Poucas mensagens no intervalo: vêm do índice, e só é preciso pô-las por ordem de posição.
+            Collections.sort(noIntervalo);
+            for (int posicao : noIntervalo) {
+                resultado.add(posicao);
+                if (resultado.size() >= maximo) {
+                    return posicao + 1;
+                }
+            }
+            return fim;
+        }
+        for (int posicao = de; posicao < fim; posicao++) {
+            long tempo = tempos[posicao - primeiraPosicao];
+            if (tempo >= desde && tempo <= ate) {
+                resultado.add(posicao);
+                if (resultado.size() >= maximo) {
+                    return posicao + 1;
+                }
+            }
+        }
+        return fim;
+    }
+
+    // Índice do primeiro elemento de a[de..ate) que não é menor do que 'valor' (pesquisa binária).
+    private static int primeiraNaoMenor(int[] a, int de, int ate, int valor) {
+        int baixo = de;
+        int alto = ate;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (a[meio] < valor) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // Como primeiraNaoMenor, mas a partir de 'de' com saltos crescentes: custa O(log d), onde d é
+    // a distância até ao resultado, o que torna a interseção proporcional à lista mais curta.
+    private static int primeiraNaoMenorPorSaltos(int[] a, int de, int ate, int valor) {
+        int salto = 1;
+        int alto = de;
+        while (alto < ate && a[alto] < valor) {
+            de = alto + 1;
+            alto += salto;
+            salto <<= 1;
+        }
+        return primeiraNaoMenor(a, de, Math.min(alto + 1, ate), valor);
+    }
+
+    /**
+     * Os termos distintos de um texto, pela ordem em que aparecem: palavras (letras e dígitos)
+     * em minúsculas e sem acentos.
+     */
+    static List<String> termos(String texto) {
+        Set<String> termos = new LinkedHashSet<>();
+        if (texto == null) {
+            return new ArrayList<>(termos);
+        }
+        // Percorre o texto à mão: é o custo de cada postagem, e a expressão regular custava o dobro.
+        String normalizado = normalizar(texto);
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean letra = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                if (i - inicio <= TAMANHO_MAXIMO_TERMO) {
+                    termos.add(normalizado.substring(inicio, i));
+                }
+                inicio = -1;
+            }
+        }
+        return new ArrayList<>(termos);
+    }
+
+    // Minúsculas e sem acentos; os autores são comparados assim, por inteiro.
+    static String normalizar(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) >= 0x80) {
+                String decomposto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+                return ACENTOS.matcher(decomposto).replaceAll("").toLowerCase(Locale.ROOT);
+            }
+        }
+        // Só ASCII: não há acentos a tirar.
+        return texto.toLowerCase(Locale.ROOT);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package mensageria.comum;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registo de eventos assíncrono e filtrado por nível, para os caminhos quentes do nó.
+ *
+ * Quem regista só verifica o nível e coloca o formato e os argumentos numa fila limitada;
+ * a formatação e a escrita na consola são feitas por uma thread própria. Se a fila encher
+ * (a consola não acompanha), as linhas novas são descartadas e contadas, em vez de
+ * atrasarem quem está a tratar pedidos.
+ *
+ * O nível mínimo é escolhido com a propriedade de sistema 'mensageria.log'
+ * (DEPURACAO, INFO, AVISO ou ERRO; o padrão é INFO).
+ */
+public final class Log {
+
+    public enum Nivel { DEPURACAO, INFO, AVISO, ERRO }
+
+    private static final int CAPACIDADE_FILA = 8192;
+
+    private static final Nivel NIVEL_MINIMO = Nivel.valueOf(
+            System.getProperty("mensageria.log", Nivel.INFO.name()).toUpperCase());
+    private static final BlockingQueue<Linha> FILA = new ArrayBlockingQueue<>(CAPACIDADE_FILA);
+    private static final LongAdder DESCARTADAS = new LongAdder();
+
+    static {
+        Thread escritor = new Thread(Log::cicloDeEscrita, "log-assincrono");
+        escritor.setDaemon(true);
+        escritor.start();
+        // Ao sair, escreve o que ainda estiver na fila.
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::esvaziar, "log-assincrono-fim"));
+    }
+
+    private Log() {
+    }
+
+    // Permite evitar o custo dos argumentos (ex: varargs) quando o nível está desligado.
+    public static boolean ativo(Nivel nivel) {
+        return nivel.compareTo(NIVEL_MINIMO) >= 0;
+    }
+
+    public static void depuracao(String formato, Object... argumentos) {
+        registar(Nivel.DEPURACAO, formato, argumentos);
+    }
+
+    public static void info(String formato, Object... argumentos) {
+        registar(Nivel.INFO, formato, argumentos);
+    }
+
+    public static void aviso(String formato, Object... argumentos) {
+        registar(Nivel.AVISO, formato, argumentos);
+    }
+
+    public static void erro(String formato, Object... argumentos) {
+        registar(Nivel.ERRO, formato, argumentos);
+    }
+
+    // Linhas perdidas por a fila estar cheia, desde o arranque.
+    public static long getDescartadas() {
+        return DESCARTADAS.sum();
+    }
+
+    private static void registar(Nivel nivel, String formato, Object[] argumentos) {
+        if (ativo(nivel) && !FILA.offer(new Linha(nivel, formato, argumentos))) {
+            DESCARTADAS.increment();
+        }
+    }
+
+    private static void cicloDeEscrita() {
+        long descartadasAvisadas = 0;
+        while (true) {
+            Linha linha;
+            try {
+                linha = FILA.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long descartadas = DESCARTADAS.sum();
+            if (descartadas != descartadasAvisadas) {
+                System.err.printf("[Log] %d linha(s) descartada(s) por a consola não acompanhar.%n", descartadas - descartadasAvisadas);
+                descartadasAvisadas = descartadas;
+            }
+            linha.escrever();
+        }
+    }
+
+    private static void esvaziar() {
+        Linha linha;
+        while ((linha = FILA.poll()) != null) {
+            linha.escrever();
+        }
+        System.out.flush();
+    }
+
+    private static final class Linha {
+        private final Nivel nivel;
+        private final String formato;
+        private final Object[] argumentos;
+
+        Linha(Nivel nivel, String formato, Object[] argumentos) {
+            this.nivel = nivel;
+            this.formato = formato;
+            this.argumentos = argumentos;
+        }
+
+        void escrever() {
+            PrintStream destino = nivel.compareTo(Nivel.AVISO) >= 0 ? System.err : System.out;
+            try {
+                destino.printf(formato, argumentos);
+            } catch (RuntimeException e) {
+                destino.println(formato);
+            }
+        }
+    }
+}
\ No newline at end of file
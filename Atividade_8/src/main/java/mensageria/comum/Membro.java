@@ -0,0 +1,74 @@
+package mensageria.comum;
+
+import java.io.Serializable;
+
+/**
+ * O que um nó sabe sobre outro nó da rede: onde o contactar e se está vivo.
+ * É o que viaja nos rumores do protocolo de pertença (ver mensageria.no.MembrosDaRede).
+ *
+ * Cada nó tem uma encarnação, que só ele próprio aumenta: quando ouve dizer que é suspeito
+ * ou que está em baixo, responde com VIVO e uma encarnação maior. Entre dois registos do
+ * mesmo nó vale o da encarnação maior e, com a mesma encarnação, o estado mais grave
+ * (VIVO < SUSPEITO < MORTO) — ver 'sobrepoe'.
+ */
+public final class Membro implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Estado {
+        VIVO,      // Respondeu recentemente (diretamente ou através de outro nó).
+        SUSPEITO,  // Não respondeu a uma sondagem; tem algum tempo para o desmentir.
+        MORTO      // Continuou suspeito tempo demais; os outros nós deixam de contar com ele.
+    }
+
+    private final int id;
+    private final String host;
+    private final int porta;
+    private final Estado estado;
+    private final long encarnacao;
+
+    public Membro(int id, String host, int porta, Estado estado, long encarnacao) {
+        this.id = id;
+        this.host = host;
+        this.porta = porta;
+        this.estado = estado;
+        this.encarnacao = encarnacao;
+    }
+
+    // O mesmo nó, com outro estado e encarnação.
+    public Membro com(Estado novoEstado, long novaEncarnacao) {
+        return new Membro(id, host, porta, novoEstado, novaEncarnacao);
+    }
+
+    // Verdadeiro se este registo deve substituir 'outro' (do mesmo nó).
+    public boolean sobrepoe(Membro outro) {
+        if (encarnacao != outro.encarnacao) {
+            return encarnacao > outro.encarnacao;
+        }
+        return estado.ordinal() > outro.estado.ordinal();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPorta() {
+        return porta;
+    }
+
+    public Estado getEstado() {
+        return estado;
+    }
+
+    public long getEncarnacao() {
+        return encarnacao;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Nó %d (%s:%d) %s#%d", id, host, porta, estado, encarnacao);
+    }
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package mensageria.comum;
 
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.UUID;
 
@@ -15,11 +16,29 @@ public class Mensagem implements Serializable {
     // Garante que o objeto enviado e o recebido sejam da mesma versão da classe.
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Ordem total das mensagens de um mural, igual em todos os nós: pelo carimbo HLC, depois
+     * pela origem e por fim pelo ID (sem sinal). Como o ID é único, duas mensagens diferentes
+     * nunca empatam.
+     */
+    public static final Comparator<Mensagem> ORDEM_TOTAL = (a, b) -> comparar(
+            a.getHlc(), a.getOrigem(), a.getId().getMostSignificantBits(), a.getId().getLeastSignificantBits(),
+            b.getHlc(), b.getOrigem(), b.getId().getMostSignificantBits(), b.getId().getLeastSignificantBits());
+
     // Atributos finais (final) garantem que, uma vez que a mensagem é criada, ela não pode ser alterada.
     private final UUID id;         // Um Identificador Único Universal para cada mensagem.
     private final String autor;
     private final String conteudo;
     private final long timestamp;  // A hora exata em que a mensagem foi criada, em milissegundos.
+    // Carimbo de origem: o nó que aceitou a mensagem do cliente e o número de sequência que lhe deu.
+    // Permite que cada nó resuma o que já tem como "até à sequência S do nó N" (ver Mural.getMarcasDeAgua).
+    // origem = 0 indica uma mensagem ainda não carimbada (ex: acabada de criar pelo cliente).
+    private final int origem;
+    private final long sequencia;
+    // Carimbo do relógio lógico híbrido do nó que aceitou a mensagem (ver RelogioHibrido), que
+    // define a sua posição na ordem do mural. 0 numa mensagem gravada antes de existir o HLC:
+    // getHlc usa então o timestamp.
+    private final long hlc;
 
     // Construtor para criar uma nova mensagem.
     public Mensagem(String autor, String conteudo) {
@@ -30,6 +49,46 @@ public class Mensagem implements Serializable {
         this.conteudo = conteudo;
         // Captura o momento exato da criação da mensagem.
         this.timestamp = new Date().getTime();
+        this.origem = 0;
+        this.sequencia = 0;
+        this.hlc = 0;
+    }
+
+    // Construtor usado para reconstruir uma mensagem já existente (ex: ao ler o log do disco),
+    // preservando o ID e o timestamp originais.
+    public Mensagem(UUID id, String autor, String conteudo, long timestamp) {
+        this(id, autor, conteudo, timestamp, 0, 0);
+    }
+
+    // Construtor usado para reconstruir uma mensagem já carimbada por um nó.
+    public Mensagem(UUID id, String autor, String conteudo, long timestamp, int origem, long sequencia) {
+        this(id, autor, conteudo, timestamp, origem, sequencia, 0);
+    }
+
+    // Construtor usado para reconstruir uma mensagem com o carimbo HLC.
+    public Mensagem(UUID id, String autor, String conteudo, long timestamp, int origem, long sequencia, long hlc) {
+        this.id = id;
+        this.autor = autor;
+        this.conteudo = conteudo;
+        this.timestamp = timestamp;
+        this.origem = origem;
+        this.sequencia = sequencia;
+        this.hlc = hlc;
+    }
+
+    // Devolve uma cópia desta mensagem (mesmo ID) carimbada pelo nó que a aceitou.
+    public Mensagem comOrigem(int origem, long sequencia, long hlc) {
+        return new Mensagem(id, autor, conteudo, timestamp, origem, sequencia, hlc);
+    }
+
+    /**
+     * Devolve uma cópia desta mensagem com o carimbo HLC pelo menos igual a 'hlcVisto'. Um
+     * cliente usa-a para indicar a mensagem mais recente que já leu: o nó que aceitar esta
+     * mensagem dá-lhe um carimbo maior, e ela fica depois dessa na ordem do mural em todos os
+     * nós, mesmo que o nó ainda não tenha recebido a que o cliente leu.
+     */
+    public Mensagem depoisDe(long hlcVisto) {
+        return hlcVisto <= getHlc() ? this : new Mensagem(id, autor, conteudo, timestamp, origem, sequencia, hlcVisto);
     }
 
     // Métodos "getter" para permitir o acesso aos atributos privados da mensagem.
@@ -45,6 +104,34 @@ public class Mensagem implements Serializable {
         return conteudo;
     }
 
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getOrigem() {
+        return origem;
+    }
+
+    public long getSequencia() {
+        return sequencia;
+    }
+
+    public long getHlc() {
+        return hlc != 0 ? hlc : RelogioHibrido.deTimestamp(timestamp);
+    }
+
+    // Compara as chaves de duas mensagens pela ORDEM_TOTAL, sem precisar dos objetos.
+    static int comparar(long hlcA, int origemA, long msbA, long lsbA, long hlcB, int origemB, long msbB, long lsbB) {
+        if (hlcA != hlcB) {
+            return Long.compare(hlcA, hlcB);
+        }
+        if (origemA != origemB) {
+            return Integer.compare(origemA, origemB);
+        }
+        int comparacao = Long.compareUnsigned(msbA, msbB);
+        return comparacao != 0 ? comparacao : Long.compareUnsigned(lsbA, lsbB);
+    }
+
     // Sobrescreve o método toString() para fornecer uma representação textual bonita da mensagem.
     @Override
     public String toString() {
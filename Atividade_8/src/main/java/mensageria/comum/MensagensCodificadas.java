@@ -0,0 +1,116 @@
+package mensageria.comum;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Lista de mensagens já codificada no formato do CodecBinario (FormatoBinario.escreverMensagem,
+ * uma a seguir à outra). Quando é o conteúdo de um pacote, o CodecBinario copia estes bytes
+ * tal como estão, sem voltar a codificar as mensagens; é o que permite ao nó guardar uma
+ * resposta pronta e servi-la a vários pedidos (ver CacheLeituras).
+ *
+ * 'acrescentar' devolve uma lista nova com as mensagens dadas no fim, reaproveitando os bytes
+ * já codificados: escreve a seguir ao fim desta lista no mesmo array (que as listas anteriores
+ * nunca leem) ou, se não couber, num array maior. Por isso só se deve acrescentar à lista mais
+ * recente, e só um dono de cada vez.
+ *
+ * As mensagens só são descodificadas se alguém as pedir (ex: o CodecJava, que não conhece
+ * este formato e a envia como uma lista comum).
+ */
+public final class MensagensCodificadas extends AbstractList<Mensagem> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final MensagensCodificadas VAZIA = new MensagensCodificadas(new byte[0], 0, 0);
+
+    private final transient byte[] bytes;
+    private final transient int comprimento;
+    private final int quantidade;
+    private transient volatile List<Mensagem> descodificadas;
+
+    private MensagensCodificadas(byte[] bytes, int comprimento, int quantidade) {
+        this.bytes = bytes;
+        this.comprimento = comprimento;
+        this.quantidade = quantidade;
+    }
+
+    public static MensagensCodificadas de(List<Mensagem> mensagens) throws IOException {
+        return VAZIA.acrescentar(mensagens);
+    }
+
+    public MensagensCodificadas acrescentar(List<Mensagem> novas) throws IOException {
+        if (novas.isEmpty()) {
+            return this;
+        }
+        Buffer buffer = new Buffer(bytes, comprimento);
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (Mensagem mensagem : novas) {
+            FormatoBinario.escreverMensagem(out, mensagem);
+        }
+        out.flush();
+        return new MensagensCodificadas(buffer.array(), buffer.size(), quantidade + novas.size());
+    }
+
+    // Tamanho das mensagens codificadas, em bytes.
+    public int getComprimento() {
+        return comprimento;
+    }
+
+    void escreverEm(OutputStream out) throws IOException {
+        out.write(bytes, 0, comprimento);
+    }
+
+    @Override
+    public Mensagem get(int indice) {
+        return descodificadas().get(indice);
+    }
+
+    @Override
+    public int size() {
+        return quantidade;
+    }
+
+    private List<Mensagem> descodificadas() {
+        List<Mensagem> lista = descodificadas;
+        if (lista == null) {
+            lista = new ArrayList<>(quantidade);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, comprimento));
+            try {
+                for (int i = 0; i < quantidade; i++) {
+                    lista.add(FormatoBinario.lerMensagem(in));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Mensagens codificadas corrompidas.", e);
+            }
+            descodificadas = lista;
+        }
+        return lista;
+    }
+
+    // Quando serializada (ex: pelo CodecJava) viaja como uma lista comum.
+    private Object writeReplace() {
+        return new ArrayList<>(this);
+    }
+
+    // ByteArrayOutputStream que continua a escrever no array de uma lista anterior e o expõe sem cópia.
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(byte[] existente, int ocupado) {
+            super(0);
+            buf = existente.length > ocupado ? existente : Arrays.copyOf(existente, Math.max(256, ocupado * 2));
+            count = ocupado;
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
\ No newline at end of file
@@ -1,23 +1,106 @@
 package mensageria.comum;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Representa o mural de mensagens compartilhado, que é a base de dados do sistema.
- * A palavra 'synchronized' em todos os métodos garante que as operações sejam "thread-safe",
- * ou seja, apenas uma thread pode modificar ou ler o mural por vez, evitando inconsistências.
+ *
+ * As escritas são feitas uma de cada vez, sob o monitor do mural ('synchronized'), o que
+ * mantém os índices auxiliares consistentes. As leituras do caminho quente (ler o mural,
+ * verificar se uma mensagem existe, procurar por ID) não usam tranca nenhuma: o mural inteiro
+ * é lido como um instantâneo imutável da sequência de mensagens, sem cópia, e por isso uma
+ * leitura nunca atrasa as postagens e réplicas que estão a chegar.
+ *
+ * Um mural recuperado de um SnapshotColunar não carrega as mensagens do snapshot para a
+ * memória: lê-as do ficheiro mapeado quando são pedidas, e procura-as por ID no índice do
+ * próprio snapshot. Os índices em memória ('porOrigem', 'porBalde', ...) só guardam as
+ * mensagens que chegaram depois do snapshot.
+ *
+ * As mensagens em memória também não são guardadas como objetos: a SequenciaMensagens
+ * guarda-as em colunas compactas (com o índice por ID), e os índices auxiliares guardam
+ * apenas posições nessa sequência.
+ *
+ * As buscas por termos, autor e timestamp (ver buscar) usam dois IndiceBusca: o das mensagens
+ * que chegaram depois do snapshot, atualizado a cada inserção, e o das mensagens do snapshot,
+ * construído uma única vez, na primeira busca ou antes dela (ver prepararBusca).
+ *
+ * As leituras (getTodasAsMensagens, getUltimas, getPagina) devolvem as mensagens pela ordem
+ * total do mural (Mensagem.ORDEM_TOTAL: carimbo HLC, origem, ID), que é a mesma em todos os
+ * nós que tenham as mesmas mensagens; a posição de uma página é a ordem da mensagem nessa
+ * ordem total. A sequência continua a ser só de acréscimo, pela ordem de chegada, e a ordem
+ * total é um índice de posições sobre ela (ver OrdemMural). A ordem de chegada a este nó
+ * continua disponível em getPaginaPorChegada, para quem precisa de um cursor que nunca recua
+ * (as assinaturas).
+ *
+ * A mesma mensagem (o mesmo ID) pode chegar com dois carimbos de origem: um cliente que deixou
+ * de esperar por um nó reenvia a postagem a outro, e os dois carimbam-na. Todos os nós ficam com
+ * o mesmo, o menor pela ordem total (ver juntarMensagem); o outro continua guardado como uma
+ * cópia, fora da ordem e do índice por ID, para que a sua sequência não fique como um buraco
+ * nas marcas de água e siga na sincronização para os nós que ainda não a têm.
  */
 public class Mural implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    // A estrutura de dados escolhida foi um 'LinkedHashSet'.
-    // - 'Set': Garante que não haverá mensagens duplicadas (baseado nos métodos equals/hashCode da classe Mensagem).
-    // - 'Linked': Mantém a ordem em que as mensagens foram inseridas, o que é ideal para um mural.
-    private final Set<mensageria.comum.Mensagem> mensagens = new LinkedHashSet<>();
+    // Maior número de mensagens devolvido numa página (LER_ULTIMAS e LER_PAGINA).
+    public static final int TAMANHO_MAXIMO_PAGINA = 1000;
+
+    // Forma serializada: o conjunto ordenado de mensagens, como nas versões anteriores,
+    // para que os snapshots já gravados em disco continuem a ser lidos.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("mensagens", Set.class)
+    };
+
+    // As mensagens pela ordem em que foram inseridas (só de acréscimo), com o índice por ID:
+    // este garante que não há mensagens duplicadas (o ID é o que define a igualdade de duas
+    // mensagens) e permite procurar uma mensagem, ou usá-la como cursor de leitura, sem tranca.
+    private transient SequenciaMensagens mensagens;
+    // As posições da sequência pela ordem total do mural.
+    private transient OrdemMural ordem;
+
+    // Índice por origem: para cada nó de origem, as posições das suas mensagens ordenadas pela
+    // sequência. Não é serializado; é reconstruído ao carregar o mural (ver readObject).
+    private transient Map<Integer, PosicoesOrdenadas> porOrigem;
+    // Para cada origem, a maior sequência S tal que todas as mensagens 1..S estão no mural.
+    private transient Map<Integer, Long> marcasDeAgua;
+    // Mensagens antigas, gravadas antes de existir o carimbo de origem.
+    private transient PosicoesOrdenadas semOrigem;
+    // Posições das cópias que não valem (ver juntarMensagem), pela posição; e a posição de
+    // chegada da primeira cópia das mensagens cuja cópia que vale chegou depois.
+    private transient PosicoesOrdenadas substituidas;
+    private transient Map<UUID, Integer> primeiraChegada;
+    // Árvore de Merkle sobre os IDs, e as posições das mensagens de cada um dos seus baldes (folhas).
+    private transient ArvoreMerkle arvoreMerkle;
+    private transient PosicoesOrdenadas[] porBalde;
+    // Mensagens gravadas no último snapshot, lidas do ficheiro (ver SnapshotColunar).
+    private transient SnapshotColunar base;
+    // Índices de busca: o das mensagens do snapshot é construído só quando for preciso.
+    private transient IndiceBusca buscaRecentes;
+    private transient volatile IndiceBusca buscaBase;
+    private transient Object trancaBuscaBase;
+
+    public Mural() {
+        inicializarIndices(SnapshotColunar.vazio());
+    }
+
+    // Mural cujas primeiras mensagens são as do snapshot indicado.
+    public Mural(SnapshotColunar base) {
+        inicializarIndices(base);
+    }
 
     /**
      * Adiciona uma nova mensagem ao mural de forma segura.
@@ -25,8 +108,21 @@ public class Mural implements Serializable {
      * @return true se a mensagem era nova e foi adicionada, false se já existia.
      */
     public synchronized boolean adicionarMensagem(mensageria.comum.Mensagem mensagem) {
-        // O método 'add' do Set já lida com a verificação de duplicatas.
-        return this.mensagens.add(mensagem);
+        // O índice por ID já lida com a verificação de duplicatas.
+        if (posicaoDe(mensagem.getId()) >= 0) {
+            return false;
+        }
+        ordem.inserir(indexar(mensagem));
+        return true;
+    }
+
+    /**
+     * Como adicionarMensagem, mas uma mensagem que já está no mural com outro carimbo de origem
+     * é guardada como outra cópia dela (ver juntarMensagem). É o que faz a reprodução do log.
+     * @return true se a mensagem, ou esta cópia dela, era nova.
+     */
+    public synchronized boolean juntarMensagem(Mensagem mensagem) {
+        return adicionarMensagem(mensagem) || juntarCopia(mensagem);
     }
 
     /**
@@ -37,25 +133,460 @@ public class Mural implements Serializable {
      * @return O número de mensagens que foram efetivamente adicionadas (ou seja, que não eram duplicatas).
      */
     public synchronized int adicionarTodas(List<mensageria.comum.Mensagem> novasMensagens) {
-        int adicionadas = 0;
-        // Itera sobre a lista de novas mensagens.
-        for (mensageria.comum.Mensagem msg : novasMensagens) {
-            // Tenta adicionar cada mensagem. Se 'add' retornar true, a mensagem era nova.
-            if (this.mensagens.add(msg)) {
-                adicionadas++;
+        return incorporar(novasMensagens).size();
+    }
+
+    /**
+     * Junta ao mural as mensagens da lista que ainda não estão cá (réplicas, sincronização,
+     * anti-entropia). As novas são ordenadas pela ordem total e entram na ordem do mural de
+     * uma só vez, intercaladas como uma sequência ordenada, e não uma a uma. As que já estão
+     * cá com outro carimbo de origem são guardadas como outra cópia (ver juntarMensagem).
+     * @return As mensagens que eram novas, pela ordem total, seguidas das novas cópias.
+     */
+    public synchronized List<Mensagem> incorporar(List<Mensagem> recebidas) {
+        List<Mensagem> novas = new ArrayList<>();
+        List<Mensagem> copias = new ArrayList<>();
+        for (Mensagem mensagem : recebidas) {
+            if (posicaoDe(mensagem.getId()) < 0) {
+                novas.add(mensagem);
+            } else {
+                copias.add(mensagem);
+            }
+        }
+        List<Mensagem> adicionadas = new ArrayList<>(novas.size());
+        if (!novas.isEmpty()) {
+            novas.sort(Mensagem.ORDEM_TOTAL);
+            int primeira = -1;
+            for (Mensagem mensagem : novas) {
+                // A lista recebida pode trazer a mesma mensagem mais do que uma vez, até com carimbos
+                // diferentes; a primeira pela ordem total já está na sequência quando chega a outra.
+                if (posicaoDe(mensagem.getId()) >= 0) {
+                    copias.add(mensagem);
+                    continue;
+                }
+                int posicao = indexar(mensagem);
+                if (primeira < 0) {
+                    primeira = posicao;
+                }
+                adicionadas.add(mensagem);
+            }
+            ordem.inserirOrdenadas(primeira, adicionadas.size());
+        }
+        for (Mensagem copia : copias) {
+            if (juntarCopia(copia)) {
+                adicionadas.add(copia);
             }
         }
         return adicionadas;
     }
 
     /**
-     * Retorna uma CÓPIA da lista de todas as mensagens do mural.
-     * É importante retornar uma cópia (new ArrayList) para que o código externo
-     * não possa modificar a lista original de mensagens do mural diretamente.
-     * @return Uma nova lista contendo todas as mensagens.
+     * Guarda outra cópia de uma mensagem que já está no mural, se tiver um carimbo de origem que
+     * o mural ainda não tem. Das cópias, vale a menor pela ordem total (o carimbo HLC e depois a
+     * origem), em qualquer nó e por qualquer ordem de chegada: se for esta, fica no lugar da que
+     * valia na ordem total e no índice por ID. A outra só conta para as marcas de água e para a
+     * sincronização (getMensagensApos), que a leva aos nós a quem ela falta.
+     * @return true se a cópia era nova.
+     */
+    private boolean juntarCopia(Mensagem copia) {
+        int origem = copia.getOrigem();
+        long sequencia = copia.getSequencia();
+        PosicoesOrdenadas daOrigem = porOrigem.get(origem);
+        if (origem == 0 || (daOrigem != null && daOrigem.contem(sequencia)) || base.contemSequencia(origem, sequencia)) {
+            return false;
+        }
+        UUID id = copia.getId();
+        int atual = posicaoDe(id);
+        boolean passaAValer = mensagens.compararCom(atual, copia.getHlc(), origem,
+                id.getMostSignificantBits(), id.getLeastSignificantBits()) > 0;
+        if (passaAValer) {
+            // Antes de o índice por ID a dar, para getPosicaoDeChegada.
+            primeiraChegada.putIfAbsent(id, atual);
+        }
+        int posicao = mensagens.acrescentarCopia(copia, passaAValer);
+        indexarOrigem(copia, posicao);
+        if (passaAValer) {
+            buscaRecentes.indexar(posicao, copia);
+            ordem.substituir(atual, posicao);
+            substituidas.inserir(atual, atual);
+        } else {
+            substituidas.inserir(posicao, posicao);
+        }
+        return true;
+    }
+
+    /**
+     * As cópias de mensagens que não valem (ver juntarMensagem), pela ordem de chegada. Um
+     * snapshot só grava as que valem; estas têm de continuar no log depois dele.
+     */
+    public synchronized List<Mensagem> getCopiasSubstituidas() {
+        List<Mensagem> instantaneo = mensagens.instantaneo();
+        List<Mensagem> copias = new ArrayList<>(substituidas.tamanho());
+        for (int i = 0; i < substituidas.tamanho(); i++) {
+            copias.add(instantaneo.get(substituidas.posicao(i)));
+        }
+        return copias;
+    }
+
+    /**
+     * Retorna um instantâneo imutável de todas as mensagens do mural, pela ordem total.
+     * Não tranca nada e só copia as posições: mensagens que cheguem depois não aparecem nesta
+     * lista, e o código externo não a pode modificar.
+     * @return Uma lista só de leitura com todas as mensagens.
+     */
+    public List<mensageria.comum.Mensagem> getTodasAsMensagens() {
+        return getMensagensAPartirDe(0);
+    }
+
+    /**
+     * Como getTodasAsMensagens, mas só a partir da posição 'inicio' da ordem total. Copia só as
+     * posições pedidas: quem já tem o princípio do mural (ex: a cache do LER_MURAL) paga apenas
+     * o que chegou depois, e não o mural inteiro.
+     */
+    public List<Mensagem> getMensagensAPartirDe(long inicio) {
+        OrdemMural.Estado estado = ordem.estado();
+        int[] divisao = ordem.dividir(estado, inicio);
+        // Tirado depois do estado da ordem, o instantâneo tem todas as posições dele.
+        return new PorOrdem(mensagens.instantaneo(), ordem.posicoes(estado, divisao, estado.total()));
+    }
+
+    /**
+     * Devolve as últimas 'quantidade' mensagens do mural (no máximo TAMANHO_MAXIMO_PAGINA).
+     * O cursor da página aponta para o fim do mural, para se poder pedir depois só o que chegar.
+     */
+    public PaginaMural getUltimas(int quantidade) {
+        OrdemMural.Estado estado = ordem.estado();
+        int fim = estado.total();
+        return pagina(estado, Math.max(0, fim - limitarPagina(quantidade)), quantidade);
+    }
+
+    /**
+     * Devolve até 'tamanho' mensagens a partir da posição 'inicio' da ordem total do mural.
+     * O custo depende apenas do tamanho da página, qualquer que seja a posição pedida.
+     * Uma mensagem replicada com um carimbo antigo entra no meio da ordem e desloca as
+     * seguintes; quem lê por posições pode por isso receber uma mensagem repetida.
+     */
+    public PaginaMural getPagina(long inicio, int tamanho) {
+        OrdemMural.Estado estado = ordem.estado();
+        return pagina(estado, Math.min(Math.max(inicio, 0), estado.total()), tamanho);
+    }
+
+    /**
+     * Devolve até 'tamanho' mensagens a seguir à mensagem com o ID indicado, na ordem total.
+     * Se a mensagem não existir neste mural, a página vem vazia com o cursor CURSOR_DESCONHECIDO.
+     */
+    public PaginaMural getPaginaApos(UUID id, int tamanho) {
+        OrdemMural.Estado estado = ordem.estado();
+        int posicao = posicaoDe(id);
+        if (posicao < 0) {
+            return new PaginaMural(new ArrayList<Mensagem>(), PaginaMural.CURSOR_DESCONHECIDO, estado.total());
+        }
+        int[] divisao = ordem.dividirApos(estado, posicao);
+        return pagina(estado, divisao, divisao[0] + divisao[1] + divisao[2], tamanho);
+    }
+
+    /**
+     * Devolve até 'tamanho' mensagens a partir da posição 'inicio' pela ordem de chegada a este
+     * nó. Ao contrário da ordem total, esta ordem é só deste nó, mas nunca muda: o cursor
+     * devolvido nunca salta nem repete mensagens. Cada mensagem vem só uma vez, como chegou
+     * primeiro: as outras cópias dela (ver juntarMensagem) ocupam posições mas não vêm na página.
+     */
+    public PaginaMural getPaginaPorChegada(long inicio, int tamanho) {
+        List<Mensagem> instantaneo = mensagens.instantaneo();
+        int total = instantaneo.size();
+        int de = (int) Math.min(Math.max(inicio, 0), total);
+        int ate = Math.min(total, de + limitarPagina(tamanho));
+        List<Mensagem> pagina = new ArrayList<>(ate - de);
+        for (int posicao = de; posicao < ate; posicao++) {
+            if (!mensagens.isCopia(posicao)) {
+                pagina.add(instantaneo.get(posicao));
+            }
+        }
+        return new PaginaMural(pagina, ate, total);
+    }
+
+    // Posição de chegada da mensagem com o ID indicado (da sua primeira cópia, a que vem em
+    // getPaginaPorChegada), ou -1 se não estiver no mural.
+    public int getPosicaoDeChegada(UUID id) {
+        int posicao = posicaoDe(id);
+        if (posicao >= 0 && mensagens.isCopia(posicao)) {
+            Integer primeira = primeiraChegada.get(id);
+            return primeira == null ? posicao : primeira;
+        }
+        return posicao;
+    }
+
+    private PaginaMural pagina(OrdemMural.Estado estado, long inicio, int tamanho) {
+        return pagina(estado, ordem.dividir(estado, inicio), inicio, tamanho);
+    }
+
+    private PaginaMural pagina(OrdemMural.Estado estado, int[] divisao, long inicio, int tamanho) {
+        // Tirado depois do estado da ordem, o instantâneo tem todas as posições dele.
+        List<Mensagem> instantaneo = mensagens.instantaneo();
+        int[] posicoes = ordem.posicoes(estado, divisao, limitarPagina(tamanho));
+        List<Mensagem> pagina = new ArrayList<>(posicoes.length);
+        for (int posicao : posicoes) {
+            pagina.add(instantaneo.get(posicao));
+        }
+        return new PaginaMural(pagina, inicio + posicoes.length, estado.total());
+    }
+
+    /**
+     * Quantas vezes uma mensagem entrou no meio da ordem total, e não no fim (uma réplica com
+     * um carimbo mais antigo do que a última mensagem). Enquanto não muda, cada leitura da
+     * ordem inteira é a anterior com mensagens acrescentadas no fim. Lido sem trancas.
+     */
+    public long getReordenacoes() {
+        return ordem.estado().getReordenacoes();
+    }
+
+    // Maior carimbo HLC das mensagens do mural (0 se estiver vazio).
+    public synchronized long getMaiorHlc() {
+        int ultima = ordem.ultima();
+        return ultima < 0 ? 0 : mensagens.hlcEm(ultima);
+    }
+
+    /**
+     * Procura as mensagens com todos os termos, o autor e o intervalo de timestamps do pedido
+     * (ver PedidoBusca), a partir da posição 'inicio' do pedido e pela ordem de inserção.
+     * Como as leituras, não usa a tranca do mural: o custo depende do número de mensagens dos
+     * termos e do autor pedidos (a lista mais curta), não do tamanho do mural.
+     * @return Até 'tamanho' mensagens encontradas (no máximo TAMANHO_MAXIMO_PAGINA); o cursor
+     *         da página é a posição onde continuar a busca.
+     */
+    public PaginaMural buscar(PedidoBusca pedido) {
+        List<String> termos = IndiceBusca.termos(pedido.getTermos());
+        String autor = pedido.getAutor().trim().isEmpty() ? null : IndiceBusca.normalizar(pedido.getAutor().trim());
+        long desde = pedido.getDesde() > 0 ? pedido.getDesde() : Long.MIN_VALUE;
+        long ate = pedido.getAte() > 0 ? pedido.getAte() : Long.MAX_VALUE;
+        int maximo = limitarPagina(pedido.getTamanho());
+        int proximo = (int) Math.min(Math.max(pedido.getInicio(), 0), Integer.MAX_VALUE);
+
+        List<Integer> posicoes = new ArrayList<>();
+        if (maximo > 0) {
+            proximo = indiceDaBase().buscar(termos, autor, desde, ate, proximo, maximo, posicoes);
+            if (posicoes.size() < maximo) {
+                proximo = buscaRecentes.buscar(termos, autor, desde, ate, proximo, maximo, posicoes);
+            }
+        }
+        // Tirado depois da busca, o instantâneo tem todas as posições encontradas.
+        List<Mensagem> instantaneo = mensagens.instantaneo();
+        boolean comCopias = ordem.estado().getSubstituicoes() > 0;
+        List<Mensagem> encontradas = new ArrayList<>(posicoes.size());
+        for (int posicao : posicoes) {
+            Mensagem mensagem = instantaneo.get(posicao);
+            // Uma cópia que deixou de valer (ver juntarMensagem) continua nos índices de busca.
+            if (!comCopias || posicaoDe(mensagem.getId()) == posicao) {
+                encontradas.add(mensagem);
+            }
+        }
+        return new PaginaMural(encontradas, proximo, instantaneo.size());
+    }
+
+    /**
+     * Constrói já o índice de busca das mensagens do snapshot, para que a primeira busca não
+     * tenha de esperar por ele (num snapshot com milhões de mensagens demora alguns segundos).
+     */
+    public void prepararBusca() {
+        indiceDaBase();
+    }
+
+    // Verdadeiro se o índice de busca das mensagens do snapshot já existe (ou não é preciso).
+    public boolean isBuscaPreparada() {
+        return buscaBase != null;
+    }
+
+    private IndiceBusca indiceDaBase() {
+        IndiceBusca indice = buscaBase;
+        if (indice != null) {
+            return indice;
+        }
+        synchronized (trancaBuscaBase) {
+            if (buscaBase == null) {
+                indice = new IndiceBusca(0);
+                for (int posicao = 0; posicao < base.tamanho(); posicao++) {
+                    indice.indexar(posicao, base.mensagem(posicao));
+                }
+                buscaBase = indice;
+            }
+            return buscaBase;
+        }
+    }
+
+    private static int limitarPagina(int tamanho) {
+        return Math.max(0, Math.min(tamanho, TAMANHO_MAXIMO_PAGINA));
+    }
+
+    /**
+     * Verifica se uma mensagem com o mesmo ID já está no mural.
+     */
+    public boolean contem(Mensagem mensagem) {
+        return posicaoDe(mensagem.getId()) >= 0;
+    }
+
+    // Posição da mensagem com o ID indicado, ou -1 se não estiver no mural.
+    private int posicaoDe(UUID id) {
+        return mensagens.posicaoDe(id);
+    }
+
+    /**
+     * Número de posições pela ordem de chegada (o fim de getPaginaPorChegada), lido sem trancas.
+     * Conta também as outras cópias de uma mensagem (ver juntarMensagem), que são raras.
+     */
+    public int getTamanho() {
+        return mensagens.tamanho();
+    }
+
+    /**
+     * Versão do mural: cresce a cada mensagem nova e nunca volta atrás, por isso duas leituras
+     * com a mesma versão veem exatamente as mesmas mensagens. É o número de mensagens (as que já
+     * estão na ordem total) mais as vezes que uma cópia ficou no lugar de outra, o que muda o
+     * mural sem mudar o número de mensagens (ver juntarMensagem). Lida sem trancas.
+     */
+    public long getVersao() {
+        OrdemMural.Estado estado = ordem.estado();
+        return estado.total() + estado.getSubstituicoes();
+    }
+
+    /**
+     * Resume o conteúdo do mural como "marcas de água" por origem: para cada nó de origem,
+     * a maior sequência S tal que todas as mensagens 1..S desse nó já estão aqui.
+     * É este resumo (pequeno, com uma entrada por nó) que um nó envia ao pedir sincronização.
+     * @return Uma cópia do mapa origem -> marca de água.
      */
-    public synchronized List<mensageria.comum.Mensagem> getTodasAsMensagens() {
-        return new ArrayList<>(this.mensagens);
+    public synchronized HashMap<Integer, Long> getMarcasDeAgua() {
+        return new HashMap<>(marcasDeAgua);
+    }
+
+    /**
+     * Maior sequência já vista para uma origem (contígua ou não), ou 0 se não houver nenhuma.
+     */
+    public synchronized long getMaiorSequencia(int origem) {
+        PosicoesOrdenadas daOrigem = porOrigem.get(origem);
+        long maior = base.getMaiorSequencia(origem);
+        return daOrigem == null ? maior : Math.max(maior, daOrigem.ultimaChave());
+    }
+
+    /**
+     * Devolve as mensagens que faltam a um nó que enviou as suas marcas de água: para cada
+     * origem, só as mensagens com sequência acima da marca. O custo é proporcional ao que
+     * falta ao outro nó, e não ao tamanho do mural.
+     * @param marcas As marcas de água do outro nó (null significa "não tenho nada").
+     */
+    public synchronized List<Mensagem> getMensagensApos(Map<Integer, Long> marcas) {
+        List<Mensagem> faltantes = new ArrayList<>();
+        if (marcas == null) {
+            // Sem resumo, a resposta é o mural inteiro.
+            faltantes.addAll(mensagens.instantaneo());
+            return faltantes;
+        }
+        // Primeiro as do snapshot (a origem 0 são as sem carimbo), depois as que chegaram a seguir.
+        for (Integer origem : base.getOrigens()) {
+            base.mensagensApos(origem, marcas.getOrDefault(origem, 0L), faltantes);
+        }
+        List<Mensagem> instantaneo = mensagens.instantaneo();
+        for (Map.Entry<Integer, PosicoesOrdenadas> origem : porOrigem.entrySet()) {
+            PosicoesOrdenadas daOrigem = origem.getValue();
+            long marca = marcas.getOrDefault(origem.getKey(), 0L);
+            for (int i = daOrigem.primeiraAcima(marca); i < daOrigem.tamanho(); i++) {
+                faltantes.add(instantaneo.get(daOrigem.posicao(i)));
+            }
+        }
+        // As mensagens sem carimbo não podem ser resumidas por marcas, por isso vão sempre.
+        for (int i = 0; i < semOrigem.tamanho(); i++) {
+            faltantes.add(instantaneo.get(semOrigem.posicao(i)));
+        }
+        return faltantes;
+    }
+
+    /**
+     * Devolve os hashes dos nós indicados da árvore de Merkle (ver ArvoreMerkle).
+     */
+    public synchronized long[] getHashesMerkle(int[] nos) {
+        long[] resultado = new long[nos.length];
+        for (int i = 0; i < nos.length; i++) {
+            resultado[i] = arvoreMerkle.hash(nos[i]);
+        }
+        return resultado;
+    }
+
+    /**
+     * Devolve os IDs de todas as mensagens que caem nos baldes indicados.
+     */
+    public synchronized List<UUID> getIdsDosBaldes(int[] baldes) {
+        List<UUID> ids = new ArrayList<>();
+        for (int balde : baldes) {
+            base.idsDoBalde(balde, ids);
+            PosicoesOrdenadas doBalde = porBalde[balde];
+            for (int i = 0; i < doBalde.tamanho(); i++) {
+                ids.add(mensagens.idEm(doBalde.posicao(i)));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Devolve as mensagens com os IDs indicados que existem neste mural.
+     */
+    public List<Mensagem> getMensagensPorId(Collection<UUID> ids) {
+        List<Mensagem> encontradas = new ArrayList<>();
+        List<Mensagem> instantaneo = mensagens.instantaneo();
+        for (UUID id : ids) {
+            int posicao = posicaoDe(id);
+            // Uma posição fora do instantâneo é de uma mensagem acabada de chegar; fica para a próxima.
+            if (posicao >= 0 && posicao < instantaneo.size()) {
+                encontradas.add(instantaneo.get(posicao));
+            }
+        }
+        return encontradas;
+    }
+
+    // Acrescenta uma mensagem nova à sequência (que também a indexa por ID) e atualiza os
+    // índices auxiliares com a sua posição, menos a ordem total (que fica para quem chama).
+    private int indexar(Mensagem mensagem) {
+        int posicao = mensagens.acrescentar(mensagem);
+        arvoreMerkle.adicionar(mensagem.getId());
+        porBalde[ArvoreMerkle.baldeDe(mensagem.getId())].inserir(posicao, posicao);
+        buscaRecentes.indexar(posicao, mensagem);
+        indexarOrigem(mensagem, posicao);
+        return posicao;
+    }
+
+    // Regista a posição no índice por origem (ou nas sem origem) e avança a marca de água.
+    private void indexarOrigem(Mensagem mensagem, int posicao) {
+        int origem = mensagem.getOrigem();
+        if (origem == 0) {
+            semOrigem.inserir(posicao, posicao);
+            return;
+        }
+        PosicoesOrdenadas daOrigem = porOrigem.computeIfAbsent(origem, o -> new PosicoesOrdenadas());
+        daOrigem.inserir(mensagem.getSequencia(), posicao);
+        // Avança a marca de água enquanto as sequências seguintes estiverem presentes.
+        long marca = marcasDeAgua.getOrDefault(origem, 0L);
+        while (daOrigem.contem(marca + 1) || base.contemSequencia(origem, marca + 1)) {
+            marca++;
+        }
+        marcasDeAgua.put(origem, marca);
+    }
+
+    private void inicializarIndices(SnapshotColunar base) {
+        this.base = base;
+        this.mensagens = new SequenciaMensagens(base);
+        this.ordem = new OrdemMural(mensagens, base.tamanho());
+        this.porOrigem = new HashMap<>();
+        this.marcasDeAgua = new HashMap<>(base.getMarcasDeAgua());
+        this.semOrigem = new PosicoesOrdenadas();
+        this.substituidas = new PosicoesOrdenadas();
+        this.primeiraChegada = new ConcurrentHashMap<>();
+        this.buscaRecentes = new IndiceBusca(base.tamanho());
+        this.buscaBase = base.tamanho() == 0 ? new IndiceBusca(0) : null;
+        this.trancaBuscaBase = new Object();
+        this.arvoreMerkle = new ArvoreMerkle();
+        base.adicionarNaArvore(arvoreMerkle);
+        this.porBalde = new PosicoesOrdenadas[ArvoreMerkle.NUMERO_BALDES];
+        for (int i = 0; i < ArvoreMerkle.NUMERO_BALDES; i++) {
+            porBalde[i] = new PosicoesOrdenadas();
+        }
     }
 
     /**
@@ -63,19 +594,69 @@ public class Mural implements Serializable {
      * @return A representação textual do mural.
      */
     @Override
-    public synchronized String toString() {
+    public String toString() {
+        List<Mensagem> instantaneo = getTodasAsMensagens();
         // Verifica se o mural está vazio para retornar uma mensagem amigável.
-        if (mensagens.isEmpty()) {
+        if (instantaneo.isEmpty()) {
             return "--- Mural vazio ---";
         }
         // StringBuilder é mais eficiente para construir strings em loops.
         StringBuilder sb = new StringBuilder();
         sb.append("--- MURAL DE MENSAGENS ---\n");
         // Itera sobre as mensagens e anexa a representação textual de cada uma.
-        for (mensageria.comum.Mensagem msg : mensagens) {
+        for (mensageria.comum.Mensagem msg : instantaneo) {
             sb.append(msg.toString()).append("\n");
         }
         sb.append("--------------------------");
         return sb.toString();
     }
+
+    /**
+     * Serializa um instantâneo do mural, no mesmo formato de sempre (um conjunto ordenado).
+     * Não precisa do monitor: inserções concorrentes não alteram o instantâneo.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField campos = out.putFields();
+        campos.put("mensagens", new LinkedHashSet<>(getTodasAsMensagens()));
+        out.writeFields();
+    }
+
+    // Reconstrói a sequência e os índices auxiliares a partir do conjunto gravado.
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField campos = in.readFields();
+        @SuppressWarnings("unchecked")
+        Set<Mensagem> gravadas = (Set<Mensagem>) campos.get("mensagens", null);
+        inicializarIndices(SnapshotColunar.vazio());
+        if (gravadas != null) {
+            adicionarTodas(new ArrayList<>(gravadas));
+        }
+    }
+
+    // Vista só de leitura das mensagens de um instantâneo pelas posições indicadas (a ordem total).
+    private static final class PorOrdem extends AbstractList<Mensagem> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Mensagem> instantaneo;
+        private final transient int[] posicoes;
+
+        PorOrdem(List<Mensagem> instantaneo, int[] posicoes) {
+            this.instantaneo = instantaneo;
+            this.posicoes = posicoes;
+        }
+
+        @Override
+        public Mensagem get(int indice) {
+            return instantaneo.get(posicoes[indice]);
+        }
+
+        @Override
+        public int size() {
+            return posicoes.length;
+        }
+
+        // Serializada como uma lista normal, com as mensagens já construídas.
+        private Object writeReplace() {
+            return new ArrayList<>(this);
+        }
+    }
 }
\ No newline at end of file
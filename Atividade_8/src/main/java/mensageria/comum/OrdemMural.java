@@ -0,0 +1,400 @@
+package mensageria.comum;
+
+/**
+ * Ordem total das mensagens de um mural (Mensagem.ORDEM_TOTAL: carimbo HLC, origem, ID), que é
+ * a mesma em todos os nós com as mesmas mensagens, ao contrário da ordem de chegada.
+ *
+ * As mensagens continuam guardadas pela ordem de chegada na SequenciaMensagens; aqui ficam só
+ * as suas posições, ordenadas, em três partes:
+ * - as do snapshot, que já é gravado por esta ordem e por isso não precisa de array nenhum
+ *   (um snapshot antigo, gravado por ordem de chegada, é ordenado uma vez ao abrir);
+ * - 'principal', com as mensagens que chegaram depois do snapshot;
+ * - 'recentes', com as últimas LIMITE_RECENTES a chegar. Uma mensagem com a maior chave do
+ *   mural (o caso normal de uma postagem, com o HLC acabado de dar) é só escrita a seguir à
+ *   última, sem copiar nada; quando a parte enche, é intercalada com a principal numa passagem.
+ * Um lote de mensagens de outro nó (réplicas, sincronização, anti-entropia) chega já ordenado
+ * e é intercalado da mesma forma, como uma sequência ordenada, e não mensagem a mensagem.
+ *
+ * Tem um único escritor de cada vez (o Mural, sob o seu monitor) e leitores sem trancas: cada
+ * alteração publica um Estado novo, e as posições que um Estado já publicou nunca mudam.
+ *
+ * Uma posição só sai da ordem quando outra cópia da mesma mensagem, com um carimbo menor, fica
+ * no seu lugar (ver substituir e Mural.juntarMensagem). É raro, e copia a parte onde ela estava.
+ */
+final class OrdemMural {
+
+    private static final int LIMITE_RECENTES = 4096;
+    private static final int[] SEM_POSICOES = new int[0];
+
+    /** Vista imutável da ordem num dado momento. */
+    static final class Estado {
+        // null quando as posições 0..tamanhoBase-1 (o snapshot) já estão por ordem.
+        private final int[] base;
+        private final int tamanhoBase;
+        private final int[] principal;
+        private final int[] recentes;
+        private final int tamanhoRecentes;
+        // Quantas inserções até este estado não foram para o fim da ordem (ver getReordenacoes).
+        private final long reordenacoes;
+        // Quantas posições foram substituídas por outra cópia da mesma mensagem (ver substituir).
+        private final long substituicoes;
+
+        private Estado(int[] base, int tamanhoBase, int[] principal, int[] recentes, int tamanhoRecentes,
+                       long reordenacoes, long substituicoes) {
+            this.base = base;
+            this.tamanhoBase = tamanhoBase;
+            this.principal = principal;
+            this.recentes = recentes;
+            this.tamanhoRecentes = tamanhoRecentes;
+            this.reordenacoes = reordenacoes;
+            this.substituicoes = substituicoes;
+        }
+
+        int total() {
+            return tamanhoBase + principal.length + tamanhoRecentes;
+        }
+
+        long getReordenacoes() {
+            return reordenacoes;
+        }
+
+        long getSubstituicoes() {
+            return substituicoes;
+        }
+
+        private int tamanho(int parte) {
+            return parte == 0 ? tamanhoBase : parte == 1 ? principal.length : tamanhoRecentes;
+        }
+
+        private int em(int parte, int i) {
+            if (parte == 0) {
+                return base == null ? i : base[i];
+            }
+            return parte == 1 ? principal[i] : recentes[i];
+        }
+    }
+
+    private final SequenciaMensagens mensagens;
+    private volatile Estado estado;
+    // Posição da mensagem com a maior chave do mural, ou -1 se estiver vazio (só o escritor).
+    private int ultima;
+
+    OrdemMural(SequenciaMensagens mensagens, int tamanhoBase) {
+        this.mensagens = mensagens;
+        int[] base = estaOrdenada(tamanhoBase) ? null : ordenar(tamanhoBase);
+        this.ultima = tamanhoBase == 0 ? -1 : base == null ? tamanhoBase - 1 : base[tamanhoBase - 1];
+        this.estado = new Estado(base, tamanhoBase, SEM_POSICOES, new int[LIMITE_RECENTES], 0, 0, 0);
+    }
+
+    Estado estado() {
+        return estado;
+    }
+
+    // Posição da mensagem com a maior chave, ou -1 (só o escritor).
+    int ultima() {
+        return ultima;
+    }
+
+    /** Acrescenta à ordem a posição de uma mensagem acabada de publicar na sequência. */
+    void inserir(int posicao) {
+        estado = inserir(estado, posicao, 0);
+    }
+
+    /**
+     * Troca na ordem a posição 'antiga' pela 'nova', de outra cópia da mesma mensagem acabada de
+     * publicar na sequência. O número de mensagens não muda, mas conta como uma reordenação.
+     */
+    void substituir(int antiga, int nova) {
+        Estado atual = estado;
+        int[] base = atual.base;
+        int tamanhoBase = atual.tamanhoBase;
+        int[] principal = atual.principal;
+        int[] recentes = atual.recentes;
+        int n = atual.tamanhoRecentes;
+        int parte = parteDe(atual, antiga);
+        int i = contar(atual, parte, antiga, false);
+        if (parte == 0) {
+            base = new int[tamanhoBase - 1];
+            for (int j = 0, k = 0; j < tamanhoBase; j++) {
+                if (j != i) {
+                    base[k++] = atual.em(0, j);
+                }
+            }
+            tamanhoBase--;
+        } else if (parte == 1) {
+            principal = semIndice(principal, principal.length, i, principal.length - 1);
+        } else {
+            recentes = semIndice(recentes, n, i, LIMITE_RECENTES);
+            n--;
+        }
+        Estado sem = new Estado(base, tamanhoBase, principal, recentes, n, atual.reordenacoes, atual.substituicoes + 1);
+        if (antiga == ultima) {
+            ultima = maior(sem);
+        }
+        estado = inserir(sem, nova, 1);
+    }
+
+    // Parte do estado (0: base, 1: principal, 2: recentes) onde está a posição indicada.
+    private int parteDe(Estado e, int posicao) {
+        for (int parte = 0; parte < 3; parte++) {
+            int i = contar(e, parte, posicao, false);
+            if (i < e.tamanho(parte) && e.em(parte, i) == posicao) {
+                return parte;
+            }
+        }
+        throw new IllegalStateException("Posição " + posicao + " fora da ordem do mural.");
+    }
+
+    // Cópia de a[0..n) sem o índice i, num array novo com 'capacidade' casas.
+    private static int[] semIndice(int[] a, int n, int i, int capacidade) {
+        int[] resultado = new int[capacidade];
+        System.arraycopy(a, 0, resultado, 0, i);
+        System.arraycopy(a, i + 1, resultado, i, n - i - 1);
+        return resultado;
+    }
+
+    // Posição com a maior chave do estado (a última de uma das partes), ou -1 se estiver vazio.
+    private int maior(Estado e) {
+        int maior = -1;
+        for (int parte = 0; parte < 3; parte++) {
+            int tamanho = e.tamanho(parte);
+            if (tamanho > 0 && (maior < 0 || mensagens.comparar(e.em(parte, tamanho - 1), maior) > 0)) {
+                maior = e.em(parte, tamanho - 1);
+            }
+        }
+        return maior;
+    }
+
+    // O estado 'atual' com a posição indicada; 'reordenacoesExtra' soma-se às reordenações.
+    private Estado inserir(Estado atual, int posicao, long reordenacoesExtra) {
+        boolean noFim = ultima < 0 || mensagens.comparar(posicao, ultima) > 0;
+        if (noFim) {
+            ultima = posicao;
+        }
+        int[] principal = atual.principal;
+        int[] recentes = atual.recentes;
+        int n = atual.tamanhoRecentes;
+        if (n == LIMITE_RECENTES) {
+            principal = intercalar(principal, principal.length, recentes, n);
+            recentes = new int[LIMITE_RECENTES];
+            n = 0;
+        }
+        if (n == 0 || mensagens.comparar(posicao, recentes[n - 1]) > 0) {
+            // Nenhum Estado publicado lê esta casa: pode ser escrita no array partilhado.
+            recentes[n] = posicao;
+        } else {
+            int[] copia = new int[LIMITE_RECENTES];
+            int i = primeiroMaior(recentes, n, posicao);
+            System.arraycopy(recentes, 0, copia, 0, i);
+            copia[i] = posicao;
+            System.arraycopy(recentes, i, copia, i + 1, n - i);
+            recentes = copia;
+        }
+        return new Estado(atual.base, atual.tamanhoBase, principal, recentes, n + 1,
+                atual.reordenacoes + reordenacoesExtra + (noFim ? 0 : 1), atual.substituicoes);
+    }
+
+    /**
+     * Acrescenta à ordem as posições primeira..primeira+quantidade-1, cujas mensagens já estão
+     * por ordem entre si (um lote ordenado antes de ser acrescentado à sequência).
+     */
+    void inserirOrdenadas(int primeira, int quantidade) {
+        if (quantidade <= 1) {
+            if (quantidade == 1) {
+                inserir(primeira);
+            }
+            return;
+        }
+        Estado atual = estado;
+        int ultimaDoLote = primeira + quantidade - 1;
+        boolean noFim = ultima < 0 || mensagens.comparar(primeira, ultima) > 0;
+        if (ultima < 0 || mensagens.comparar(ultimaDoLote, ultima) > 0) {
+            ultima = ultimaDoLote;
+        }
+        int[] lote = new int[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            lote[i] = primeira + i;
+        }
+        int[] principal = atual.principal;
+        int[] recentes = atual.recentes;
+        int n = atual.tamanhoRecentes;
+        if (n + quantidade <= LIMITE_RECENTES) {
+            if (n == 0 || mensagens.comparar(primeira, recentes[n - 1]) > 0) {
+                System.arraycopy(lote, 0, recentes, n, quantidade);
+            } else {
+                int[] juntas = intercalar(recentes, n, lote, quantidade);
+                recentes = new int[LIMITE_RECENTES];
+                System.arraycopy(juntas, 0, recentes, 0, juntas.length);
+            }
+            n += quantidade;
+        } else {
+            int[] juntas = intercalar(recentes, n, lote, quantidade);
+            principal = intercalar(principal, principal.length, juntas, juntas.length);
+            recentes = new int[LIMITE_RECENTES];
+            n = 0;
+        }
+        estado = new Estado(atual.base, atual.tamanhoBase, principal, recentes, n,
+                atual.reordenacoes + (noFim ? 0 : 1), atual.substituicoes);
+    }
+
+    /**
+     * Onde dividir cada parte para que as primeiras 'indice' mensagens da ordem fiquem antes da
+     * divisão: {da base, da principal, das recentes}, que somam 'indice'.
+     */
+    int[] dividir(Estado e, long indice) {
+        if (indice <= 0) {
+            return new int[3];
+        }
+        if (indice >= e.total()) {
+            return new int[]{e.tamanhoBase, e.principal.length, e.tamanhoRecentes};
+        }
+        // A mensagem de ordem 'indice' é a única com exatamente 'indice' mensagens menores do que ela.
+        for (int parte = 0; parte < 3; parte++) {
+            int baixo = 0;
+            int alto = e.tamanho(parte) - 1;
+            while (baixo <= alto) {
+                int meio = (baixo + alto) >>> 1;
+                int posicao = e.em(parte, meio);
+                long menores = meio;
+                for (int outra = 0; outra < 3; outra++) {
+                    if (outra != parte) {
+                        menores += contar(e, outra, posicao, false);
+                    }
+                }
+                if (menores == indice) {
+                    return new int[]{contar(e, 0, posicao, false), contar(e, 1, posicao, false), contar(e, 2, posicao, false)};
+                }
+                if (menores < indice) {
+                    baixo = meio + 1;
+                } else {
+                    alto = meio - 1;
+                }
+            }
+        }
+        throw new IllegalStateException("Ordem do mural inconsistente.");
+    }
+
+    // Divisão logo a seguir à mensagem da posição indicada (que pode ainda não estar em 'e').
+    int[] dividirApos(Estado e, int posicao) {
+        return new int[]{contar(e, 0, posicao, true), contar(e, 1, posicao, true), contar(e, 2, posicao, true)};
+    }
+
+    /**
+     * Até 'quantidade' posições, pela ordem, a partir da divisão indicada: intercala as três
+     * partes, por isso o custo depende só do tamanho pedido.
+     */
+    int[] posicoes(Estado e, int[] divisao, int quantidade) {
+        int a = divisao[0];
+        int b = divisao[1];
+        int c = divisao[2];
+        int restantes = e.total() - a - b - c;
+        int[] resultado = new int[Math.max(0, Math.min(quantidade, restantes))];
+        for (int k = 0; k < resultado.length; k++) {
+            int escolhida = -1;
+            int parte = -1;
+            if (a < e.tamanhoBase) {
+                escolhida = e.em(0, a);
+                parte = 0;
+            }
+            if (b < e.principal.length && (escolhida < 0 || mensagens.comparar(e.principal[b], escolhida) < 0)) {
+                escolhida = e.principal[b];
+                parte = 1;
+            }
+            if (c < e.tamanhoRecentes && (escolhida < 0 || mensagens.comparar(e.recentes[c], escolhida) < 0)) {
+                escolhida = e.recentes[c];
+                parte = 2;
+            }
+            resultado[k] = escolhida;
+            if (parte == 0) {
+                a++;
+            } else if (parte == 1) {
+                b++;
+            } else {
+                c++;
+            }
+        }
+        return resultado;
+    }
+
+    // Número de mensagens da parte com chave menor (ou menor ou igual) do que a da posição.
+    private int contar(Estado e, int parte, int posicao, boolean incluirIguais) {
+        int baixo = 0;
+        int alto = e.tamanho(parte);
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            int comparacao = mensagens.comparar(e.em(parte, meio), posicao);
+            if (comparacao < 0 || (incluirIguais && comparacao == 0)) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // Primeiro índice de a[0..n) com chave maior do que a da posição.
+    private int primeiroMaior(int[] a, int n, int posicao) {
+        int baixo = 0;
+        int alto = n;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (mensagens.comparar(a[meio], posicao) <= 0) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // Intercala duas sequências ordenadas num array novo.
+    private int[] intercalar(int[] a, int na, int[] b, int nb) {
+        int[] resultado = new int[na + nb];
+        // O prefixo de 'a' abaixo do primeiro de 'b' é copiado de uma vez: no caso normal, as
+        // mensagens de 'b' são mais recentes e vão quase todas para o fim.
+        int i = nb == 0 ? na : primeiroMaior(a, na, b[0]);
+        System.arraycopy(a, 0, resultado, 0, i);
+        int j = 0;
+        int k = i;
+        while (i < na && j < nb) {
+            resultado[k++] = mensagens.comparar(a[i], b[j]) < 0 ? a[i++] : b[j++];
+        }
+        System.arraycopy(a, i, resultado, k, na - i);
+        System.arraycopy(b, j, resultado, k + na - i, nb - j);
+        return resultado;
+    }
+
+    private boolean estaOrdenada(int n) {
+        for (int i = 1; i < n; i++) {
+            if (mensagens.comparar(i - 1, i) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ordena as posições 0..n-1 (merge sort), para os snapshots gravados por ordem de chegada.
+    private int[] ordenar(int n) {
+        int[] posicoes = new int[n];
+        for (int i = 0; i < n; i++) {
+            posicoes[i] = i;
+        }
+        int[] auxiliar = new int[n];
+        for (int largura = 1; largura < n; largura *= 2) {
+            for (int inicio = 0; inicio < n - largura; inicio += 2 * largura) {
+                int meio = inicio + largura;
+                int fim = Math.min(inicio + 2 * largura, n);
+                int a = inicio;
+                int b = meio;
+                int k = inicio;
+                while (a < meio && b < fim) {
+                    auxiliar[k++] = mensagens.comparar(posicoes[a], posicoes[b]) <= 0 ? posicoes[a++] : posicoes[b++];
+                }
+                while (a < meio) auxiliar[k++] = posicoes[a++];
+                while (b < fim) auxiliar[k++] = posicoes[b++];
+                System.arraycopy(auxiliar, inicio, posicoes, inicio, fim - inicio);
+            }
+        }
+        return posicoes;
+    }
+}
\ No newline at end of file
@@ -21,26 +21,124 @@ public class Pacote implements Serializable {
         LER_MURAL,        // Cliente pedindo a versão atual do mural
 
         // Respostas do Servidor (Nó) para o Cliente
-        LOGIN_OK,         // Resposta do nó se o login for bem-sucedido
-        LOGIN_FALHA,      // Resposta do nó se o login falhar
+        LOGIN_OK,         // Resposta do nó se o login for bem-sucedido (envia o token de sessão)
+        LOGIN_FALHA,      // Resposta do nó se o login falhar, ou se um pedido trouxer uma sessão inválida
         MURAL_ATUALIZADO, // Resposta do nó com a lista de mensagens
+        REJEITADO,        // O nó está sobrecarregado e recusou a conexão (envia o motivo)
 
         // Comunicação entre Nós (Servidores)
         REPLICAR_MSG,     // Um nó enviando uma nova mensagem para outro nó replicar
-        PEDIDO_SYNC,      // Um nó que voltou de falha pedindo as mensagens que perdeu
-        RESPOSTA_SYNC     // Um nó enviando sua lista de mensagens para sincronização
+        PEDIDO_SYNC,      // Um nó que voltou de falha pedindo as mensagens que perdeu (envia as suas marcas de água)
+        RESPOSTA_SYNC,    // Um bloco (parcial) das mensagens que faltam ao nó que pediu a sincronização
+        FIM_SYNC,         // Fim da sincronização (envia o total de mensagens transferidas)
+
+        // Anti-entropia entre Nós (comparação de árvores de Merkle)
+        PEDIDO_MERKLE,       // Pede os hashes de alguns nós da árvore (envia os índices)
+        RESPOSTA_MERKLE,     // Devolve os hashes pedidos, pela mesma ordem
+        PEDIDO_IDS_BALDES,   // Pede os IDs das mensagens de alguns baldes (envia os índices dos baldes)
+        RESPOSTA_IDS_BALDES, // Devolve os IDs pedidos
+        PEDIDO_MENSAGENS,    // Pede as mensagens com certos IDs
+        RESPOSTA_MENSAGENS,  // Devolve as mensagens pedidas que o nó tem
+
+        // Leitura paginada do mural (Cliente -> Nó), sem transferir o mural inteiro
+        LER_ULTIMAS,      // Pede as últimas N mensagens (envia N)
+        LER_PAGINA,       // Pede uma página a partir de um cursor (envia um PedidoPagina)
+        PAGINA_MURAL,     // Resposta a LER_ULTIMAS e LER_PAGINA (envia uma PaginaMural)
+
+        // Replicação em lote e confirmação de postagem
+        REPLICAR_LOTE,    // Um nó enviando várias mensagens novas de uma vez para outro nó replicar
+        POSTAGEM_OK,      // Resposta do nó a POSTAR_MENSAGEM, depois de a mensagem estar gravada localmente
+
+        // Pertença e deteção de falhas entre Nós (por UDP, ver MembrosDaRede); todos levam Rumores
+        PING,             // Sondagem direta: "estás vivo?"
+        PEDIDO_PING,      // Pede a outro nó que sonde o alvo em nome de quem pediu (sondagem indireta)
+        ACK_PING,         // Resposta a uma sondagem (direta ou indireta)
+
+        // Assinatura de um mural (ver Assinaturas): o nó responde com uma PAGINA_MURAL a partir da
+        // posição pedida e continua a enviar PAGINA_MURAL, com o mesmo id de correlação, à medida
+        // que chegam mensagens novas, enquanto a conexão estiver aberta.
+        ASSINAR,          // Pede as mensagens por ordem de chegada ao nó (envia um PedidoPagina: a seguir
+                          // à mensagem indicada, ou a partir da posição N; -1 = só as que chegarem)
+
+        // Busca no mural (Cliente -> Nó) pelos índices de termos, autor e timestamp do nó
+        BUSCAR,           // Pede uma página de resultados (envia um PedidoBusca; resposta PAGINA_MURAL)
+
+        // Termina uma assinatura sem fechar a conexão da sessão do cliente (envia o id de
+        // correlação do ASSINAR); não tem resposta.
+        CANCELAR_ASSINATURA,
+
+        // Replicação com confirmação, para as postagens com Consistencia QUORUM ou TODAS
+        REPLICAR_CONFIRMADA, // Um nó enviando uma mensagem nova e pedindo que confirme quando estiver gravada
+        REPLICA_OK           // Resposta a REPLICAR_CONFIRMADA (envia o nível de Durabilidade atingido na réplica)
     }
 
+    // Mural usado quando um pacote não indica nenhum (ex: clientes antigos).
+    public static final String MURAL_PADRAO = "geral";
+
     // O tipo do pacote, que define a intenção da comunicação.
     private final Tipo tipo;
     // O conteúdo/carga do pacote. É do tipo 'Object' para ser genérico e poder
     // carregar diferentes tipos de dados (String, Mensagem, List<Mensagem>, etc.).
     private final Object conteudo;
+    // Identificador de correlação: permite que várias requisições partilhem a mesma conexão
+    // e que cada resposta seja associada à requisição que a originou. 0 significa "sem correlação".
+    private final long idCorrelacao;
+    // Nome do mural (canal) a que o pacote se refere; null significa MURAL_PADRAO.
+    // Cada mural é guardado apenas nos nós que o anel de dispersão lhe atribui (ver AnelConsistente).
+    private final String mural;
+    // Token de sessão do cliente, emitido no LOGIN (ver no.Sessoes); null nos pacotes sem sessão.
+    // Vai em cada pedido, porque o nó verifica a autenticação pedido a pedido.
+    private final String sessao;
+    // Nível de consistência pedido pelo cliente para uma postagem ou leitura (ver Consistencia);
+    // null significa o nível configurado no nó.
+    private final Consistencia consistencia;
 
     // Construtor para criar um novo pacote com um tipo e um conteúdo.
     public Pacote(Tipo tipo, Object conteudo) {
+        this(tipo, conteudo, 0L);
+    }
+
+    // Construtor para criar um pacote associado a uma requisição (ou resposta) específica.
+    public Pacote(Tipo tipo, Object conteudo, long idCorrelacao) {
+        this(tipo, conteudo, idCorrelacao, null);
+    }
+
+    // Construtor para criar um pacote dirigido a um mural específico.
+    public Pacote(Tipo tipo, Object conteudo, long idCorrelacao, String mural) {
+        this(tipo, conteudo, idCorrelacao, mural, null);
+    }
+
+    // Construtor para criar um pedido de um cliente com sessão iniciada.
+    public Pacote(Tipo tipo, Object conteudo, long idCorrelacao, String mural, String sessao) {
+        this(tipo, conteudo, idCorrelacao, mural, sessao, null);
+    }
+
+    // Construtor para criar um pedido de um cliente com um nível de consistência próprio.
+    public Pacote(Tipo tipo, Object conteudo, long idCorrelacao, String mural, String sessao, Consistencia consistencia) {
         this.tipo = tipo;
         this.conteudo = conteudo;
+        this.idCorrelacao = idCorrelacao;
+        this.mural = MURAL_PADRAO.equals(mural) ? null : mural;
+        this.sessao = sessao;
+        this.consistencia = consistencia;
+    }
+
+    /**
+     * Verifica se um nome pode ser usado como mural: de 1 a 64 letras, dígitos, '_' ou '-'.
+     * O nome faz parte do nome dos ficheiros do mural em disco, por isso não pode ter mais nada.
+     */
+    public static boolean nomeDeMuralValido(String nome) {
+        if (nome == null || nome.isEmpty() || nome.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < nome.length(); i++) {
+            char c = nome.charAt(i);
+            boolean valido = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+            if (!valido) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // Getter para obter o tipo do pacote.
@@ -52,4 +150,24 @@ public class Pacote implements Serializable {
     public Object getConteudo() {
         return conteudo;
     }
+
+    // Getter para obter o identificador de correlação do pacote.
+    public long getIdCorrelacao() {
+        return idCorrelacao;
+    }
+
+    // Getter para obter o nome do mural do pacote (nunca null).
+    public String getMural() {
+        return mural != null ? mural : MURAL_PADRAO;
+    }
+
+    // Getter para obter o token de sessão do pacote (null se não tiver).
+    public String getSessao() {
+        return sessao;
+    }
+
+    // Getter para obter o nível de consistência pedido (null se o pacote não indicar nenhum).
+    public Consistencia getConsistencia() {
+        return consistencia;
+    }
 }
\ No newline at end of file
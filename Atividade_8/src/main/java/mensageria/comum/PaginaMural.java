@@ -0,0 +1,39 @@
+package mensageria.comum;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Resposta a LER_ULTIMAS e LER_PAGINA: um troço do mural, pela ordem de inserção,
+ * e o cursor a usar para continuar a leitura a partir daí.
+ */
+public class PaginaMural implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Cursor devolvido quando a mensagem indicada no pedido não existe neste nó.
+    public static final long CURSOR_DESCONHECIDO = -1;
+
+    private final List<Mensagem> mensagens;
+    private final long proximoCursor;
+    private final long total;
+
+    public PaginaMural(List<Mensagem> mensagens, long proximoCursor, long total) {
+        this.mensagens = mensagens;
+        this.proximoCursor = proximoCursor;
+        this.total = total;
+    }
+
+    public List<Mensagem> getMensagens() {
+        return mensagens;
+    }
+
+    // Posição da primeira mensagem que ficou de fora; é o 'inicio' do pedido seguinte.
+    public long getProximoCursor() {
+        return proximoCursor;
+    }
+
+    // Número de mensagens no mural do nó quando a página foi lida.
+    public long getTotal() {
+        return total;
+    }
+}
\ No newline at end of file
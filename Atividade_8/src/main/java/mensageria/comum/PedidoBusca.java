@@ -0,0 +1,68 @@
+package mensageria.comum;
+
+import java.io.Serializable;
+
+/**
+ * Conteúdo de um pacote BUSCAR: que mensagens procurar no mural e que página de resultados trazer.
+ *
+ * Uma mensagem é um resultado se tiver todos os termos pedidos no conteúdo (sem distinguir
+ * maiúsculas nem acentos), se for do autor pedido e se o seu timestamp estiver no intervalo
+ * [desde, ate]; os critérios não indicados não filtram nada, mas é preciso indicar pelo menos um.
+ *
+ * Os resultados vêm numa PaginaMural, por ordem de posição no mural do nó. Para a página
+ * seguinte, repete-se o pedido com 'inicio' igual ao 'proximoCursor' da página recebida; uma
+ * página com menos resultados do que os pedidos é a última.
+ */
+public class PedidoBusca implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String termos;  // Texto com os termos a procurar ("" para nenhum).
+    private final String autor;   // "" para qualquer autor.
+    private final long desde;     // Timestamps em milissegundos; 0 significa sem limite.
+    private final long ate;
+    private final long inicio;
+    private final int tamanho;
+
+    public PedidoBusca(String termos, String autor, long desde, long ate, long inicio, int tamanho) {
+        this.termos = termos == null ? "" : termos;
+        this.autor = autor == null ? "" : autor;
+        this.desde = desde;
+        this.ate = ate;
+        this.inicio = inicio;
+        this.tamanho = tamanho;
+    }
+
+    // O mesmo pedido, a continuar a partir da posição indicada (tipicamente o proximoCursor).
+    public PedidoBusca aPartirDe(long inicio) {
+        return new PedidoBusca(termos, autor, desde, ate, inicio, tamanho);
+    }
+
+    // Verdadeiro se o pedido tem pelo menos um critério (termos, autor ou intervalo de tempo).
+    public boolean temCriterios() {
+        return !IndiceBusca.termos(termos).isEmpty() || !autor.trim().isEmpty() || desde > 0 || ate > 0;
+    }
+
+    public String getTermos() {
+        return termos;
+    }
+
+    public String getAutor() {
+        return autor;
+    }
+
+    public long getDesde() {
+        return desde;
+    }
+
+    public long getAte() {
+        return ate;
+    }
+
+    public long getInicio() {
+        return inicio;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package mensageria.comum;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Conteúdo de um pacote LER_PAGINA (ou ASSINAR): de onde começar a ler o mural e quantas
+ * mensagens trazer.
+ *
+ * O cursor pode ser dado de duas formas:
+ * - uma posição na ordem total do mural (0 é a primeira mensagem), tipicamente o
+ *   'proximoCursor' devolvido na página anterior; é a mesma em todos os nós que tenham as
+ *   mesmas mensagens (no ASSINAR é a posição pela ordem de chegada ao nó);
+ * - o ID de uma mensagem: a página começa logo a seguir a ela. Ao contrário da posição,
+ *   o ID tem o mesmo significado em qualquer nó, mesmo que lhes faltem mensagens diferentes.
+ */
+public class PedidoPagina implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final UUID aposMensagem; // null quando o cursor é uma posição.
+    private final long inicio;
+    private final int tamanho;
+
+    // Pede 'tamanho' mensagens a partir da posição 'inicio' do mural.
+    public PedidoPagina(long inicio, int tamanho) {
+        this(null, inicio, tamanho);
+    }
+
+    // Pede 'tamanho' mensagens a seguir à mensagem com o ID indicado.
+    public PedidoPagina(UUID aposMensagem, int tamanho) {
+        this(aposMensagem, 0, tamanho);
+    }
+
+    PedidoPagina(UUID aposMensagem, long inicio, int tamanho) {
+        this.aposMensagem = aposMensagem;
+        this.inicio = inicio;
+        this.tamanho = tamanho;
+    }
+
+    public UUID getAposMensagem() {
+        return aposMensagem;
+    }
+
+    public long getInicio() {
+        return inicio;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package mensageria.comum;
+
+import java.util.Arrays;
+
+/**
+ * Posições de mensagens na SequenciaMensagens, ordenadas por uma chave (ex: a sequência de
+ * origem), em arrays primitivos: substitui um TreeMap<Long, Mensagem> sem um objeto por entrada.
+ *
+ * Acrescentar por ordem crescente da chave (o caso normal) custa O(1); uma chave fora de
+ * ordem é inserida no lugar certo. Não é thread-safe; o Mural sincroniza o acesso.
+ */
+final class PosicoesOrdenadas {
+
+    private long[] chaves = new long[4];
+    private int[] posicoes = new int[4];
+    private int tamanho;
+
+    void inserir(long chave, int posicao) {
+        if (tamanho == chaves.length) {
+            chaves = Arrays.copyOf(chaves, tamanho * 2);
+            posicoes = Arrays.copyOf(posicoes, tamanho * 2);
+        }
+        int i = tamanho == 0 || chaves[tamanho - 1] <= chave ? tamanho : primeiraAcima(chave);
+        System.arraycopy(chaves, i, chaves, i + 1, tamanho - i);
+        System.arraycopy(posicoes, i, posicoes, i + 1, tamanho - i);
+        chaves[i] = chave;
+        posicoes[i] = posicao;
+        tamanho++;
+    }
+
+    boolean contem(long chave) {
+        int i = primeiraAcima(chave - 1);
+        return i < tamanho && chaves[i] == chave;
+    }
+
+    // Maior chave guardada, ou 0 se estiver vazio.
+    long ultimaChave() {
+        return tamanho == 0 ? 0 : chaves[tamanho - 1];
+    }
+
+    // Índice da primeira entrada com chave maior do que a indicada (tamanho() se não houver).
+    int primeiraAcima(long chave) {
+        int baixo = 0;
+        int alto = tamanho;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (chaves[meio] <= chave) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    int posicao(int indice) {
+        return posicoes[indice];
+    }
+
+    int tamanho() {
+        return tamanho;
+    }
+}
\ No newline at end of file
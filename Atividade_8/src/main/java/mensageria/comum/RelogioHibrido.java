@@ -0,0 +1,49 @@
+package mensageria.comum;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relógio lógico híbrido (HLC) de um nó: dá a cada mensagem aceite um carimbo que segue o relógio
+ * físico, mas que nunca anda para trás e é sempre maior do que o de qualquer mensagem que o nó já
+ * tenha visto (de clientes ou de outros nós). Assim, uma mensagem postada depois de outra ter
+ * chegado ao nó fica sempre depois dela na ordem do mural (ver Mensagem.ORDEM_TOTAL), mesmo que o
+ * relógio deste nó esteja atrasado em relação ao do nó que aceitou a primeira.
+ *
+ * O carimbo é um único long: os milissegundos do relógio físico nos bits altos e um contador
+ * lógico nos BITS_LOGICOS baixos, que desempata os carimbos do mesmo milissegundo. Comparar dois
+ * carimbos é comparar os dois números.
+ *
+ * Um carimbo recebido que esteja mais de DESVIO_MAXIMO_MS à frente do relógio físico não faz o
+ * relógio avançar: um nó (ou cliente) com o relógio muito adiantado não arrasta os outros.
+ */
+public final class RelogioHibrido {
+
+    public static final int BITS_LOGICOS = 16;
+    private static final long DESVIO_MAXIMO_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private long ultimo;
+
+    // Carimbo para uma mensagem nova: maior do que todos os anteriores deste relógio.
+    public synchronized long agora() {
+        ultimo = Math.max(ultimo + 1, deTimestamp(System.currentTimeMillis()));
+        return ultimo;
+    }
+
+    // Regista um carimbo visto noutra mensagem; os carimbos seguintes serão maiores do que ele.
+    public synchronized void receber(long carimbo) {
+        if (fisico(carimbo) - System.currentTimeMillis() > DESVIO_MAXIMO_MS) {
+            return;
+        }
+        ultimo = Math.max(ultimo, carimbo);
+    }
+
+    // Carimbo equivalente a um timestamp físico, para mensagens gravadas antes de existir o HLC.
+    public static long deTimestamp(long timestampMs) {
+        return timestampMs << BITS_LOGICOS;
+    }
+
+    // Parte física do carimbo, em milissegundos.
+    public static long fisico(long carimbo) {
+        return carimbo >>> BITS_LOGICOS;
+    }
+}
\ No newline at end of file
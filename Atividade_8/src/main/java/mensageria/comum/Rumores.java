@@ -0,0 +1,32 @@
+package mensageria.comum;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Conteúdo dos pacotes do protocolo de pertença (PING, PEDIDO_PING e ACK_PING).
+ *
+ * Além da sondagem em si, cada pacote leva "à boleia" alguns registos de membros que mudaram
+ * há pouco; é assim que as mudanças se espalham pela rede sem mensagens próprias. O primeiro
+ * registo é sempre o do nó que envia o pacote.
+ */
+public class Rumores implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Nó a sondar em nome de quem enviou um PEDIDO_PING (0 nos outros pacotes).
+    private final int alvo;
+    private final List<Membro> membros;
+
+    public Rumores(int alvo, List<Membro> membros) {
+        this.alvo = alvo;
+        this.membros = membros;
+    }
+
+    public int getAlvo() {
+        return alvo;
+    }
+
+    public List<Membro> getMembros() {
+        return membros;
+    }
+}
\ No newline at end of file
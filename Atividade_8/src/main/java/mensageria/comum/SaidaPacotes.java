@@ -0,0 +1,31 @@
+package mensageria.comum;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destino para onde um nó escreve as respostas a uma requisição.
+ * Permite que a mesma lógica de tratamento sirva tanto o transporte bloqueante
+ * (CanalPacotes sobre um Socket) como o transporte NIO do nó.
+ */
+public interface SaidaPacotes extends Closeable {
+
+    /**
+     * Escreve um pacote, sem garantir que já saiu pela rede.
+     * @return O número de bytes que o pacote ocupa na conexão (quadro incluído).
+     */
+    int escrever(Pacote pacote) throws IOException;
+
+    // Envia pela rede tudo o que foi escrito até agora.
+    void descarregar() throws IOException;
+
+    /**
+     * Escreve e envia um pacote sem nunca bloquear quem chama, desde que a conexão não tenha já
+     * mais de 'limiteBytes' por enviar. Usado para empurrar mensagens aos assinantes de um mural:
+     * um cliente que não lê não pode atrasar a distribuição aos outros (ver Assinaturas).
+     * @return false se o pacote não foi escrito por a conexão estar acima do limite.
+     */
+    boolean tentarEnviar(Pacote pacote, long limiteBytes) throws IOException;
+
+    boolean isAberta();
+}
\ No newline at end of file
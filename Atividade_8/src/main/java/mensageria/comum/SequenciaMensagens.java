@@ -0,0 +1,360 @@
+package mensageria.comum;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.UUID;
+
+/**
+ * Sequência de mensagens só de acréscimo, guardada em colunas compactas.
+ *
+ * Em vez de um objeto Mensagem (com um UUID e duas Strings) por mensagem, cada bloco de
+ * TAMANHO_BLOCO mensagens guarda os campos em arrays primitivos: o ID em dois long, o autor
+ * como um número no dicionário de autores (há poucos autores e muitas mensagens), e o
+ * conteúdo em UTF-8 dentro de placas de bytes partilhadas. O índice por ID é uma tabela de
+ * endereçamento aberto com int[] (sem UUID nem Integer por entrada). A Mensagem só é
+ * construída quando alguém a lê, por isso a API do Mural não muda.
+ *
+ * As posições já publicadas nunca mudam, por isso um leitor pode fixar o tamanho atual e
+ * obter uma vista imutável do mural sem trancas e sem copiar nada (ver 'instantaneo').
+ * Um único escritor de cada vez (o Mural acrescenta sob o seu monitor) escreve as colunas
+ * e só depois publica o novo tamanho no campo volátil; o leitor lê o tamanho primeiro,
+ * o que lhe garante ver todos os elementos abaixo dele.
+ *
+ * As primeiras posições podem vir de um SnapshotColunar ('base'): essas mensagens não são
+ * copiadas para os blocos, são lidas do snapshot (e descodificadas) quando alguém as pede.
+ * Os blocos guardam só as mensagens acrescentadas depois dele.
+ *
+ * Uma mensagem pode ter mais do que uma posição: outra cópia dela, com outro carimbo de
+ * origem, é acrescentada como uma cópia (ver acrescentarCopia e Mural.juntarMensagem). O
+ * índice por ID aponta só para a cópia que vale; as outras continuam a ser lidas pela posição.
+ */
+final class SequenciaMensagens {
+
+    private static final int BITS_BLOCO = 12;
+    private static final int TAMANHO_BLOCO = 1 << BITS_BLOCO;
+    private static final int MASCARA_BLOCO = TAMANHO_BLOCO - 1;
+    // Tamanho de cada placa de bytes onde são guardados os conteúdos (1 MB).
+    private static final int TAMANHO_PLACA = 1 << 20;
+
+    // O que é a mensagem de cada posição (coluna 'copia'): a primeira com o seu ID, ou outra
+    // cópia que chegou depois e que passou a valer no índice por ID, ou que ficou sem valer.
+    private static final byte PRIMEIRA = 0;
+    private static final byte COPIA_QUE_VALE = 1;
+    private static final byte COPIA_QUE_NAO_VALE = 2;
+
+    // Colunas de TAMANHO_BLOCO mensagens.
+    private static final class Bloco {
+        final long[] msb = new long[TAMANHO_BLOCO];
+        final long[] lsb = new long[TAMANHO_BLOCO];
+        final long[] timestamp = new long[TAMANHO_BLOCO];
+        final long[] sequencia = new long[TAMANHO_BLOCO];
+        final long[] hlc = new long[TAMANHO_BLOCO];
+        final int[] origem = new int[TAMANHO_BLOCO];
+        final int[] autor = new int[TAMANHO_BLOCO];
+        // Onde está o conteúdo: (número da placa << 32) | deslocamento dentro dela.
+        final long[] conteudo = new long[TAMANHO_BLOCO];
+        final int[] tamanhoConteudo = new int[TAMANHO_BLOCO];
+        final byte[] copia = new byte[TAMANHO_BLOCO];
+    }
+
+    // Diretórios de blocos, de placas e de autores: são substituídos por maiores (nunca
+    // alterados no lugar nas posições já publicadas) quando enchem.
+    private volatile Bloco[] blocos = new Bloco[16];
+    private volatile byte[][] placas = new byte[16][];
+    private volatile String[] autores = new String[16];
+    // Índice por ID: posição relativa + 1 de cada mensagem dos blocos (0 = vazio).
+    private volatile int[] indice = new int[1024];
+    private volatile int tamanho;
+
+    private final SnapshotColunar base;
+    private final int tamanhoBase;
+
+    // Estado do escritor.
+    private final Map<String, Integer> numeroDoAutor = new HashMap<>();
+    private int numeroAutores;
+    private int placaAtual = -1;
+    private int ocupadoPlacaAtual;
+
+    SequenciaMensagens(SnapshotColunar base) {
+        this.base = base;
+        this.tamanhoBase = base.tamanho();
+        this.tamanho = tamanhoBase;
+    }
+
+    /**
+     * Acrescenta uma mensagem (que ainda não esteja na sequência).
+     * Só pode ser chamado por um escritor de cada vez.
+     * @return A posição da mensagem.
+     */
+    int acrescentar(Mensagem mensagem) {
+        return acrescentar(mensagem, PRIMEIRA);
+    }
+
+    /**
+     * Acrescenta outra cópia de uma mensagem que já está na sequência. Se 'passaAValer', o
+     * índice por ID passa a apontar para ela; senão, só é encontrada pela posição.
+     * Só pode ser chamado por um escritor de cada vez.
+     * @return A posição da cópia.
+     */
+    int acrescentarCopia(Mensagem mensagem, boolean passaAValer) {
+        return acrescentar(mensagem, passaAValer ? COPIA_QUE_VALE : COPIA_QUE_NAO_VALE);
+    }
+
+    private int acrescentar(Mensagem mensagem, byte copia) {
+        int n = tamanho - tamanhoBase;
+        int numeroBloco = n >>> BITS_BLOCO;
+        Bloco[] atuais = blocos;
+        if (numeroBloco == atuais.length) {
+            atuais = Arrays.copyOf(atuais, atuais.length * 2);
+            blocos = atuais;
+        }
+        if (atuais[numeroBloco] == null) {
+            atuais[numeroBloco] = new Bloco();
+        }
+        Bloco bloco = atuais[numeroBloco];
+        int i = n & MASCARA_BLOCO;
+        UUID id = mensagem.getId();
+        bloco.msb[i] = id.getMostSignificantBits();
+        bloco.lsb[i] = id.getLeastSignificantBits();
+        bloco.timestamp[i] = mensagem.getTimestamp();
+        bloco.sequencia[i] = mensagem.getSequencia();
+        bloco.hlc[i] = mensagem.getHlc();
+        bloco.origem[i] = mensagem.getOrigem();
+        bloco.autor[i] = numeroDoAutor(mensagem.getAutor());
+        byte[] conteudo = mensagem.getConteudo().getBytes(StandardCharsets.UTF_8);
+        bloco.conteudo[i] = guardarConteudo(conteudo);
+        bloco.tamanhoConteudo[i] = conteudo.length;
+        bloco.copia[i] = copia;
+        tamanho = tamanhoBase + n + 1; // Publica a mensagem aos leitores.
+
+        // O índice é atualizado depois de publicar, para que quem encontra a posição no
+        // índice a encontre também nas colunas.
+        indexarId(n);
+        return tamanhoBase + n;
+    }
+
+    private int numeroDoAutor(String autor) {
+        Integer numero = numeroDoAutor.get(autor);
+        if (numero != null) {
+            return numero;
+        }
+        String[] atuais = autores;
+        if (numeroAutores == atuais.length) {
+            atuais = Arrays.copyOf(atuais, atuais.length * 2);
+        }
+        atuais[numeroAutores] = autor;
+        autores = atuais;
+        numeroDoAutor.put(autor, numeroAutores);
+        return numeroAutores++;
+    }
+
+    // Copia o conteúdo para a placa atual (ou para uma nova, se não couber) e devolve onde ficou.
+    private long guardarConteudo(byte[] conteudo) {
+        byte[][] atuais = placas;
+        if (placaAtual < 0 || ocupadoPlacaAtual + conteudo.length > atuais[placaAtual].length) {
+            placaAtual++;
+            if (placaAtual == atuais.length) {
+                atuais = Arrays.copyOf(atuais, atuais.length * 2);
+            }
+            // Um conteúdo maior do que uma placa fica numa placa só para ele.
+            atuais[placaAtual] = new byte[Math.max(TAMANHO_PLACA, conteudo.length)];
+            placas = atuais;
+            ocupadoPlacaAtual = 0;
+        }
+        System.arraycopy(conteudo, 0, atuais[placaAtual], ocupadoPlacaAtual, conteudo.length);
+        long referencia = ((long) placaAtual << 32) | ocupadoPlacaAtual;
+        ocupadoPlacaAtual += conteudo.length;
+        return referencia;
+    }
+
+    int tamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Posição da mensagem com o ID indicado (no snapshot ou nos blocos), ou -1 se não existir.
+     * Não usa trancas; uma mensagem a ser acrescentada neste momento pode ainda não ser encontrada.
+     */
+    int posicaoDe(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        // O tamanho é lido antes da tabela e dos blocos: as posições abaixo dele estão completas.
+        int publicadas = tamanho - tamanhoBase;
+        int[] tabela = indice;
+        Bloco[] atuais = blocos;
+        int mascara = tabela.length - 1;
+        for (int slot = dispersar(msb, lsb) & mascara; ; slot = (slot + 1) & mascara) {
+            int n = tabela[slot] - 1;
+            if (n < 0) {
+                break;
+            }
+            if (n < publicadas) {
+                Bloco bloco = atuais[n >>> BITS_BLOCO];
+                int i = n & MASCARA_BLOCO;
+                if (bloco.msb[i] == msb && bloco.lsb[i] == lsb) {
+                    return tamanhoBase + n;
+                }
+            }
+        }
+        return base.posicaoDe(id);
+    }
+
+    // Verdadeiro se a posição é de outra cópia de uma mensagem que já tinha uma posição antes.
+    boolean isCopia(int posicao) {
+        if (posicao < tamanhoBase) {
+            return false;
+        }
+        int n = posicao - tamanhoBase;
+        return blocos[n >>> BITS_BLOCO].copia[n & MASCARA_BLOCO] != PRIMEIRA;
+    }
+
+    // ID da mensagem numa posição posterior ao snapshot, sem construir a Mensagem.
+    UUID idEm(int posicao) {
+        int n = posicao - tamanhoBase;
+        Bloco bloco = blocos[n >>> BITS_BLOCO];
+        return new UUID(bloco.msb[n & MASCARA_BLOCO], bloco.lsb[n & MASCARA_BLOCO]);
+    }
+
+    /**
+     * Compara a mensagem da posição 'posicao' (já publicada, no snapshot ou nos blocos) com a
+     * chave indicada, pela Mensagem.ORDEM_TOTAL, sem construir a Mensagem.
+     */
+    int compararCom(int posicao, long hlc, int origem, long msb, long lsb) {
+        if (posicao < tamanhoBase) {
+            return Mensagem.comparar(base.hlc(posicao), base.origem(posicao), base.msb(posicao), base.lsb(posicao),
+                    hlc, origem, msb, lsb);
+        }
+        int n = posicao - tamanhoBase;
+        Bloco bloco = blocos[n >>> BITS_BLOCO];
+        int i = n & MASCARA_BLOCO;
+        return Mensagem.comparar(bloco.hlc[i], bloco.origem[i], bloco.msb[i], bloco.lsb[i], hlc, origem, msb, lsb);
+    }
+
+    // Compara as mensagens de duas posições já publicadas pela Mensagem.ORDEM_TOTAL.
+    int comparar(int posicaoA, int posicaoB) {
+        if (posicaoB < tamanhoBase) {
+            return compararCom(posicaoA, base.hlc(posicaoB), base.origem(posicaoB), base.msb(posicaoB), base.lsb(posicaoB));
+        }
+        int n = posicaoB - tamanhoBase;
+        Bloco bloco = blocos[n >>> BITS_BLOCO];
+        int i = n & MASCARA_BLOCO;
+        return compararCom(posicaoA, bloco.hlc[i], bloco.origem[i], bloco.msb[i], bloco.lsb[i]);
+    }
+
+    // Carimbo HLC da mensagem de uma posição já publicada.
+    long hlcEm(int posicao) {
+        if (posicao < tamanhoBase) {
+            return base.hlc(posicao);
+        }
+        int n = posicao - tamanhoBase;
+        return blocos[n >>> BITS_BLOCO].hlc[n & MASCARA_BLOCO];
+    }
+
+    // Só o escritor: insere a posição relativa 'n' na tabela, que cresce a metade da ocupação.
+    private void indexarId(int n) {
+        int[] tabela = indice;
+        Bloco[] atuais = blocos;
+        if (2 * (n + 1) > tabela.length) {
+            tabela = new int[tabela.length * 2];
+            // Pela ordem das posições, para que cada cópia que passou a valer substitua a anterior.
+            for (int j = 0; j <= n; j++) {
+                indexarEm(tabela, atuais, j);
+            }
+            indice = tabela; // Publica a tabela nova já completa.
+            return;
+        }
+        indexarEm(tabela, atuais, n);
+    }
+
+    private static void indexarEm(int[] tabela, Bloco[] atuais, int n) {
+        Bloco bloco = atuais[n >>> BITS_BLOCO];
+        int i = n & MASCARA_BLOCO;
+        if (bloco.copia[i] == COPIA_QUE_NAO_VALE) {
+            return;
+        }
+        long msb = bloco.msb[i];
+        long lsb = bloco.lsb[i];
+        int mascara = tabela.length - 1;
+        int slot = dispersar(msb, lsb) & mascara;
+        while (tabela[slot] != 0) {
+            // Uma cópia que passa a valer fica no lugar da anterior (se esta não é do snapshot).
+            // Quem lê a tabela entretanto encontra uma ou outra, e as duas têm este ID.
+            int outra = tabela[slot] - 1;
+            if (bloco.copia[i] == COPIA_QUE_VALE && atuais[outra >>> BITS_BLOCO].msb[outra & MASCARA_BLOCO] == msb
+                    && atuais[outra >>> BITS_BLOCO].lsb[outra & MASCARA_BLOCO] == lsb) {
+                break;
+            }
+            slot = (slot + 1) & mascara;
+        }
+        tabela[slot] = n + 1;
+    }
+
+    private static int dispersar(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Vista imutável das mensagens acrescentadas até agora, pela ordem de inserção.
+     * Custa O(1): acréscimos posteriores não aparecem nela.
+     */
+    List<Mensagem> instantaneo() {
+        int n = tamanho;
+        return new Instantaneo(base, blocos, placas, autores, n);
+    }
+
+    private static final class Instantaneo extends AbstractList<Mensagem> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final transient SnapshotColunar base;
+        private final transient Bloco[] blocos;
+        private final transient byte[][] placas;
+        private final transient String[] autores;
+        private final int tamanho;
+
+        Instantaneo(SnapshotColunar base, Bloco[] blocos, byte[][] placas, String[] autores, int tamanho) {
+            this.base = base;
+            this.blocos = blocos;
+            this.placas = placas;
+            this.autores = autores;
+            this.tamanho = tamanho;
+        }
+
+        // Constrói a Mensagem a partir das colunas (ou do snapshot) de cada vez que é pedida.
+        @Override
+        public Mensagem get(int indice) {
+            if (indice < 0 || indice >= tamanho) {
+                throw new IndexOutOfBoundsException("Índice: " + indice + ", tamanho: " + tamanho);
+            }
+            int tamanhoBase = base.tamanho();
+            if (indice < tamanhoBase) {
+                return base.mensagem(indice);
+            }
+            int n = indice - tamanhoBase;
+            Bloco bloco = blocos[n >>> BITS_BLOCO];
+            int i = n & MASCARA_BLOCO;
+            long referencia = bloco.conteudo[i];
+            String conteudo = new String(placas[(int) (referencia >>> 32)], (int) referencia,
+                    bloco.tamanhoConteudo[i], StandardCharsets.UTF_8);
+            return new Mensagem(new UUID(bloco.msb[i], bloco.lsb[i]), autores[bloco.autor[i]], conteudo,
+                    bloco.timestamp[i], bloco.origem[i], bloco.sequencia[i], bloco.hlc[i]);
+        }
+
+        @Override
+        public int size() {
+            return tamanho;
+        }
+
+        // Quando serializada (ex: pelo CodecJava) viaja como uma lista comum.
+        private Object writeReplace() {
+            return new ArrayList<>(this);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,414 @@
+package mensageria.comum;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Snapshot do mural em formato colunar, lido diretamente do ficheiro mapeado em memória.
+ *
+ * Em vez de desserializar o grafo de objetos inteiro antes de o nó poder responder, o
+ * ficheiro é mapeado (MappedByteBuffer) e cada Mensagem só é construída quando alguém a lê.
+ * Ao abrir, só se percorrem as colunas de tamanho fixo (IDs e sequências) para montar a
+ * árvore de Merkle e as marcas de água, sem criar objetos por mensagem.
+ *
+ * Formato (big-endian), com n mensagens pela ordem em que foram gravadas (a ordem total do
+ * mural, ver Mensagem.ORDEM_TOTAL, desde a versão 2):
+ * - Cabeçalho (32 bytes): [long MAGIA][int versão][int n][int tamanho dos textos][12 bytes a zero]
+ * - Colunas fixas: long msb[n], long lsb[n], long timestamp[n], long sequência[n], long hlc[n],
+ *   int origem[n] (a versão 1 não tem a coluna hlc; o carimbo é então o do timestamp)
+ * - Textos: int deslocamento[2n+1]; o autor da mensagem i ocupa [d[2i], d[2i+1]) e o conteúdo
+ *   [d[2i+1], d[2i+2]) na zona de textos (UTF-8)
+ * - Índice por ID: int posição[n], ordenado pelo UUID (sem sinal), para procurar por ID em
+ *   O(log n); como o balde da árvore de Merkle são os bits mais altos do ID, as mensagens de
+ *   cada balde ficam também seguidas neste índice
+ * - Índice por origem: int posição[n], ordenado por (origem, sequência), para as marcas de
+ *   água e para responder a sincronizações
+ * - Zona de textos: bytes UTF-8
+ *
+ * O ficheiro é mapeado de uma só vez, por isso está limitado a 2 GB.
+ * Um SnapshotColunar só é lido depois de aberto, e pode ser partilhado por várias threads.
+ */
+public final class SnapshotColunar {
+
+    private static final long MAGIA = 0x4D5552414C434F4CL; // "MURALCOL"
+    private static final int VERSAO = 2;
+    private static final int VERSAO_SEM_HLC = 1;
+    private static final int TAMANHO_CABECALHO = 32;
+
+    private static final SnapshotColunar VAZIO = new SnapshotColunar();
+
+    private final ByteBuffer dados;
+    private final int n;
+    private final int colunaMsb;
+    private final int colunaLsb;
+    private final int colunaTimestamp;
+    private final int colunaSequencia;
+    private final int colunaHlc; // -1 na versão 1.
+    private final int colunaOrigem;
+    private final int colunaTextos;
+    private final int indicePorId;
+    private final int indicePorOrigem;
+    private final int zonaTextos;
+
+    // Calculados ao abrir, a partir do índice por origem.
+    // Origem -> {início, fim} da sua faixa no índice por origem (a origem 0 são as mensagens sem carimbo).
+    private final Map<Integer, int[]> faixaPorOrigem = new HashMap<>();
+    private final Map<Integer, Long> marcasDeAgua = new HashMap<>();
+
+    private SnapshotColunar() {
+        this(ByteBuffer.allocate(0), 0, VERSAO);
+    }
+
+    private SnapshotColunar(ByteBuffer dados, int n, int versao) {
+        this.dados = dados;
+        this.n = n;
+        this.colunaMsb = TAMANHO_CABECALHO;
+        this.colunaLsb = colunaMsb + 8 * n;
+        this.colunaTimestamp = colunaLsb + 8 * n;
+        this.colunaSequencia = colunaTimestamp + 8 * n;
+        this.colunaHlc = versao == VERSAO_SEM_HLC ? -1 : colunaSequencia + 8 * n;
+        this.colunaOrigem = colunaSequencia + (versao == VERSAO_SEM_HLC ? 8 * n : 16 * n);
+        this.colunaTextos = colunaOrigem + 4 * n;
+        this.indicePorId = colunaTextos + 4 * (2 * n + 1);
+        this.indicePorOrigem = indicePorId + 4 * n;
+        this.zonaTextos = indicePorOrigem + 4 * n;
+    }
+
+    // Snapshot sem mensagens, usado por um mural que começa do zero.
+    public static SnapshotColunar vazio() {
+        return VAZIO;
+    }
+
+    /**
+     * Mapeia o ficheiro e valida o cabeçalho e o tamanho.
+     * @throws IOException se o ficheiro não for um snapshot colunar completo.
+     */
+    public static SnapshotColunar abrir(File arquivo) throws IOException {
+        MappedByteBuffer mapa;
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "r"); FileChannel canal = raf.getChannel()) {
+            long tamanho = canal.size();
+            if (tamanho < TAMANHO_CABECALHO || tamanho > Integer.MAX_VALUE) {
+                throw new IOException("Tamanho de snapshot inválido: " + tamanho);
+            }
+            // O mapeamento continua válido depois de o canal ser fechado.
+            mapa = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+        }
+        if (mapa.getLong(0) != MAGIA) {
+            throw new IOException("Ficheiro não é um snapshot colunar: " + arquivo.getName());
+        }
+        int versao = mapa.getInt(8);
+        if (versao != VERSAO && versao != VERSAO_SEM_HLC) {
+            throw new IOException("Versão de snapshot desconhecida: " + versao);
+        }
+        int n = mapa.getInt(12);
+        int tamanhoTextos = mapa.getInt(16);
+        long esperado = tamanhoTotal(n, tamanhoTextos, versao);
+        if (n < 0 || tamanhoTextos < 0 || esperado != mapa.capacity()) {
+            throw new IOException("Snapshot incompleto: " + arquivo.getName());
+        }
+        SnapshotColunar snapshot = new SnapshotColunar(mapa, n, versao);
+        snapshot.calcularOrigens();
+        return snapshot;
+    }
+
+    private static long tamanhoTotal(long n, long tamanhoTextos, int versao) {
+        long colunasFixas = versao == VERSAO_SEM_HLC ? 36 * n : 44 * n;
+        return TAMANHO_CABECALHO + colunasFixas + 4 * (2 * n + 1) + 8 * n + tamanhoTextos;
+    }
+
+    public int tamanho() {
+        return n;
+    }
+
+    // Constrói a mensagem da posição indicada a partir das colunas.
+    public Mensagem mensagem(int posicao) {
+        UUID id = new UUID(msb(posicao), lsb(posicao));
+        String autor = texto(2 * posicao);
+        String conteudo = texto(2 * posicao + 1);
+        return new Mensagem(id, autor, conteudo, timestamp(posicao), origem(posicao), sequencia(posicao), hlc(posicao));
+    }
+
+    private String texto(int indice) {
+        int inicio = dados.getInt(colunaTextos + 4 * indice);
+        int fim = dados.getInt(colunaTextos + 4 * (indice + 1));
+        byte[] bytes = new byte[fim - inicio];
+        // Cópia com posição própria: o buffer partilhado nunca tem a posição alterada.
+        ByteBuffer leitura = dados.duplicate();
+        leitura.position(zonaTextos + inicio);
+        leitura.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Os campos da chave de ordenação (ver OrdemMural) são lidos diretamente das colunas.
+    long msb(int posicao) {
+        return dados.getLong(colunaMsb + 8 * posicao);
+    }
+
+    long lsb(int posicao) {
+        return dados.getLong(colunaLsb + 8 * posicao);
+    }
+
+    int origem(int posicao) {
+        return dados.getInt(colunaOrigem + 4 * posicao);
+    }
+
+    long hlc(int posicao) {
+        return colunaHlc < 0 ? RelogioHibrido.deTimestamp(timestamp(posicao)) : dados.getLong(colunaHlc + 8 * posicao);
+    }
+
+    private long timestamp(int posicao) {
+        return dados.getLong(colunaTimestamp + 8 * posicao);
+    }
+
+    private long sequencia(int posicao) {
+        return dados.getLong(colunaSequencia + 8 * posicao);
+    }
+
+    /**
+     * Procura a mensagem com o ID indicado (pesquisa binária no índice por ID).
+     * @return A posição da mensagem, ou -1 se não estiver no snapshot.
+     */
+    public int posicaoDe(UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int baixo = 0;
+        int alto = n - 1;
+        while (baixo <= alto) {
+            int meio = (baixo + alto) >>> 1;
+            int posicao = dados.getInt(indicePorId + 4 * meio);
+            int comparacao = compararIds(msb(posicao), lsb(posicao), msb, lsb);
+            if (comparacao < 0) {
+                baixo = meio + 1;
+            } else if (comparacao > 0) {
+                alto = meio - 1;
+            } else {
+                return posicao;
+            }
+        }
+        return -1;
+    }
+
+    // Soma os IDs de todas as mensagens do snapshot à árvore, sem criar objetos.
+    public void adicionarNaArvore(ArvoreMerkle arvore) {
+        for (int i = 0; i < n; i++) {
+            arvore.adicionar(msb(i), lsb(i));
+        }
+    }
+
+    // Acrescenta a 'destino' os IDs das mensagens do snapshot que caem no balde indicado.
+    public void idsDoBalde(int balde, List<UUID> destino) {
+        // O índice por ID está ordenado pelos bits altos, por isso o balde é uma faixa contígua.
+        for (int i = primeiroDoBalde(balde); i < n; i++) {
+            int posicao = dados.getInt(indicePorId + 4 * i);
+            long msb = msb(posicao);
+            if (ArvoreMerkle.baldeDe(msb) != balde) {
+                break;
+            }
+            destino.add(new UUID(msb, lsb(posicao)));
+        }
+    }
+
+    private int primeiroDoBalde(int balde) {
+        int baixo = 0;
+        int alto = n;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (ArvoreMerkle.baldeDe(msb(dados.getInt(indicePorId + 4 * meio))) < balde) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // Origens (nós) com mensagens no snapshot; a origem 0 são as mensagens sem carimbo.
+    public Iterable<Integer> getOrigens() {
+        return Collections.unmodifiableSet(faixaPorOrigem.keySet());
+    }
+
+    // Marcas de água calculadas só com as mensagens do snapshot.
+    public Map<Integer, Long> getMarcasDeAgua() {
+        return Collections.unmodifiableMap(marcasDeAgua);
+    }
+
+    public long getMaiorSequencia(int origem) {
+        int[] faixa = faixaPorOrigem.get(origem);
+        return faixa == null ? 0 : sequencia(dados.getInt(indicePorOrigem + 4 * (faixa[1] - 1)));
+    }
+
+    public boolean contemSequencia(int origem, long sequencia) {
+        int[] faixa = faixaPorOrigem.get(origem);
+        if (faixa == null) {
+            return false;
+        }
+        int i = primeiraSequenciaAcima(faixa, sequencia - 1);
+        return i < faixa[1] && sequencia(dados.getInt(indicePorOrigem + 4 * i)) == sequencia;
+    }
+
+    /**
+     * Acrescenta a 'destino', por ordem de sequência, as mensagens da origem indicada com
+     * sequência acima de 'marca' (para a origem 0, todas as mensagens sem carimbo).
+     */
+    public void mensagensApos(int origem, long marca, List<Mensagem> destino) {
+        int[] faixa = faixaPorOrigem.get(origem);
+        if (faixa == null) {
+            return;
+        }
+        int inicio = origem == 0 ? faixa[0] : primeiraSequenciaAcima(faixa, marca);
+        for (int i = inicio; i < faixa[1]; i++) {
+            destino.add(mensagem(dados.getInt(indicePorOrigem + 4 * i)));
+        }
+    }
+
+    private int primeiraSequenciaAcima(int[] faixa, long marca) {
+        int baixo = faixa[0];
+        int alto = faixa[1];
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (sequencia(dados.getInt(indicePorOrigem + 4 * meio)) <= marca) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    // Percorre o índice por origem uma vez: faixa de cada origem e marca de água contígua.
+    private void calcularOrigens() {
+        int i = 0;
+        while (i < n) {
+            int origem = origem(dados.getInt(indicePorOrigem + 4 * i));
+            int inicio = i;
+            long marca = 0;
+            while (i < n) {
+                int posicao = dados.getInt(indicePorOrigem + 4 * i);
+                if (origem(posicao) != origem) {
+                    break;
+                }
+                if (sequencia(posicao) == marca + 1) {
+                    marca++;
+                }
+                i++;
+            }
+            faixaPorOrigem.put(origem, new int[]{inicio, i});
+            if (origem != 0) {
+                marcasDeAgua.put(origem, marca);
+            }
+        }
+    }
+
+    /**
+     * Grava as mensagens, pela ordem da lista, num snapshot colunar.
+     * @throws IOException se houver um erro de escrita ou o snapshot passar de 2 GB.
+     */
+    public static void gravar(File arquivo, List<Mensagem> mensagens) throws IOException {
+        int n = mensagens.size();
+        long[] msb = new long[n];
+        long[] lsb = new long[n];
+        int[] origem = new int[n];
+        long[] sequencia = new long[n];
+        long[] hlc = new long[n];
+        // Tamanho em bytes (UTF-8) do autor e do conteúdo de cada mensagem.
+        int[] tamanhosTextos = new int[2 * n];
+        long tamanhoTextos = 0;
+        for (int i = 0; i < n; i++) {
+            Mensagem mensagem = mensagens.get(i);
+            msb[i] = mensagem.getId().getMostSignificantBits();
+            lsb[i] = mensagem.getId().getLeastSignificantBits();
+            origem[i] = mensagem.getOrigem();
+            sequencia[i] = mensagem.getSequencia();
+            hlc[i] = mensagem.getHlc();
+            tamanhosTextos[2 * i] = mensagem.getAutor().getBytes(StandardCharsets.UTF_8).length;
+            tamanhosTextos[2 * i + 1] = mensagem.getConteudo().getBytes(StandardCharsets.UTF_8).length;
+            tamanhoTextos += tamanhosTextos[2 * i] + tamanhosTextos[2 * i + 1];
+        }
+        if (tamanhoTotal(n, tamanhoTextos, VERSAO) > Integer.MAX_VALUE) {
+            throw new IOException("O mural não cabe num snapshot colunar (limite de 2 GB).");
+        }
+
+        int[] porId = ordenar(n, (a, b) -> compararIds(msb[a], lsb[a], msb[b], lsb[b]));
+        int[] porOrigem = ordenar(n, (a, b) -> origem[a] != origem[b]
+                ? Integer.compare(origem[a], origem[b])
+                : Long.compare(sequencia[a], sequencia[b]));
+
+        try (FileOutputStream fos = new FileOutputStream(arquivo);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeLong(MAGIA);
+            out.writeInt(VERSAO);
+            out.writeInt(n);
+            out.writeInt((int) tamanhoTextos);
+            out.write(new byte[TAMANHO_CABECALHO - 20]);
+            for (long valor : msb) out.writeLong(valor);
+            for (long valor : lsb) out.writeLong(valor);
+            for (Mensagem mensagem : mensagens) out.writeLong(mensagem.getTimestamp());
+            for (long valor : sequencia) out.writeLong(valor);
+            for (long valor : hlc) out.writeLong(valor);
+            for (int valor : origem) out.writeInt(valor);
+
+            int deslocamento = 0;
+            out.writeInt(deslocamento);
+            for (int tamanhoTexto : tamanhosTextos) {
+                deslocamento += tamanhoTexto;
+                out.writeInt(deslocamento);
+            }
+            for (int posicao : porId) out.writeInt(posicao);
+            for (int posicao : porOrigem) out.writeInt(posicao);
+            for (Mensagem mensagem : mensagens) {
+                out.write(mensagem.getAutor().getBytes(StandardCharsets.UTF_8));
+                out.write(mensagem.getConteudo().getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    // Compara dois UUIDs como números de 128 bits sem sinal (a mesma ordem dos baldes de Merkle).
+    private static int compararIds(long msbA, long lsbA, long msbB, long lsbB) {
+        int comparacao = Long.compareUnsigned(msbA, msbB);
+        return comparacao != 0 ? comparacao : Long.compareUnsigned(lsbA, lsbB);
+    }
+
+    private interface ComparadorPosicoes {
+        int comparar(int a, int b);
+    }
+
+    // Ordena as posições 0..n-1 (merge sort estável), sem criar um objeto por posição.
+    private static int[] ordenar(int n, ComparadorPosicoes comparador) {
+        int[] posicoes = new int[n];
+        for (int i = 0; i < n; i++) {
+            posicoes[i] = i;
+        }
+        int[] auxiliar = new int[n];
+        for (int largura = 1; largura < n; largura *= 2) {
+            for (int inicio = 0; inicio < n - largura; inicio += 2 * largura) {
+                int meio = inicio + largura;
+                int fim = Math.min(inicio + 2 * largura, n);
+                int a = inicio;
+                int b = meio;
+                int k = inicio;
+                while (a < meio && b < fim) {
+                    auxiliar[k++] = comparador.comparar(posicoes[a], posicoes[b]) <= 0 ? posicoes[a++] : posicoes[b++];
+                }
+                while (a < meio) auxiliar[k++] = posicoes[a++];
+                while (b < fim) auxiliar[k++] = posicoes[b++];
+                System.arraycopy(auxiliar, inicio, posicoes, inicio, fim - inicio);
+            }
+        }
+        return posicoes;
+    }
+}
\ No newline at end of file
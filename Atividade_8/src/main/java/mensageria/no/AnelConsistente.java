@@ -0,0 +1,108 @@
+package mensageria.no;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Anel de dispersão consistente (consistent hashing) que atribui cada mural a um conjunto de nós.
+ *
+ * Cada nó ocupa NOS_VIRTUAIS pontos do anel, para que a carga fique equilibrada mesmo com
+ * poucos nós. As réplicas de um mural são os primeiros 'fatorReplicacao' nós distintos que se
+ * encontram ao percorrer o anel, no sentido dos ponteiros do relógio, a partir do hash do nome.
+ * Quando um nó entra ou sai, só os murais vizinhos dos seus pontos mudam de dono.
+ *
+ * O anel depende apenas dos ids dos nós, por isso todos os nós (com a mesma lista de nós e o
+ * mesmo fator de replicação) chegam à mesma atribuição sem trocar mensagens. Um anel nunca
+ * muda: quando entra um nó novo, o No constrói outro (ver No.membroAlterado).
+ */
+public class AnelConsistente {
+
+    private static final int NOS_VIRTUAIS = 64;
+
+    private final TreeMap<Long, Integer> pontos = new TreeMap<>();
+    private final int numeroNos;
+    private final int fatorReplicacao;
+    // As réplicas de cada mural já calculadas.
+    private final Map<String, List<Integer>> replicasPorMural = new ConcurrentHashMap<>();
+
+    /**
+     * @param nos             Os ids de todos os nós da rede.
+     * @param fatorReplicacao Quantos nós guardam cada mural; 0 (ou mais do que o número de nós)
+     *                        significa todos, como antes da partição.
+     */
+    public AnelConsistente(Collection<Integer> nos, int fatorReplicacao) {
+        for (int idNo : nos) {
+            for (int v = 0; v < NOS_VIRTUAIS; v++) {
+                pontos.put(dispersar("no-" + idNo + "#" + v), idNo);
+            }
+        }
+        this.numeroNos = nos.size();
+        this.fatorReplicacao = fatorReplicacao <= 0 ? numeroNos : Math.min(fatorReplicacao, numeroNos);
+    }
+
+    /**
+     * Os nós que guardam o mural indicado, pela ordem do anel (o primeiro é o "dono" preferido).
+     */
+    public List<Integer> getReplicas(String mural) {
+        return replicasPorMural.computeIfAbsent(mural, this::calcularReplicas);
+    }
+
+    private List<Integer> calcularReplicas(String mural) {
+        List<Integer> replicas = new ArrayList<>(fatorReplicacao);
+        if (pontos.isEmpty()) {
+            return Collections.unmodifiableList(replicas);
+        }
+        long hash = dispersar(mural);
+        // Percorre o anel a partir do hash e dá a volta pelo início, se for preciso.
+        if (!recolher(pontos.tailMap(hash, true).values(), replicas)) {
+            recolher(pontos.headMap(hash, false).values(), replicas);
+        }
+        return Collections.unmodifiableList(replicas);
+    }
+
+    // Acrescenta os nós ainda não escolhidos; devolve true quando já há réplicas suficientes.
+    private boolean recolher(Collection<Integer> nos, List<Integer> replicas) {
+        for (int idNo : nos) {
+            if (!replicas.contains(idNo)) {
+                replicas.add(idNo);
+                if (replicas.size() == fatorReplicacao) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getFatorReplicacao() {
+        return fatorReplicacao;
+    }
+
+    public int getNumeroNos() {
+        return numeroNos;
+    }
+
+    // FNV-1a de 64 bits sobre o UTF-8 do texto, com uma mistura final para espalhar os bits.
+    static long dispersar(String texto) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : texto.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Anel: %d nó(s), %d ponto(s) virtual(is) cada, fator de replicação %d",
+                numeroNos, NOS_VIRTUAIS, fatorReplicacao);
+    }
+}
\ No newline at end of file
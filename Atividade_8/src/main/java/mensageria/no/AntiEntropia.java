@@ -0,0 +1,221 @@
+package mensageria.no;
+
+import mensageria.comum.ArvoreMerkle;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.Pacote;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tarefa de fundo de anti-entropia: repara divergências entre nós que estão ambos ativos
+ * (ex: uma réplica perdida), que a sincronização feita no arranque não apanha.
+ *
+ * A cada INTERVALO_MS o nó escolhe um dos seus murais e um peer conectado que também o guarda
+ * (ver AnelConsistente), e compara as árvores de Merkle dos dois murais, descendo apenas pelos ramos com hashes diferentes (NIVEIS_POR_PASSO níveis de cada
+ * vez). Nos baldes divergentes troca só os IDs e, por fim, só as mensagens que faltam a cada
+ * lado. O tráfego é proporcional à divergência e não ao tamanho do mural.
+ *
+ * Além das rodadas, o No pede uma reconciliação imediata quando um peer dado como morto volta
+ * (as réplicas que lhe eram destinadas não foram enviadas enquanto esteve em baixo) e quando
+ * este nó passa a guardar um mural novo depois de arrancar (para receber o seu histórico).
+ */
+public class AntiEntropia {
+
+    private static final long INTERVALO_MS = 10_000;
+    private static final long TIMEOUT_PEDIDO_MS = 5_000;
+    // Um peer que volta pode ainda estar a sincronizar antes de abrir o servidor: a reconciliação
+    // espera que a ligação se restabeleça, verificando de ATRASO_RECONCILIACAO_MS em ATRASO_RECONCILIACAO_MS.
+    private static final long ATRASO_RECONCILIACAO_MS = 1_000;
+    private static final int TENTATIVAS_RECONCILIACAO = 30;
+    private static final int NIVEIS_POR_PASSO = 4;
+    // Máximo de IDs por pedido de mensagens, para manter os quadros pequenos.
+    private static final int IDS_POR_PEDIDO = 1_000;
+
+    private final No no;
+    private final ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    });
+
+    public AntiEntropia(No no) {
+        this.no = no;
+    }
+
+    public void iniciar() {
+        agendador.scheduleWithFixedDelay(this::executarRodada, INTERVALO_MS, INTERVALO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void parar() {
+        agendador.shutdownNow();
+    }
+
+    private void executarRodada() {
+        List<ParticaoMural> particoes = new ArrayList<>(no.getParticoes());
+        if (particoes.isEmpty()) return;
+        ParticaoMural particao = particoes.get(ThreadLocalRandom.current().nextInt(particoes.size()));
+        List<LigacaoPeer> conectadas = new ArrayList<>();
+        for (LigacaoPeer ligacao : no.getLigacoesDasReplicas(particao.getNome())) {
+            if (ligacao.isConectada()) {
+                conectadas.add(ligacao);
+            }
+        }
+        if (conectadas.isEmpty()) return;
+        LigacaoPeer escolhida = conectadas.get(ThreadLocalRandom.current().nextInt(conectadas.size()));
+        reconciliarSemFalhar(particao, escolhida);
+    }
+
+    // Reconcilia já, fora das rodadas, todos os murais que este nó partilha com o peer indicado.
+    void agendarReconciliacao(int idPeer) {
+        agendarReconciliacao(idPeer, TENTATIVAS_RECONCILIACAO);
+    }
+
+    private void agendarReconciliacao(int idPeer, int tentativas) {
+        agendar(ATRASO_RECONCILIACAO_MS, () -> {
+            LigacaoPeer ligacao = no.getLigacao(idPeer);
+            if (ligacao == null || ligacao.isSuspensa()) return;
+            if (!ligacao.isConectada()) {
+                if (tentativas > 1) {
+                    agendarReconciliacao(idPeer, tentativas - 1);
+                }
+                return;
+            }
+            for (ParticaoMural particao : no.getParticoes()) {
+                if (no.getReplicas(particao.getNome()).contains(idPeer)) {
+                    reconciliarSemFalhar(particao, ligacao);
+                }
+            }
+        });
+    }
+
+    // Reconcilia já, fora das rodadas, o mural indicado com todas as outras réplicas disponíveis.
+    void agendarReconciliacao(ParticaoMural particao) {
+        agendar(0, () -> {
+            for (LigacaoPeer ligacao : no.getLigacoesDasReplicas(particao.getNome())) {
+                reconciliarSemFalhar(particao, ligacao);
+            }
+        });
+    }
+
+    private void agendar(long atrasoMs, Runnable tarefa) {
+        try {
+            agendador.schedule(tarefa, atrasoMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // O nó está a parar.
+        }
+    }
+
+    private void reconciliarSemFalhar(ParticaoMural particao, LigacaoPeer ligacao) {
+        try {
+            reconciliarCom(particao, ligacao);
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Anti-entropia com o Nó %d interrompida: %s%n", no.getId(), ligacao.getIdPeer(), e.getMessage());
+        } catch (RuntimeException e) {
+            // Uma exceção inesperada não pode cancelar as próximas rodadas agendadas.
+            System.err.printf("[Nó %d] Erro na anti-entropia: %s%n", no.getId(), e);
+        }
+    }
+
+    /**
+     * Compara o mural local com o do peer e troca as mensagens em falta nos dois sentidos.
+     */
+    void reconciliarCom(ParticaoMural particao, LigacaoPeer ligacao) throws IOException {
+        Mural mural = particao.getMural();
+        String nome = particao.getNome();
+
+        int[] raiz = {1};
+        if (pedirHashes(ligacao, nome, raiz)[0] == mural.getHashesMerkle(raiz)[0]) {
+            return; // Murais idênticos: custou apenas um hash.
+        }
+
+        // Desce pela árvore, guardando apenas os nós cujos hashes diferem.
+        List<Integer> divergentes = new ArrayList<>();
+        divergentes.add(1);
+        for (int nivel = 0; nivel < ArvoreMerkle.PROFUNDIDADE && !divergentes.isEmpty(); ) {
+            int salto = Math.min(NIVEIS_POR_PASSO, ArvoreMerkle.PROFUNDIDADE - nivel);
+            int[] candidatos = new int[divergentes.size() << salto];
+            int k = 0;
+            for (int indice : divergentes) {
+                for (int d = 0; d < (1 << salto); d++) {
+                    candidatos[k++] = (indice << salto) + d;
+                }
+            }
+            long[] remotos = pedirHashes(ligacao, nome, candidatos);
+            long[] locais = mural.getHashesMerkle(candidatos);
+            divergentes.clear();
+            for (int i = 0; i < candidatos.length; i++) {
+                if (remotos[i] != locais[i]) {
+                    divergentes.add(candidatos[i]);
+                }
+            }
+            nivel += salto;
+        }
+        if (divergentes.isEmpty()) return;
+
+        int[] baldes = new int[divergentes.size()];
+        for (int i = 0; i < baldes.length; i++) {
+            baldes[i] = divergentes.get(i) - ArvoreMerkle.NUMERO_BALDES;
+        }
+        Set<UUID> idsRemotos = new HashSet<>(this.<List<UUID>>pedir(ligacao, Pacote.Tipo.PEDIDO_IDS_BALDES, nome, baldes));
+        Set<UUID> idsLocais = new HashSet<>(mural.getIdsDosBaldes(baldes));
+
+        List<UUID> faltamAqui = new ArrayList<>();
+        for (UUID id : idsRemotos) {
+            if (!idsLocais.contains(id)) faltamAqui.add(id);
+        }
+        List<UUID> faltamNoPeer = new ArrayList<>();
+        for (UUID id : idsLocais) {
+            if (!idsRemotos.contains(id)) faltamNoPeer.add(id);
+        }
+
+        int recebidas = 0;
+        for (int inicio = 0; inicio < faltamAqui.size(); inicio += IDS_POR_PEDIDO) {
+            List<UUID> lote = new ArrayList<>(faltamAqui.subList(inicio, Math.min(inicio + IDS_POR_PEDIDO, faltamAqui.size())));
+            recebidas += particao.incorporarMensagens(this.<List<Mensagem>>pedir(ligacao, Pacote.Tipo.PEDIDO_MENSAGENS, nome, lote));
+        }
+        // O que falta ao peer segue pelo caminho normal de replicação.
+        for (Mensagem mensagem : mural.getMensagensPorId(faltamNoPeer)) {
+            ligacao.enviar(Pacote.Tipo.REPLICAR_MSG, mensagem, nome);
+        }
+
+        if (recebidas > 0 || !faltamNoPeer.isEmpty()) {
+            System.out.printf("[Nó %d] Anti-entropia do mural '%s' com o Nó %d: %d balde(s) divergente(s), %d mensagem(ns) recebida(s), %d enviada(s).%n",
+                    no.getId(), nome, ligacao.getIdPeer(), baldes.length, recebidas, faltamNoPeer.size());
+        }
+    }
+
+    private long[] pedirHashes(LigacaoPeer ligacao, String mural, int[] nos) throws IOException {
+        long[] hashes = pedir(ligacao, Pacote.Tipo.PEDIDO_MERKLE, mural, nos);
+        if (hashes.length != nos.length) {
+            throw new IOException("Resposta de Merkle com tamanho inesperado.");
+        }
+        return hashes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T pedir(LigacaoPeer ligacao, Pacote.Tipo tipo, String mural, Object conteudo) throws IOException {
+        CompletableFuture<Pacote> resposta = ligacao.pedir(tipo, conteudo, mural);
+        try {
+            return (T) resposta.get(TIMEOUT_PEDIDO_MS, TimeUnit.MILLISECONDS).getConteudo();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido à espera do peer.", e);
+        } catch (Exception e) {
+            IOException semResposta = new IOException("Sem resposta do peer para " + tipo + ".", e);
+            resposta.completeExceptionally(semResposta); // Deixa de estar pendente na ligação.
+            throw semResposta;
+        }
+    }
+}
\ No newline at end of file
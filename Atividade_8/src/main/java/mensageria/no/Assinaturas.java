@@ -0,0 +1,226 @@
+package mensageria.no;
+
+import mensageria.comum.Log;
+import mensageria.comum.Mural;
+import mensageria.comum.Pacote;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.SaidaPacotes;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clientes que assinaram um mural (Pacote.Tipo.ASSINAR) e recebem as mensagens novas sem as
+ * pedir: em vez de repetirem LER_MURAL e descarregarem o mural inteiro, recebem só o que chegou.
+ *
+ * Cada assinante é apenas um cursor (a próxima posição do mural que ainda não recebeu, pela
+ * ordem de chegada a este nó) e a conexão por onde as mensagens lhe são enviadas. Quando entram mensagens num mural com
+ * assinantes (ParticaoMural.registrarNoDisco), o mural é marcado e uma única thread por nó
+ * envia a cada assinante as páginas a partir do seu cursor, com o id de correlação do ASSINAR.
+ * As páginas vêm da CacheLeituras, por isso os assinantes no mesmo cursor partilham a codificação.
+ *
+ * A thread nunca espera por um cliente: cada assinante pode ter até limiteAssinanteBytes por
+ * enviar na sua conexão (SaidaPacotes.tentarEnviar). Acima disso aplica-se a política de
+ * assinante lento: DESCARTAR salta o cursor para o fim do mural (o cliente vê o salto pela
+ * posição das páginas e pode pedir o que perdeu com LER_PAGINA) e DESCONECTAR fecha a conexão.
+ * Como um assinante parado não ocupa nenhuma thread, o transporte NIO aguenta milhares deles.
+ *
+ * Uma assinatura termina quando a conexão fecha ou com CANCELAR_ASSINATURA, que a termina sem
+ * fechar a conexão (a sessão do cliente continua a usá-la para os outros pedidos).
+ */
+public class Assinaturas {
+
+    // Máximo de mensagens em cada PAGINA_MURAL enviada a um assinante.
+    static final int MENSAGENS_POR_ENVIO = 256;
+    // De quanto em quanto tempo são esquecidos os assinantes cujas conexões já fecharam.
+    private static final long INTERVALO_LIMPEZA_MS = 5_000;
+
+    private static final class Assinante {
+        final SaidaPacotes saida;
+        final long idCorrelacao;
+        // Próxima posição do mural a enviar; só alterado pela thread de distribuição.
+        long cursor;
+
+        Assinante(SaidaPacotes saida, long idCorrelacao, long cursor) {
+            this.saida = saida;
+            this.idCorrelacao = idCorrelacao;
+            this.cursor = cursor;
+        }
+    }
+
+    private final int idNo;
+    private final MetricasNo metricas;
+    private final long limiteBytes;
+    private final long esperaLoteNanos;
+    private final ConfiguracaoNo.PoliticaAssinanteLento politica;
+
+    // Assinantes de cada mural, pelo nome do mural.
+    private final Map<String, Set<Assinante>> porMural = new ConcurrentHashMap<>();
+    // Murais com mensagens novas (ou assinantes novos) ainda por distribuir.
+    private final Set<ParticaoMural> pendentes = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final Thread distribuidor;
+    private volatile boolean ativo = true;
+
+    Assinaturas(int idNo, MetricasNo metricas, ConfiguracaoNo configuracao) {
+        this.idNo = idNo;
+        this.metricas = metricas;
+        this.limiteBytes = configuracao.getLimiteAssinanteBytes();
+        this.esperaLoteNanos = TimeUnit.MILLISECONDS.toNanos(configuracao.getEsperaLoteMs());
+        this.politica = configuracao.getPoliticaAssinanteLento();
+        this.distribuidor = new Thread(this::distribuir, "assinaturas-no-" + idNo);
+        this.distribuidor.setDaemon(true);
+    }
+
+    void iniciar() {
+        distribuidor.start();
+    }
+
+    void parar() {
+        ativo = false;
+        LockSupport.unpark(distribuidor);
+    }
+
+    /**
+     * Regista um assinante do mural a partir da posição indicada. A primeira página (a resposta
+     * ao ASSINAR) já foi escrita por quem chama; as seguintes seguem pela thread de distribuição.
+     */
+    void assinar(ParticaoMural particao, SaidaPacotes saida, long idCorrelacao, long cursor) {
+        porMural.computeIfAbsent(particao.getNome(), nome -> ConcurrentHashMap.newKeySet())
+                .add(new Assinante(saida, idCorrelacao, cursor));
+        total.incrementAndGet();
+        metricas.registrarAssinatura();
+        // O mural pode ter recebido mensagens entre a primeira página e o registo.
+        marcar(particao);
+    }
+
+    /**
+     * Termina a assinatura aberta pelo ASSINAR com o id de correlação indicado, nesta conexão
+     * (Pacote.Tipo.CANCELAR_ASSINATURA). Uma página que já estivesse a ser enviada ainda chega.
+     */
+    void cancelar(SaidaPacotes saida, long idCorrelacao) {
+        for (Set<Assinante> assinantes : porMural.values()) {
+            for (Assinante assinante : assinantes) {
+                if (assinante.saida == saida && assinante.idCorrelacao == idCorrelacao) {
+                    remover(assinantes, assinante);
+                }
+            }
+        }
+    }
+
+    // Chamado por cada mensagem que entra num mural; sem assinantes custa apenas uma consulta ao mapa.
+    void mensagensNovas(ParticaoMural particao) {
+        Set<Assinante> assinantes = porMural.get(particao.getNome());
+        if (assinantes != null && !assinantes.isEmpty()) {
+            marcar(particao);
+        }
+    }
+
+    private void marcar(ParticaoMural particao) {
+        if (pendentes.add(particao)) {
+            LockSupport.unpark(distribuidor);
+        }
+    }
+
+    // Ciclo da thread de distribuição: uma ronda por cada rajada de mensagens, não por mensagem.
+    private void distribuir() {
+        long proximaLimpeza = System.currentTimeMillis() + INTERVALO_LIMPEZA_MS;
+        while (ativo) {
+            if (!pendentes.isEmpty() && esperaLoteNanos > 0) {
+                // Como nos lotes de réplicas: espera um pouco para que as mensagens de uma rajada
+                // sigam juntas na mesma página, em vez de um pacote por mensagem e por assinante.
+                LockSupport.parkNanos(esperaLoteNanos);
+            }
+            Iterator<ParticaoMural> it = pendentes.iterator();
+            while (it.hasNext()) {
+                ParticaoMural particao = it.next();
+                // Retirado antes de distribuir: o que chegar entretanto volta a marcar o mural.
+                it.remove();
+                Set<Assinante> assinantes = porMural.get(particao.getNome());
+                if (assinantes != null) {
+                    for (Assinante assinante : assinantes) {
+                        enviarNovas(particao, assinantes, assinante);
+                    }
+                }
+            }
+            if (System.currentTimeMillis() >= proximaLimpeza) {
+                esquecerFechados();
+                proximaLimpeza = System.currentTimeMillis() + INTERVALO_LIMPEZA_MS;
+            }
+            if (pendentes.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(INTERVALO_LIMPEZA_MS));
+            }
+        }
+    }
+
+    // Envia ao assinante as mensagens do mural a partir do seu cursor, página a página.
+    private void enviarNovas(ParticaoMural particao, Set<Assinante> assinantes, Assinante assinante) {
+        Mural mural = particao.getMural();
+        try {
+            while (assinante.cursor < mural.getTamanho()) {
+                PaginaMural pagina = particao.getCacheLeituras().getPaginaPorChegada(mural, assinante.cursor, MENSAGENS_POR_ENVIO);
+                if (pagina.getMensagens().isEmpty()) {
+                    // Só outras cópias de mensagens já enviadas (ver Mural.getPaginaPorChegada): passa à frente.
+                    if (pagina.getProximoCursor() <= assinante.cursor) {
+                        return;
+                    }
+                    assinante.cursor = pagina.getProximoCursor();
+                    continue;
+                }
+                Pacote pacote = new Pacote(Pacote.Tipo.PAGINA_MURAL, pagina, assinante.idCorrelacao, particao.getNome());
+                if (!assinante.saida.tentarEnviar(pacote, limiteBytes)) {
+                    consumidorLento(particao, assinantes, assinante, mural);
+                    return;
+                }
+                metricas.registrarMensagensEmpurradas(pagina.getMensagens().size());
+                assinante.cursor = pagina.getProximoCursor();
+            }
+        } catch (IOException e) {
+            // A conexão fechou: a assinatura termina com ela.
+            remover(assinantes, assinante);
+        }
+    }
+
+    private void consumidorLento(ParticaoMural particao, Set<Assinante> assinantes, Assinante assinante, Mural mural) {
+        if (politica == ConfiguracaoNo.PoliticaAssinanteLento.DESCONECTAR) {
+            Log.aviso("[Nó %d] Assinante do mural '%s' não acompanha as mensagens; conexão fechada.%n", idNo, particao.getNome());
+            remover(assinantes, assinante);
+            metricas.registrarAssinanteDesconectado();
+            try {
+                assinante.saida.close();
+            } catch (IOException e) {
+                // Já fechada.
+            }
+        } else {
+            long fim = mural.getTamanho();
+            metricas.registrarMensagensNaoEmpurradas(fim - assinante.cursor);
+            assinante.cursor = fim;
+        }
+    }
+
+    private void esquecerFechados() {
+        for (Set<Assinante> assinantes : porMural.values()) {
+            for (Assinante assinante : assinantes) {
+                if (!assinante.saida.isAberta()) {
+                    remover(assinantes, assinante);
+                }
+            }
+        }
+    }
+
+    private void remover(Set<Assinante> assinantes, Assinante assinante) {
+        if (assinantes.remove(assinante)) {
+            total.decrementAndGet();
+        }
+    }
+
+    public int getTotal() {
+        return total.get();
+    }
+}
\ No newline at end of file
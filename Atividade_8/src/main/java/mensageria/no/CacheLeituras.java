@@ -0,0 +1,175 @@
+package mensageria.no;
+
+import mensageria.comum.MensagensCodificadas;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.PedidoPagina;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache das respostas de leitura de um nó (LER_MURAL, LER_ULTIMAS e LER_PAGINA), já codificadas.
+ *
+ * Sem ela, cada LER_MURAL copia e volta a codificar o mural inteiro, mesmo que nada tenha
+ * mudado desde a leitura anterior. As respostas ficam guardadas pela versão do mural
+ * (Mural.getVersao), e uma leitura com a mesma versão serve os mesmos bytes.
+ *
+ * - O mural completo é invalidado de forma incremental: quando a versão avança e as mensagens
+ *   novas ficaram todas no fim da ordem total (ver Mural.getReordenacoes), só elas são
+ *   codificadas e acrescentadas ao fim; se alguma entrou no meio, o mural é codificado de novo.
+ * - As páginas são guardadas por pedido enquanto a versão não mudar; uma versão nova começa
+ *   com a cache de páginas vazia.
+ *
+ * Os acertos, acrescentos e falhas são contados nas MetricasNo.
+ */
+public class CacheLeituras {
+
+    // Máximo de páginas diferentes guardadas para a mesma versão do mural.
+    private static final int MAXIMO_PAGINAS = 1024;
+
+    private final MetricasNo metricas;
+
+    // Mural completo já codificado, o mural a que se refere e as suas reordenações nessa altura.
+    private Mural muralCodificado;
+    private MensagensCodificadas todas = MensagensCodificadas.VAZIA;
+    private long reordenacoesCodificadas;
+
+    private volatile Paginas paginas = new Paginas(null, -1);
+
+    public CacheLeituras(MetricasNo metricas) {
+        this.metricas = metricas;
+    }
+
+    /**
+     * Todas as mensagens do mural, codificadas. Só codifica as que chegaram desde o pedido anterior;
+     * enquanto isso, os outros pedidos de LER_MURAL esperam e recebem o mesmo resultado.
+     */
+    public synchronized MensagensCodificadas getTodasAsMensagens(Mural mural) throws IOException {
+        // Lidas antes das mensagens: se não mudaram desde a última vez, o mural é o anterior mais as novas no fim.
+        long reordenacoes = mural.getReordenacoes();
+        if (mural != muralCodificado || reordenacoes != reordenacoesCodificadas) {
+            muralCodificado = mural;
+            todas = MensagensCodificadas.VAZIA;
+            reordenacoesCodificadas = reordenacoes;
+        }
+        // Só as posições a seguir às que já estão codificadas; num acerto, nenhuma.
+        List<Mensagem> novas = mural.getMensagensAPartirDe(todas.size());
+        if (novas.isEmpty()) {
+            metricas.registrarCacheLeitura(MetricasNo.ResultadoCache.ACERTO);
+            return todas;
+        }
+        metricas.registrarCacheLeitura(todas.isEmpty() ? MetricasNo.ResultadoCache.FALHA : MetricasNo.ResultadoCache.ACRESCENTO);
+        todas = todas.acrescentar(novas);
+        return todas;
+    }
+
+    public PaginaMural getUltimas(Mural mural, int quantidade) throws IOException {
+        long versao = mural.getVersao();
+        Paginas atuais = paginasDaVersao(mural, versao);
+        Chave chave = new Chave(null, -1, quantidade, false);
+        PaginaMural pagina = atuais.mapa.get(chave);
+        if (pagina == null) {
+            pagina = guardar(atuais, chave, mural.getUltimas(quantidade));
+        } else {
+            metricas.registrarCacheLeitura(MetricasNo.ResultadoCache.ACERTO);
+        }
+        return pagina;
+    }
+
+    public PaginaMural getPagina(Mural mural, PedidoPagina pedido) throws IOException {
+        long versao = mural.getVersao();
+        Paginas atuais = paginasDaVersao(mural, versao);
+        // Um início negativo é lido como 0 (ver Mural.getPagina), o que deixa o -1 para LER_ULTIMAS.
+        Chave chave = new Chave(pedido.getAposMensagem(), Math.max(pedido.getInicio(), 0), pedido.getTamanho(), false);
+        PaginaMural pagina = atuais.mapa.get(chave);
+        if (pagina == null) {
+            pagina = guardar(atuais, chave, pedido.getAposMensagem() != null
+                    ? mural.getPaginaApos(pedido.getAposMensagem(), pedido.getTamanho())
+                    : mural.getPagina(pedido.getInicio(), pedido.getTamanho()));
+        } else {
+            metricas.registrarCacheLeitura(MetricasNo.ResultadoCache.ACERTO);
+        }
+        return pagina;
+    }
+
+    // Página pela ordem de chegada a este nó (ver Mural.getPaginaPorChegada), para as assinaturas.
+    public PaginaMural getPaginaPorChegada(Mural mural, long inicio, int tamanho) throws IOException {
+        long versao = mural.getVersao();
+        Paginas atuais = paginasDaVersao(mural, versao);
+        Chave chave = new Chave(null, Math.max(inicio, 0), tamanho, true);
+        PaginaMural pagina = atuais.mapa.get(chave);
+        if (pagina == null) {
+            pagina = guardar(atuais, chave, mural.getPaginaPorChegada(inicio, tamanho));
+        } else {
+            metricas.registrarCacheLeitura(MetricasNo.ResultadoCache.ACERTO);
+        }
+        return pagina;
+    }
+
+    // As páginas lidas depois de obter 'versao' são pelo menos tão recentes como ela, por isso
+    // podem ser servidas a quem vir essa versão. Uma versão mais antiga usa as páginas atuais.
+    private Paginas paginasDaVersao(Mural mural, long versao) {
+        Paginas atuais = paginas;
+        if (atuais.mural != mural || atuais.versao < versao) {
+            atuais = new Paginas(mural, versao);
+            paginas = atuais;
+        }
+        return atuais;
+    }
+
+    private PaginaMural guardar(Paginas atuais, Chave chave, PaginaMural lida) throws IOException {
+        metricas.registrarCacheLeitura(MetricasNo.ResultadoCache.FALHA);
+        PaginaMural codificada = new PaginaMural(MensagensCodificadas.de(lida.getMensagens()),
+                lida.getProximoCursor(), lida.getTotal());
+        if (atuais.mapa.size() < MAXIMO_PAGINAS) {
+            atuais.mapa.putIfAbsent(chave, codificada);
+        }
+        return codificada;
+    }
+
+    private static final class Paginas {
+        final Mural mural;
+        final long versao;
+        final ConcurrentHashMap<Chave, PaginaMural> mapa = new ConcurrentHashMap<>();
+
+        Paginas(Mural mural, long versao) {
+            this.mural = mural;
+            this.versao = versao;
+        }
+    }
+
+    // Identifica um pedido de página: LER_ULTIMAS usa só o tamanho (com início -1).
+    private static final class Chave {
+        final UUID aposMensagem;
+        final long inicio;
+        final int tamanho;
+        final boolean porChegada;
+
+        Chave(UUID aposMensagem, long inicio, int tamanho, boolean porChegada) {
+            this.aposMensagem = aposMensagem;
+            this.inicio = inicio;
+            this.tamanho = tamanho;
+            this.porChegada = porChegada;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Chave)) {
+                return false;
+            }
+            Chave outra = (Chave) o;
+            return inicio == outra.inicio && tamanho == outra.tamanho && porChegada == outra.porChegada
+                    && Objects.equals(aposMensagem, outra.aposMensagem);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(aposMensagem, inicio, tamanho, porChegada);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,315 @@
+package mensageria.no;
+
+import mensageria.comum.Consistencia;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Parâmetros de execução de um nó.
+ *
+ * Os valores padrão podem ser alterados com propriedades de sistema (-Dmensageria.xxx=...),
+ * o que permite comparar configurações sem recompilar; o Simulador também pode ajustá-los
+ * diretamente através dos setters antes de criar o nó.
+ */
+public class ConfiguracaoNo {
+
+    /**
+     * Como as conexões aceites são entregues aos TratadorDeConexao.
+     */
+    public enum ModoExecucao {
+        THREAD_POR_CONEXAO, // Uma thread nova por conexão, sem limite (comportamento original).
+        POOL_LIMITADO,      // Pool de threads limitado, com fila de admissão e rejeição explícita.
+        THREAD_VIRTUAL      // Uma thread virtual por conexão (Java 21+), com limite de conexões.
+    }
+
+    /**
+     * Motor de rede usado pelo servidor do nó (ver ServidorNo).
+     */
+    public enum Transporte {
+        BLOQUEANTE, // ServerSocket e um TratadorDeConexao por conexão, executado conforme o ModoExecucao.
+        NIO         // Selector com poucas threads de I/O; as conexões não ocupam uma thread cada.
+    }
+
+    /**
+     * O que fazer a um assinante (ver Assinaturas) que não lê as mensagens ao ritmo a que chegam.
+     */
+    public enum PoliticaAssinanteLento {
+        DESCARTAR,  // Salta as mensagens que não cabem; o cliente vê o salto no cursor e pode pedi-las.
+        DESCONECTAR // Fecha a conexão; o cliente volta a assinar a partir do último cursor que recebeu.
+    }
+
+    /**
+     * Quando uma postagem é confirmada ao cliente em relação ao fsync do log de escrita.
+     * A confirmação indica sempre o nível atingido (ver comum.Durabilidade).
+     */
+    public enum ModoDurabilidade {
+        ASSINCRONA, // Confirma logo após a escrita; o fsync periódico cobre-a até intervaloFsyncMs depois.
+        GRUPO,      // Espera pelo fsync em grupo, feito a cada intervaloFsyncMs ou registosPorFsync registos.
+        SINCRONA    // Faz (ou aproveita) um fsync antes de confirmar; os escritores concorrentes partilham-no.
+    }
+
+    private Transporte transporte = Transporte.valueOf(
+            System.getProperty("mensageria.transporte", Transporte.BLOQUEANTE.name()).toUpperCase());
+    // Número de threads de I/O (cada uma com o seu Selector) no transporte NIO.
+    private int threadsIo = Integer.getInteger("mensageria.threadsIo", 2);
+    // Máximo de mensagens agrupadas num REPLICAR_LOTE enviado a um peer.
+    private int tamanhoLoteReplicacao = Integer.getInteger("mensageria.loteReplicacao", 256);
+    // Tempo máximo (ms) que a ligação espera por mais mensagens antes de enviar um lote incompleto.
+    private int esperaLoteMs = Integer.getInteger("mensageria.esperaLoteMs", 2);
+    private ModoDurabilidade modoDurabilidade = ModoDurabilidade.valueOf(
+            System.getProperty("mensageria.durabilidade", ModoDurabilidade.ASSINCRONA.name()).toUpperCase());
+    // Intervalo (ms) do fsync periódico do log de escrita, em todos os modos.
+    private int intervaloFsyncMs = Integer.getInteger("mensageria.intervaloFsyncMs", 50);
+    // No modo GRUPO, o fsync é antecipado quando este número de registos está à espera dele.
+    private int registosPorFsync = Integer.getInteger("mensageria.registosPorFsync", 64);
+    // Quantos nós guardam cada mural (ver AnelConsistente); 0 significa todos os nós.
+    // Tem de ser igual em todos os nós da rede, para que todos cheguem à mesma atribuição.
+    private int fatorReplicacao = Integer.getInteger("mensageria.fatorReplicacao", 0);
+    // Níveis de consistência das postagens e das leituras dos clientes que não pedem nenhum.
+    private Consistencia consistenciaEscrita = Consistencia.valueOf(
+            System.getProperty("mensageria.consistenciaEscrita", Consistencia.UM.name()).toUpperCase());
+    private Consistencia consistenciaLeitura = Consistencia.valueOf(
+            System.getProperty("mensageria.consistenciaLeitura", Consistencia.UM.name()).toUpperCase());
+    // Tempo máximo (ms) à espera das réplicas num pedido com consistência QUORUM ou TODAS.
+    private int timeoutConsistenciaMs = Integer.getInteger("mensageria.timeoutConsistenciaMs", 2_000);
+    // Período (ms) das rodadas de sondagem da MembrosDaRede; 0 desliga a deteção de falhas.
+    private int periodoGossipMs = Integer.getInteger("mensageria.periodoGossipMs", 500);
+    // Bytes que podem ficar por enviar a um assinante antes de se aplicar a política de assinante lento.
+    private int limiteAssinanteBytes = Integer.getInteger("mensageria.limiteAssinanteBytes", 256 * 1024);
+    private PoliticaAssinanteLento politicaAssinanteLento = PoliticaAssinanteLento.valueOf(
+            System.getProperty("mensageria.assinanteLento", PoliticaAssinanteLento.DESCARTAR.name()).toUpperCase());
+    // Chave da rede, com que os nós assinam os tokens de sessão dos clientes e os tokens com que se
+    // identificam uns aos outros (ver Sessoes); tem de ser igual em todos os nós da rede. Sem ela
+    // é usada uma chave aleatória, gerada uma vez por JVM (ver getSegredoSessoes).
+    private String segredoSessoes = System.getProperty("mensageria.segredoSessoes");
+    private static String segredoAleatorio;
+    // Validade (minutos) de um token de sessão emitido no LOGIN.
+    private int duracaoSessaoMin = Integer.getInteger("mensageria.duracaoSessaoMin", 12 * 60);
+    // O porto de métricas de cada nó é o seu porto mais este valor (0 desliga o ExportadorMetricas).
+    private int deslocamentoPortaMetricas = Integer.getInteger("mensageria.deslocamentoMetricas", 1000);
+    private ModoExecucao modoExecucao = ModoExecucao.valueOf(
+            System.getProperty("mensageria.execucao", ModoExecucao.POOL_LIMITADO.name()).toUpperCase());
+    // Máximo de conexões tratadas em simultâneo. No transporte bloqueante cada conexão ocupa um
+    // tratador enquanto estiver aberta, e as conexões são persistentes: as sessões dos clientes
+    // (incluindo as que só recebem assinaturas) e a ligação de cada peer. O limite tem de chegar
+    // para todas (clientes + nós da rede); as que passarem dele são recusadas com REJEITADO, e
+    // uma ligação de peer recusada volta a tentar com espera exponencial (ver LigacaoPeer).
+    private int maxTratadores = Integer.getInteger("mensageria.maxTratadores", 64);
+    // Conexões aceites que podem esperar por um tratador livre antes de serem rejeitadas.
+    private int capacidadeFilaAdmissao = Integer.getInteger("mensageria.filaAdmissao", 128);
+    // Tempo máximo (ms) que uma conexão espera na fila de admissão. Como os tratadores só ficam
+    // livres quando uma conexão fecha, sem este limite a conexão podia esperar para sempre.
+    private int esperaMaximaAdmissaoMs = Integer.getInteger("mensageria.esperaAdmissaoMs", 2_000);
+
+    public Transporte getTransporte() {
+        return transporte;
+    }
+
+    public ConfiguracaoNo setTransporte(Transporte transporte) {
+        this.transporte = transporte;
+        return this;
+    }
+
+    public int getThreadsIo() {
+        return threadsIo;
+    }
+
+    public ConfiguracaoNo setThreadsIo(int threadsIo) {
+        this.threadsIo = threadsIo;
+        return this;
+    }
+
+    public int getTamanhoLoteReplicacao() {
+        return tamanhoLoteReplicacao;
+    }
+
+    public ConfiguracaoNo setTamanhoLoteReplicacao(int tamanhoLoteReplicacao) {
+        this.tamanhoLoteReplicacao = tamanhoLoteReplicacao;
+        return this;
+    }
+
+    public int getEsperaLoteMs() {
+        return esperaLoteMs;
+    }
+
+    public ConfiguracaoNo setEsperaLoteMs(int esperaLoteMs) {
+        this.esperaLoteMs = esperaLoteMs;
+        return this;
+    }
+
+    public ModoDurabilidade getModoDurabilidade() {
+        return modoDurabilidade;
+    }
+
+    public ConfiguracaoNo setModoDurabilidade(ModoDurabilidade modoDurabilidade) {
+        this.modoDurabilidade = modoDurabilidade;
+        return this;
+    }
+
+    public int getIntervaloFsyncMs() {
+        return intervaloFsyncMs;
+    }
+
+    public ConfiguracaoNo setIntervaloFsyncMs(int intervaloFsyncMs) {
+        this.intervaloFsyncMs = intervaloFsyncMs;
+        return this;
+    }
+
+    public int getRegistosPorFsync() {
+        return registosPorFsync;
+    }
+
+    public ConfiguracaoNo setRegistosPorFsync(int registosPorFsync) {
+        this.registosPorFsync = registosPorFsync;
+        return this;
+    }
+
+    public int getFatorReplicacao() {
+        return fatorReplicacao;
+    }
+
+    public ConfiguracaoNo setFatorReplicacao(int fatorReplicacao) {
+        this.fatorReplicacao = fatorReplicacao;
+        return this;
+    }
+
+    public Consistencia getConsistenciaEscrita() {
+        return consistenciaEscrita;
+    }
+
+    public ConfiguracaoNo setConsistenciaEscrita(Consistencia consistenciaEscrita) {
+        this.consistenciaEscrita = consistenciaEscrita;
+        return this;
+    }
+
+    public Consistencia getConsistenciaLeitura() {
+        return consistenciaLeitura;
+    }
+
+    public ConfiguracaoNo setConsistenciaLeitura(Consistencia consistenciaLeitura) {
+        this.consistenciaLeitura = consistenciaLeitura;
+        return this;
+    }
+
+    public int getTimeoutConsistenciaMs() {
+        return timeoutConsistenciaMs;
+    }
+
+    public ConfiguracaoNo setTimeoutConsistenciaMs(int timeoutConsistenciaMs) {
+        this.timeoutConsistenciaMs = timeoutConsistenciaMs;
+        return this;
+    }
+
+    public int getPeriodoGossipMs() {
+        return periodoGossipMs;
+    }
+
+    public ConfiguracaoNo setPeriodoGossipMs(int periodoGossipMs) {
+        this.periodoGossipMs = periodoGossipMs;
+        return this;
+    }
+
+    public int getLimiteAssinanteBytes() {
+        return limiteAssinanteBytes;
+    }
+
+    public ConfiguracaoNo setLimiteAssinanteBytes(int limiteAssinanteBytes) {
+        this.limiteAssinanteBytes = limiteAssinanteBytes;
+        return this;
+    }
+
+    public PoliticaAssinanteLento getPoliticaAssinanteLento() {
+        return politicaAssinanteLento;
+    }
+
+    public ConfiguracaoNo setPoliticaAssinanteLento(PoliticaAssinanteLento politicaAssinanteLento) {
+        this.politicaAssinanteLento = politicaAssinanteLento;
+        return this;
+    }
+
+    /**
+     * A chave configurada ou, se não houver, uma chave aleatória partilhada pelos nós desta JVM
+     * (ex: os do Simulador). Nós noutras JVMs não aceitam os tokens nem as réplicas uns dos
+     * outros enquanto não tiverem todos a mesma -Dmensageria.segredoSessoes.
+     */
+    public String getSegredoSessoes() {
+        if (segredoSessoes != null && !segredoSessoes.isEmpty()) {
+            return segredoSessoes;
+        }
+        return segredoAleatorio();
+    }
+
+    private static synchronized String segredoAleatorio() {
+        if (segredoAleatorio == null) {
+            byte[] chave = new byte[32];
+            new SecureRandom().nextBytes(chave);
+            segredoAleatorio = Base64.getEncoder().encodeToString(chave);
+            System.err.println("************************************************************************");
+            System.err.println("AVISO: -Dmensageria.segredoSessoes não foi definida; a usar uma chave");
+            System.err.println("aleatória só desta JVM. Nós noutras JVMs não aceitarão os tokens de");
+            System.err.println("sessão nem as réplicas destes nós. Defina a mesma chave em todos os nós.");
+            System.err.println("************************************************************************");
+        }
+        return segredoAleatorio;
+    }
+
+    public ConfiguracaoNo setSegredoSessoes(String segredoSessoes) {
+        this.segredoSessoes = segredoSessoes;
+        return this;
+    }
+
+    public int getDuracaoSessaoMin() {
+        return duracaoSessaoMin;
+    }
+
+    public ConfiguracaoNo setDuracaoSessaoMin(int duracaoSessaoMin) {
+        this.duracaoSessaoMin = duracaoSessaoMin;
+        return this;
+    }
+
+    public int getDeslocamentoPortaMetricas() {
+        return deslocamentoPortaMetricas;
+    }
+
+    public ConfiguracaoNo setDeslocamentoPortaMetricas(int deslocamentoPortaMetricas) {
+        this.deslocamentoPortaMetricas = deslocamentoPortaMetricas;
+        return this;
+    }
+
+    public ModoExecucao getModoExecucao() {
+        return modoExecucao;
+    }
+
+    public ConfiguracaoNo setModoExecucao(ModoExecucao modoExecucao) {
+        this.modoExecucao = modoExecucao;
+        return this;
+    }
+
+    public int getMaxTratadores() {
+        return maxTratadores;
+    }
+
+    public ConfiguracaoNo setMaxTratadores(int maxTratadores) {
+        this.maxTratadores = maxTratadores;
+        return this;
+    }
+
+    public int getCapacidadeFilaAdmissao() {
+        return capacidadeFilaAdmissao;
+    }
+
+    public ConfiguracaoNo setCapacidadeFilaAdmissao(int capacidadeFilaAdmissao) {
+        this.capacidadeFilaAdmissao = capacidadeFilaAdmissao;
+        return this;
+    }
+
+    public int getEsperaMaximaAdmissaoMs() {
+        return esperaMaximaAdmissaoMs;
+    }
+
+    public ConfiguracaoNo setEsperaMaximaAdmissaoMs(int esperaMaximaAdmissaoMs) {
+        this.esperaMaximaAdmissaoMs = esperaMaximaAdmissaoMs;
+        return this;
+    }
+}
\ No newline at end of file
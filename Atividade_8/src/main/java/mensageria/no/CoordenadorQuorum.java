@@ -0,0 +1,390 @@
+package mensageria.no;
+
+import mensageria.comum.Consistencia;
+import mensageria.comum.Log;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.Pacote;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.PedidoPagina;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pedidos de clientes que dependem de outros nós: os de nível de consistência acima de UM (ver
+ * Consistencia) e os reencaminhados a um mural que este nó não guarda.
+ *
+ * Com consistência, o nó que recebe o pedido envia-o a todas as outras réplicas do mural ao
+ * mesmo tempo e espera só pelo número de respostas que o nível exige, no máximo
+ * timeoutConsistenciaMs.
+ * - Numa postagem, cada réplica grava a mensagem no seu log antes de responder REPLICA_OK
+ *   (REPLICAR_CONFIRMADA); se a escrita falhar responde REJEITADO, e uma cópia que só está em
+ *   memória (também a deste nó) não conta. As réplicas que não respondem a tempo continuam a
+ *   recebê-la pela fila da ligação, e as que estão em baixo pela reconciliação quando voltarem.
+ * - Numa leitura, as páginas das réplicas são juntadas ao mural deste nó e a resposta é
+ *   calculada sobre o resultado; a cada réplica que respondeu são enviadas, num REPLICAR_LOTE,
+ *   as mensagens da resposta que deviam estar na página dela e não estavam (reparação na leitura).
+ *
+ * Só LER_ULTIMAS e LER_PAGINA a partir do início do mural ou do ID de uma mensagem têm leituras
+ * com consistência: uma posição no meio da ordem total só vale no mural de cada nó, e o mural
+ * inteiro não se compara assim. As réplicas respondem sempre como UM, para não voltarem a
+ * coordenar o mesmo pedido.
+ *
+ * Nada aqui espera numa thread: cada pedido devolve um futuro, concluído quando chegam as
+ * respostas necessárias ou quando o prazo acaba, e quem o pediu responde ao cliente nessa altura
+ * (pelo id de correlação). Assim a conexão de onde veio o pedido continua a ser lida enquanto
+ * isso, o que importa sobretudo nas ligações entre nós: as réplicas que chegam atrás de um
+ * pedido coordenado não ficam à espera dele, e dois nós a coordenar ao mesmo tempo não ficam à
+ * espera um do outro. Os prazos e o que se faz com as respostas correm nas threads do coordenador,
+ * e não nas threads leitoras das ligações.
+ */
+class CoordenadorQuorum {
+
+    private static final long TIMEOUT_REENCAMINHAMENTO_MS = 5_000;
+    private static final int THREADS = 4;
+
+    private final No noPai;
+    private final MetricasNo metricas;
+    private final long timeoutMs;
+    private final ScheduledExecutorService tarefas;
+
+    CoordenadorQuorum(No noPai, long timeoutMs) {
+        this.noPai = noPai;
+        this.metricas = noPai.getMetricas();
+        this.timeoutMs = timeoutMs;
+        AtomicInteger contador = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(THREADS, r -> {
+            Thread t = new Thread(r, "no-" + noPai.getId() + "-coordenador-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Quase todos os prazos são cancelados porque a resposta chegou antes: não ficam na fila.
+        executor.setRemoveOnCancelPolicy(true);
+        this.tarefas = executor;
+    }
+
+    void parar() {
+        tarefas.shutdownNow();
+    }
+
+    // Quantas réplicas tem o mural e quantas delas o nível exige (este nó incluído).
+    int getReplicas(String mural) {
+        return noPai.getReplicas(mural).size();
+    }
+
+    int respostasNecessarias(Consistencia nivel, String mural) {
+        return nivel.respostasNecessarias(getReplicas(mural));
+    }
+
+    /**
+     * Envia uma mensagem já gravada neste nó às outras réplicas do mural, para que
+     * 'necessarias' réplicas a tenham gravada no log, contando com este nó se 'gravadaAqui'.
+     * @return Quantas réplicas confirmaram, incluindo este nó se contou; menos do que 'necessarias' se
+     *         o prazo acabou ou se já não havia réplicas suficientes para lá chegar.
+     */
+    CompletableFuture<Integer> replicarEEsperar(ParticaoMural particao, Mensagem mensagem, int necessarias, boolean gravadaAqui) {
+        long inicio = System.nanoTime();
+        String mural = particao.getNome();
+        List<LigacaoPeer> destinos = noPai.getLigacoesDasReplicas(mural);
+        int local = gravadaAqui ? 1 : 0;
+        Respostas respostas = new Respostas(destinos.size(), necessarias - local);
+        for (int i = 0; i < destinos.size(); i++) {
+            respostas.aguardar(i, destinos.get(i).pedir(Pacote.Tipo.REPLICAR_CONFIRMADA, mensagem, mural), Pacote.Tipo.REPLICA_OK);
+        }
+        return respostas.esperar(timeoutMs, tarefas).thenApplyAsync(aceites -> {
+            int confirmadas = local + aceites;
+            // As réplicas em baixo não recebem nada agora; são reconciliadas quando voltarem.
+            List<Integer> replicas = noPai.getReplicas(mural);
+            int omitidas = replicas.size() - (replicas.contains(noPai.getId()) ? 1 : 0) - destinos.size();
+            metricas.registrarReplicacao(destinos.size() - respostas.getRecusadas(), respostas.getRecusadas(), omitidas,
+                    System.nanoTime() - inicio);
+            metricas.registrarPedidoComConsistencia(confirmadas >= necessarias);
+            return confirmadas;
+        }, tarefas);
+    }
+
+    /**
+     * Lê uma página (LER_ULTIMAS, ou LER_PAGINA do início ou a seguir a um ID) juntando as páginas
+     * das outras réplicas do mural, e repara as réplicas a quem faltavam mensagens da resposta.
+     * @return A página, calculada sobre o mural deste nó depois de receber o que as réplicas
+     *         tinham, ou null se não responderam réplicas suficientes a tempo.
+     */
+    CompletableFuture<PaginaMural> ler(ParticaoMural particao, Pacote pedido, int necessarias) {
+        String mural = particao.getNome();
+        List<LigacaoPeer> destinos = noPai.getLigacoesDasReplicas(mural);
+        Respostas respostas = new Respostas(destinos.size(), necessarias - 1);
+        for (int i = 0; i < destinos.size(); i++) {
+            respostas.aguardar(i, destinos.get(i).pedir(pedido.getTipo(), pedido.getConteudo(), mural, null, Consistencia.UM),
+                    Pacote.Tipo.PAGINA_MURAL);
+        }
+        UUID cursor = pedido.getTipo() == Pacote.Tipo.LER_PAGINA ? ((PedidoPagina) pedido.getConteudo()).getAposMensagem() : null;
+        return respostas.esperar(timeoutMs, tarefas).thenComposeAsync(aceites -> {
+            List<Mensagem> recebidas = new ArrayList<>();
+            for (Pacote resposta : respostas.getRecebidas()) {
+                if (resposta != null) {
+                    recebidas.addAll(((PaginaMural) resposta.getConteudo()).getMensagens());
+                }
+            }
+            particao.incorporarMensagens(recebidas);
+            CompletableFuture<Void> cursorPronto = cursor != null && particao.getMural().getPosicaoDeChegada(cursor) < 0
+                    ? obterCursor(particao, cursor, destinos, respostas.getRecebidas(), 0)
+                    : CompletableFuture.completedFuture(null);
+            return cursorPronto.thenApplyAsync(nada -> {
+                int responderam = 1 + aceites;
+                metricas.registrarPedidoComConsistencia(responderam >= necessarias);
+                if (responderam < necessarias) {
+                    return null;
+                }
+                CacheLeituras cache = particao.getCacheLeituras();
+                Mural local = particao.getMural();
+                PaginaMural pagina;
+                try {
+                    pagina = pedido.getTipo() == Pacote.Tipo.LER_ULTIMAS
+                            ? cache.getUltimas(local, (int) (long) (Long) pedido.getConteudo())
+                            : cache.getPagina(local, (PedidoPagina) pedido.getConteudo());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                repararReplicas(particao, pedido, pagina, cursor, destinos, respostas.getRecebidas());
+                return pagina;
+            }, tarefas);
+        }, tarefas);
+    }
+
+    /**
+     * Pede a mensagem usada como cursor às réplicas que a conheçam, uma de cada vez a partir da
+     * ligação 'desde', para poder responder a partir dela.
+     */
+    private CompletableFuture<Void> obterCursor(ParticaoMural particao, UUID cursor, List<LigacaoPeer> destinos,
+                                                Pacote[] respostas, int desde) {
+        for (int i = desde; i < destinos.size(); i++) {
+            if (respostas[i] == null || ((PaginaMural) respostas[i].getConteudo()).getProximoCursor() == PaginaMural.CURSOR_DESCONHECIDO) {
+                continue;
+            }
+            int indice = i;
+            CompletableFuture<Pacote> pedido = comPrazo(destinos.get(i).pedir(Pacote.Tipo.PEDIDO_MENSAGENS,
+                    Collections.singletonList(cursor), particao.getNome()), timeoutMs);
+            return pedido.handleAsync((resposta, erro) -> {
+                if (erro == null) {
+                    @SuppressWarnings("unchecked")
+                    List<Mensagem> encontradas = (List<Mensagem>) resposta.getConteudo();
+                    particao.incorporarMensagens(encontradas);
+                    if (!encontradas.isEmpty()) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                } else {
+                    Log.aviso("[Nó %d] Réplica %d não enviou a mensagem usada como cursor no mural '%s'.%n",
+                            noPai.getId(), destinos.get(indice).getIdPeer(), particao.getNome());
+                }
+                return obterCursor(particao, cursor, destinos, respostas, indice + 1);
+            }, tarefas).thenCompose(seguinte -> seguinte);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Envia o pedido de um cliente a uma das réplicas do mural (primeiro as que já têm a ligação
+     * aberta, pela ordem do anel), passando à seguinte se não responder a tempo.
+     * @return A resposta da réplica, ou um REJEITADO se nenhuma respondeu; quem chama devolve-a
+     *         ao cliente com o id de correlação do pedido.
+     */
+    CompletableFuture<Pacote> reencaminhar(Pacote pacote) {
+        List<LigacaoPeer> replicas = new ArrayList<>();
+        int conectadas = 0;
+        for (LigacaoPeer ligacao : noPai.getLigacoesDasReplicas(pacote.getMural())) {
+            replicas.add(ligacao.isConectada() ? conectadas++ : replicas.size(), ligacao);
+        }
+        return reencaminhar(pacote, replicas, 0);
+    }
+
+    private CompletableFuture<Pacote> reencaminhar(Pacote pacote, List<LigacaoPeer> replicas, int indice) {
+        if (indice == replicas.size()) {
+            return CompletableFuture.completedFuture(new Pacote(Pacote.Tipo.REJEITADO,
+                    "Mural '" + pacote.getMural() + "' indisponível: nenhuma das suas réplicas respondeu.",
+                    pacote.getIdCorrelacao(), pacote.getMural()));
+        }
+        LigacaoPeer ligacao = replicas.get(indice);
+        CompletableFuture<Pacote> pedido = comPrazo(ligacao.pedir(pacote.getTipo(), pacote.getConteudo(), pacote.getMural(),
+                pacote.getSessao(), pacote.getConsistencia()), TIMEOUT_REENCAMINHAMENTO_MS);
+        return pedido.handleAsync((resposta, erro) -> {
+            if (erro == null) {
+                metricas.registrarReencaminhamento();
+                return CompletableFuture.completedFuture(resposta);
+            }
+            Log.aviso("[Nó %d] Réplica %d do mural '%s' não respondeu ao pedido reencaminhado.%n",
+                    noPai.getId(), ligacao.getIdPeer(), pacote.getMural());
+            return reencaminhar(pacote, replicas, indice + 1);
+        }, tarefas).thenCompose(seguinte -> seguinte);
+    }
+
+    /**
+     * Dá o pedido como falhado se não tiver resposta em 'prazoMs' (o que também o tira dos
+     * pendentes da ligação, ver LigacaoPeer.pedir).
+     */
+    private CompletableFuture<Pacote> comPrazo(CompletableFuture<Pacote> pedido, long prazoMs) {
+        ScheduledFuture<?> prazo = tarefas.schedule(
+                () -> pedido.completeExceptionally(new TimeoutException("Sem resposta em " + prazoMs + " ms.")),
+                prazoMs, TimeUnit.MILLISECONDS);
+        pedido.whenComplete((resposta, erro) -> prazo.cancel(false));
+        return pedido;
+    }
+
+    /**
+     * Envia a cada réplica que respondeu as mensagens da resposta que deviam estar na sua página
+     * e não estavam. A página de uma réplica só diz o que ela tem dentro da sua janela: se veio
+     * completa (com as mensagens pedidas), só as mensagens da resposta dentro dessa janela podem
+     * ser dadas como em falta; se veio mais curta, a réplica não tem nenhuma das outras.
+     */
+    private void repararReplicas(ParticaoMural particao, Pacote pedido, PaginaMural pagina, UUID cursor,
+                                 List<LigacaoPeer> destinos, Pacote[] respostas) {
+        List<Mensagem> resposta = pagina.getMensagens();
+        int pedidas = pedido.getTipo() == Pacote.Tipo.LER_ULTIMAS
+                ? (int) (long) (Long) pedido.getConteudo()
+                : ((PedidoPagina) pedido.getConteudo()).getTamanho();
+        for (int i = 0; i < destinos.size(); i++) {
+            if (respostas[i] == null) {
+                continue;
+            }
+            PaginaMural daReplica = (PaginaMural) respostas[i].getConteudo();
+            List<Mensagem> tinha = daReplica.getMensagens();
+            List<Mensagem> faltam = new ArrayList<>();
+            if (cursor != null && daReplica.getProximoCursor() == PaginaMural.CURSOR_DESCONHECIDO) {
+                // A réplica nem tem o cursor: recebe-o com a página toda.
+                faltam.addAll(particao.getMural().getMensagensPorId(Collections.singletonList(cursor)));
+                faltam.addAll(resposta);
+            } else {
+                Set<UUID> ids = new HashSet<>();
+                for (Mensagem m : tinha) {
+                    ids.add(m.getId());
+                }
+                boolean completa = !tinha.isEmpty() && tinha.size() >= pedidas;
+                for (Mensagem m : resposta) {
+                    if (ids.contains(m.getId())) {
+                        continue;
+                    }
+                    // Últimas: a janela da réplica começa na sua primeira; do início ou após um ID, acaba na sua última.
+                    boolean dentroDaJanela = !completa || (pedido.getTipo() == Pacote.Tipo.LER_ULTIMAS
+                            ? Mensagem.ORDEM_TOTAL.compare(m, tinha.get(0)) > 0
+                            : Mensagem.ORDEM_TOTAL.compare(m, tinha.get(tinha.size() - 1)) < 0);
+                    if (dentroDaJanela) {
+                        faltam.add(m);
+                    }
+                }
+            }
+            if (!faltam.isEmpty()) {
+                destinos.get(i).enviar(Pacote.Tipo.REPLICAR_LOTE, faltam, particao.getNome());
+                metricas.registrarReparacaoNaLeitura(faltam.size());
+                Log.depuracao("[Nó %d] Reparação na leitura: %d mensagem(ns) do mural '%s' enviada(s) ao Nó %d.%n",
+                        noPai.getId(), faltam.size(), particao.getNome(), destinos.get(i).getIdPeer());
+            }
+        }
+    }
+
+    /**
+     * As respostas das réplicas a um pedido, pela ordem das ligações. O futuro de esperar é
+     * concluído quando chegam as necessárias, quando já não podem chegar (as réplicas que faltam
+     * falharam) ou quando o prazo acaba; os pedidos ainda sem resposta são então dados como
+     * falhados, para deixarem de estar pendentes nas ligações.
+     */
+    private static final class Respostas {
+        private final List<CompletableFuture<Pacote>> futuros = new ArrayList<>();
+        private final Pacote[] recebidas;
+        private final int necessarias;
+        private final CompletableFuture<Integer> concluidas = new CompletableFuture<>();
+        private int aceites;
+        private int pendentes;
+        // Pedidos que nem chegaram à fila da ligação (fila cheia ou peer dado como em baixo).
+        private int recusadas;
+
+        Respostas(int pedidos, int necessarias) {
+            this.recebidas = new Pacote[pedidos];
+            this.pendentes = pedidos;
+            this.necessarias = necessarias;
+        }
+
+        void aguardar(int indice, CompletableFuture<Pacote> futuro, Pacote.Tipo esperado) {
+            synchronized (this) {
+                futuros.add(futuro);
+                if (futuro.isCompletedExceptionally()) {
+                    recusadas++;
+                }
+            }
+            futuro.whenComplete((resposta, erro) -> chegou(indice, erro == null && resposta.getTipo() == esperado ? resposta : null));
+        }
+
+        private void chegou(int indice, Pacote resposta) {
+            synchronized (this) {
+                if (concluidas.isDone()) {
+                    return;
+                }
+                if (resposta != null) {
+                    recebidas[indice] = resposta;
+                    aceites++;
+                }
+                pendentes--;
+            }
+            concluirSeDecidido();
+        }
+
+        /**
+         * Começa a contar o prazo (as respostas que já chegaram podem ter decidido tudo).
+         * @return Quantas respostas aceites chegaram, quando houver as 'necessarias' ou não
+         *         puderem já chegar, ou no fim do prazo.
+         */
+        CompletableFuture<Integer> esperar(long timeoutMs, ScheduledExecutorService tarefas) {
+            ScheduledFuture<?> prazo = tarefas.schedule(this::concluir, timeoutMs, TimeUnit.MILLISECONDS);
+            concluidas.whenComplete((total, erro) -> prazo.cancel(false));
+            concluirSeDecidido();
+            return concluidas;
+        }
+
+        private void concluirSeDecidido() {
+            boolean decidido;
+            synchronized (this) {
+                decidido = aceites >= necessarias || aceites + pendentes < necessarias;
+            }
+            if (decidido) {
+                concluir();
+            }
+        }
+
+        private void concluir() {
+            List<CompletableFuture<Pacote>> todos;
+            int total;
+            synchronized (this) {
+                if (!concluidas.complete(aceites)) {
+                    return;
+                }
+                todos = new ArrayList<>(futuros);
+                total = aceites;
+            }
+            IOException desistencia = new IOException("O coordenador deixou de esperar pela resposta (" + total + " aceite(s)).");
+            for (CompletableFuture<Pacote> futuro : todos) {
+                futuro.completeExceptionally(desistencia);
+            }
+        }
+
+        synchronized Pacote[] getRecebidas() {
+            return recebidas.clone();
+        }
+
+        synchronized int getRecusadas() {
+            return recusadas;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package mensageria.no;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executa os TratadorDeConexao de um nó segundo o ConfiguracaoNo.ModoExecucao escolhido.
+ *
+ * - POOL_LIMITADO: no máximo 'maxTratadores' threads; as conexões excedentes esperam numa
+ *   fila de admissão limitada e, se esta estiver cheia, são rejeitadas de imediato. Uma
+ *   conexão que não saia da fila em esperaMaximaAdmissaoMs também é rejeitada: as conexões
+ *   são persistentes e um tratador só fica livre quando a sua conexão fecha, por isso a
+ *   espera podia não ter fim (e uma ligação de peer na fila parava a replicação em silêncio).
+ * - THREAD_VIRTUAL: uma thread virtual por conexão (se o JDK as suportar), com um semáforo
+ *   a limitar o número de conexões em simultâneo.
+ * - THREAD_POR_CONEXAO: o comportamento original, sem qualquer limite.
+ *
+ * Em sobrecarga o nó rejeita conexões em vez de criar threads sem limite, degradando-se
+ * de forma controlada. As métricas (tratadores ativos, fila e rejeições) ficam disponíveis
+ * nos getters.
+ */
+public class ExecutorConexoes {
+
+    private final int idNo;
+    private final ConfiguracaoNo.ModoExecucao modo;
+    private final ExecutorService executor;
+    // Fila de admissão (só no modo POOL_LIMITADO).
+    private final ArrayBlockingQueue<Runnable> filaAdmissao;
+    // Limite de conexões em simultâneo (só no modo THREAD_VIRTUAL).
+    private final Semaphore vagas;
+    // Retira da fila de admissão as conexões que esperaram demasiado (só no modo POOL_LIMITADO).
+    private final ScheduledExecutorService vigiaFila;
+    private final long esperaMaximaAdmissaoMs;
+
+    private final AtomicInteger ativos = new AtomicInteger();
+    private final AtomicLong aceites = new AtomicLong();
+    private final AtomicLong rejeitadas = new AtomicLong();
+
+    public ExecutorConexoes(int idNo, ConfiguracaoNo configuracao) {
+        this.idNo = idNo;
+        ConfiguracaoNo.ModoExecucao modoPedido = configuracao.getModoExecucao();
+        ExecutorService virtual = modoPedido == ConfiguracaoNo.ModoExecucao.THREAD_VIRTUAL ? criarExecutorVirtual() : null;
+        if (modoPedido == ConfiguracaoNo.ModoExecucao.THREAD_VIRTUAL && virtual == null) {
+            System.err.printf("[Nó %d] Threads virtuais indisponíveis neste JDK; a usar o pool limitado.%n", idNo);
+            modoPedido = ConfiguracaoNo.ModoExecucao.POOL_LIMITADO;
+        }
+        this.modo = modoPedido;
+        this.esperaMaximaAdmissaoMs = Math.max(1, configuracao.getEsperaMaximaAdmissaoMs());
+
+        switch (modo) {
+            case THREAD_VIRTUAL:
+                this.executor = virtual;
+                this.filaAdmissao = null;
+                this.vagas = new Semaphore(configuracao.getMaxTratadores());
+                this.vigiaFila = null;
+                break;
+            case POOL_LIMITADO:
+                this.filaAdmissao = new ArrayBlockingQueue<>(Math.max(1, configuracao.getCapacidadeFilaAdmissao()));
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                        configuracao.getMaxTratadores(), configuracao.getMaxTratadores(),
+                        60, TimeUnit.SECONDS, filaAdmissao, r -> {
+                            Thread t = new Thread(r);
+                            t.setDaemon(true);
+                            return t;
+                        },
+                        new ThreadPoolExecutor.AbortPolicy());
+                pool.allowCoreThreadTimeOut(true);
+                this.executor = pool;
+                this.vagas = null;
+                this.vigiaFila = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "no-" + idNo + "-fila-admissao");
+                    t.setDaemon(true);
+                    return t;
+                });
+                break;
+            default:
+                this.executor = null;
+                this.filaAdmissao = null;
+                this.vagas = null;
+                this.vigiaFila = null;
+        }
+    }
+
+    /**
+     * Entrega um tratador para execução.
+     * @param aoExpirar Chamado (noutra thread) se a conexão ficar na fila de admissão mais de
+     *                  esperaMaximaAdmissaoMs; o tratador já não vai ser executado.
+     * @return false se o nó estiver sobrecarregado e a conexão tiver de ser rejeitada.
+     */
+    public boolean submeter(Runnable tratador, Runnable aoExpirar) {
+        Runnable medido = () -> {
+            ativos.incrementAndGet();
+            try {
+                tratador.run();
+            } finally {
+                ativos.decrementAndGet();
+                if (vagas != null) {
+                    vagas.release();
+                }
+            }
+        };
+
+        if (vagas != null && !vagas.tryAcquire()) {
+            rejeitadas.incrementAndGet();
+            return false;
+        }
+        try {
+            if (executor == null) {
+                new Thread(medido).start();
+            } else {
+                executor.execute(medido);
+            }
+        } catch (RejectedExecutionException e) {
+            if (vagas != null) {
+                vagas.release();
+            }
+            rejeitadas.incrementAndGet();
+            return false;
+        }
+        aceites.incrementAndGet();
+        if (filaAdmissao != null && filaAdmissao.contains(medido)) {
+            vigiaFila.schedule(() -> {
+                // Se já saiu da fila, tem um tratador; senão é retirada e recusada.
+                if (filaAdmissao.remove(medido)) {
+                    aceites.decrementAndGet();
+                    rejeitadas.incrementAndGet();
+                    aoExpirar.run();
+                }
+            }, esperaMaximaAdmissaoMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    public void parar() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (vigiaFila != null) {
+            vigiaFila.shutdownNow();
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() só existe a partir do Java 21; é obtido
+    // por reflexão para que o projeto continue a compilar e a correr em JDKs anteriores.
+    private ExecutorService criarExecutorVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // Métricas do executor.
+    public ConfiguracaoNo.ModoExecucao getModo() { return modo; }
+    public int getTratadoresAtivos() { return ativos.get(); }
+    public int getProfundidadeFila() { return filaAdmissao == null ? 0 : filaAdmissao.size(); }
+    public long getAceites() { return aceites.get(); }
+    public long getRejeitadas() { return rejeitadas.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("Nó %d [%s] tratadores ativos=%d fila=%d aceites=%d rejeitadas=%d",
+                idNo, modo, getTratadoresAtivos(), getProfundidadeFila(), getAceites(), getRejeitadas());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package mensageria.no;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ponto de recolha (scrape) das métricas de um nó em texto simples, num porto local.
+ *
+ * 'GET http://localhost:<porta>/metricas' devolve MetricasNo.exportarTexto(), no formato
+ * de texto do Prometheus, mas pode ser lido com um simples curl ou no browser. O servidor
+ * só escuta no endereço de loopback e usa uma única thread própria, fora do caminho dos pedidos.
+ */
+public class ExportadorMetricas {
+
+    private final int idNo;
+    private final int porta;
+    private final MetricasNo metricas;
+    private HttpServer servidor;
+    private ExecutorService executor;
+
+    public ExportadorMetricas(int idNo, int porta, MetricasNo metricas) {
+        this.idNo = idNo;
+        this.porta = porta;
+        this.metricas = metricas;
+    }
+
+    public void iniciar() {
+        try {
+            servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Não foi possível abrir o porto de métricas %d: %s%n", idNo, porta, e.getMessage());
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "no-" + idNo + "-metricas");
+            t.setDaemon(true);
+            return t;
+        });
+        servidor.setExecutor(executor);
+        servidor.createContext("/", this::responder);
+        servidor.start();
+        System.out.printf("[Nó %d] Métricas disponíveis em http://localhost:%d/metricas%n", idNo, porta);
+    }
+
+    public void parar() {
+        if (servidor != null) {
+            servidor.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void responder(HttpExchange troca) throws IOException {
+        try {
+            if (!"GET".equals(troca.getRequestMethod())) {
+                troca.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] corpo = metricas.exportarTexto().getBytes(StandardCharsets.UTF_8);
+            troca.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            troca.sendResponseHeaders(200, corpo.length);
+            try (OutputStream out = troca.getResponseBody()) {
+                out.write(corpo);
+            }
+        } finally {
+            troca.close();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,369 @@
+package mensageria.no;
+
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.Consistencia;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Pacote;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ligação persistente de um nó para um dos seus peers.
+ *
+ * Mantém uma única conexão TCP aberta com o peer e envia por ela todos os pacotes,
+ * em vez de abrir um socket novo por mensagem. Os pacotes são colocados numa fila de
+ * saída e uma thread escritora envia-os em rajadas (um flush por rajada). Cada pacote
+ * leva um id de correlação, para que as respostas, lidas por uma thread leitora, possam
+ * ser entregues a quem fez o pedido.
+ *
+ * As réplicas (REPLICAR_MSG) seguidas na fila, do mesmo mural, são agrupadas num único
+ * REPLICAR_LOTE, com no máximo 'tamanhoLote' mensagens. Se houver menos réplicas prontas, a thread
+ * espera até 'esperaLoteMs' por mais antes de enviar, trocando um pouco de latência
+ * por muito menos pacotes quando o nó está a receber muitas postagens.
+ *
+ * Os pacotes que não levam a sessão de um cliente (os reencaminhados levam) saem com a
+ * credencial deste nó (ver Sessoes.emitirParaNo): sem ela o peer recusa as réplicas e os
+ * pedidos reservados aos nós.
+ *
+ * Se a conexão cair, a ligação volta a conectar-se com espera exponencial (backoff),
+ * e os pacotes continuam a acumular-se na fila (até CAPACIDADE_FILA) até o peer voltar.
+ * Quando a MembrosDaRede dá o peer como morto, a ligação é suspensa: a fila é esvaziada,
+ * os pedidos falham logo e deixa de haver tentativas de conexão até o peer voltar
+ * (o que faltar ao peer é reparado pela anti-entropia quando ele voltar).
+ */
+public class LigacaoPeer {
+
+    private static final int CAPACIDADE_FILA = 10_000;
+    // Máximo de pacotes escritos antes de um flush.
+    private static final int TAMANHO_RAJADA = 256;
+    private static final long ESPERA_INICIAL_MS = 100;
+    private static final long ESPERA_MAXIMA_MS = 5_000;
+    private static final int TIMEOUT_CONEXAO_MS = 1_000;
+
+    private final int idNo;
+    private final int idPeer;
+    private final String host;
+    private final int porta;
+    private final int tamanhoLote;
+    private final long esperaLoteMs;
+    private final Supplier<String> credencial;
+
+    private final LinkedBlockingDeque<Pacote> filaSaida = new LinkedBlockingDeque<>(CAPACIDADE_FILA);
+    private final Map<Long, CompletableFuture<Pacote>> pendentes = new ConcurrentHashMap<>();
+    private final AtomicLong proximoIdCorrelacao = new AtomicLong(1);
+
+    // Estatísticas da ligação.
+    private final AtomicLong enviados = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong reconexoes = new AtomicLong();
+    private final AtomicLong lotes = new AtomicLong();
+
+    private volatile CanalPacotes canal;
+    private volatile boolean ativa = true;
+    private volatile boolean suspensa = false;
+    private final Object retomada = new Object();
+    private final Thread escritor;
+
+    public LigacaoPeer(int idNo, int idPeer, String host, int porta, int tamanhoLote, long esperaLoteMs,
+                       Supplier<String> credencial) {
+        this.idNo = idNo;
+        this.idPeer = idPeer;
+        this.host = host;
+        this.porta = porta;
+        this.tamanhoLote = Math.max(1, tamanhoLote);
+        this.esperaLoteMs = Math.max(0, esperaLoteMs);
+        this.credencial = credencial;
+        this.escritor = new Thread(this::cicloDeEscrita, "ligacao-" + idNo + "-" + idPeer);
+        this.escritor.setDaemon(true);
+    }
+
+    public void iniciar() {
+        escritor.start();
+    }
+
+    public void parar() {
+        ativa = false;
+        escritor.interrupt();
+        fecharCanal(new IOException("Ligação encerrada."));
+    }
+
+    /**
+     * Coloca um pacote na fila de saída, sem esperar resposta.
+     * @return false se a fila estiver cheia e o pacote tiver sido descartado.
+     */
+    public boolean enviar(Pacote.Tipo tipo, Object conteudo) {
+        return enviar(tipo, conteudo, null);
+    }
+
+    // Como enviar(tipo, conteudo), para um pacote dirigido a um mural específico.
+    public boolean enviar(Pacote.Tipo tipo, Object conteudo, String mural) {
+        return enfileirar(new Pacote(tipo, conteudo, proximoIdCorrelacao.getAndIncrement(), mural));
+    }
+
+    /**
+     * Envia um pedido pela ligação e devolve a resposta correspondente (mesmo id de correlação).
+     * O futuro falha se a ligação cair antes de a resposta chegar. Quem desiste de esperar conclui
+     * o futuro (ex: completeExceptionally), e o pedido deixa de estar pendente.
+     */
+    public CompletableFuture<Pacote> pedir(Pacote.Tipo tipo, Object conteudo) {
+        return pedir(tipo, conteudo, null);
+    }
+
+    // Como pedir(tipo, conteudo), para um pedido dirigido a um mural específico.
+    public CompletableFuture<Pacote> pedir(Pacote.Tipo tipo, Object conteudo, String mural) {
+        return pedir(tipo, conteudo, mural, null);
+    }
+
+    // Como pedir(tipo, conteudo, mural), em nome de um cliente com a sessão indicada (reencaminhamento).
+    public CompletableFuture<Pacote> pedir(Pacote.Tipo tipo, Object conteudo, String mural, String sessao) {
+        return pedir(tipo, conteudo, mural, sessao, null);
+    }
+
+    // Como pedir(tipo, conteudo, mural, sessao), com o nível de consistência pedido pelo cliente.
+    public CompletableFuture<Pacote> pedir(Pacote.Tipo tipo, Object conteudo, String mural, String sessao, Consistencia consistencia) {
+        long idCorrelacao = proximoIdCorrelacao.getAndIncrement();
+        CompletableFuture<Pacote> resposta = new CompletableFuture<>();
+        pendentes.put(idCorrelacao, resposta);
+        resposta.whenComplete((pacote, erro) -> pendentes.remove(idCorrelacao, resposta));
+        if (!enfileirar(new Pacote(tipo, conteudo, idCorrelacao, mural, sessao, consistencia))) {
+            pendentes.remove(idCorrelacao);
+            resposta.completeExceptionally(new IOException(suspensa
+                    ? "Nó " + idPeer + " dado como em baixo."
+                    : "Fila de saída cheia para o peer " + idPeer));
+        }
+        return resposta;
+    }
+
+    // O peer foi dado como morto: descarta o que está na fila e deixa de tentar conectar-se.
+    public void suspender() {
+        suspensa = true;
+        List<Pacote> descartadosDaFila = new ArrayList<>();
+        filaSaida.drainTo(descartadosDaFila);
+        descartados.addAndGet(descartadosDaFila.size());
+        fecharCanal(new IOException("Nó " + idPeer + " dado como em baixo."));
+    }
+
+    // O peer voltou: a ligação volta a aceitar pacotes e a conectar-se.
+    public void retomar() {
+        synchronized (retomada) {
+            suspensa = false;
+            retomada.notifyAll();
+        }
+    }
+
+    private boolean enfileirar(Pacote pacote) {
+        if (!ativa || suspensa) return false;
+        if (filaSaida.offerLast(pacote)) {
+            return true;
+        }
+        descartados.incrementAndGet();
+        return false;
+    }
+
+    // Thread escritora: garante a conexão e envia os pacotes da fila em rajadas.
+    private void cicloDeEscrita() {
+        long espera = ESPERA_INICIAL_MS;
+        int maximoRajada = Math.max(TAMANHO_RAJADA, tamanhoLote);
+        List<Pacote> rajada = new ArrayList<>(maximoRajada);
+        while (ativa) {
+            try {
+                if (suspensa) {
+                    aguardarRetomada();
+                    continue;
+                }
+                CanalPacotes atual = canal;
+                if (atual == null) {
+                    atual = conectar();
+                    espera = ESPERA_INICIAL_MS;
+                }
+
+                rajada.add(filaSaida.takeFirst());
+                filaSaida.drainTo(rajada, maximoRajada - 1);
+                aguardarLote(rajada, maximoRajada);
+                // A rajada guarda os pacotes originais, para poderem voltar à fila se o envio falhar.
+                String credencialAtual = credencial.get();
+                for (Pacote pacote : agrupar(rajada)) {
+                    atual.escrever(pacote.getSessao() != null ? pacote : new Pacote(pacote.getTipo(), pacote.getConteudo(),
+                            pacote.getIdCorrelacao(), pacote.getMural(), credencialAtual, pacote.getConsistencia()));
+                }
+                atual.descarregar();
+                enviados.addAndGet(rajada.size());
+                rajada.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                fecharCanal(e);
+                // Os pacotes que não chegaram a sair voltam para o início da fila, pela mesma ordem.
+                for (int i = rajada.size() - 1; i >= 0; i--) {
+                    if (!filaSaida.offerFirst(rajada.get(i))) {
+                        descartados.incrementAndGet();
+                    }
+                }
+                rajada.clear();
+                try {
+                    // Backoff exponencial com jitter, para não martelar um peer que está em baixo.
+                    Thread.sleep(espera + ThreadLocalRandom.current().nextLong(espera / 2 + 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                espera = Math.min(espera * 2, ESPERA_MAXIMA_MS);
+            }
+        }
+    }
+
+    private void aguardarRetomada() throws InterruptedException {
+        synchronized (retomada) {
+            while (suspensa && ativa) {
+                retomada.wait();
+            }
+        }
+    }
+
+    /**
+     * Se a rajada tem réplicas mas ainda não chega a um lote cheio, espera até 'esperaLoteMs'
+     * que cheguem mais pacotes à fila.
+     */
+    private void aguardarLote(List<Pacote> rajada, int maximoRajada) throws InterruptedException {
+        if (esperaLoteMs == 0 || rajada.size() >= tamanhoLote
+                || rajada.get(rajada.size() - 1).getTipo() != Pacote.Tipo.REPLICAR_MSG) {
+            return;
+        }
+        long prazo = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaLoteMs);
+        while (rajada.size() < tamanhoLote) {
+            long restante = prazo - System.nanoTime();
+            Pacote seguinte = restante > 0 ? filaSaida.pollFirst(restante, TimeUnit.NANOSECONDS) : null;
+            if (seguinte == null) {
+                return;
+            }
+            rajada.add(seguinte);
+            filaSaida.drainTo(rajada, maximoRajada - rajada.size());
+        }
+    }
+
+    /**
+     * Junta as réplicas seguidas da rajada, do mesmo mural, em pacotes REPLICAR_LOTE (de até
+     * 'tamanhoLote' mensagens), mantendo a ordem em relação aos restantes pacotes.
+     */
+    private List<Pacote> agrupar(List<Pacote> rajada) {
+        List<Pacote> agrupados = new ArrayList<>(rajada.size());
+        List<Mensagem> lote = new ArrayList<>();
+        String muralDoLote = null;
+        for (Pacote pacote : rajada) {
+            boolean replica = pacote.getTipo() == Pacote.Tipo.REPLICAR_MSG;
+            if (!lote.isEmpty() && (!replica || !pacote.getMural().equals(muralDoLote))) {
+                fecharLote(lote, muralDoLote, agrupados);
+                lote = new ArrayList<>();
+            }
+            if (replica) {
+                lote.add((Mensagem) pacote.getConteudo());
+                muralDoLote = pacote.getMural();
+                if (lote.size() == tamanhoLote) {
+                    fecharLote(lote, muralDoLote, agrupados);
+                    lote = new ArrayList<>();
+                }
+            } else {
+                agrupados.add(pacote);
+            }
+        }
+        if (!lote.isEmpty()) {
+            fecharLote(lote, muralDoLote, agrupados);
+        }
+        return agrupados;
+    }
+
+    private void fecharLote(List<Mensagem> lote, String mural, List<Pacote> agrupados) {
+        if (lote.size() == 1) {
+            agrupados.add(new Pacote(Pacote.Tipo.REPLICAR_MSG, lote.get(0), 0L, mural));
+        } else {
+            agrupados.add(new Pacote(Pacote.Tipo.REPLICAR_LOTE, lote, 0L, mural));
+            lotes.incrementAndGet();
+        }
+    }
+
+    private CanalPacotes conectar() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, porta), TIMEOUT_CONEXAO_MS);
+            socket.setTcpNoDelay(true);
+            CanalPacotes novo = new CanalPacotes(socket);
+            this.canal = novo;
+            if (reconexoes.getAndIncrement() > 0) {
+                System.out.printf("[Nó %d] Ligação com o Nó %d restabelecida (%d pacote(s) na fila).%n", idNo, idPeer, filaSaida.size());
+            }
+            Thread leitor = new Thread(() -> cicloDeLeitura(novo), "ligacao-leitor-" + idNo + "-" + idPeer);
+            leitor.setDaemon(true);
+            leitor.start();
+            return novo;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    // Thread leitora: entrega cada resposta ao pedido com o mesmo id de correlação.
+    private void cicloDeLeitura(CanalPacotes canalLido) {
+        try {
+            while (ativa) {
+                Pacote resposta = canalLido.receber();
+                CompletableFuture<Pacote> pedido = pendentes.remove(resposta.getIdCorrelacao());
+                if (pedido != null) {
+                    pedido.complete(resposta);
+                }
+            }
+        } catch (IOException e) {
+            if (canal == canalLido) {
+                fecharCanal(new IOException("Conexão com o Nó " + idPeer + " perdida.", e));
+            }
+        }
+    }
+
+    private synchronized void fecharCanal(IOException causa) {
+        CanalPacotes atual = canal;
+        canal = null;
+        if (atual != null) {
+            try {
+                atual.close();
+            } catch (IOException ignorada) {
+                // A conexão já está a ser descartada.
+            }
+        }
+        // Os pedidos em curso nunca terão resposta nesta conexão.
+        for (Long idCorrelacao : pendentes.keySet()) {
+            CompletableFuture<Pacote> pedido = pendentes.remove(idCorrelacao);
+            if (pedido != null) {
+                pedido.completeExceptionally(causa);
+            }
+        }
+    }
+
+    // Getters de estado, usados para observar a ligação.
+    public int getIdPeer() { return idPeer; }
+    public int getProfundidadeFila() { return filaSaida.size(); }
+    public int getPedidosPendentes() { return pendentes.size(); }
+    public boolean isConectada() { return canal != null; }
+    public boolean isSuspensa() { return suspensa; }
+    public long getEnviados() { return enviados.get(); }
+    public long getDescartados() { return descartados.get(); }
+    public long getLotes() { return lotes.get(); }
+
+    @Override
+    public String toString() {
+        return String.format("Nó %d -> Nó %d [%s] fila=%d pendentes=%d enviados=%d lotes=%d descartados=%d",
+                idNo, idPeer, suspensa ? "suspensa" : isConectada() ? "conectada" : "desconectada",
+                getProfundidadeFila(), getPedidosPendentes(), getEnviados(), getLotes(), getDescartados());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,596 @@
+package mensageria.no;
+
+import mensageria.comum.Durabilidade;
+import mensageria.comum.FormatoBinario;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.SnapshotColunar;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Log de escrita antecipada (write-ahead log) do mural de um nó.
+ *
+ * Em vez de reescrever o mural inteiro a cada mensagem, cada mensagem aceite é apenas
+ * acrescentada ao fim do segmento atual do log, o que custa O(1) de I/O em disco.
+ * O estado completo em disco é: o último snapshot ('mural_no_N.snap.000005', ver SnapshotColunar)
+ * + os segmentos ('mural_no_N.wal.000005', ...) escritos depois dele.
+ *
+ * O número do snapshot é o do primeiro segmento que ele não cobre. Cada compactação grava um
+ * ficheiro novo em vez de substituir o anterior, porque o snapshot em uso está mapeado em
+ * memória (no Windows um ficheiro mapeado não pode ser substituído nem apagado); os antigos
+ * são apagados quando deixam de estar em uso. O formato anterior ('mural_no_N.dat', um Mural
+ * serializado) ainda é lido, se não houver snapshot colunar.
+ *
+ * - O fsync é feito em grupo por uma thread de fundo, a cada intervaloFsyncMs, cobrindo
+ *   todos os registos escritos nesse intervalo. Quem precisa de esperar por ele (modos GRUPO e
+ *   SINCRONA, ver tornarDuravel) espera pelo fsync que cobre o seu registo, e um só fsync
+ *   serve todos os escritores que chegaram antes dele.
+ * - Quando o segmento atual passa de TAMANHO_MAXIMO_SEGMENTO é aberto um novo.
+ * - Quando se acumulam SEGMENTOS_PARA_COMPACTAR segmentos fechados, o mural é gravado
+ *   como novo snapshot e os segmentos antigos são apagados.
+ */
+public class LogDeEscrita {
+
+    private static final long TAMANHO_MAXIMO_SEGMENTO = 4L * 1024 * 1024; // 4 MB
+    private static final int SEGMENTOS_PARA_COMPACTAR = 4;
+    // Máximo que uma postagem espera pelo fsync em grupo; depois é confirmada só como ESCRITA.
+    private static final long ESPERA_MAXIMA_FSYNC_MS = 5_000;
+    // Versão do formato de cada registo, gravada no início do payload.
+    // Versão 1: campos de tamanho fixo, sem carimbo de origem (ainda lida, para logs antigos).
+    // Versão 2: mensagem no FormatoBinario, com carimbo de origem (ainda lida).
+    // Versão 3: mensagem no FormatoBinario, com carimbo de origem e HLC.
+    private static final byte VERSAO_REGISTO_V1 = 1;
+    private static final byte VERSAO_REGISTO_V2 = 2;
+    private static final byte VERSAO_REGISTO = 3;
+
+    private final int idNo;
+    // Snapshot no formato anterior (serialização Java), só lido.
+    private final File arquivoSnapshotAntigo;
+    private final File diretorio;
+    private final String prefixoSegmento;
+    private final String prefixoSnapshot;
+    private final MetricasNo metricas;
+    private final ConfiguracaoNo.ModoDurabilidade modoDurabilidade;
+    private final long intervaloFsyncMs;
+    private final int registosPorFsync;
+
+    private Mural mural;
+    private FileChannel segmentoAtual;
+    private long numeroSegmentoAtual;
+    private long bytesNoSegmentoAtual;
+    private int segmentosFechados;
+    private volatile boolean compactando = false;
+
+    // Registos escritos desde a abertura do log (protegido pelo monitor do log) e quantos deles
+    // já estão cobertos por um fsync (alterado com o monitor de esperaFsync, que avisa quem espera).
+    private long registosEscritos;
+    private volatile long registosSincronizados;
+    private boolean fsyncAntecipado;
+    // Só um fsync de cada vez: quem chega durante outro espera e depois só faz o seu se ainda precisar.
+    private final Object trancaFsync = new Object();
+    private final Object esperaFsync = new Object();
+
+    // A compactação pode demorar; o fsync tem a sua própria thread para nunca esperar por ela.
+    private final ScheduledExecutorService tarefasDeFundo = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService fsyncDeFundo = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LogDeEscrita(int idNo, String nomeBase, MetricasNo metricas, ConfiguracaoNo configuracao) {
+        this.idNo = idNo;
+        this.metricas = metricas;
+        this.modoDurabilidade = configuracao.getModoDurabilidade();
+        this.intervaloFsyncMs = Math.max(1, configuracao.getIntervaloFsyncMs());
+        this.registosPorFsync = Math.max(1, configuracao.getRegistosPorFsync());
+        this.arquivoSnapshotAntigo = new File(nomeBase + ".dat");
+        File absoluto = arquivoSnapshotAntigo.getAbsoluteFile();
+        this.diretorio = absoluto.getParentFile();
+        this.prefixoSegmento = new File(nomeBase).getName() + ".wal.";
+        this.prefixoSnapshot = new File(nomeBase).getName() + ".snap.";
+    }
+
+    /**
+     * Reconstrói o mural a partir do snapshot e da reprodução (replay) dos segmentos do log,
+     * e deixa o log pronto para receber novos registos num segmento novo.
+     * @return O mural recuperado (vazio se não houver nada em disco).
+     * @throws SegmentoCorrompido Se um segmento que já estava fechado tem um registo inválido.
+     */
+    public synchronized Mural recuperar() throws IOException {
+        this.mural = carregarSnapshot();
+
+        List<Long> numeros = listarNumerados(prefixoSegmento);
+        long ultimo = numeros.isEmpty() ? 0 : numeros.get(numeros.size() - 1);
+        int reproduzidas = 0;
+        for (Iterator<Long> it = numeros.iterator(); it.hasNext(); ) {
+            long numero = it.next();
+            File segmento = arquivoDoSegmento(numero);
+            reproduzidas += reproduzirSegmento(segmento, numero == ultimo);
+            // Segmentos vazios (ex: o nó parou sem receber mensagens) não precisam de ser mantidos.
+            if (segmento.length() == 0 && segmento.delete()) {
+                it.remove();
+            }
+        }
+        if (reproduzidas > 0) {
+            System.out.printf("[Nó %d] %d mensagem(ns) recuperada(s) do log de escrita.%n", idNo, reproduzidas);
+        }
+
+        this.segmentosFechados = numeros.size();
+        long proximo = numeros.isEmpty() ? 1 : numeros.get(numeros.size() - 1) + 1;
+        abrirSegmento(proximo);
+
+        fsyncDeFundo.scheduleWithFixedDelay(this::sincronizarComDisco,
+                intervaloFsyncMs, intervaloFsyncMs, TimeUnit.MILLISECONDS);
+        if (segmentosFechados >= SEGMENTOS_PARA_COMPACTAR) {
+            agendarCompactacao();
+        }
+        return mural;
+    }
+
+    /**
+     * Acrescenta uma mensagem ao fim do segmento atual. O custo não depende do tamanho do mural.
+     * A durabilidade é garantida pelo fsync em grupo feito pela thread de fundo.
+     * @return O número do registo, para quem quiser esperar que chegue ao disco (tornarDuravel).
+     */
+    public synchronized long acrescentar(Mensagem mensagem) throws IOException {
+        if (segmentoAtual == null) {
+            throw new IOException("Log de escrita não está aberto.");
+        }
+        ByteBuffer registo = codificarRegisto(mensagem);
+        int tamanho = registo.remaining();
+        try {
+            while (registo.hasRemaining()) {
+                segmentoAtual.write(registo);
+            }
+        } catch (IOException e) {
+            desfazerEscritaParcial();
+            throw e;
+        }
+        bytesNoSegmentoAtual += tamanho;
+        long numero = ++registosEscritos;
+
+        if (bytesNoSegmentoAtual >= TAMANHO_MAXIMO_SEGMENTO) {
+            rodarSegmento();
+            if (segmentosFechados >= SEGMENTOS_PARA_COMPACTAR) {
+                agendarCompactacao();
+            }
+        } else if (modoDurabilidade == ConfiguracaoNo.ModoDurabilidade.GRUPO && !fsyncAntecipado
+                && numero - registosSincronizados >= registosPorFsync) {
+            // Já há registos suficientes à espera: o fsync do grupo não espera pelo intervalo.
+            fsyncAntecipado = true;
+            try {
+                fsyncDeFundo.execute(this::sincronizarComDisco);
+            } catch (RejectedExecutionException e) {
+                // O log está a ser fechado, e o fecho faz o último fsync.
+                fsyncAntecipado = false;
+            }
+        }
+        return numero;
+    }
+
+    /**
+     * Corta o que uma escrita falhada deixou do registo no fim do segmento. Sem isso, os registos
+     * seguintes ficariam depois de um registo inválido e a recuperação pararia nele (ver
+     * reproduzirSegmento). Se nem o corte for possível, o log deixa de aceitar escritas: o resto
+     * do registo fica no fim do último segmento, que é o único que a recuperação trunca.
+     * Deve ser chamado com o monitor do log.
+     */
+    private void desfazerEscritaParcial() {
+        try {
+            segmentoAtual.truncate(bytesNoSegmentoAtual);
+            segmentoAtual.position(bytesNoSegmentoAtual);
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Não foi possível cortar um registo incompleto do log de escrita (%s); "
+                    + "o log deixa de aceitar escritas.%n", idNo, e.getMessage());
+            try {
+                segmentoAtual.close();
+            } catch (IOException ignorada) {
+                // O canal já não é usado.
+            }
+            segmentoAtual = null;
+        }
+    }
+
+    /**
+     * Espera, conforme o modo de durabilidade, que o registo indicado chegue ao disco.
+     * @return O nível atingido: DISCO depois de um fsync que o cobre, ESCRITA no modo
+     *         ASSINCRONA ou se o fsync falhar (ou demorar mais de ESPERA_MAXIMA_FSYNC_MS).
+     */
+    public Durabilidade tornarDuravel(long registo) {
+        switch (modoDurabilidade) {
+            case SINCRONA:
+                // Cada volta é um fsync que cobre tudo o que já foi escrito, incluindo os registos
+                // dos escritores que esperaram por ele: esses já não precisam de fazer o seu.
+                while (registosSincronizados < registo) {
+                    if (!sincronizarComDisco()) {
+                        return Durabilidade.ESCRITA;
+                    }
+                }
+                return Durabilidade.DISCO;
+
+            case GRUPO:
+                long limite = System.currentTimeMillis() + ESPERA_MAXIMA_FSYNC_MS;
+                synchronized (esperaFsync) {
+                    while (registosSincronizados < registo) {
+                        long restante = limite - System.currentTimeMillis();
+                        if (restante <= 0) {
+                            return Durabilidade.ESCRITA;
+                        }
+                        try {
+                            esperaFsync.wait(restante);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return Durabilidade.ESCRITA;
+                        }
+                    }
+                }
+                return Durabilidade.DISCO;
+
+            default:
+                return registosSincronizados >= registo ? Durabilidade.DISCO : Durabilidade.ESCRITA;
+        }
+    }
+
+    // Fecha o log, garantindo que tudo o que foi escrito chega ao disco.
+    public void fechar() {
+        tarefasDeFundo.shutdown();
+        fsyncDeFundo.shutdown();
+        try {
+            tarefasDeFundo.awaitTermination(5, TimeUnit.SECONDS);
+            fsyncDeFundo.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (segmentoAtual != null) {
+                try {
+                    segmentoAtual.force(false);
+                    segmentoAtual.close();
+                    marcarSincronizados(registosEscritos);
+                } catch (IOException e) {
+                    System.err.printf("[Nó %d] Erro ao fechar o log de escrita: %s%n", idNo, e.getMessage());
+                }
+                segmentoAtual = null;
+            }
+        }
+    }
+
+    /**
+     * Um único fsync cobre todos os registos escritos antes dele. Executado periodicamente, quando
+     * o grupo se enche (modo GRUPO) e por quem precisa dele para confirmar (modo SINCRONA).
+     * @return false se o fsync falhou (ou o log está fechado).
+     */
+    private boolean sincronizarComDisco() {
+        synchronized (trancaFsync) {
+            FileChannel canal;
+            long alvo;
+            synchronized (this) {
+                canal = segmentoAtual;
+                alvo = registosEscritos;
+                fsyncAntecipado = false;
+            }
+            if (alvo <= registosSincronizados) {
+                return true;
+            }
+            if (canal == null) {
+                return false;
+            }
+            try {
+                // O force é feito fora do monitor do log para não bloquear os escritores durante o fsync.
+                long inicio = System.nanoTime();
+                canal.force(false);
+                metricas.registrarFsync(System.nanoTime() - inicio);
+            } catch (IOException e) {
+                // O canal pode ter sido fechado por uma rotação; nesse caso o force já foi feito lá.
+                if (canal.isOpen()) {
+                    System.err.printf("[Nó %d] Erro no fsync do log de escrita: %s%n", idNo, e.getMessage());
+                    return false;
+                }
+            }
+            marcarSincronizados(alvo);
+            return true;
+        }
+    }
+
+    private void marcarSincronizados(long ate) {
+        synchronized (esperaFsync) {
+            if (ate > registosSincronizados) {
+                registosSincronizados = ate;
+                esperaFsync.notifyAll();
+            }
+        }
+    }
+
+    private void agendarCompactacao() {
+        if (compactando) return;
+        compactando = true;
+        tarefasDeFundo.execute(this::compactar);
+    }
+
+    /**
+     * Grava o mural atual como snapshot e apaga os segmentos que ele já cobre.
+     * O segmento é rodado antes de o snapshot ser tirado: como uma mensagem só é escrita no
+     * log depois de entrar no mural, tudo o que está nos segmentos antigos está no snapshot.
+     * O snapshot só leva a cópia de cada mensagem que vale; as outras (ver
+     * Mural.juntarMensagem) são escritas de novo no segmento atual antes de os antigos serem
+     * apagados, para que as suas sequências continuem a contar nas marcas de água.
+     */
+    private void compactar() {
+        long inicio = System.nanoTime();
+        try {
+            long primeiroSegmentoMantido;
+            synchronized (this) {
+                if (segmentoAtual == null) return;
+                if (bytesNoSegmentoAtual > 0) {
+                    rodarSegmento();
+                }
+                primeiroSegmentoMantido = numeroSegmentoAtual;
+            }
+
+            File arquivoSnapshot = arquivoDoSnapshot(primeiroSegmentoMantido);
+            File temporario = new File(diretorio, arquivoSnapshot.getName() + ".tmp");
+            SnapshotColunar.gravar(temporario, mural.getTodasAsMensagens());
+            Files.move(temporario.toPath(), arquivoSnapshot.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            for (Mensagem copia : mural.getCopiasSubstituidas()) {
+                acrescentar(copia);
+            }
+            metricas.registrarCompactacao(System.nanoTime() - inicio);
+
+            int apagados = 0;
+            for (Long numero : listarNumerados(prefixoSegmento)) {
+                if (numero < primeiroSegmentoMantido && arquivoDoSegmento(numero).delete()) {
+                    apagados++;
+                }
+            }
+            apagarSnapshotsAnteriores(primeiroSegmentoMantido);
+            synchronized (this) {
+                segmentosFechados = Math.max(0, segmentosFechados - apagados);
+            }
+            System.out.printf("[Nó %d] Log de escrita compactado em snapshot (%d segmento(s) removido(s)).%n", idNo, apagados);
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Erro ao compactar o log de escrita: %s%n", idNo, e.getMessage());
+        } finally {
+            compactando = false;
+        }
+    }
+
+    // Deve ser chamado com o monitor do log.
+    private void rodarSegmento() throws IOException {
+        segmentoAtual.force(false);
+        segmentoAtual.close();
+        marcarSincronizados(registosEscritos);
+        segmentosFechados++;
+        abrirSegmento(numeroSegmentoAtual + 1);
+    }
+
+    private void abrirSegmento(long numero) throws IOException {
+        RandomAccessFile arquivo = new RandomAccessFile(arquivoDoSegmento(numero), "rw");
+        this.segmentoAtual = arquivo.getChannel();
+        this.segmentoAtual.position(segmentoAtual.size());
+        this.numeroSegmentoAtual = numero;
+        this.bytesNoSegmentoAtual = segmentoAtual.size();
+    }
+
+    /**
+     * Abre o snapshot colunar mais recente que esteja válido; as mensagens ficam no ficheiro
+     * mapeado e só são lidas quando pedidas. Sem snapshot colunar, lê o formato anterior.
+     */
+    private Mural carregarSnapshot() {
+        List<Long> snapshots = listarNumerados(prefixoSnapshot);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            File arquivo = arquivoDoSnapshot(snapshots.get(i));
+            try {
+                SnapshotColunar snapshot = SnapshotColunar.abrir(arquivo);
+                apagarSnapshotsAnteriores(snapshots.get(i));
+                System.out.printf("[Nó %d] Snapshot %s aberto (%d mensagens, lidas do disco quando pedidas).%n",
+                        idNo, arquivo.getName(), snapshot.tamanho());
+                return new Mural(snapshot);
+            } catch (IOException e) {
+                System.err.printf("[Nó %d] Snapshot %s ignorado: %s%n", idNo, arquivo.getName(), e.getMessage());
+            }
+        }
+        if (!arquivoSnapshotAntigo.exists()) {
+            return new Mural();
+        }
+        try (FileInputStream fis = new FileInputStream(arquivoSnapshotAntigo);
+             ObjectInputStream ois = new ObjectInputStream(fis)) {
+            return (Mural) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.printf("[Nó %d] Erro ao carregar snapshot do disco. Iniciando com um novo. Erro: %s%n", idNo, e.getMessage());
+            return new Mural();
+        }
+    }
+
+    // Apaga os snapshots (e o do formato anterior) que o snapshot 'numero' já substitui.
+    // Um snapshot ainda mapeado pode não se deixar apagar; fica para a próxima vez.
+    private void apagarSnapshotsAnteriores(long numero) {
+        for (Long anterior : listarNumerados(prefixoSnapshot)) {
+            if (anterior < numero) {
+                arquivoDoSnapshot(anterior).delete();
+            }
+        }
+        if (arquivoSnapshotAntigo.exists()) {
+            arquivoSnapshotAntigo.delete();
+        }
+    }
+
+    /**
+     * Reaplica os registos de um segmento no mural. Só o último segmento pode ter sido
+     * interrompido a meio de uma escrita: nele, o que vem a seguir ao último registo válido é
+     * descartado e o ficheiro truncado. Num segmento anterior, que já estava fechado, um registo
+     * inválido é corrupção do disco e não uma queda; o ficheiro fica como está (para ser
+     * recuperado à mão ou de outra réplica) e a recuperação falha.
+     */
+    private int reproduzirSegmento(File arquivo, boolean ultimo) throws IOException {
+        int adicionadas = 0;
+        long posicaoValida = 0;
+        String problema = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)))) {
+            while (true) {
+                int tamanho;
+                try {
+                    tamanho = in.readInt();
+                } catch (EOFException fim) {
+                    break;
+                }
+                long crcGravado = in.readInt() & 0xFFFFFFFFL;
+                if (tamanho <= 0 || tamanho > TAMANHO_MAXIMO_SEGMENTO) {
+                    problema = "tamanho de registo inválido (" + tamanho + ")";
+                    break;
+                }
+                byte[] payload = new byte[tamanho];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, payload.length);
+                if (crc.getValue() != crcGravado) {
+                    problema = "CRC inválido";
+                    break;
+                }
+
+                // Também as outras cópias de uma mensagem, com outro carimbo (ver Mural.juntarMensagem).
+                if (mural.juntarMensagem(decodificarMensagem(payload))) {
+                    adicionadas++;
+                }
+                posicaoValida += 8 + tamanho;
+            }
+        } catch (EOFException registoIncompleto) {
+            problema = "registo incompleto";
+        }
+        long tamanhoDoFicheiro = arquivo.length();
+        if (posicaoValida == tamanhoDoFicheiro) {
+            return adicionadas;
+        }
+        if (problema == null) {
+            // O ficheiro acaba a meio do campo de tamanho de um registo.
+            problema = "registo incompleto";
+        }
+        if (!ultimo) {
+            throw new SegmentoCorrompido(String.format(
+                    "Segmento fechado %s corrompido na posição %d de %d (%s). O ficheiro não foi alterado.",
+                    arquivo.getName(), posicaoValida, tamanhoDoFicheiro, problema));
+        }
+        System.err.printf("[Nó %d] Último segmento %s: %s na posição %d; %d byte(s) descartado(s) a partir daí.%n",
+                idNo, arquivo.getName(), problema, posicaoValida, tamanhoDoFicheiro - posicaoValida);
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "rw")) {
+            raf.setLength(posicaoValida);
+        }
+        return adicionadas;
+    }
+
+    // Números dos ficheiros com o prefixo indicado (segmentos ou snapshots), por ordem crescente.
+    private List<Long> listarNumerados(String prefixo) {
+        List<Long> numeros = new ArrayList<>();
+        String[] nomes = diretorio.list();
+        if (nomes == null) return numeros;
+        for (String nome : nomes) {
+            if (nome.startsWith(prefixo)) {
+                try {
+                    numeros.add(Long.parseLong(nome.substring(prefixo.length())));
+                } catch (NumberFormatException e) {
+                    // Ignora ficheiros que não seguem o padrão de nomes.
+                }
+            }
+        }
+        Collections.sort(numeros);
+        return numeros;
+    }
+
+    private File arquivoDoSegmento(long numero) {
+        return new File(diretorio, String.format("%s%06d", prefixoSegmento, numero));
+    }
+
+    private File arquivoDoSnapshot(long numero) {
+        return new File(diretorio, String.format("%s%06d", prefixoSnapshot, numero));
+    }
+
+    // Formato do registo: [int tamanho][int crc32][payload]
+    // Payload: [byte versão][mensagem no FormatoBinario]
+    private static ByteBuffer codificarRegisto(Mensagem mensagem) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSAO_REGISTO);
+        FormatoBinario.escreverMensagem(out, mensagem);
+        byte[] payload = bytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer registo = ByteBuffer.allocate(8 + payload.length);
+        registo.putInt(payload.length);
+        registo.putInt((int) crc.getValue());
+        registo.put(payload);
+        registo.flip();
+        return registo;
+    }
+
+    private static Mensagem decodificarMensagem(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte versao = in.readByte();
+        if (versao == VERSAO_REGISTO) {
+            return FormatoBinario.lerMensagem(in);
+        }
+        if (versao == VERSAO_REGISTO_V2) {
+            return FormatoBinario.lerMensagemSemHlc(in);
+        }
+        if (versao != VERSAO_REGISTO_V1) {
+            throw new IOException("Versão de registo desconhecida: " + versao);
+        }
+        // Versão 1: [long msb][long lsb][long timestamp][texto autor][texto conteúdo]
+        UUID id = new UUID(in.readLong(), in.readLong());
+        long timestamp = in.readLong();
+        String autor = lerTexto(in);
+        String conteudo = lerTexto(in);
+        return new Mensagem(id, autor, conteudo, timestamp);
+    }
+
+    // Textos da versão 1 do registo: [int tamanho][bytes UTF-8].
+    private static String lerTexto(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Um segmento fechado do log tem um registo inválido: a recuperação pára em vez de descartar
+     * as mensagens que estão nele depois desse registo e nos segmentos seguintes.
+     */
+    public static class SegmentoCorrompido extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SegmentoCorrompido(String mensagem) {
+            super(mensagem);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,481 @@
+package mensageria.no;
+
+import mensageria.comum.CodecBinario;
+import mensageria.comum.Log;
+import mensageria.comum.Membro;
+import mensageria.comum.Pacote;
+import mensageria.comum.Rumores;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pertença à rede e deteção de falhas ao estilo SWIM, por UDP (no mesmo número de porta do
+ * servidor TCP do nó).
+ *
+ * A cada 'periodoMs' o nó sonda um dos outros membros, por uma ordem aleatória que passa por
+ * todos antes de se repetir: envia PING e espera ACK_PING durante metade do período. Sem
+ * resposta, pede a PEDIDOS_INDIRETOS outros membros que sondem o alvo por ele (PEDIDO_PING),
+ * para não culpar o alvo por um problema só na ligação entre os dois. Se ninguém responder até
+ * ao fim do período, o alvo passa a SUSPEITO e, se não o desmentir em RODADAS_SUSPEITA
+ * períodos, a MORTO.
+ *
+ * As mudanças de estado seguem "à boleia" nos próprios pacotes de sondagem (ver Rumores), cada
+ * uma repetida umas poucas vezes (proporcional a log n), por isso a rede inteira fica a saber
+ * de uma falha em poucos períodos sem mensagens próprias. Um nó novo só precisa de conhecer uma
+ * semente: ao receber o PING de um nó que não conhecia (ou que tinha como morto), o membro
+ * responde com a lista completa.
+ *
+ * Os membros mortos continuam a ser sondados de vez em quando: se um deles responder, desmente
+ * a sua morte com uma encarnação maior e volta a contar para a rede (ex: depois de uma partição).
+ *
+ * Cada mudança de estado é comunicada ao No (No.membroAlterado), que ajusta as ligações,
+ * o anel e a reparação dos murais.
+ */
+public class MembrosDaRede {
+
+    private static final int PEDIDOS_INDIRETOS = 3;
+    // Períodos que um membro suspeito tem para o desmentir antes de ser dado como morto.
+    private static final int RODADAS_SUSPEITA = 6;
+    // De quantas em quantas rodadas se sonda também um membro dado como morto.
+    private static final int RODADAS_ENTRE_SONDAGENS_DE_MORTOS = 10;
+    // Máximo de rumores por pacote, além do registo do próprio nó e do destinatário.
+    private static final int RUMORES_POR_PACOTE = 8;
+    // Máximo de membros enviados de uma vez a um nó que acabou de entrar.
+    private static final int MEMBROS_POR_JUNCAO = 64;
+    private static final int TAMANHO_MAXIMO_DATAGRAMA = 65_507;
+
+    private final No no;
+    private final int idNo;
+    private final long periodoMs;
+
+    // Os outros membros conhecidos (este nó não está aqui; ver 'proprio').
+    private final Map<Integer, Membro> membros = new ConcurrentHashMap<>();
+    // Instante (System.nanoTime) em que cada membro suspeito passou a sê-lo.
+    private final Map<Integer, Long> suspeitosDesde = new ConcurrentHashMap<>();
+    // Rumores ainda por espalhar: id do membro -> vezes que já seguiu num pacote.
+    private final Map<Integer, Integer> rumores = new ConcurrentHashMap<>();
+    // Sondagens deste nó à espera de ACK_PING, pelo id de correlação.
+    private final Map<Long, CompletableFuture<Boolean>> sondagens = new ConcurrentHashMap<>();
+    // Sondagens feitas em nome de outro nó (PEDIDO_PING): id usado aqui -> a quem devolver o ACK.
+    private final Map<Long, Encaminhamento> encaminhamentos = new ConcurrentHashMap<>();
+    private final AtomicLong proximoIdCorrelacao = new AtomicLong(1);
+
+    // O registo deste nó. A encarnação parte do relógio, para que um nó reiniciado
+    // desminta sempre o "MORTO" que os outros ainda guardam da vida anterior.
+    private volatile Membro proprio;
+
+    private final ScheduledExecutorService agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile DatagramSocket socket;
+
+    // Usados apenas pela thread do agendador.
+    private final List<Integer> ordemSondagem = new ArrayList<>();
+    private int proximaSondagem;
+    private long rodadas;
+
+    public MembrosDaRede(No no, int idNo, String host, int porta, long periodoMs) {
+        this.no = no;
+        this.idNo = idNo;
+        this.periodoMs = periodoMs;
+        this.proprio = new Membro(idNo, host, porta, Membro.Estado.VIVO, System.currentTimeMillis());
+    }
+
+    // Um membro conhecido à partida (ex: da configuração); vale como VIVO até se provar o contrário.
+    void adicionarSemente(int id, String host, int porta) {
+        if (id != idNo) {
+            membros.putIfAbsent(id, new Membro(id, host, porta, Membro.Estado.VIVO, 0));
+        }
+    }
+
+    /**
+     * Abre o socket UDP, anuncia este nó às sementes (esperando até dois períodos pela primeira
+     * resposta, que traz a lista de membros) e começa as rodadas de sondagem.
+     * Com 'periodoMs' 0 a deteção fica desligada e os membros ficam como foram configurados.
+     */
+    public void iniciar() {
+        if (periodoMs <= 0) return;
+        try {
+            socket = new DatagramSocket(proprio.getPorta());
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Não foi possível abrir a porta UDP %d para a pertença à rede: %s%n",
+                    idNo, proprio.getPorta(), e.getMessage());
+            return;
+        }
+        Thread receptor = new Thread(this::cicloDeRecepcao, "membros-" + idNo);
+        receptor.setDaemon(true);
+        receptor.start();
+
+        juntar();
+        agendador.scheduleAtFixedRate(this::executarRodada, periodoMs, periodoMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void parar() {
+        agendador.shutdownNow();
+        DatagramSocket atual = socket;
+        if (atual != null) {
+            atual.close();
+        }
+    }
+
+    private void juntar() {
+        if (membros.isEmpty()) return;
+        long id = proximoIdCorrelacao.getAndIncrement();
+        CompletableFuture<Boolean> resposta = new CompletableFuture<>();
+        sondagens.put(id, resposta);
+        try {
+            for (Membro semente : membros.values()) {
+                enviar(semente, Pacote.Tipo.PING, 0, id);
+            }
+            if (esperar(resposta, 2 * periodoMs)) {
+                System.out.printf("[Nó %d] Entrou na rede: %d membro(s) conhecido(s).%n", idNo, membros.size() + 1);
+            } else {
+                System.out.printf("[Nó %d] Nenhuma semente respondeu; os membros serão sondados em fundo.%n", idNo);
+            }
+        } finally {
+            sondagens.remove(id);
+        }
+    }
+
+    private void executarRodada() {
+        try {
+            rodadas++;
+            expirarSuspeitos();
+            expirarEncaminhamentos();
+            if (rodadas % RODADAS_ENTRE_SONDAGENS_DE_MORTOS == 0) {
+                sondarUmMorto();
+            }
+            Membro alvo = proximoAlvo();
+            if (alvo != null) {
+                sondar(alvo);
+            }
+        } catch (RuntimeException e) {
+            // Uma exceção inesperada não pode cancelar as próximas rodadas agendadas.
+            System.err.printf("[Nó %d] Erro na rodada de pertença: %s%n", idNo, e);
+        }
+    }
+
+    // Sonda o alvo diretamente e, se não responder a tempo, através de outros membros.
+    private void sondar(Membro alvo) {
+        long id = proximoIdCorrelacao.getAndIncrement();
+        CompletableFuture<Boolean> ack = new CompletableFuture<>();
+        sondagens.put(id, ack);
+        try {
+            enviar(alvo, Pacote.Tipo.PING, 0, id);
+            long esperaDireta = periodoMs / 2;
+            if (esperar(ack, esperaDireta)) return;
+
+            for (Membro intermediario : escolherIntermediarios(alvo.getId())) {
+                enviar(intermediario, Pacote.Tipo.PEDIDO_PING, alvo.getId(), id);
+            }
+            if (esperar(ack, periodoMs - esperaDireta)) return;
+
+            Membro atual = membros.get(alvo.getId());
+            if (atual != null && atual.getEstado() == Membro.Estado.VIVO) {
+                aplicar(atual.com(Membro.Estado.SUSPEITO, atual.getEncarnacao()));
+            }
+        } finally {
+            sondagens.remove(id);
+        }
+    }
+
+    // Um PING a um membro morto, sem esperar: se estiver de volta, a resposta desmente a morte.
+    private void sondarUmMorto() {
+        List<Membro> mortos = new ArrayList<>();
+        for (Membro membro : membros.values()) {
+            if (membro.getEstado() == Membro.Estado.MORTO) {
+                mortos.add(membro);
+            }
+        }
+        if (!mortos.isEmpty()) {
+            enviar(mortos.get(ThreadLocalRandom.current().nextInt(mortos.size())), Pacote.Tipo.PING, 0,
+                    proximoIdCorrelacao.getAndIncrement());
+        }
+    }
+
+    // Próximo membro a sondar: percorre os membros não mortos por uma ordem aleatória.
+    private Membro proximoAlvo() {
+        for (int tentativas = 0; tentativas < 2; tentativas++) {
+            while (proximaSondagem < ordemSondagem.size()) {
+                Membro membro = membros.get(ordemSondagem.get(proximaSondagem++));
+                if (membro != null && membro.getEstado() != Membro.Estado.MORTO) {
+                    return membro;
+                }
+            }
+            ordemSondagem.clear();
+            ordemSondagem.addAll(membros.keySet());
+            Collections.shuffle(ordemSondagem);
+            proximaSondagem = 0;
+        }
+        return null;
+    }
+
+    private List<Membro> escolherIntermediarios(int alvo) {
+        List<Membro> candidatos = new ArrayList<>();
+        for (Membro membro : membros.values()) {
+            if (membro.getId() != alvo && membro.getEstado() == Membro.Estado.VIVO) {
+                candidatos.add(membro);
+            }
+        }
+        Collections.shuffle(candidatos);
+        return candidatos.subList(0, Math.min(PEDIDOS_INDIRETOS, candidatos.size()));
+    }
+
+    private void expirarSuspeitos() {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(RODADAS_SUSPEITA * periodoMs);
+        for (Map.Entry<Integer, Long> suspeito : suspeitosDesde.entrySet()) {
+            Membro membro = membros.get(suspeito.getKey());
+            if (suspeito.getValue() < limite && membro != null && membro.getEstado() == Membro.Estado.SUSPEITO) {
+                aplicar(membro.com(Membro.Estado.MORTO, membro.getEncarnacao()));
+            }
+        }
+    }
+
+    private void expirarEncaminhamentos() {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2 * periodoMs);
+        encaminhamentos.values().removeIf(encaminhamento -> encaminhamento.criadoEm < limite);
+    }
+
+    /**
+     * Junta um registo (recebido ou decidido aqui) ao que este nó sabe, se for mais recente,
+     * e passa-o a rumor. Um registo que diga que este nó está suspeito ou morto é desmentido
+     * com uma encarnação maior.
+     */
+    private void aplicar(Membro registo) {
+        if (registo.getId() == idNo) {
+            synchronized (this) {
+                if (registo.getEstado() == Membro.Estado.VIVO || registo.getEncarnacao() < proprio.getEncarnacao()) {
+                    return;
+                }
+                proprio = proprio.com(Membro.Estado.VIVO, registo.getEncarnacao() + 1);
+            }
+            Log.info("[Nó %d] Desmentindo o estado %s que a rede lhe atribuiu.%n", idNo, registo.getEstado());
+            return;
+        }
+        Membro anterior;
+        synchronized (this) {
+            anterior = membros.get(registo.getId());
+            if (anterior != null && !registo.sobrepoe(anterior)) {
+                return;
+            }
+            membros.put(registo.getId(), registo);
+            if (registo.getEstado() != Membro.Estado.SUSPEITO) {
+                suspeitosDesde.remove(registo.getId());
+            } else if (anterior == null || anterior.getEstado() != Membro.Estado.SUSPEITO) {
+                suspeitosDesde.put(registo.getId(), System.nanoTime());
+            }
+            rumores.put(registo.getId(), 0);
+        }
+        if (anterior == null || anterior.getEstado() != registo.getEstado()) {
+            no.membroAlterado(anterior, registo);
+        }
+    }
+
+    private void cicloDeRecepcao() {
+        DatagramSocket atual = socket;
+        byte[] buffer = new byte[TAMANHO_MAXIMO_DATAGRAMA];
+        while (!atual.isClosed()) {
+            DatagramPacket datagrama = new DatagramPacket(buffer, buffer.length);
+            try {
+                atual.receive(datagrama);
+                Pacote pacote = CodecBinario.INSTANCIA.decodificar(
+                        Arrays.copyOfRange(datagrama.getData(), datagrama.getOffset(), datagrama.getOffset() + datagrama.getLength()));
+                if (no.getSessoes().validarNo(pacote.getSessao()) < 0) {
+                    // Só os nós da rede (com a mesma chave) podem espalhar rumores.
+                    Log.aviso("[Nó %d] Datagrama de pertença sem credencial de nó válida, vindo de %s; ignorado.%n",
+                            idNo, datagrama.getSocketAddress());
+                } else if (pacote.getConteudo() instanceof Rumores) {
+                    tratar(pacote, (Rumores) pacote.getConteudo(), datagrama.getSocketAddress());
+                }
+            } catch (IOException e) {
+                if (!atual.isClosed()) {
+                    Log.aviso("[Nó %d] Datagrama de pertença inválido: %s%n", idNo, e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                System.err.printf("[Nó %d] Erro ao tratar datagrama de pertença: %s%n", idNo, e);
+            }
+        }
+    }
+
+    private void tratar(Pacote pacote, Rumores conteudo, SocketAddress remetente) {
+        List<Membro> registos = conteudo.getMembros();
+        Membro conhecido = registos.isEmpty() ? null : membros.get(registos.get(0).getId());
+        boolean aEntrar = !registos.isEmpty() && registos.get(0).getId() != idNo
+                && (conhecido == null || conhecido.getEstado() == Membro.Estado.MORTO);
+        for (Membro registo : registos) {
+            aplicar(registo);
+        }
+
+        switch (pacote.getTipo()) {
+            case PING:
+                // A quem acabou de entrar (ou de voltar), responde com todos os membros.
+                enviar(remetente, registos.isEmpty() ? null : registos.get(0), Pacote.Tipo.ACK_PING, 0,
+                        pacote.getIdCorrelacao(), aEntrar);
+                break;
+
+            case PEDIDO_PING:
+                Membro alvo = membros.get(conteudo.getAlvo());
+                if (alvo != null) {
+                    long id = proximoIdCorrelacao.getAndIncrement();
+                    encaminhamentos.put(id, new Encaminhamento(remetente, pacote.getIdCorrelacao()));
+                    enviar(alvo, Pacote.Tipo.PING, 0, id);
+                }
+                break;
+
+            case ACK_PING:
+                CompletableFuture<Boolean> sondagem = sondagens.get(pacote.getIdCorrelacao());
+                if (sondagem != null) {
+                    sondagem.complete(true);
+                }
+                Encaminhamento encaminhamento = encaminhamentos.remove(pacote.getIdCorrelacao());
+                if (encaminhamento != null) {
+                    enviar(encaminhamento.destino, null, Pacote.Tipo.ACK_PING, 0, encaminhamento.idCorrelacao, false);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void enviar(Membro destino, Pacote.Tipo tipo, int alvo, long idCorrelacao) {
+        enviar(new InetSocketAddress(destino.getHost(), destino.getPorta()), destino, tipo, alvo, idCorrelacao, false);
+    }
+
+    private void enviar(SocketAddress endereco, Membro destino, Pacote.Tipo tipo, int alvo, long idCorrelacao, boolean juncao) {
+        DatagramSocket atual = socket;
+        if (atual == null) return;
+        try {
+            byte[] dados = CodecBinario.INSTANCIA.codificar(
+                    new Pacote(tipo, new Rumores(alvo, registosParaEnviar(destino, juncao)), idCorrelacao, null, no.getCredencial()));
+            atual.send(new DatagramPacket(dados, dados.length, endereco));
+        } catch (IOException e) {
+            Log.depuracao("[Nó %d] Falha ao enviar %s para %s: %s%n", idNo, tipo, endereco, e.getMessage());
+        }
+    }
+
+    /**
+     * Os registos que seguem num pacote: o deste nó, o que se sabe do destinatário se não for
+     * VIVO (para que o possa desmentir logo) e os rumores menos espalhados até agora. Cada rumor
+     * deixa de seguir depois de ter ido em cerca de 3·log2(n) pacotes.
+     */
+    private List<Membro> registosParaEnviar(Membro destino, boolean juncao) {
+        List<Membro> registos = new ArrayList<>();
+        registos.add(proprio);
+        if (juncao) {
+            for (Membro membro : membros.values()) {
+                if (registos.size() > MEMBROS_POR_JUNCAO) break;
+                registos.add(membro);
+            }
+            return registos;
+        }
+        if (destino != null) {
+            Membro conhecido = membros.get(destino.getId());
+            if (conhecido != null && conhecido.getEstado() != Membro.Estado.VIVO) {
+                registos.add(conhecido);
+            }
+        }
+        if (rumores.isEmpty()) {
+            return registos;
+        }
+        int limite = 3 * (32 - Integer.numberOfLeadingZeros(membros.size() + 1));
+        List<Map.Entry<Integer, Integer>> pendentes = new ArrayList<>(rumores.entrySet());
+        pendentes.sort(Map.Entry.comparingByValue());
+        Iterator<Map.Entry<Integer, Integer>> iterador = pendentes.iterator();
+        for (int enviados = 0; enviados < RUMORES_POR_PACOTE && iterador.hasNext(); enviados++) {
+            Map.Entry<Integer, Integer> rumor = iterador.next();
+            Membro membro = membros.get(rumor.getKey());
+            if (membro == null) {
+                rumores.remove(rumor.getKey());
+                continue;
+            }
+            if (!registos.contains(membro)) {
+                registos.add(membro);
+            }
+            int vezes = rumor.getValue() + 1;
+            if (vezes >= limite) {
+                rumores.remove(rumor.getKey(), rumor.getValue());
+            } else {
+                rumores.replace(rumor.getKey(), rumor.getValue(), vezes);
+            }
+        }
+        return registos;
+    }
+
+    private static boolean esperar(CompletableFuture<Boolean> resposta, long ms) {
+        try {
+            return resposta.get(ms, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    // --- Consulta ---
+
+    public Membro getMembro(int id) {
+        return id == idNo ? proprio : membros.get(id);
+    }
+
+    // Verdadeiro se o nó indicado foi dado como morto (um nó desconhecido não conta como morto).
+    public boolean estaEmBaixo(int id) {
+        Membro membro = membros.get(id);
+        return membro != null && membro.getEstado() == Membro.Estado.MORTO;
+    }
+
+    // Os ids de todos os membros conhecidos, mortos incluídos, e deste nó.
+    public List<Integer> getIds() {
+        List<Integer> ids = new ArrayList<>(membros.keySet());
+        ids.add(idNo);
+        return ids;
+    }
+
+    public Collection<Membro> getMembros() {
+        return membros.values();
+    }
+
+    public int contar(Membro.Estado estado) {
+        int total = estado == Membro.Estado.VIVO ? 1 : 0; // Este nó.
+        for (Membro membro : membros.values()) {
+            if (membro.getEstado() == estado) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    private static final class Encaminhamento {
+        final SocketAddress destino;
+        final long idCorrelacao;
+        final long criadoEm = System.nanoTime();
+
+        Encaminhamento(SocketAddress destino, long idCorrelacao) {
+            this.destino = destino;
+            this.idCorrelacao = idCorrelacao;
+        }
+    }
+}
\ No newline at end of file
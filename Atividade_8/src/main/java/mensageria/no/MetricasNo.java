@@ -0,0 +1,508 @@
+package mensageria.no;
+
+import mensageria.comum.Durabilidade;
+import mensageria.comum.HistogramaLatencia;
+import mensageria.comum.Log;
+import mensageria.comum.Membro;
+import mensageria.comum.Pacote;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores e histogramas de latência de um nó.
+ *
+ * Os registos são feitos no caminho de cada pedido, por isso só usam LongAdder e
+ * HistogramaLatencia (incrementos sem trancas); o custo de agregar fica para quem lê,
+ * seja o JMX (MetricasNoMBean), o ExportadorMetricas ou o monitor do Simulador.
+ */
+public class MetricasNo implements MetricasNoMBean {
+
+    private static final Pacote.Tipo[] TIPOS = Pacote.Tipo.values();
+    private static final double[] QUANTIS = {0.5, 0.9, 0.99, 0.999};
+
+    // Resultado de uma leitura na CacheLeituras.
+    public enum ResultadoCache {
+        ACERTO,      // A resposta já estava codificada para a versão atual do mural.
+        ACRESCENTO,  // Só as mensagens novas tiveram de ser codificadas (mural completo).
+        FALHA        // A resposta teve de ser lida e codificada de raiz.
+    }
+    private static final ResultadoCache[] RESULTADOS_CACHE = ResultadoCache.values();
+    private static final Durabilidade[] DURABILIDADES = Durabilidade.values();
+
+    private final No no;
+
+    // Pacotes processados e tempo de processamento, por Pacote.Tipo (índice = ordinal).
+    private final LongAdder[] pacotesPorTipo = new LongAdder[TIPOS.length];
+    // Os histogramas só são criados para os tipos que o nó chega a receber.
+    private final AtomicReferenceArray<HistogramaLatencia> latenciaPorTipo = new AtomicReferenceArray<>(TIPOS.length);
+
+    // Replicação: tempo de colocar uma mensagem na fila de todos os peers.
+    private final LongAdder replicasEnfileiradas = new LongAdder();
+    private final LongAdder replicasDescartadas = new LongAdder();
+    // Réplicas não enviadas por o peer estar dado como em baixo (são reconciliadas quando ele voltar).
+    private final LongAdder replicasOmitidas = new LongAdder();
+    private final HistogramaLatencia latenciaReplicacao = new HistogramaLatencia();
+
+    // Disco: acrescento ao log de escrita, fsync em grupo e compactação em snapshot.
+    private final HistogramaLatencia latenciaDisco = new HistogramaLatencia();
+    private final HistogramaLatencia latenciaFsync = new HistogramaLatencia();
+    private final LongAdder compactacoes = new LongAdder();
+    private volatile long duracaoUltimaCompactacaoNanos;
+    // Postagens confirmadas, por nível de durabilidade atingido (índice = ordinal), e o tempo
+    // que cada uma esperou pelo fsync antes da confirmação (ver ConfiguracaoNo.ModoDurabilidade).
+    private final LongAdder[] postagensPorDurabilidade = new LongAdder[DURABILIDADES.length];
+    private final HistogramaLatencia latenciaDurabilidade = new HistogramaLatencia();
+
+    // Sincronização ao arrancar: o que este nó enviou aos peers e o que recebeu deles.
+    private final LongAdder bytesSincronizacaoEnviados = new LongAdder();
+    private final LongAdder mensagensSincronizacaoEnviadas = new LongAdder();
+    private final LongAdder mensagensSincronizacaoRecebidas = new LongAdder();
+
+    // Pedidos de clientes reencaminhados às réplicas de murais que este nó não guarda.
+    private final LongAdder reencaminhados = new LongAdder();
+
+    // Pedidos com consistência acima de UM (ver CoordenadorQuorum): quantos não chegaram ao
+    // número de réplicas exigido a tempo, e as mensagens enviadas às réplicas na reparação na leitura.
+    private final LongAdder pedidosComConsistencia = new LongAdder();
+    private final LongAdder consistenciaNaoAtingida = new LongAdder();
+    private final LongAdder mensagensReparadasNaLeitura = new LongAdder();
+
+    // Assinaturas de murais: mensagens empurradas aos assinantes e o que os lentos perderam.
+    private final LongAdder assinaturas = new LongAdder();
+    private final LongAdder mensagensEmpurradas = new LongAdder();
+    private final LongAdder mensagensNaoEmpurradas = new LongAdder();
+    private final LongAdder assinantesDesconectados = new LongAdder();
+
+    // Leituras servidas pela CacheLeituras, por resultado (índice = ordinal).
+    private final LongAdder[] leiturasCache = new LongAdder[RESULTADOS_CACHE.length];
+
+    public MetricasNo(No no) {
+        this.no = no;
+        for (int i = 0; i < TIPOS.length; i++) {
+            pacotesPorTipo[i] = new LongAdder();
+        }
+        for (int i = 0; i < RESULTADOS_CACHE.length; i++) {
+            leiturasCache[i] = new LongAdder();
+        }
+        for (int i = 0; i < DURABILIDADES.length; i++) {
+            postagensPorDurabilidade[i] = new LongAdder();
+        }
+    }
+
+    // --- Registo (caminho quente) ---
+
+    public void registrarPacote(Pacote.Tipo tipo, long nanos) {
+        int i = tipo.ordinal();
+        pacotesPorTipo[i].increment();
+        HistogramaLatencia histograma = latenciaPorTipo.get(i);
+        if (histograma == null) {
+            latenciaPorTipo.compareAndSet(i, null, new HistogramaLatencia());
+            histograma = latenciaPorTipo.get(i);
+        }
+        histograma.registrar(nanos);
+    }
+
+    public void registrarReplicacao(int enfileiradas, int descartadas, int omitidas, long nanos) {
+        replicasEnfileiradas.add(enfileiradas);
+        replicasDescartadas.add(descartadas);
+        if (omitidas > 0) {
+            replicasOmitidas.add(omitidas);
+        }
+        latenciaReplicacao.registrar(nanos);
+    }
+
+    public void registrarEscritaDisco(long nanos) {
+        latenciaDisco.registrar(nanos);
+    }
+
+    public void registrarFsync(long nanos) {
+        latenciaFsync.registrar(nanos);
+    }
+
+    public void registrarDurabilidade(Durabilidade nivel, long nanosDeEspera) {
+        postagensPorDurabilidade[nivel.ordinal()].increment();
+        latenciaDurabilidade.registrar(nanosDeEspera);
+    }
+
+    public void registrarCompactacao(long nanos) {
+        compactacoes.increment();
+        duracaoUltimaCompactacaoNanos = nanos;
+    }
+
+    public void registrarSincronizacaoEnviada(int mensagens, long bytes) {
+        mensagensSincronizacaoEnviadas.add(mensagens);
+        bytesSincronizacaoEnviados.add(bytes);
+    }
+
+    public void registrarSincronizacaoRecebida(int mensagens) {
+        mensagensSincronizacaoRecebidas.add(mensagens);
+    }
+
+    public void registrarReencaminhamento() {
+        reencaminhados.increment();
+    }
+
+    public void registrarPedidoComConsistencia(boolean atingida) {
+        pedidosComConsistencia.increment();
+        if (!atingida) {
+            consistenciaNaoAtingida.increment();
+        }
+    }
+
+    public void registrarReparacaoNaLeitura(int mensagens) {
+        mensagensReparadasNaLeitura.add(mensagens);
+    }
+
+    public void registrarAssinatura() {
+        assinaturas.increment();
+    }
+
+    public void registrarMensagensEmpurradas(int mensagens) {
+        mensagensEmpurradas.add(mensagens);
+    }
+
+    public void registrarMensagensNaoEmpurradas(long mensagens) {
+        mensagensNaoEmpurradas.add(mensagens);
+    }
+
+    public void registrarAssinanteDesconectado() {
+        assinantesDesconectados.increment();
+    }
+
+    public void registrarCacheLeitura(ResultadoCache resultado) {
+        leiturasCache[resultado.ordinal()].increment();
+    }
+
+    // --- Leitura (JMX) ---
+
+    // Soma das mensagens de todos os murais guardados neste nó.
+    @Override
+    public int getTamanhoMural() {
+        int total = 0;
+        for (ParticaoMural particao : no.getParticoes()) {
+            total += particao.getMural().getTamanho();
+        }
+        return total;
+    }
+
+    @Override
+    public int getMuraisGuardados() {
+        return no.getParticoes().size();
+    }
+
+    @Override
+    public long getPedidosReencaminhados() {
+        return reencaminhados.sum();
+    }
+
+    @Override
+    public long getPedidosComConsistencia() {
+        return pedidosComConsistencia.sum();
+    }
+
+    @Override
+    public long getConsistenciaNaoAtingida() {
+        return consistenciaNaoAtingida.sum();
+    }
+
+    @Override
+    public long getMensagensReparadasNaLeitura() {
+        return mensagensReparadasNaLeitura.sum();
+    }
+
+    @Override
+    public long getPacotesProcessados() {
+        long total = 0;
+        for (LongAdder contador : pacotesPorTipo) {
+            total += contador.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getReplicasEnfileiradas() {
+        return replicasEnfileiradas.sum();
+    }
+
+    @Override
+    public long getReplicasDescartadas() {
+        return replicasDescartadas.sum();
+    }
+
+    @Override
+    public long getReplicasOmitidas() {
+        return replicasOmitidas.sum();
+    }
+
+    @Override
+    public int getAssinantes() {
+        return no.getAssinaturas().getTotal();
+    }
+
+    @Override
+    public long getMensagensEmpurradas() {
+        return mensagensEmpurradas.sum();
+    }
+
+    @Override
+    public long getMensagensNaoEmpurradas() {
+        return mensagensNaoEmpurradas.sum();
+    }
+
+    @Override
+    public long getAssinantesDesconectados() {
+        return assinantesDesconectados.sum();
+    }
+
+    @Override
+    public int getMembrosVivos() {
+        return no.getMembros().contar(Membro.Estado.VIVO);
+    }
+
+    @Override
+    public int getMembrosSuspeitos() {
+        return no.getMembros().contar(Membro.Estado.SUSPEITO);
+    }
+
+    @Override
+    public int getMembrosMortos() {
+        return no.getMembros().contar(Membro.Estado.MORTO);
+    }
+
+    @Override
+    public long getBytesSincronizacaoEnviados() {
+        return bytesSincronizacaoEnviados.sum();
+    }
+
+    @Override
+    public long getMensagensSincronizacaoEnviadas() {
+        return mensagensSincronizacaoEnviadas.sum();
+    }
+
+    @Override
+    public long getMensagensSincronizacaoRecebidas() {
+        return mensagensSincronizacaoRecebidas.sum();
+    }
+
+    @Override
+    public long getAcertosCacheLeituras() {
+        return leiturasCache[ResultadoCache.ACERTO.ordinal()].sum();
+    }
+
+    @Override
+    public long getAcrescentosCacheLeituras() {
+        return leiturasCache[ResultadoCache.ACRESCENTO.ordinal()].sum();
+    }
+
+    @Override
+    public long getFalhasCacheLeituras() {
+        return leiturasCache[ResultadoCache.FALHA.ordinal()].sum();
+    }
+
+    // Fração das leituras servidas sem codificar nada (0 se ainda não houve nenhuma).
+    @Override
+    public double getTaxaAcertoCacheLeituras() {
+        long total = 0;
+        for (LongAdder contador : leiturasCache) {
+            total += contador.sum();
+        }
+        return total == 0 ? 0 : (double) getAcertosCacheLeituras() / total;
+    }
+
+    @Override
+    public long getLatenciaPacoteP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latenciaDeTodosOsPacotes().percentil(99));
+    }
+
+    @Override
+    public long getLatenciaReplicacaoP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latenciaReplicacao.percentil(99));
+    }
+
+    @Override
+    public long getLatenciaDiscoP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latenciaDisco.percentil(99));
+    }
+
+    @Override
+    public long getLatenciaFsyncP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latenciaFsync.percentil(99));
+    }
+
+    @Override
+    public long getLatenciaDurabilidadeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latenciaDurabilidade.percentil(99));
+    }
+
+    @Override
+    public long getPostagensConfirmadasEmDisco() {
+        return postagensPorDurabilidade[Durabilidade.DISCO.ordinal()].sum();
+    }
+
+    @Override
+    public long getDuracaoUltimaCompactacaoMs() {
+        return TimeUnit.NANOSECONDS.toMillis(duracaoUltimaCompactacaoNanos);
+    }
+
+    @Override
+    public long getLinhasDeLogDescartadas() {
+        return Log.getDescartadas();
+    }
+
+    private HistogramaLatencia latenciaDeTodosOsPacotes() {
+        HistogramaLatencia todos = new HistogramaLatencia();
+        for (int i = 0; i < TIPOS.length; i++) {
+            HistogramaLatencia histograma = latenciaPorTipo.get(i);
+            if (histograma != null) {
+                todos.adicionar(histograma);
+            }
+        }
+        return todos;
+    }
+
+    /**
+     * Todas as métricas no formato de texto do Prometheus (versão 0.0.4), com o id do nó
+     * como etiqueta. As latências vão como 'summary', em segundos.
+     */
+    @Override
+    public String exportarTexto() {
+        String etiquetaNo = "no=\"" + no.getId() + "\"";
+        StringBuilder sb = new StringBuilder(4096);
+
+        cabecalho(sb, "mensageria_tamanho_mural", "gauge", "Mensagens em cada mural guardado pelo nó.");
+        for (ParticaoMural particao : no.getParticoes()) {
+            linha(sb, "mensageria_tamanho_mural", etiquetaNo + ",mural=\"" + particao.getNome() + "\"", particao.getMural().getTamanho());
+        }
+        cabecalho(sb, "mensageria_murais_guardados", "gauge", "Murais atribuídos a este nó pelo anel de dispersão.");
+        linha(sb, "mensageria_murais_guardados", etiquetaNo, getMuraisGuardados());
+        cabecalho(sb, "mensageria_reencaminhados_total", "counter", "Pedidos de clientes reencaminhados à réplica de um mural guardado noutro nó.");
+        linha(sb, "mensageria_reencaminhados_total", etiquetaNo, getPedidosReencaminhados());
+        cabecalho(sb, "mensageria_pedidos_consistencia_total", "counter", "Postagens e leituras coordenadas com consistência QUORUM ou TODAS.");
+        linha(sb, "mensageria_pedidos_consistencia_total", etiquetaNo, getPedidosComConsistencia());
+        cabecalho(sb, "mensageria_consistencia_nao_atingida_total", "counter", "Pedidos em que não responderam réplicas suficientes a tempo.");
+        linha(sb, "mensageria_consistencia_nao_atingida_total", etiquetaNo, getConsistenciaNaoAtingida());
+        cabecalho(sb, "mensageria_reparacao_leitura_mensagens_total", "counter", "Mensagens enviadas a réplicas a quem faltavam numa leitura com consistência.");
+        linha(sb, "mensageria_reparacao_leitura_mensagens_total", etiquetaNo, getMensagensReparadasNaLeitura());
+        cabecalho(sb, "mensageria_membros", "gauge", "Nós da rede conhecidos por este nó (incluindo ele), por estado.");
+        for (Membro.Estado estado : Membro.Estado.values()) {
+            linha(sb, "mensageria_membros", etiquetaNo + ",estado=\"" + estado.name().toLowerCase(Locale.ROOT) + "\"",
+                    no.getMembros().contar(estado));
+        }
+
+        cabecalho(sb, "mensageria_pacotes_total", "counter", "Pacotes processados, por tipo.");
+        for (int i = 0; i < TIPOS.length; i++) {
+            long quantidade = pacotesPorTipo[i].sum();
+            if (quantidade > 0) {
+                linha(sb, "mensageria_pacotes_total", etiquetaNo + ",tipo=\"" + TIPOS[i] + "\"", quantidade);
+            }
+        }
+        cabecalho(sb, "mensageria_latencia_pacote_segundos", "summary", "Tempo de processamento de um pacote, por tipo.");
+        for (int i = 0; i < TIPOS.length; i++) {
+            HistogramaLatencia histograma = latenciaPorTipo.get(i);
+            if (histograma != null) {
+                resumo(sb, "mensageria_latencia_pacote_segundos", etiquetaNo + ",tipo=\"" + TIPOS[i] + "\"", histograma);
+            }
+        }
+
+        cabecalho(sb, "mensageria_replicas_enfileiradas_total", "counter", "Réplicas colocadas na fila de um peer.");
+        linha(sb, "mensageria_replicas_enfileiradas_total", etiquetaNo, getReplicasEnfileiradas());
+        cabecalho(sb, "mensageria_replicas_descartadas_total", "counter", "Réplicas perdidas por a fila de um peer estar cheia.");
+        linha(sb, "mensageria_replicas_descartadas_total", etiquetaNo, getReplicasDescartadas());
+        cabecalho(sb, "mensageria_replicas_omitidas_total", "counter", "Réplicas não enviadas por o peer estar dado como em baixo.");
+        linha(sb, "mensageria_replicas_omitidas_total", etiquetaNo, getReplicasOmitidas());
+        cabecalho(sb, "mensageria_latencia_replicacao_segundos", "summary", "Tempo de entregar uma mensagem às filas de todos os peers.");
+        resumo(sb, "mensageria_latencia_replicacao_segundos", etiquetaNo, latenciaReplicacao);
+        cabecalho(sb, "mensageria_fila_peer", "gauge", "Pacotes à espera na ligação com cada peer.");
+        for (LigacaoPeer ligacao : no.getLigacoes()) {
+            linha(sb, "mensageria_fila_peer", etiquetaNo + ",peer=\"" + ligacao.getIdPeer() + "\"", ligacao.getProfundidadeFila());
+        }
+        cabecalho(sb, "mensageria_lotes_peer_total", "counter", "Lotes de réplicas (REPLICAR_LOTE) enviados a cada peer.");
+        for (LigacaoPeer ligacao : no.getLigacoes()) {
+            linha(sb, "mensageria_lotes_peer_total", etiquetaNo + ",peer=\"" + ligacao.getIdPeer() + "\"", ligacao.getLotes());
+        }
+
+        cabecalho(sb, "mensageria_latencia_disco_segundos", "summary", "Tempo de acrescentar uma mensagem ao log de escrita.");
+        resumo(sb, "mensageria_latencia_disco_segundos", etiquetaNo, latenciaDisco);
+        cabecalho(sb, "mensageria_latencia_fsync_segundos", "summary", "Duração de cada fsync em grupo do log de escrita.");
+        resumo(sb, "mensageria_latencia_fsync_segundos", etiquetaNo, latenciaFsync);
+        cabecalho(sb, "mensageria_postagens_confirmadas_total", "counter", "Postagens confirmadas, por nível de durabilidade atingido.");
+        for (Durabilidade nivel : DURABILIDADES) {
+            linha(sb, "mensageria_postagens_confirmadas_total", etiquetaNo + ",durabilidade=\"" + nivel.name().toLowerCase(Locale.ROOT) + "\"",
+                    postagensPorDurabilidade[nivel.ordinal()].sum());
+        }
+        cabecalho(sb, "mensageria_latencia_durabilidade_segundos", "summary", "Espera de uma postagem pelo fsync antes de ser confirmada.");
+        resumo(sb, "mensageria_latencia_durabilidade_segundos", etiquetaNo, latenciaDurabilidade);
+        cabecalho(sb, "mensageria_compactacoes_total", "counter", "Compactações do log de escrita em snapshot.");
+        linha(sb, "mensageria_compactacoes_total", etiquetaNo, compactacoes.sum());
+        cabecalho(sb, "mensageria_duracao_ultima_compactacao_segundos", "gauge", "Duração da última gravação do mural em snapshot.");
+        linha(sb, "mensageria_duracao_ultima_compactacao_segundos", etiquetaNo, segundos(duracaoUltimaCompactacaoNanos));
+
+        cabecalho(sb, "mensageria_sincronizacao_bytes_enviados_total", "counter", "Bytes enviados a peers em respostas de sincronização.");
+        linha(sb, "mensageria_sincronizacao_bytes_enviados_total", etiquetaNo, getBytesSincronizacaoEnviados());
+        cabecalho(sb, "mensageria_sincronizacao_mensagens_enviadas_total", "counter", "Mensagens enviadas a peers em respostas de sincronização.");
+        linha(sb, "mensageria_sincronizacao_mensagens_enviadas_total", etiquetaNo, getMensagensSincronizacaoEnviadas());
+        cabecalho(sb, "mensageria_sincronizacao_mensagens_recebidas_total", "counter", "Mensagens recebidas de peers na sincronização ao arrancar.");
+        linha(sb, "mensageria_sincronizacao_mensagens_recebidas_total", etiquetaNo, getMensagensSincronizacaoRecebidas());
+
+        cabecalho(sb, "mensageria_assinantes", "gauge", "Clientes com uma assinatura de mural aberta.");
+        linha(sb, "mensageria_assinantes", etiquetaNo, getAssinantes());
+        cabecalho(sb, "mensageria_assinaturas_total", "counter", "Assinaturas de murais aceites.");
+        linha(sb, "mensageria_assinaturas_total", etiquetaNo, assinaturas.sum());
+        cabecalho(sb, "mensageria_mensagens_empurradas_total", "counter", "Mensagens enviadas a assinantes sem terem sido pedidas.");
+        linha(sb, "mensageria_mensagens_empurradas_total", etiquetaNo, getMensagensEmpurradas());
+        cabecalho(sb, "mensageria_mensagens_nao_empurradas_total", "counter", "Mensagens saltadas por um assinante lento (política DESCARTAR).");
+        linha(sb, "mensageria_mensagens_nao_empurradas_total", etiquetaNo, getMensagensNaoEmpurradas());
+        cabecalho(sb, "mensageria_assinantes_desconectados_total", "counter", "Assinantes lentos desconectados (política DESCONECTAR).");
+        linha(sb, "mensageria_assinantes_desconectados_total", etiquetaNo, getAssinantesDesconectados());
+
+        cabecalho(sb, "mensageria_cache_leituras_total", "counter", "Leituras do mural servidas pela cache de respostas, por resultado.");
+        for (ResultadoCache resultado : RESULTADOS_CACHE) {
+            linha(sb, "mensageria_cache_leituras_total", etiquetaNo + ",resultado=\"" + resultado.name().toLowerCase(Locale.ROOT) + "\"",
+                    leiturasCache[resultado.ordinal()].sum());
+        }
+        cabecalho(sb, "mensageria_cache_leituras_taxa_acerto", "gauge", "Fração das leituras do mural servidas sem codificar nada.");
+        linha(sb, "mensageria_cache_leituras_taxa_acerto", etiquetaNo, String.format(Locale.ROOT, "%.4f", getTaxaAcertoCacheLeituras()));
+
+        cabecalho(sb, "mensageria_log_linhas_descartadas_total", "counter", "Linhas de log perdidas por a consola não acompanhar.");
+        linha(sb, "mensageria_log_linhas_descartadas_total", etiquetaNo, getLinhasDeLogDescartadas());
+        return sb.toString();
+    }
+
+    private static void cabecalho(StringBuilder sb, String nome, String tipo, String ajuda) {
+        sb.append("# HELP ").append(nome).append(' ').append(ajuda).append('\n');
+        sb.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    private static void linha(StringBuilder sb, String nome, String etiquetas, Object valor) {
+        sb.append(nome).append('{').append(etiquetas).append("} ").append(valor).append('\n');
+    }
+
+    private static void resumo(StringBuilder sb, String nome, String etiquetas, HistogramaLatencia histograma) {
+        for (double quantil : QUANTIS) {
+            linha(sb, nome, etiquetas + ",quantile=\"" + quantil + "\"",
+                    segundos(histograma.percentil(quantil * 100)));
+        }
+        linha(sb, nome + "_sum", etiquetas, segundos(histograma.getSoma()));
+        linha(sb, nome + "_count", etiquetas, histograma.getContagem());
+    }
+
+    // Locale.ROOT: o Prometheus só aceita o ponto como separador decimal.
+    private static String segundos(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    // Resumo de uma linha, usado pelo monitor do Simulador.
+    @Override
+    public String toString() {
+        HistogramaLatencia pacotes = latenciaDeTodosOsPacotes();
+        return String.format("Nó %d: mural=%d (%d mural(is)) membros=%d/%d vivos reencaminhados=%d assinantes=%d pacotes=%d (p50=%.2f ms, p99=%.2f ms) disco p99=%.2f ms fsync p99=%.2f ms réplicas descartadas=%d cache=%.0f%%",
+                no.getId(), getTamanhoMural(), getMuraisGuardados(), getMembrosVivos(),
+                getMembrosVivos() + getMembrosSuspeitos() + getMembrosMortos(), getPedidosReencaminhados(), getAssinantes(), pacotes.getContagem(),
+                pacotes.percentil(50) / 1e6, pacotes.percentil(99) / 1e6,
+                latenciaDisco.percentil(99) / 1e6, latenciaFsync.percentil(99) / 1e6, getReplicasDescartadas(),
+                getTaxaAcertoCacheLeituras() * 100);
+    }
+}
\ No newline at end of file
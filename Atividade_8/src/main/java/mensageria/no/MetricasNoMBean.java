@@ -0,0 +1,76 @@
+package mensageria.no;
+
+/**
+ * Interface de gestão (JMX) das métricas de um nó, registada como
+ * 'mensageria:type=No,id=N' no servidor de MBeans da plataforma (ex: visível no JConsole).
+ * As latências são dadas em microssegundos.
+ */
+public interface MetricasNoMBean {
+
+    int getTamanhoMural();
+
+    int getMuraisGuardados();
+
+    long getPedidosReencaminhados();
+
+    long getPedidosComConsistencia();
+
+    long getConsistenciaNaoAtingida();
+
+    long getMensagensReparadasNaLeitura();
+
+    int getAssinantes();
+
+    long getMensagensEmpurradas();
+
+    long getMensagensNaoEmpurradas();
+
+    long getAssinantesDesconectados();
+
+    int getMembrosVivos();
+
+    int getMembrosSuspeitos();
+
+    int getMembrosMortos();
+
+    long getPacotesProcessados();
+
+    long getReplicasEnfileiradas();
+
+    long getReplicasDescartadas();
+
+    long getReplicasOmitidas();
+
+    long getBytesSincronizacaoEnviados();
+
+    long getMensagensSincronizacaoEnviadas();
+
+    long getMensagensSincronizacaoRecebidas();
+
+    long getAcertosCacheLeituras();
+
+    long getAcrescentosCacheLeituras();
+
+    long getFalhasCacheLeituras();
+
+    double getTaxaAcertoCacheLeituras();
+
+    long getLatenciaPacoteP99Micros();
+
+    long getLatenciaReplicacaoP99Micros();
+
+    long getLatenciaDiscoP99Micros();
+
+    long getLatenciaFsyncP99Micros();
+
+    long getLatenciaDurabilidadeP99Micros();
+
+    long getPostagensConfirmadasEmDisco();
+
+    long getDuracaoUltimaCompactacaoMs();
+
+    long getLinhasDeLogDescartadas();
+
+    // Todas as métricas, no mesmo texto devolvido pelo ExportadorMetricas.
+    String exportarTexto();
+}
\ No newline at end of file
@@ -1,84 +1,185 @@
 package mensageria.no;
 
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.Log;
+import mensageria.comum.Membro;
 import mensageria.comum.Mural;
 import mensageria.comum.Pacote;
+import mensageria.comum.RelogioHibrido;
 import mensageria.comum.Mensagem;
 
-// Imports necessários para lidar com ficheiros
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
+import java.lang.management.ManagementFactory;
 import java.net.Socket;
-import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Um nó da rede: guarda os murais que o anel de dispersão lhe atribui, replica-os para os
+ * outros nós que também os guardam e reencaminha os pedidos dos murais que não guarda.
+ *
+ * Com o fator de replicação padrão (0 = todos os nós) cada nó guarda todos os murais, como
+ * quando havia um só mural; com um fator menor, o espaço em disco e o tráfego de replicação
+ * de cada nó dividem-se pelos nós da rede em vez de crescerem com ela.
+ *
+ * Os outros nós são conhecidos pela MembrosDaRede: os peers passados ao construtor são só as
+ * sementes, e os restantes chegam por rumores. Um nó dado como morto deixa de receber réplicas
+ * e pedidos (sem esperar por timeouts de conexão), e quando volta os murais partilhados com ele
+ * são reconciliados de imediato.
+ */
 public class No {
     private final int id;
     private final int porta;
-    private final Map<Integer, Integer> peers;
+    private final ConfiguracaoNo configuracao;
 
-    // O mural agora não é final para que possa ser substituído pelo mural carregado do disco.
-    private Mural muralLocal;
     private final Map<String, String> usuarios = new HashMap<>();
+    // Emite e verifica os tokens de sessão dos clientes (sem estado por cliente).
+    private final Sessoes sessoes;
 
     private volatile boolean executando = true;
-    private ServerSocket serverSocket;
 
-    // O nome do ficheiro de persistência será único para cada nó.
-    private final String NOME_ARQUIVO_MURAL;
+    // Os nós da rede e o seu estado (vivo, suspeito ou morto), mantidos por rumores.
+    private final MembrosDaRede membros;
+    // Atribuição dos murais aos nós conhecidos, igual em todos os nós da rede; é trocada
+    // por um anel novo quando entra um nó (os nós mortos continuam no anel).
+    private volatile AnelConsistente anel;
+    // Os murais guardados por este nó, cada um com o seu log de escrita (ver ParticaoMural).
+    private final Map<String, ParticaoMural> particoes = new ConcurrentHashMap<>();
+
+    // Tamanho de cada bloco de mensagens enviado numa resposta de sincronização.
+    static final int TAMANHO_BLOCO_SYNC = 1000;
+
+    // Uma ligação persistente para cada peer, reutilizada por todas as réplicas.
+    private final Map<Integer, LigacaoPeer> ligacoes = new ConcurrentHashMap<>();
+    // As ligações já foram iniciadas (as dos nós que entram depois são iniciadas logo).
+    private boolean ligacoesIniciadas = false;
+    // Transporte que aceita as conexões e entrega os pacotes ao processador (bloqueante ou NIO).
+    private final ServidorNo servidor;
+    private final ProcessadorDePacotes processador;
+    // Reparação periódica de divergências com os peers (árvores de Merkle).
+    private final AntiEntropia antiEntropia = new AntiEntropia(this);
+    // Contadores e latências do nó, expostos por JMX e pelo ExportadorMetricas (null se desligado).
+    private final MetricasNo metricas = new MetricasNo(this);
+    private final ExportadorMetricas exportadorMetricas;
+    // Clientes que assinaram murais deste nó e recebem as mensagens novas à medida que chegam.
+    private final Assinaturas assinaturas;
+    // Relógio lógico híbrido que carimba as mensagens aceites por este nó, em todos os murais.
+    private final RelogioHibrido relogio = new RelogioHibrido();
+    // Token com que este nó se identifica nos pacotes que envia aos outros (ver Sessoes.emitirParaNo),
+    // renovado a meio da sua validade.
+    private volatile String credencial;
+    private volatile long renovarCredencialEm;
 
     public No(int id, int porta, Map<Integer, Integer> peers) {
+        this(id, porta, peers, new ConfiguracaoNo());
+    }
+
+    /**
+     * @param peers As sementes (id -> porta) por onde este nó entra na rede; os outros nós
+     *              são descobertos pela MembrosDaRede.
+     */
+    public No(int id, int porta, Map<Integer, Integer> peers, ConfiguracaoNo configuracao) {
         this.id = id;
         this.porta = porta;
-        this.peers = new HashMap<>(peers);
-        this.peers.remove(this.id);
+        this.configuracao = configuracao;
+        this.sessoes = new Sessoes(configuracao);
+        this.assinaturas = new Assinaturas(id, metricas, configuracao);
+        this.membros = new MembrosDaRede(this, id, "localhost", porta, configuracao.getPeriodoGossipMs());
+
+        this.processador = new ProcessadorDePacotes(this);
+        if (configuracao.getTransporte() == ConfiguracaoNo.Transporte.NIO) {
+            this.servidor = new ServidorNio(id, porta, processador, configuracao);
+        } else {
+            this.servidor = new ServidorBloqueante(id, porta, processador, configuracao);
+        }
+
+        for (Map.Entry<Integer, Integer> peer : peers.entrySet()) {
+            if (peer.getKey() != id) {
+                membros.adicionarSemente(peer.getKey(), "localhost", peer.getValue());
+                adicionarLigacao(membros.getMembro(peer.getKey()));
+            }
+        }
+        this.anel = new AnelConsistente(membros.getIds(), configuracao.getFatorReplicacao());
+
+        // Carrega o estado anterior dos murais que este nó guarda, se existir.
+        if (getReplicas(Pacote.MURAL_PADRAO).contains(id)) {
+            getParticao(Pacote.MURAL_PADRAO);
+        }
+        for (String nome : muraisEmDisco()) {
+            particaoParaReplica(nome);
+        }
 
-        // Define o nome do ficheiro e tenta carregar o mural do disco.
-        this.NOME_ARQUIVO_MURAL = "mural_no_" + id + ".dat";
-        carregarMuralDoDisco(); // Carrega o estado anterior, se existir.
+        this.exportadorMetricas = configuracao.getDeslocamentoPortaMetricas() > 0
+                ? new ExportadorMetricas(id, porta + configuracao.getDeslocamentoPortaMetricas(), metricas)
+                : null;
 
         usuarios.put("anderson", "123");
         usuarios.put("carlos", "456");
         usuarios.put("guest", "789");
     }
 
-    // Metodo para carregar o mural de um ficheiro.
-    private void carregarMuralDoDisco() {
-        File arquivoMural = new File(NOME_ARQUIVO_MURAL);
-        if (arquivoMural.exists()) {
-            // Usa try-with-resources para garantir que os streams sejam fechados.
-            try (FileInputStream fis = new FileInputStream(arquivoMural);
-                 ObjectInputStream ois = new ObjectInputStream(fis)) {
-                // Lê o objeto Mural completo do ficheiro.
-                this.muralLocal = (Mural) ois.readObject();
-                System.out.printf("[Nó %d] Mural carregado do disco com sucesso.%n", id);
-            } catch (IOException | ClassNotFoundException e) {
-                System.err.printf("[Nó %d] Erro ao carregar mural do disco. Iniciando com um novo. Erro: %s%n", id, e.getMessage());
-                this.muralLocal = new Mural();
-            }
-        } else {
-            // Se o ficheiro não existe, simplesmente inicia com um mural novo e vazio.
-            System.out.printf("[Nó %d] Nenhum mural salvo encontrado. Iniciando com um novo.%n", id);
-            this.muralLocal = new Mural();
+    // Os nós que guardam o mural indicado (incluindo, talvez, este), pela ordem do anel.
+    public List<Integer> getReplicas(String mural) {
+        return anel.getReplicas(mural);
+    }
+
+    /**
+     * O mural indicado, se este nó o guarda; é criado (ou carregado do disco) no primeiro uso.
+     * @return null se o mural pertence a outros nós (o pedido deve ser reencaminhado).
+     */
+    public ParticaoMural getParticao(String mural) {
+        ParticaoMural particao = particoes.get(mural);
+        if (particao != null || !getReplicas(mural).contains(id)) {
+            return particao;
+        }
+        return particaoParaReplica(mural);
+    }
+
+    /**
+     * O mural indicado, criando-o mesmo que o anel não o atribua a este nó: usado para o que
+     * chega de outros nós (réplicas, sincronização), que já decidiram que este nó o guarda,
+     * e para os murais encontrados em disco. Um mural que passa a ser guardado aqui depois
+     * de o nó arrancar vai buscar o seu histórico às outras réplicas, pela anti-entropia.
+     */
+    public ParticaoMural particaoParaReplica(String mural) {
+        ParticaoMural particao = particoes.get(mural);
+        if (particao != null) {
+            return particao;
         }
+        boolean[] criada = {false};
+        particao = particoes.computeIfAbsent(mural, nome -> {
+            criada[0] = true;
+            return new ParticaoMural(id, nome, metricas, assinaturas, relogio, configuracao);
+        });
+        if (criada[0] && isLigacoesIniciadas()) {
+            antiEntropia.agendarReconciliacao(particao);
+        }
+        return particao;
     }
 
-    // Metodo para salvar o mural atual em um ficheiro.
-    public synchronized void salvarMuralNoDisco() {
-        // Usa try-with-resources.
-        try (FileOutputStream fos = new FileOutputStream(NOME_ARQUIVO_MURAL);
-             ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-            // Escreve o objeto Mural completo no ficheiro.
-            oos.writeObject(this.muralLocal);
-        } catch (IOException e) {
-            System.err.printf("[Nó %d] Erro ao salvar mural no disco: %s%n", id, e.getMessage());
+    // Nomes dos murais (além do padrão) com ficheiros deste nó no diretório atual.
+    private List<String> muraisEmDisco() {
+        List<String> nomes = new ArrayList<>();
+        String prefixo = ParticaoMural.nomeBase(id, "");
+        String[] ficheiros = new File(prefixo).getAbsoluteFile().getParentFile().list();
+        if (ficheiros == null) return nomes;
+        for (String ficheiro : ficheiros) {
+            int ponto = ficheiro.indexOf('.', prefixo.length());
+            if (ficheiro.startsWith(prefixo) && ponto > prefixo.length()) {
+                String nome = ficheiro.substring(prefixo.length(), ponto);
+                if (Pacote.nomeDeMuralValido(nome) && !nomes.contains(nome)) {
+                    nomes.add(nome);
+                }
+            }
         }
+        return nomes;
     }
 
     // Ponto de entrada para a lógica do nó.
@@ -92,90 +193,231 @@ public class No {
             return;
         }
 
-        sincronizarComPeers();
-        iniciarServidor();
+        // Entra na rede antes de sincronizar: assim já conhece todos os nós (e o anel certo)
+        // e não perde tempo a tentar sincronizar com nós que a rede já sabe estarem em baixo.
+        membros.iniciar();
+        System.out.printf("[Nó %d] %s; %d mural(is) guardado(s) neste nó.%n", id, anel, particoes.size());
+        for (ParticaoMural particao : particoes.values()) {
+            sincronizarComPeers(particao);
+            // A sequência local continua a partir da maior já usada por este nó, incluindo
+            // mensagens suas que só existiam nos peers e que chegaram na sincronização.
+            particao.retomarSequencia();
+        }
+        iniciarLigacoes();
+        antiEntropia.iniciar();
+        assinaturas.iniciar();
+        registrarMetricasJmx();
+        if (exportadorMetricas != null) {
+            exportadorMetricas.iniciar();
+        }
+        // Inicia o componente servidor do nó; bloqueia até o nó ser parado.
+        servidor.executar();
     }
 
     // Metodo para parar o nó de forma explícita e segura, chamado pelo Simulador.
     public void parar() {
         this.executando = false;
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
+        membros.parar();
+        servidor.parar();
+        processador.parar();
+        antiEntropia.parar();
+        assinaturas.parar();
+        if (exportadorMetricas != null) {
+            exportadorMetricas.parar();
+        }
+        removerMetricasJmx();
+        for (LigacaoPeer ligacao : ligacoes.values()) {
+            ligacao.parar();
+        }
+        for (ParticaoMural particao : particoes.values()) {
+            particao.fechar();
+        }
+    }
+
+    // Envia uma nova mensagem para os outros nós ("peers") que guardam o mesmo mural.
+    // A mensagem é apenas colocada na fila de cada ligação persistente; o envio é feito
+    // pela thread de cada ligação (em paralelo entre peers), que agrupa as mensagens
+    // seguidas do mesmo mural num único REPLICAR_LOTE. Quem posta não espera por nenhum peer.
+    public void replicarParaPeers(ParticaoMural particao, Mensagem mensagem) {
+        if (!executando) return;
+        long inicio = System.nanoTime();
+        List<LigacaoPeer> destinos = getLigacoesDasReplicas(particao.getNome());
+        Log.depuracao("[Nó %d] Replicando mensagem do mural '%s' para %d peer(s)...%n", id, particao.getNome(), destinos.size());
+        int descartadas = 0;
+        for (LigacaoPeer ligacao : destinos) {
+            if (!ligacao.enviar(Pacote.Tipo.REPLICAR_MSG, mensagem, particao.getNome())) {
+                descartadas++;
+                Log.aviso("[Nó %d] Fila de replicação cheia para o Nó %d; mensagem descartada.%n", id, ligacao.getIdPeer());
             }
-        } catch (IOException e) {
-            System.err.printf("[Nó %d] Erro ao fechar o socket do servidor: %s%n", id, e.getMessage());
         }
+        // As réplicas em baixo não recebem nada agora; são reconciliadas quando voltarem.
+        List<Integer> replicas = getReplicas(particao.getNome());
+        int omitidas = replicas.size() - (replicas.contains(id) ? 1 : 0) - destinos.size();
+        metricas.registrarReplicacao(destinos.size() - descartadas, descartadas, omitidas, System.nanoTime() - inicio);
     }
 
-    // Inicia o componente servidor do nó.
-    private void iniciarServidor() {
-        try {
-            serverSocket = new ServerSocket(porta);
-            System.out.printf("[Nó %d] Servidor iniciado na porta %d. Aguardando conexões...%n", id, porta);
-            while (executando) {
-                Socket clientSocket = serverSocket.accept();
-                new Thread(new TratadorDeConexao(clientSocket, this)).start();
+    // As ligações para os outros nós que guardam o mural indicado e não estão em baixo, pela ordem do anel.
+    public List<LigacaoPeer> getLigacoesDasReplicas(String mural) {
+        List<LigacaoPeer> destinos = new ArrayList<>();
+        for (int replica : getReplicas(mural)) {
+            LigacaoPeer ligacao = ligacoes.get(replica);
+            if (ligacao != null && !ligacao.isSuspensa()) {
+                destinos.add(ligacao);
             }
-        } catch (SocketException e) {
-            System.out.printf("[Nó %d] Servidor encerrado (socket fechado).%n", id);
-        } catch (IOException e) {
-            if (executando) {
-                System.err.printf("[Nó %d] Erro crítico no servidor: %s%n", id, e.getMessage());
+        }
+        return destinos;
+    }
+
+    /**
+     * Chamado pela MembrosDaRede quando um membro aparece ou muda de estado.
+     * - Um nó novo ganha uma ligação e entra no anel (alguns murais mudam de réplicas).
+     * - Um nó morto tem a ligação suspensa: deixa de receber réplicas e pedidos.
+     * - Um nó que volta tem a ligação retomada e os murais partilhados reconciliados.
+     */
+    void membroAlterado(Membro anterior, Membro atual) {
+        if (anterior == null) {
+            System.out.printf("[Nó %d] Novo membro na rede: %s.%n", id, atual);
+            adicionarLigacao(atual);
+            anel = new AnelConsistente(membros.getIds(), configuracao.getFatorReplicacao());
+        }
+        LigacaoPeer ligacao = ligacoes.get(atual.getId());
+        switch (atual.getEstado()) {
+            case SUSPEITO:
+                Log.aviso("[Nó %d] Nó %d suspeito de falha.%n", id, atual.getId());
+                break;
+            case MORTO:
+                System.out.printf("[Nó %d] Nó %d dado como em baixo; deixa de receber réplicas até voltar.%n", id, atual.getId());
+                ligacao.suspender();
+                break;
+            case VIVO:
+                if (anterior != null && anterior.getEstado() == Membro.Estado.MORTO) {
+                    System.out.printf("[Nó %d] Nó %d voltou à rede; reconciliando os murais partilhados.%n", id, atual.getId());
+                    ligacao.retomar();
+                    antiEntropia.agendarReconciliacao(atual.getId());
+                }
+                break;
+        }
+    }
+
+    private synchronized void adicionarLigacao(Membro membro) {
+        if (ligacoes.containsKey(membro.getId())) return;
+        LigacaoPeer ligacao = new LigacaoPeer(id, membro.getId(), membro.getHost(), membro.getPorta(),
+                configuracao.getTamanhoLoteReplicacao(), configuracao.getEsperaLoteMs(), this::getCredencial);
+        ligacoes.put(membro.getId(), ligacao);
+        if (ligacoesIniciadas && executando) {
+            ligacao.iniciar();
+        }
+    }
+
+    private synchronized void iniciarLigacoes() {
+        for (LigacaoPeer ligacao : ligacoes.values()) {
+            ligacao.iniciar();
+        }
+        ligacoesIniciadas = true;
+    }
+
+    private synchronized boolean isLigacoesIniciadas() {
+        return ligacoesIniciadas;
+    }
+
+    // Publica as métricas no servidor de MBeans da plataforma (JConsole, VisualVM, jcmd...).
+    private void registrarMetricasJmx() {
+        try {
+            ObjectName nome = nomeJmx();
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(nome)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nome);
             }
-        } finally {
-            System.out.printf("[Nó %d] Thread do servidor finalizada.%n", id);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metricas, nome);
+        } catch (JMException e) {
+            System.err.printf("[Nó %d] Não foi possível registar as métricas no JMX: %s%n", id, e.getMessage());
         }
     }
 
-    // Envia uma nova mensagem para todos os outros nós ("peers") na rede.
-    public void replicarParaPeers(Mensagem mensagem) {
-        if (!executando) return;
-        System.out.printf("[Nó %d] Replicando mensagem para %d peer(s)...%n", id, peers.size());
-        Pacote pacote = new Pacote(Pacote.Tipo.REPLICAR_MSG, mensagem);
-        for (Integer peerPorta : peers.values()) {
-            try (Socket socket = new Socket("localhost", peerPorta);
-                 ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-                out.writeObject(pacote);
-            } catch (IOException e) {
-                System.err.printf("[Nó %d] Falha ao replicar para a porta %d (nó pode estar offline).%n", id, peerPorta);
+    private void removerMetricasJmx() {
+        try {
+            ObjectName nome = nomeJmx();
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(nome)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nome);
             }
+        } catch (JMException e) {
+            // O nó está a parar; não há mais nada a fazer.
         }
     }
 
-    // Mecanismo de reconciliação.
-    @SuppressWarnings("unchecked")
-    private void sincronizarComPeers() {
-        System.out.printf("[Nó %d] Tentando sincronizar com a rede...%n", id);
-        Pacote pacoteDePedido = new Pacote(Pacote.Tipo.PEDIDO_SYNC, null);
-        for (Integer peerPorta : peers.values()) {
-            try (Socket socket = new Socket("localhost", peerPorta);
-                 ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-                 ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-
-                out.writeObject(pacoteDePedido);
-                Pacote pacoteDeResposta = (Pacote) in.readObject();
-
-                if (pacoteDeResposta.getTipo() == Pacote.Tipo.RESPOSTA_SYNC) {
-                    List<Mensagem> mensagensRecebidas = (List<Mensagem>) pacoteDeResposta.getConteudo();
-                    int adicionadas = muralLocal.adicionarTodas(mensagensRecebidas);
-                    // Se alguma mensagem nova foi adicionada durante a sincronização, salva o estado.
-                    if (adicionadas > 0) {
-                        salvarMuralNoDisco();
-                    }
-                    System.out.printf("[Nó %d] Sincronização bem-sucedida com a porta %d. %d novas mensagens adicionadas.%n", id, peerPorta, adicionadas);
+    private ObjectName nomeJmx() throws JMException {
+        return new ObjectName("mensageria:type=No,id=" + id);
+    }
+
+    /**
+     * Mecanismo de reconciliação incremental.
+     * O nó envia as suas marcas de água (por origem, até que sequência já tem tudo) e o peer
+     * responde apenas com as mensagens em falta, em blocos (RESPOSTA_SYNC) seguidos de FIM_SYNC.
+     * Assim o tempo de reconexão depende do tempo em que o nó esteve em baixo, não do tamanho do mural.
+     */
+    private void sincronizarComPeers(ParticaoMural particao) {
+        System.out.printf("[Nó %d] Tentando sincronizar o mural '%s' com a rede...%n", id, particao.getNome());
+        Pacote pacoteDePedido = new Pacote(Pacote.Tipo.PEDIDO_SYNC, particao.getMural().getMarcasDeAgua(), 0L, particao.getNome(),
+                getCredencial());
+        // A sincronização usa uma conexão própria, para que a transferência em bloco
+        // não atrase as réplicas que passam pelas ligações persistentes.
+        // Só os nós que também guardam o mural o podem enviar, e só vale a pena tentar os que não estão em baixo.
+        for (int replica : getReplicas(particao.getNome())) {
+            Membro peer = membros.getMembro(replica);
+            if (replica == id || peer == null || membros.estaEmBaixo(replica)) continue;
+            int peerPorta = peer.getPorta();
+            try (CanalPacotes canal = new CanalPacotes(new Socket(peer.getHost(), peerPorta))) {
+
+                canal.enviar(pacoteDePedido);
+                int recebidas = 0;
+                int adicionadas = 0;
+                Pacote pacoteDeResposta = canal.receber();
+                while (pacoteDeResposta.getTipo() == Pacote.Tipo.RESPOSTA_SYNC) {
+                    @SuppressWarnings("unchecked")
+                    List<Mensagem> bloco = (List<Mensagem>) pacoteDeResposta.getConteudo();
+                    recebidas += bloco.size();
+                    adicionadas += particao.incorporarMensagens(bloco);
+                    pacoteDeResposta = canal.receber();
+                }
+
+                metricas.registrarSincronizacaoRecebida(recebidas);
+                if (pacoteDeResposta.getTipo() == Pacote.Tipo.FIM_SYNC) {
+                    System.out.printf("[Nó %d] Sincronização bem-sucedida com a porta %d. %d mensagens recebidas, %d novas adicionadas.%n", id, peerPorta, recebidas, adicionadas);
                     return;
                 }
-            } catch (IOException | ClassNotFoundException e) {
+            } catch (IOException e) {
                 System.err.printf("[Nó %d] Falha ao sincronizar com a porta %d (nó pode estar offline).%n", id, peerPorta);
             }
         }
-        System.out.printf("[Nó %d] Não foi possível sincronizar com nenhum peer. Iniciando com mural local.%n", id);
+        System.out.printf("[Nó %d] Não foi possível sincronizar o mural '%s' com nenhum peer. Iniciando com mural local.%n", id, particao.getNome());
     }
 
     // Getters
     public int getId() { return id; }
-    public Mural getMuralLocal() { return muralLocal; }
+    public boolean isExecutando() { return executando; }
+
+    // O token que prova aos outros nós que um pacote vem deste nó (ver ProcessadorDePacotes.ENTRE_NOS).
+    public String getCredencial() {
+        long agora = System.currentTimeMillis();
+        if (credencial == null || agora >= renovarCredencialEm) {
+            credencial = sessoes.emitirParaNo(id);
+            renovarCredencialEm = agora + sessoes.getDuracaoMs() / 2;
+        }
+        return credencial;
+    }
+    // O mural padrão, se este nó o guarda (null caso contrário).
+    public Mural getMuralLocal() {
+        ParticaoMural particao = particoes.get(Pacote.MURAL_PADRAO);
+        return particao != null ? particao.getMural() : null;
+    }
     public Map<String, String> getUsuarios() { return usuarios; }
-    public List<Mensagem> getTodasAsMensagens() { return muralLocal.getTodasAsMensagens(); }
+    public Sessoes getSessoes() { return sessoes; }
+    public Collection<ParticaoMural> getParticoes() { return particoes.values(); }
+    public Collection<LigacaoPeer> getLigacoes() { return ligacoes.values(); }
+    public LigacaoPeer getLigacao(int idPeer) { return ligacoes.get(idPeer); }
+    public ServidorNo getServidor() { return servidor; }
+    public ConfiguracaoNo getConfiguracao() { return configuracao; }
+    public MetricasNo getMetricas() { return metricas; }
+    public Assinaturas getAssinaturas() { return assinaturas; }
+    public AnelConsistente getAnel() { return anel; }
+    public MembrosDaRede getMembros() { return membros; }
 }
\ No newline at end of file
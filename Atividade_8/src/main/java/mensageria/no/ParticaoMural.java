@@ -0,0 +1,271 @@
+package mensageria.no;
+
+import mensageria.comum.Durabilidade;
+import mensageria.comum.Log;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.Pacote;
+import mensageria.comum.RelogioHibrido;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Um mural (canal) guardado por este nó, com tudo o que é próprio dele: o Mural em memória,
+ * o seu LogDeEscrita, a cache de respostas de leitura e a sequência de origem deste nó.
+ * O relógio híbrido (RelogioHibrido) é do nó e partilhado por todos os seus murais.
+ *
+ * Cada mural só existe nos nós que o AnelConsistente lhe atribui (No.getReplicas), e a
+ * replicação, a sincronização e a anti-entropia de um mural só envolvem esses nós.
+ * Os ficheiros do mural padrão mantêm o nome de sempre ('mural_no_N'); os outros
+ * acrescentam o nome do mural ('mural_no_N-nome').
+ */
+public class ParticaoMural {
+
+    private final int idNo;
+    private final String nome;
+    private final MetricasNo metricas;
+    private final LogDeEscrita logDeEscrita;
+    private final Mural mural;
+    private final CacheLeituras cacheLeituras;
+    private final Assinaturas assinaturas;
+    private final RelogioHibrido relogio;
+
+    // Última sequência atribuída por este nó às mensagens que aceitou dos clientes neste mural.
+    private long sequenciaLocal;
+
+    // Mensagens que já estão (ou estão a entrar) no mural mas ainda não no log de escrita, com
+    // quantas cópias de cada uma estão a ser gravadas: a escrita ainda não acabou, ou falhou e a
+    // mensagem só existe em memória. Uma mensagem daqui não conta como escrita (ver getDurabilidade).
+    private final ConcurrentHashMap<UUID, Integer> foraDoLog = new ConcurrentHashMap<>();
+
+    ParticaoMural(int idNo, String nome, MetricasNo metricas, Assinaturas assinaturas, RelogioHibrido relogio,
+                  ConfiguracaoNo configuracao) {
+        this.idNo = idNo;
+        this.nome = nome;
+        this.metricas = metricas;
+        this.assinaturas = assinaturas;
+        this.relogio = relogio;
+        this.logDeEscrita = new LogDeEscrita(idNo, nomeBase(idNo, nome), metricas, configuracao);
+        this.mural = carregarDoDisco();
+        // Os carimbos seguintes ficam depois de tudo o que já estava gravado.
+        relogio.receber(mural.getMaiorHlc());
+        this.cacheLeituras = new CacheLeituras(metricas);
+        retomarSequencia();
+        prepararBuscaEmFundo();
+    }
+
+    // Constrói o índice de busca das mensagens do snapshot sem atrasar o arranque do nó.
+    private void prepararBuscaEmFundo() {
+        if (mural.isBuscaPreparada()) {
+            return;
+        }
+        Thread preparacao = new Thread(() -> {
+            long inicio = System.nanoTime();
+            mural.prepararBusca();
+            Log.info("[Nó %d] Índice de busca do mural '%s' pronto (%d mensagens, %d ms).%n",
+                    idNo, nome, mural.getTamanho(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        }, "indice-busca-no-" + idNo + "-" + nome);
+        preparacao.setDaemon(true);
+        preparacao.start();
+    }
+
+    // Nome base dos ficheiros do mural indicado no nó indicado.
+    static String nomeBase(int idNo, String nome) {
+        return Pacote.MURAL_PADRAO.equals(nome) ? "mural_no_" + idNo : "mural_no_" + idNo + "-" + nome;
+    }
+
+    // Carrega o mural do disco: snapshot + reprodução do log de escrita.
+    private Mural carregarDoDisco() {
+        try {
+            Mural recuperado = logDeEscrita.recuperar();
+            System.out.printf("[Nó %d] Mural '%s' carregado do disco com sucesso.%n", idNo, nome);
+            return recuperado;
+        } catch (LogDeEscrita.SegmentoCorrompido e) {
+            // Arrancar com um mural vazio esconderia as mensagens em disco; o nó só arranca depois de reparado.
+            System.err.printf("[Nó %d] Não foi possível recuperar o mural '%s': %s%n", idNo, nome, e.getMessage());
+            throw new IllegalStateException("Log de escrita do mural '" + nome + "' corrompido.", e);
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Erro ao carregar o mural '%s' do disco. Iniciando com um novo. Erro: %s%n", idNo, nome, e.getMessage());
+            return new Mural();
+        }
+    }
+
+    /**
+     * A sequência local continua a partir da maior já usada por este nó, incluindo mensagens
+     * suas que só existiam nos peers (chamado de novo depois da sincronização).
+     */
+    synchronized void retomarSequencia() {
+        sequenciaLocal = mural.getMaiorSequencia(idNo);
+    }
+
+    // Regista no disco uma mensagem que acabou de entrar no mural.
+    // Apenas acrescenta a mensagem ao log de escrita, sem reescrever o mural inteiro.
+    // Todas as mensagens novas passam por aqui (postagens, réplicas, sincronização e
+    // anti-entropia), por isso é também aqui que os assinantes do mural são avisados.
+    // @return false se a escrita falhou e a mensagem só ficou em memória.
+    public boolean registrarNoDisco(Mensagem mensagem) {
+        return escreverNoLog(mensagem) >= 0;
+    }
+
+    /**
+     * Regista no disco uma mensagem postada por um cliente e espera o que o modo de durabilidade
+     * do nó exigir (ver LogDeEscrita.tornarDuravel) antes de a confirmar.
+     * @return O nível de durabilidade atingido, que segue na confirmação ao cliente.
+     */
+    public Durabilidade gravarPostagem(Mensagem mensagem) {
+        long registo = escreverNoLog(mensagem);
+        if (registo < 0) {
+            metricas.registrarDurabilidade(Durabilidade.MEMORIA, 0);
+            return Durabilidade.MEMORIA;
+        }
+        desmarcarForaDoLog(mensagem);
+        long inicio = System.nanoTime();
+        Durabilidade nivel = logDeEscrita.tornarDuravel(registo);
+        metricas.registrarDurabilidade(nivel, System.nanoTime() - inicio);
+        return nivel;
+    }
+
+    /**
+     * Grava uma mensagem enviada por outro nó que está à espera desta confirmação para responder
+     * a uma postagem com consistência (ver CoordenadorQuorum). Como numa postagem, espera o que o
+     * modo de durabilidade do nó exigir. Uma mensagem que já estava no mural vale o que vale a
+     * cópia que lá está (ver getDurabilidade), a não ser que esta traga outro carimbo de origem:
+     * é então outra cópia dela (ver Mural.juntarMensagem), e também vai para o log.
+     * @return O nível de durabilidade atingido neste nó.
+     */
+    public Durabilidade gravarReplica(Mensagem mensagem) {
+        boolean marcada = marcarForaDoLog(mensagem);
+        List<Mensagem> novas = mural.incorporar(Collections.singletonList(mensagem));
+        if (novas.isEmpty()) {
+            if (marcada) {
+                desmarcarForaDoLog(mensagem);
+            }
+            return getDurabilidade(mensagem.getId());
+        }
+        relogio.receber(mensagem.getHlc());
+        long registo = escreverNoLog(mensagem);
+        if (registo < 0) {
+            return Durabilidade.MEMORIA;
+        }
+        if (marcada) {
+            desmarcarForaDoLog(mensagem);
+        }
+        return logDeEscrita.tornarDuravel(registo);
+    }
+
+    /**
+     * Até onde chegou uma mensagem que já está no mural: MEMORIA enquanto a sua escrita no log
+     * não acabou ou se falhou; ESCRITA depois disso (o fsync dela já não é seguido aqui).
+     */
+    public Durabilidade getDurabilidade(UUID idMensagem) {
+        return foraDoLog.containsKey(idMensagem) ? Durabilidade.MEMORIA : Durabilidade.ESCRITA;
+    }
+
+    // Marca uma mensagem que vai entrar no mural como ainda fora do log, se ainda não estava no
+    // mural. Tem de ser feito antes de a adicionar, para nunca estar no mural sem a marca.
+    // @return true se foi marcada (quem a marcou tem de chamar desmarcarForaDoLog).
+    private boolean marcarForaDoLog(Mensagem mensagem) {
+        if (mural.contem(mensagem)) {
+            return false;
+        }
+        foraDoLog.merge(mensagem.getId(), 1, Integer::sum);
+        return true;
+    }
+
+    // Retira uma marca de marcarForaDoLog: a cópia marcada foi escrita no log ou não era nova.
+    // Uma escrita que falhou nunca retira a sua, e a mensagem fica como só em memória.
+    private void desmarcarForaDoLog(Mensagem mensagem) {
+        foraDoLog.computeIfPresent(mensagem.getId(), (id, copias) -> copias > 1 ? copias - 1 : null);
+    }
+
+    // @return O número do registo no log de escrita, ou -1 se a escrita falhou.
+    private long escreverNoLog(Mensagem mensagem) {
+        long inicio = System.nanoTime();
+        long registo = -1;
+        try {
+            registo = logDeEscrita.acrescentar(mensagem);
+        } catch (IOException e) {
+            Log.erro("[Nó %d] Erro ao salvar mensagem do mural '%s' no disco: %s%n", idNo, nome, e.getMessage());
+        }
+        metricas.registrarEscritaDisco(System.nanoTime() - inicio);
+        assinaturas.mensagensNovas(this);
+        return registo;
+    }
+
+    /**
+     * Adiciona ao mural as mensagens recebidas de outro nó (réplicas, sincronização ou
+     * anti-entropia), registando no log de escrita apenas as que eram novas, ou novas cópias
+     * com outro carimbo de origem (ver Mural.juntarMensagem). Entram na ordem do mural de uma
+     * só vez (ver Mural.incorporar), e o relógio do nó passa a estar à frente de todas elas.
+     * @return O número de mensagens (e cópias) efetivamente adicionadas.
+     */
+    public int incorporarMensagens(List<Mensagem> mensagens) {
+        // Pela identidade: duas cópias da mesma mensagem no lote têm cada uma a sua marca.
+        Set<Mensagem> marcadas = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Mensagem msg : mensagens) {
+            if (marcarForaDoLog(msg)) {
+                marcadas.add(msg);
+            }
+        }
+        List<Mensagem> novas = mural.incorporar(mensagens);
+        long maiorHlc = 0;
+        for (Mensagem msg : novas) {
+            maiorHlc = Math.max(maiorHlc, msg.getHlc());
+        }
+        if (!novas.isEmpty()) {
+            relogio.receber(maiorHlc);
+        }
+        for (Mensagem msg : novas) {
+            boolean marcada = marcadas.remove(msg);
+            if (registrarNoDisco(msg) && marcada) {
+                desmarcarForaDoLog(msg);
+            }
+        }
+        // Outra cópia entrou primeiro: estas não foram escritas aqui.
+        for (Mensagem msg : marcadas) {
+            desmarcarForaDoLog(msg);
+        }
+        return novas.size();
+    }
+
+    /**
+     * Aceita uma mensagem postada por um cliente: carimba-a com a origem (este nó), a próxima
+     * sequência local e um carimbo do relógio híbrido, e adiciona-a ao mural. O carimbo fica
+     * depois do que o cliente já tinha visto (o HLC que a mensagem traz, ver Mensagem.depoisDe),
+     * mesmo que o tenha lido noutro nó. Uma mensagem repetida não consome sequência, para não
+     * abrir buracos nas marcas de água dos outros nós. A mesma mensagem pode chegar de outro nó
+     * (incorporarMensagens) entre a verificação e a adição, por isso conta o que o mural diz.
+     * @return A mensagem carimbada, ou null se já existia no mural.
+     */
+    public synchronized Mensagem aceitarPostagem(Mensagem mensagem) {
+        if (mural.contem(mensagem)) {
+            return null;
+        }
+        relogio.receber(mensagem.getHlc());
+        Mensagem carimbada = mensagem.comOrigem(idNo, sequenciaLocal + 1, relogio.agora());
+        boolean marcada = marcarForaDoLog(carimbada);
+        if (!mural.adicionarMensagem(carimbada)) {
+            if (marcada) {
+                desmarcarForaDoLog(carimbada);
+            }
+            return null;
+        }
+        sequenciaLocal++;
+        return carimbada;
+    }
+
+    void fechar() {
+        logDeEscrita.fechar();
+    }
+
+    public String getNome() { return nome; }
+    public Mural getMural() { return mural; }
+    public CacheLeituras getCacheLeituras() { return cacheLeituras; }
+}
\ No newline at end of file
@@ -0,0 +1,416 @@
+package mensageria.no;
+
+import mensageria.comum.Consistencia;
+import mensageria.comum.Durabilidade;
+import mensageria.comum.Log;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.Pacote;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.PedidoBusca;
+import mensageria.comum.PedidoPagina;
+import mensageria.comum.SaidaPacotes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Lógica de tratamento de cada pacote recebido por um nó, independente do transporte.
+ * As respostas são escritas na SaidaPacotes da conexão de onde veio o pedido, e cada
+ * uma leva o id de correlação da requisição que a originou.
+ *
+ * O tempo de processamento de cada pacote (incluindo escrever a resposta) é registado
+ * nas MetricasNo, por tipo. O registo de cada pacote na consola passou a ser de nível
+ * DEPURACAO (ver Log), para não custar mais do que o próprio tratamento.
+ *
+ * Cada pacote refere-se a um mural (Pacote.getMural). Os pedidos de clientes para um mural
+ * que este nó não guarda são reencaminhados a uma das réplicas desse mural, e a resposta
+ * volta ao cliente pela mesma conexão, como se tivesse sido tratada aqui. A exceção é ASSINAR:
+ * uma assinatura fica presa à conexão com o nó que guarda o mural, por isso o cliente recebe
+ * REJEITADO com as réplicas onde a pode abrir.
+ *
+ * O LOGIN responde com um token de sessão (ver Sessoes), que o cliente envia em cada pedido
+ * seguinte pela mesma conexão. A autenticação é verificada pedido a pedido: os pedidos que a
+ * exigem (EXIGEM_SESSAO) sem um token válido recebem LOGIN_FALHA, e uma postagem só é aceite
+ * se o autor da mensagem for o usuário da sessão. Os pedidos reencaminhados levam o token, e a
+ * réplica volta a verificá-lo.
+ *
+ * Os pacotes entre nós (ENTRE_NOS) só são aceites com a credencial de um nó da rede (ver
+ * Sessoes.emitirParaNo), que nenhum cliente tem: sem ela, qualquer conexão podia injetar
+ * mensagens de qualquer autor pelas réplicas.
+ *
+ * Uma postagem ou leitura pode pedir um nível de consistência (Pacote.getConsistencia; sem ele
+ * vale o do nó, ver ConfiguracaoNo). Acima de UM, o pedido é coordenado pelo CoordenadorQuorum:
+ * a postagem só é confirmada quando as réplicas exigidas a gravaram, e a leitura junta as
+ * páginas das réplicas que responderam. Se não responderem réplicas suficientes a tempo, o
+ * cliente recebe REJEITADO. As leituras que não se podem comparar entre réplicas (LER_MURAL e
+ * LER_PAGINA a partir de uma posição no meio do mural) são servidas como UM quando o nível vem
+ * da configuração do nó, e recusadas quando o cliente pede outro.
+ *
+ * Os pedidos coordenados e os reencaminhados não prendem a conexão: a resposta é escrita mais
+ * tarde, quando as réplicas responderem (ver CoordenadorQuorum), e entretanto os pacotes
+ * seguintes da mesma conexão continuam a ser tratados.
+ */
+public class ProcessadorDePacotes {
+
+    // Pedidos que um cliente pode fazer a qualquer nó, guarde ele o mural ou não.
+    private static final Set<Pacote.Tipo> PEDIDOS_DE_CLIENTE = EnumSet.of(
+            Pacote.Tipo.LER_MURAL, Pacote.Tipo.LER_ULTIMAS, Pacote.Tipo.LER_PAGINA, Pacote.Tipo.POSTAR_MENSAGEM,
+            Pacote.Tipo.ASSINAR, Pacote.Tipo.BUSCAR);
+    // Pedidos que não se referem a nenhum mural.
+    private static final Set<Pacote.Tipo> SEM_MURAL = EnumSet.of(Pacote.Tipo.LOGIN, Pacote.Tipo.CANCELAR_ASSINATURA);
+    // Pedidos que só são aceites com uma sessão válida.
+    private static final Set<Pacote.Tipo> EXIGEM_SESSAO = EnumSet.of(Pacote.Tipo.POSTAR_MENSAGEM);
+    // Pedidos que só outro nó da rede pode fazer.
+    private static final Set<Pacote.Tipo> ENTRE_NOS = EnumSet.of(
+            Pacote.Tipo.REPLICAR_MSG, Pacote.Tipo.REPLICAR_LOTE, Pacote.Tipo.REPLICAR_CONFIRMADA, Pacote.Tipo.PEDIDO_SYNC,
+            Pacote.Tipo.PEDIDO_MERKLE, Pacote.Tipo.PEDIDO_IDS_BALDES, Pacote.Tipo.PEDIDO_MENSAGENS);
+
+    private final No noPai;
+    private final MetricasNo metricas;
+    private final ConfiguracaoNo configuracao;
+    private final CoordenadorQuorum coordenador;
+
+    public ProcessadorDePacotes(No noPai) {
+        this.noPai = noPai;
+        this.metricas = noPai.getMetricas();
+        this.configuracao = noPai.getConfiguracao();
+        this.coordenador = new CoordenadorQuorum(noPai, configuracao.getTimeoutConsistenciaMs());
+    }
+
+    // Deixa de coordenar pedidos; os que estavam à espera das réplicas ficam sem resposta.
+    public void parar() {
+        coordenador.parar();
+    }
+
+    /**
+     * @throws IOException Também quando o nó já foi parado: o transporte fecha a conexão, e o
+     *         cliente passa a outro nó em vez de receber confirmações de um log já fechado.
+     */
+    public void processar(Pacote pacote, SaidaPacotes saida) throws IOException {
+        if (!noPai.isExecutando()) {
+            throw new IOException("Nó " + noPai.getId() + " parado.");
+        }
+        long inicio = System.nanoTime();
+        if (Log.ativo(Log.Nivel.DEPURACAO)) {
+            Log.depuracao("[Nó %d] Pacote recebido: %s%n", noPai.getId(), pacote.getTipo());
+        }
+        try {
+            tratar(pacote, saida);
+        } finally {
+            metricas.registrarPacote(pacote.getTipo(), System.nanoTime() - inicio);
+        }
+    }
+
+    private void tratar(Pacote pacote, SaidaPacotes saida) throws IOException {
+        if (ENTRE_NOS.contains(pacote.getTipo()) && noPai.getSessoes().validarNo(pacote.getSessao()) < 0) {
+            Log.aviso("[Nó %d] %s recusado: o pacote não traz a credencial de um nó da rede.%n", noPai.getId(), pacote.getTipo());
+            saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Pedido reservado aos nós da rede."));
+            saida.descarregar();
+            return;
+        }
+        if (EXIGEM_SESSAO.contains(pacote.getTipo()) && !verificarSessao(pacote, saida)) {
+            saida.descarregar();
+            return;
+        }
+        ParticaoMural particao = null;
+        if (!SEM_MURAL.contains(pacote.getTipo())) {
+            if (!Pacote.nomeDeMuralValido(pacote.getMural())) {
+                saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Nome de mural inválido: " + pacote.getMural()));
+                saida.descarregar();
+                return;
+            }
+            // O que chega de outros nós é sempre guardado: foram eles que escolheram este nó como réplica.
+            particao = PEDIDOS_DE_CLIENTE.contains(pacote.getTipo())
+                    ? noPai.getParticao(pacote.getMural())
+                    : noPai.particaoParaReplica(pacote.getMural());
+            if (particao == null && pacote.getTipo() == Pacote.Tipo.ASSINAR) {
+                saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Mural '" + pacote.getMural()
+                        + "' não é guardado por este nó; assine-o num destes nós: " + noPai.getReplicas(pacote.getMural())));
+                saida.descarregar();
+                return;
+            }
+            if (particao == null) {
+                responderQuandoPronta(pacote, coordenador.reencaminhar(pacote)
+                        .thenApply(daReplica -> resposta(pacote, daReplica.getTipo(), daReplica.getConteudo())), saida);
+                return;
+            }
+        }
+        Mural mural = particao != null ? particao.getMural() : null;
+        CacheLeituras cache = particao != null ? particao.getCacheLeituras() : null;
+
+        switch (pacote.getTipo()) {
+            case LOGIN:
+                String[] credenciais = ((String) pacote.getConteudo()).split(";");
+                if (credenciais.length == 2 && noPai.getUsuarios().getOrDefault(credenciais[0], "").equals(credenciais[1])) {
+                    // O token leva consigo o usuário e a validade: continua a não haver estado de sessão no nó.
+                    saida.escrever(resposta(pacote, Pacote.Tipo.LOGIN_OK, noPai.getSessoes().emitir(credenciais[0])));
+                } else {
+                    // Responde sempre: com pedidos em pipeline, o cliente fica à espera desta resposta.
+                    saida.escrever(resposta(pacote, Pacote.Tipo.LOGIN_FALHA, "Usuário ou senha inválidos."));
+                }
+                break;
+
+            // As leituras são servidas pela cache, já codificadas para a versão atual do mural.
+            case LER_MURAL:
+                if (pedeConsistenciaAcimaDeUm(pacote)) {
+                    saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "O mural inteiro só se lê com consistência UM; "
+                            + "para ler nas réplicas, peça as páginas a partir do início (LER_PAGINA)."));
+                    break;
+                }
+                saida.escrever(resposta(pacote, Pacote.Tipo.MURAL_ATUALIZADO, cache.getTodasAsMensagens(mural)));
+                break;
+
+            case LER_ULTIMAS:
+                if (nivelDeLeitura(pacote) != Consistencia.UM) {
+                    lerComConsistencia(pacote, particao, saida);
+                    break;
+                }
+                int quantidade = (int) (long) (Long) pacote.getConteudo();
+                saida.escrever(resposta(pacote, Pacote.Tipo.PAGINA_MURAL, cache.getUltimas(mural, quantidade)));
+                break;
+
+            case LER_PAGINA:
+                PedidoPagina pedido = (PedidoPagina) pacote.getConteudo();
+                // Uma posição no meio da ordem só vale no mural deste nó: nas réplicas leem-se só as
+                // páginas a partir do início ou a seguir a um ID.
+                boolean comparavel = pedido.getAposMensagem() != null || pedido.getInicio() <= 0;
+                if (comparavel && nivelDeLeitura(pacote) != Consistencia.UM) {
+                    lerComConsistencia(pacote, particao, saida);
+                    break;
+                }
+                if (!comparavel && pedeConsistenciaAcimaDeUm(pacote)) {
+                    saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Uma página a partir da posição " + pedido.getInicio()
+                            + " só se lê com consistência UM; para ler nas réplicas, continue a seguir ao ID da última mensagem lida."));
+                    break;
+                }
+                saida.escrever(resposta(pacote, Pacote.Tipo.PAGINA_MURAL, cache.getPagina(mural, pedido)));
+                break;
+
+            // Os resultados vêm dos índices de busca do mural, não da cache de leituras.
+            case BUSCAR:
+                PedidoBusca busca = (PedidoBusca) pacote.getConteudo();
+                if (!busca.temCriterios()) {
+                    saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Indique pelo menos um termo, um autor ou um intervalo de datas."));
+                    break;
+                }
+                saida.escrever(resposta(pacote, Pacote.Tipo.PAGINA_MURAL, mural.buscar(busca)));
+                break;
+
+            // A primeira página responde ao pedido; as seguintes são enviadas pelas Assinaturas
+            // à medida que o mural cresce, com o mesmo id de correlação. A assinatura segue a
+            // ordem de chegada a este nó, que nunca muda, e não a ordem total.
+            case ASSINAR:
+                PedidoPagina desde = (PedidoPagina) pacote.getConteudo();
+                long posicao = desde.getInicio();
+                if (desde.getAposMensagem() != null) {
+                    int chegada = mural.getPosicaoDeChegada(desde.getAposMensagem());
+                    if (chegada < 0) {
+                        saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Mensagem desconhecida neste nó."));
+                        break;
+                    }
+                    posicao = chegada + 1L;
+                } else if (posicao < 0) {
+                    posicao = mural.getTamanho();
+                }
+                PaginaMural primeira = cache.getPaginaPorChegada(mural, posicao, Assinaturas.MENSAGENS_POR_ENVIO);
+                saida.escrever(resposta(pacote, Pacote.Tipo.PAGINA_MURAL, primeira));
+                saida.descarregar();
+                noPai.getAssinaturas().assinar(particao, saida, pacote.getIdCorrelacao(), primeira.getProximoCursor());
+                break;
+
+            case CANCELAR_ASSINATURA:
+                noPai.getAssinaturas().cancelar(saida, (Long) pacote.getConteudo());
+                break;
+
+            case POSTAR_MENSAGEM:
+                // A sessão e o autor já foram verificados (ver verificarSessao).
+                // O nó carimba a mensagem com a sua origem e sequência antes de a guardar e replicar.
+                Consistencia consistencia = pacote.getConsistencia() != null ? pacote.getConsistencia() : configuracao.getConsistenciaEscrita();
+                Mensagem novaMensagem = particao.aceitarPostagem((Mensagem) pacote.getConteudo());
+                if (novaMensagem != null) {
+                    Durabilidade nivel = particao.gravarPostagem(novaMensagem);
+                    String publicada = String.format("Mensagem publicada no mural. Durabilidade: %s (%s).", nivel, nivel.getDescricao());
+                    if (consistencia == Consistencia.UM) {
+                        // Confirma assim que a mensagem está gravada localmente, com o nível de durabilidade
+                        // atingido segundo o modo do nó; a replicação segue em fundo.
+                        saida.escrever(resposta(pacote, Pacote.Tipo.POSTAGEM_OK, publicada));
+                        noPai.replicarParaPeers(particao, novaMensagem);
+                    } else {
+                        confirmarNasReplicas(pacote, particao, novaMensagem, nivel, consistencia, publicada, saida);
+                    }
+                } else if (consistencia == Consistencia.UM) {
+                    // Um reenvio da mesma mensagem (ex: o cliente não recebeu a confirmação) também é confirmado.
+                    saida.escrever(resposta(pacote, Pacote.Tipo.POSTAGEM_OK, "Mensagem já estava no mural."));
+                } else {
+                    // O reenvio volta a esperar pelas réplicas: a primeira tentativa pode não ter chegado a elas.
+                    List<Mensagem> guardada = mural.getMensagensPorId(Collections.singletonList(((Mensagem) pacote.getConteudo()).getId()));
+                    if (guardada.isEmpty()) {
+                        saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Mensagem ainda a ser gravada neste nó; tente de novo."));
+                    } else {
+                        confirmarNasReplicas(pacote, particao, guardada.get(0), particao.getDurabilidade(guardada.get(0).getId()),
+                                consistencia, "Mensagem já estava no mural.", saida);
+                    }
+                }
+                break;
+
+            // Réplica de uma postagem com consistência: o nó que a coordena espera por esta confirmação.
+            // Só confirma uma cópia que está no log; uma que ficou só em memória não conta para o quórum.
+            case REPLICAR_CONFIRMADA:
+                Durabilidade gravada = particao.gravarReplica((Mensagem) pacote.getConteudo());
+                if (gravada == Durabilidade.MEMORIA) {
+                    saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "Réplica não gravada no log de escrita deste nó."));
+                } else {
+                    saida.escrever(resposta(pacote, Pacote.Tipo.REPLICA_OK, gravada.name()));
+                }
+                break;
+
+            case REPLICAR_MSG:
+                Mensagem msgReplicada = (Mensagem) pacote.getConteudo();
+                if (particao.incorporarMensagens(Collections.singletonList(msgReplicada)) > 0) {
+                    Log.depuracao("[Nó %d] Mensagem replicada de outro nó foi adicionada ao mural.%n", noPai.getId());
+                }
+                break;
+
+            case REPLICAR_LOTE:
+                @SuppressWarnings("unchecked")
+                List<Mensagem> lote = (List<Mensagem>) pacote.getConteudo();
+                int adicionadas = particao.incorporarMensagens(lote);
+                if (adicionadas > 0) {
+                    Log.depuracao("[Nó %d] Lote replicado de outro nó: %d de %d mensagem(ns) adicionada(s) ao mural.%n", noPai.getId(), adicionadas, lote.size());
+                }
+                break;
+
+            case PEDIDO_SYNC:
+                responderSincronizacao(pacote, mural, saida);
+                break;
+
+            // Anti-entropia: um peer a comparar a sua árvore de Merkle com a deste nó.
+            case PEDIDO_MERKLE:
+                saida.escrever(resposta(pacote, Pacote.Tipo.RESPOSTA_MERKLE, mural.getHashesMerkle((int[]) pacote.getConteudo())));
+                break;
+
+            case PEDIDO_IDS_BALDES:
+                saida.escrever(resposta(pacote, Pacote.Tipo.RESPOSTA_IDS_BALDES, mural.getIdsDosBaldes((int[]) pacote.getConteudo())));
+                break;
+
+            case PEDIDO_MENSAGENS:
+                @SuppressWarnings("unchecked")
+                List<UUID> idsPedidos = (List<UUID>) pacote.getConteudo();
+                saida.escrever(resposta(pacote, Pacote.Tipo.RESPOSTA_MENSAGENS, mural.getMensagensPorId(idsPedidos)));
+                break;
+        }
+        saida.descarregar();
+    }
+
+    /**
+     * Quando as réplicas exigidas pelo nível de consistência tiverem gravado a mensagem (já
+     * gravada neste nó, com a durabilidade 'local'), responde ao cliente com quantas confirmaram.
+     * Só contam as cópias que estão no log: este nó não conta se a sua ficou só em memória.
+     * Se não chegarem a tempo, a mensagem não se perde: continua neste nó e a caminho das outras
+     * réplicas, e reenviá-la com o mesmo ID volta a esperar por elas sem a duplicar.
+     */
+    private void confirmarNasReplicas(Pacote pacote, ParticaoMural particao, Mensagem mensagem, Durabilidade local,
+                                      Consistencia consistencia, String publicada, SaidaPacotes saida) {
+        int replicas = coordenador.getReplicas(particao.getNome());
+        int necessarias = coordenador.respostasNecessarias(consistencia, particao.getNome());
+        responderQuandoPronta(pacote, coordenador.replicarEEsperar(particao, mensagem, necessarias, local != Durabilidade.MEMORIA)
+                .thenApply(confirmadas -> confirmadas >= necessarias
+                        ? resposta(pacote, Pacote.Tipo.POSTAGEM_OK, String.format("%s Consistência: %s (%d de %d réplicas).",
+                                publicada, consistencia, confirmadas, replicas))
+                        : resposta(pacote, Pacote.Tipo.REJEITADO, String.format(
+                                "Mensagem gravada em %d de %d réplicas, abaixo da consistência %s (%s). A replicação continua em fundo; reenviar a mesma mensagem é seguro.",
+                                confirmadas, replicas, consistencia, consistencia.getDescricao()))), saida);
+    }
+
+    // Lê a página nas réplicas exigidas pelo nível de consistência (ver CoordenadorQuorum.ler).
+    private void lerComConsistencia(Pacote pacote, ParticaoMural particao, SaidaPacotes saida) {
+        Consistencia consistencia = nivelDeLeitura(pacote);
+        int necessarias = coordenador.respostasNecessarias(consistencia, particao.getNome());
+        responderQuandoPronta(pacote, coordenador.ler(particao, pacote, necessarias)
+                .thenApply(pagina -> pagina != null
+                        ? resposta(pacote, Pacote.Tipo.PAGINA_MURAL, pagina)
+                        : resposta(pacote, Pacote.Tipo.REJEITADO, String.format(
+                                "Leitura com consistência %s (%s) indisponível: responderam menos de %d de %d réplicas.",
+                                consistencia, consistencia.getDescricao(), necessarias, coordenador.getReplicas(particao.getNome())))), saida);
+    }
+
+    /**
+     * Escreve a resposta a um pedido quando o futuro for concluído, na thread que o concluir, e
+     * não na da conexão. Se o tratamento falhar pelo caminho, o cliente recebe REJEITADO.
+     */
+    private void responderQuandoPronta(Pacote pedido, CompletableFuture<Pacote> resposta, SaidaPacotes saida) {
+        resposta.whenComplete((pronta, erro) -> {
+            Pacote enviar = pronta;
+            if (erro != null) {
+                Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+                Log.aviso("[Nó %d] Erro ao tratar %s: %s%n", noPai.getId(), pedido.getTipo(), causa);
+                enviar = resposta(pedido, Pacote.Tipo.REJEITADO, "Erro no nó " + noPai.getId() + ": " + causa.getMessage());
+            }
+            try {
+                saida.escrever(enviar);
+                saida.descarregar();
+            } catch (IOException e) {
+                // A conexão fechou entretanto: já ninguém espera por esta resposta.
+                Log.depuracao("[Nó %d] Resposta a %s perdida: %s%n", noPai.getId(), pedido.getTipo(), e.getMessage());
+            }
+        });
+    }
+
+    private Consistencia nivelDeLeitura(Pacote pacote) {
+        return pacote.getConsistencia() != null ? pacote.getConsistencia() : configuracao.getConsistenciaLeitura();
+    }
+
+    // O cliente pediu ele próprio um nível acima de UM (e não apenas o nó tem um configurado).
+    private static boolean pedeConsistenciaAcimaDeUm(Pacote pacote) {
+        return pacote.getConsistencia() != null && pacote.getConsistencia() != Consistencia.UM;
+    }
+
+    /**
+     * Envia ao nó que pediu a sincronização apenas as mensagens acima das suas marcas de água,
+     * em blocos de TAMANHO_BLOCO_SYNC, terminando com FIM_SYNC. Cada bloco é enviado assim que
+     * fica pronto, para o outro nó ir aplicando enquanto o resto chega.
+     */
+    @SuppressWarnings("unchecked")
+    private void responderSincronizacao(Pacote pedido, Mural mural, SaidaPacotes saida) throws IOException {
+        List<Mensagem> faltantes = mural.getMensagensApos((Map<Integer, Long>) pedido.getConteudo());
+        long bytes = 0;
+        for (int inicio = 0; inicio < faltantes.size(); inicio += No.TAMANHO_BLOCO_SYNC) {
+            int fim = Math.min(inicio + No.TAMANHO_BLOCO_SYNC, faltantes.size());
+            bytes += saida.escrever(resposta(pedido, Pacote.Tipo.RESPOSTA_SYNC, new ArrayList<>(faltantes.subList(inicio, fim))));
+            saida.descarregar();
+        }
+        bytes += saida.escrever(resposta(pedido, Pacote.Tipo.FIM_SYNC, (long) faltantes.size()));
+        metricas.registrarSincronizacaoEnviada(faltantes.size(), bytes);
+        Log.info("[Nó %d] Sincronização: %d mensagem(ns) enviada(s) ao peer (%d bytes).%n", noPai.getId(), faltantes.size(), bytes);
+    }
+
+    /**
+     * Verifica o token de sessão de um pedido que exige autenticação e, numa postagem, se a
+     * mensagem é do usuário da sessão. Se não for válido, responde ao cliente.
+     */
+    private boolean verificarSessao(Pacote pacote, SaidaPacotes saida) throws IOException {
+        String usuario = noPai.getSessoes().validar(pacote.getSessao());
+        if (usuario == null) {
+            saida.escrever(resposta(pacote, Pacote.Tipo.LOGIN_FALHA, "Sessão inválida ou expirada. Faça login novamente."));
+            return false;
+        }
+        if (pacote.getTipo() == Pacote.Tipo.POSTAR_MENSAGEM && !usuario.equals(((Mensagem) pacote.getConteudo()).getAutor())) {
+            saida.escrever(resposta(pacote, Pacote.Tipo.REJEITADO, "O autor da mensagem não é o usuário da sessão."));
+            return false;
+        }
+        return true;
+    }
+
+    private static Pacote resposta(Pacote pedido, Pacote.Tipo tipo, Object conteudo) {
+        return new Pacote(tipo, conteudo, pedido.getIdCorrelacao(), pedido.getMural());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package mensageria.no;
+
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.Pacote;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transporte bloqueante: um ServerSocket e um TratadorDeConexao por conexão aceite,
+ * executado pelo ExecutorConexoes (com limite e rejeição em sobrecarga).
+ *
+ * As conexões aceites ficam registadas até terminarem: como são persistentes, 'parar' tem
+ * de as fechar (o shutdownNow do executor não desbloqueia uma leitura num socket), senão
+ * os clientes e peers ligados continuariam a ser servidos por um nó já parado.
+ */
+public class ServidorBloqueante implements ServidorNo {
+
+    private final int idNo;
+    private final int porta;
+    private final ProcessadorDePacotes processador;
+    private final ExecutorConexoes executorConexoes;
+
+    private volatile boolean executando = true;
+    private ServerSocket serverSocket;
+    // Conexões aceites e ainda abertas, fechadas em 'parar'.
+    private final Set<Socket> conexoes = ConcurrentHashMap.newKeySet();
+
+    public ServidorBloqueante(int idNo, int porta, ProcessadorDePacotes processador, ConfiguracaoNo configuracao) {
+        this.idNo = idNo;
+        this.porta = porta;
+        this.processador = processador;
+        this.executorConexoes = new ExecutorConexoes(idNo, configuracao);
+    }
+
+    @Override
+    public void executar() {
+        try {
+            serverSocket = new ServerSocket(porta);
+            System.out.printf("[Nó %d] Servidor iniciado na porta %d. Aguardando conexões...%n", idNo, porta);
+            while (executando) {
+                Socket clientSocket = serverSocket.accept();
+                conexoes.add(clientSocket);
+                TratadorDeConexao tratador = new TratadorDeConexao(clientSocket, processador);
+                Runnable recusar = () -> {
+                    conexoes.remove(clientSocket);
+                    // Sobrecarga: recusa explicitamente, em vez de deixar o cliente à espera.
+                    CanalPacotes.recusar(clientSocket, new Pacote(Pacote.Tipo.REJEITADO, "Nó sobrecarregado. Tente novamente mais tarde."));
+                };
+                boolean aceite = executorConexoes.submeter(() -> {
+                    try {
+                        tratador.run();
+                    } finally {
+                        conexoes.remove(clientSocket);
+                    }
+                }, recusar);
+                if (!aceite) {
+                    recusar.run();
+                }
+            }
+        } catch (SocketException e) {
+            System.out.printf("[Nó %d] Servidor encerrado (socket fechado).%n", idNo);
+        } catch (IOException e) {
+            if (executando) {
+                System.err.printf("[Nó %d] Erro crítico no servidor: %s%n", idNo, e.getMessage());
+            }
+        } finally {
+            System.out.printf("[Nó %d] Thread do servidor finalizada.%n", idNo);
+        }
+    }
+
+    @Override
+    public void parar() {
+        executando = false;
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Erro ao fechar o socket do servidor: %s%n", idNo, e.getMessage());
+        }
+        for (Socket conexao : conexoes) {
+            try {
+                conexao.close();
+            } catch (IOException e) {
+                // A conexão já estava a fechar.
+            }
+        }
+        conexoes.clear();
+        executorConexoes.parar();
+    }
+
+    public ExecutorConexoes getExecutorConexoes() {
+        return executorConexoes;
+    }
+
+    @Override
+    public String toString() {
+        return "[bloqueante] " + executorConexoes;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,494 @@
+package mensageria.no;
+
+import mensageria.comum.CanalPacotes;
+import mensageria.comum.CodecPacote;
+import mensageria.comum.Pacote;
+import mensageria.comum.SaidaPacotes;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transporte não bloqueante do nó.
+ *
+ * - A thread que chama 'executar' só aceita conexões e distribui-as, em rotação,
+ *   por um pequeno número de ciclos de I/O (cada um com o seu Selector e a sua thread).
+ * - Cada ciclo lê os bytes disponíveis, reconstrói os quadros [int tamanho][bytes] e
+ *   entrega os pacotes completos a um pool de trabalhadores. Os pacotes de uma mesma
+ *   conexão são processados um de cada vez e pela ordem de chegada, como no transporte
+ *   bloqueante; conexões diferentes são processadas em paralelo.
+ * - As respostas ficam numa fila por conexão e são escritas pelo ciclo de I/O quando o
+ *   socket aceita mais bytes (OP_WRITE).
+ *
+ * Contrapressão: se uma conexão acumula demasiados bytes por enviar (o cliente não lê)
+ * ou demasiados pacotes por processar, o ciclo deixa de ler dela até a fila baixar; e
+ * um trabalhador que tenta escrever numa conexão cheia espera que ela esvazie.
+ * Assim uma conexão lenta não consome memória sem limite nem atrasa as outras.
+ */
+public class ServidorNio implements ServidorNo {
+
+    private static final int TAMANHO_BUFFER_LEITURA = 64 * 1024;
+    // Bytes por enviar a partir dos quais se deixa de ler da conexão (e os escritores esperam).
+    private static final long LIMITE_SAIDA_ALTO = 4L * 1024 * 1024;
+    // Bytes por enviar abaixo dos quais se volta a ler da conexão.
+    private static final long LIMITE_SAIDA_BAIXO = 1024 * 1024;
+    // Pacotes à espera de processamento a partir dos quais se deixa de ler da conexão.
+    private static final int LIMITE_ENTRADA = 1024;
+
+    private final int idNo;
+    private final int porta;
+    private final ProcessadorDePacotes processador;
+    private final CicloIo[] ciclos;
+    private final ExecutorService trabalhadores;
+
+    private volatile boolean executando = true;
+    private ServerSocketChannel canalServidor;
+    private int proximoCiclo;
+
+    // Métricas expostas no toString.
+    private final AtomicInteger conexoesAtivas = new AtomicInteger();
+    private final LongAdder conexoesAceites = new LongAdder();
+    private final LongAdder pacotesProcessados = new LongAdder();
+    private final LongAdder pausasDeLeitura = new LongAdder();
+
+    public ServidorNio(int idNo, int porta, ProcessadorDePacotes processador, ConfiguracaoNo configuracao) {
+        this.idNo = idNo;
+        this.porta = porta;
+        this.processador = processador;
+        this.ciclos = new CicloIo[Math.max(1, configuracao.getThreadsIo())];
+        AtomicInteger contador = new AtomicInteger();
+        this.trabalhadores = Executors.newFixedThreadPool(configuracao.getMaxTratadores(), tarefa -> {
+            Thread t = new Thread(tarefa, "no-" + idNo + "-trabalhador-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void executar() {
+        try {
+            canalServidor = ServerSocketChannel.open();
+            canalServidor.bind(new InetSocketAddress(porta));
+            for (int i = 0; i < ciclos.length; i++) {
+                ciclos[i] = new CicloIo(Selector.open());
+                Thread t = new Thread(ciclos[i], "no-" + idNo + "-io-" + (i + 1));
+                t.setDaemon(true);
+                t.start();
+            }
+            System.out.printf("[Nó %d] Servidor NIO iniciado na porta %d (%d thread(s) de I/O). Aguardando conexões...%n",
+                    idNo, porta, ciclos.length);
+            while (executando) {
+                SocketChannel canal = canalServidor.accept();
+                canal.configureBlocking(false);
+                canal.socket().setTcpNoDelay(true);
+                CicloIo ciclo = ciclos[proximoCiclo];
+                proximoCiclo = (proximoCiclo + 1) % ciclos.length;
+                conexoesAceites.increment();
+                conexoesAtivas.incrementAndGet();
+                ciclo.registrar(new ConexaoNio(canal, ciclo));
+            }
+        } catch (ClosedChannelException e) {
+            System.out.printf("[Nó %d] Servidor encerrado (socket fechado).%n", idNo);
+        } catch (IOException e) {
+            if (executando) {
+                System.err.printf("[Nó %d] Erro crítico no servidor: %s%n", idNo, e.getMessage());
+            }
+        } finally {
+            System.out.printf("[Nó %d] Thread do servidor finalizada.%n", idNo);
+        }
+    }
+
+    @Override
+    public void parar() {
+        executando = false;
+        try {
+            if (canalServidor != null) {
+                canalServidor.close();
+            }
+        } catch (IOException e) {
+            System.err.printf("[Nó %d] Erro ao fechar o socket do servidor: %s%n", idNo, e.getMessage());
+        }
+        for (CicloIo ciclo : ciclos) {
+            if (ciclo != null) {
+                ciclo.fechar();
+            }
+        }
+        trabalhadores.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[nio] Nó %d: %d conexão(ões) ativa(s), %d aceite(s), %d pacote(s) processado(s), %d pausa(s) por contrapressão",
+                idNo, conexoesAtivas.get(), conexoesAceites.sum(), pacotesProcessados.sum(), pausasDeLeitura.sum());
+    }
+
+    /**
+     * Uma thread de I/O com o seu Selector. Tudo o que mexe nas SelectionKey é feito nesta
+     * thread; as outras threads pedem-lhe trabalho através de 'tarefas' e acordam o Selector.
+     */
+    private final class CicloIo implements Runnable {
+
+        private final Selector seletor;
+        private final Queue<Runnable> tarefas = new ConcurrentLinkedQueue<>();
+
+        CicloIo(Selector seletor) {
+            this.seletor = seletor;
+        }
+
+        void registrar(ConexaoNio conexao) {
+            executarNoCiclo(() -> {
+                try {
+                    conexao.chave = conexao.canal.register(seletor, SelectionKey.OP_READ, conexao);
+                } catch (ClosedChannelException e) {
+                    conexao.fechar();
+                }
+            });
+        }
+
+        void executarNoCiclo(Runnable tarefa) {
+            tarefas.add(tarefa);
+            seletor.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (executando) {
+                    seletor.select();
+                    Runnable tarefa;
+                    while ((tarefa = tarefas.poll()) != null) {
+                        tarefa.run();
+                    }
+                    Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+                    while (chaves.hasNext()) {
+                        SelectionKey chave = chaves.next();
+                        chaves.remove();
+                        ConexaoNio conexao = (ConexaoNio) chave.attachment();
+                        try {
+                            if (chave.isValid() && chave.isWritable()) {
+                                conexao.aoPoderEscrever();
+                            }
+                            if (chave.isValid() && chave.isReadable()) {
+                                conexao.aoPoderLer();
+                            }
+                        } catch (IOException e) {
+                            // Desconexão do outro lado; é esperada e normal.
+                            conexao.fechar();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                // O servidor está a ser parado.
+            } finally {
+                fechar();
+            }
+        }
+
+        void fechar() {
+            try {
+                for (SelectionKey chave : seletor.keys()) {
+                    ((ConexaoNio) chave.attachment()).fechar();
+                }
+                seletor.close();
+            } catch (IOException | ClosedSelectorException e) {
+                // Já fechado.
+            }
+        }
+    }
+
+    /**
+     * Estado de uma conexão aceite: o quadro em reconstrução, os pacotes por processar
+     * e os bytes por enviar. Serve de SaidaPacotes para o ProcessadorDePacotes.
+     */
+    private final class ConexaoNio implements SaidaPacotes {
+
+        private final SocketChannel canal;
+        private final CicloIo ciclo;
+        private SelectionKey chave;
+
+        // Leitura (só usada pela thread do ciclo).
+        private final ByteBuffer leitura = ByteBuffer.allocateDirect(TAMANHO_BUFFER_LEITURA);
+        private CodecPacote codec;
+        private byte[] quadro;
+        private int preenchido;
+        private boolean leituraPausada;
+        // O cliente fechou o seu lado: fecha-se a conexão depois de processar e enviar o que falta.
+        private volatile boolean fimDeEntrada;
+
+        // Pacotes completos à espera de um trabalhador, processados em série por conexão.
+        private final Queue<Pacote> entrada = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pacotesPorProcessar = new AtomicInteger();
+        private final AtomicBoolean agendada = new AtomicBoolean();
+
+        // Escrita: protegida pelo monitor da própria conexão.
+        private final Queue<ByteBuffer> saida = new ArrayDeque<>();
+        private long bytesPorEnviar;
+        private volatile boolean aberta = true;
+
+        ConexaoNio(SocketChannel canal, CicloIo ciclo) {
+            this.canal = canal;
+            this.ciclo = ciclo;
+        }
+
+        // Chamado pelo ciclo quando há bytes para ler.
+        void aoPoderLer() throws IOException {
+            if (canal.read(leitura) < 0) {
+                fimDeEntrada = true;
+                chave.interestOps(chave.interestOps() & ~SelectionKey.OP_READ);
+                encerrarSeConcluida();
+                return;
+            }
+            leitura.flip();
+            if (codec == null && leitura.hasRemaining()) {
+                // Handshake: o cliente anuncia o codec e o servidor confirma com o mesmo byte.
+                codec = CodecPacote.porIdentificador(leitura.get());
+                ByteBuffer confirmacao = ByteBuffer.allocate(1).put(codec.getIdentificador());
+                confirmacao.flip();
+                enfileirar(confirmacao);
+                descarregar();
+            }
+            while (codec != null && extrairQuadro()) {
+                Pacote pacote = codec.decodificar(quadro);
+                quadro = null;
+                entrada.add(pacote);
+                pacotesPorProcessar.incrementAndGet();
+                agendarProcessamento();
+            }
+            leitura.compact();
+            avaliarLeitura();
+        }
+
+        /**
+         * Tenta completar o quadro atual com os bytes do buffer de leitura.
+         * Quadros maiores que o buffer são acumulados num array ao longo de várias leituras.
+         */
+        private boolean extrairQuadro() throws IOException {
+            if (quadro == null) {
+                if (leitura.remaining() < 4) {
+                    return false;
+                }
+                int tamanho = leitura.getInt();
+                if (tamanho < 0 || tamanho > CanalPacotes.TAMANHO_MAXIMO_QUADRO) {
+                    throw new IOException("Tamanho de quadro inválido: " + tamanho);
+                }
+                quadro = new byte[tamanho];
+                preenchido = 0;
+            }
+            int n = Math.min(leitura.remaining(), quadro.length - preenchido);
+            leitura.get(quadro, preenchido, n);
+            preenchido += n;
+            return preenchido == quadro.length;
+        }
+
+        private void agendarProcessamento() {
+            if (agendada.compareAndSet(false, true)) {
+                try {
+                    trabalhadores.execute(this::processarEntrada);
+                } catch (RejectedExecutionException e) {
+                    // O servidor está a ser parado.
+                    fechar();
+                }
+            }
+        }
+
+        // Executado por um trabalhador: processa, por ordem, os pacotes já recebidos.
+        private void processarEntrada() {
+            try {
+                Pacote pacote;
+                while (aberta && (pacote = entrada.poll()) != null) {
+                    processador.processar(pacote, this);
+                    pacotesProcessados.increment();
+                    if (pacotesPorProcessar.decrementAndGet() == LIMITE_ENTRADA / 2) {
+                        ciclo.executarNoCiclo(this::avaliarLeitura);
+                    }
+                }
+            } catch (IOException e) {
+                fechar();
+            } catch (RuntimeException e) {
+                System.err.printf("[Nó %d] Erro ao processar pacote: %s%n", idNo, e);
+                fechar();
+            } finally {
+                agendada.set(false);
+            }
+            if (fimDeEntrada) {
+                ciclo.executarNoCiclo(this::encerrarSeConcluida);
+            }
+            // Um pacote pode ter chegado entre o último 'poll' e a libertação da flag.
+            if (aberta && !entrada.isEmpty()) {
+                agendarProcessamento();
+            }
+        }
+
+        // Liga ou desliga o interesse em ler, conforme as filas da conexão (só na thread do ciclo).
+        private void avaliarLeitura() {
+            if (chave == null || !chave.isValid() || fimDeEntrada) {
+                return;
+            }
+            long pendentes;
+            synchronized (this) {
+                pendentes = bytesPorEnviar;
+            }
+            boolean sobrecarregada = pendentes > LIMITE_SAIDA_ALTO || pacotesPorProcessar.get() > LIMITE_ENTRADA;
+            boolean aliviada = pendentes < LIMITE_SAIDA_BAIXO && pacotesPorProcessar.get() <= LIMITE_ENTRADA / 2;
+            if (!leituraPausada && sobrecarregada) {
+                leituraPausada = true;
+                pausasDeLeitura.increment();
+                chave.interestOps(chave.interestOps() & ~SelectionKey.OP_READ);
+            } else if (leituraPausada && aliviada) {
+                leituraPausada = false;
+                chave.interestOps(chave.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        @Override
+        public int escrever(Pacote pacote) throws IOException {
+            byte[] bytes = codec.codificar(pacote);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+            buffer.flip();
+            synchronized (this) {
+                if (bytesPorEnviar > LIMITE_SAIDA_ALTO) {
+                    // O outro lado não está a ler: pede o envio do que já existe e espera que esvazie.
+                    descarregar();
+                    while (aberta && bytesPorEnviar > LIMITE_SAIDA_ALTO) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrompido à espera de enviar.", e);
+                        }
+                    }
+                }
+                enfileirar(buffer);
+            }
+            return buffer.limit();
+        }
+
+        // Nunca espera: acima do limite do assinante o pacote fica por escrever (ver Assinaturas).
+        @Override
+        public boolean tentarEnviar(Pacote pacote, long limiteBytes) throws IOException {
+            synchronized (this) {
+                if (aberta && bytesPorEnviar > limiteBytes) {
+                    return false;
+                }
+            }
+            byte[] bytes = codec.codificar(pacote);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.length);
+            buffer.putInt(bytes.length).put(bytes);
+            buffer.flip();
+            boolean jaHaviaSaida;
+            synchronized (this) {
+                jaHaviaSaida = !saida.isEmpty();
+                enfileirar(buffer);
+            }
+            // Quem escreveu o que já estava na fila também a descarrega: poupa-se uma tarefa ao ciclo.
+            if (!jaHaviaSaida) {
+                descarregar();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isAberta() {
+            return aberta;
+        }
+
+        // Fechada por outra thread (ex: um assinante lento): o ciclo é acordado para que o socket
+        // saia logo do Selector e o cliente veja a conexão fechar.
+        @Override
+        public void close() {
+            fechar();
+            ciclo.executarNoCiclo(() -> { });
+        }
+
+        private synchronized void enfileirar(ByteBuffer buffer) throws IOException {
+            if (!aberta) {
+                throw new IOException("Conexão fechada.");
+            }
+            saida.add(buffer);
+            bytesPorEnviar += buffer.remaining();
+        }
+
+        // Pede ao ciclo que passe a escrever esta conexão assim que o socket o permitir.
+        @Override
+        public void descarregar() {
+            ciclo.executarNoCiclo(() -> {
+                if (chave != null && chave.isValid()) {
+                    chave.interestOps(chave.interestOps() | SelectionKey.OP_WRITE);
+                }
+            });
+        }
+
+        // Chamado pelo ciclo quando o socket aceita mais bytes.
+        void aoPoderEscrever() throws IOException {
+            synchronized (this) {
+                ByteBuffer buffer;
+                while ((buffer = saida.peek()) != null) {
+                    int escritos = canal.write(buffer);
+                    bytesPorEnviar -= escritos;
+                    if (buffer.hasRemaining()) {
+                        break; // O buffer do socket encheu; continua no próximo OP_WRITE.
+                    }
+                    saida.poll();
+                }
+                if (saida.isEmpty()) {
+                    chave.interestOps(chave.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+                notifyAll();
+            }
+            avaliarLeitura();
+            encerrarSeConcluida();
+        }
+
+        // Fecha uma conexão que o cliente já encerrou, quando não resta nada por processar nem enviar.
+        private void encerrarSeConcluida() {
+            if (!fimDeEntrada || pacotesPorProcessar.get() > 0) {
+                return;
+            }
+            synchronized (this) {
+                if (!saida.isEmpty()) {
+                    return;
+                }
+            }
+            fechar();
+        }
+
+        void fechar() {
+            synchronized (this) {
+                if (!aberta) {
+                    return;
+                }
+                aberta = false;
+                saida.clear();
+                bytesPorEnviar = 0;
+                notifyAll();
+            }
+            conexoesAtivas.decrementAndGet();
+            if (chave != null) {
+                chave.cancel();
+            }
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Já fechado.
+            }
+        }
+    }
+}
\ No newline at end of file
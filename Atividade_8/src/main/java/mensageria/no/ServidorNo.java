@@ -0,0 +1,19 @@
+package mensageria.no;
+
+/**
+ * Componente de transporte que aceita conexões na porta do nó e entrega os pacotes
+ * recebidos ao ProcessadorDePacotes. Há duas implementações, escolhidas por
+ * ConfiguracaoNo.Transporte, para poderem ser comparadas sob a mesma carga:
+ * - ServidorBloqueante: ServerSocket com um tratador (thread) por conexão.
+ * - ServidorNio: poucos ciclos de I/O com Selector e um estágio de trabalhadores.
+ */
+public interface ServidorNo {
+
+    /**
+     * Abre a porta e serve conexões até 'parar' ser chamado. Bloqueia a thread que o chama.
+     */
+    void executar();
+
+    // Fecha a porta e liberta os recursos do servidor.
+    void parar();
+}
\ No newline at end of file
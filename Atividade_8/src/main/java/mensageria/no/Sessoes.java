@@ -0,0 +1,125 @@
+package mensageria.no;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens de sessão dos clientes: emitidos no LOGIN e apresentados em cada pedido seguinte
+ * (Pacote.getSessao), em vez de o cliente voltar a enviar as credenciais.
+ *
+ * Um token é "usuario:expiracao:assinatura", onde a assinatura é um HMAC-SHA256 do resto com a
+ * chave ConfiguracaoNo.getSegredoSessoes. O nó não guarda nenhum estado de sessão: verificar um
+ * token é recalcular a assinatura e ver a validade, por isso um token emitido por um nó é aceite
+ * por todos os outros (com a mesma chave), incluindo nos pedidos que o nó reencaminha a uma
+ * réplica e depois de o cliente se ligar a outro nó.
+ *
+ * Os nós também se identificam uns aos outros com um token ("no-ID:expiracao:assinatura"),
+ * que segue em cada pacote entre nós (réplicas, sincronização, anti-entropia e pertença) e é
+ * verificado pedido a pedido, como o dos clientes. É assinado com outra chave, derivada da mesma:
+ * um token de cliente nunca vale como token de nó, nem o contrário.
+ */
+public class Sessoes {
+
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+
+    private static final String PREFIXO_NO = "no-";
+
+    private final long duracaoMs;
+    // Mac não é thread-safe e criá-lo custa mais do que a própria assinatura.
+    private final ThreadLocal<Mac> macs;
+    private final ThreadLocal<Mac> macsDeNos;
+
+    Sessoes(ConfiguracaoNo configuracao) {
+        byte[] segredo = configuracao.getSegredoSessoes().getBytes(StandardCharsets.UTF_8);
+        SecretKeySpec chave = new SecretKeySpec(segredo, ALGORITMO);
+        SecretKeySpec chaveDeNos = new SecretKeySpec(novoMac(chave).doFinal("nos".getBytes(StandardCharsets.UTF_8)), ALGORITMO);
+        this.duracaoMs = TimeUnit.MINUTES.toMillis(configuracao.getDuracaoSessaoMin());
+        this.macs = ThreadLocal.withInitial(() -> novoMac(chave));
+        this.macsDeNos = ThreadLocal.withInitial(() -> novoMac(chaveDeNos));
+    }
+
+    // Emite um token para o usuário que acabou de fazer login.
+    String emitir(String usuario) {
+        return emitir(usuario, macs.get());
+    }
+
+    /**
+     * @return O usuário da sessão, ou null se o token não existir, estiver adulterado ou expirado.
+     */
+    String validar(String token) {
+        return validar(token, macs.get());
+    }
+
+    // Emite o token com que o nó indicado se identifica nos pacotes que envia aos outros nós.
+    String emitirParaNo(int idNo) {
+        return emitir(PREFIXO_NO + idNo, macsDeNos.get());
+    }
+
+    // @return O id do nó que emitiu o token, ou -1 se não for um token de nó válido.
+    int validarNo(String token) {
+        String no = validar(token, macsDeNos.get());
+        if (no == null || !no.startsWith(PREFIXO_NO)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(no.substring(PREFIXO_NO.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long getDuracaoMs() {
+        return duracaoMs;
+    }
+
+    private String emitir(String titular, Mac mac) {
+        String dados = titular + ":" + (System.currentTimeMillis() + duracaoMs);
+        return dados + ":" + assinar(dados, mac);
+    }
+
+    private String validar(String token, Mac mac) {
+        if (token == null) {
+            return null;
+        }
+        int fimDados = token.lastIndexOf(':');
+        int fimUsuario = fimDados > 0 ? token.lastIndexOf(':', fimDados - 1) : -1;
+        if (fimUsuario <= 0) {
+            return null;
+        }
+        String dados = token.substring(0, fimDados);
+        byte[] recebida = token.substring(fimDados + 1).getBytes(StandardCharsets.US_ASCII);
+        // Comparação em tempo constante, para não revelar quantos bytes da assinatura estão certos.
+        if (!MessageDigest.isEqual(recebida, assinar(dados, mac).getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        try {
+            if (Long.parseLong(token.substring(fimUsuario + 1, fimDados)) < System.currentTimeMillis()) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return token.substring(0, fimUsuario);
+    }
+
+    private static String assinar(String dados, Mac mac) {
+        return CODIFICADOR.encodeToString(mac.doFinal(dados.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Mac novoMac(SecretKeySpec chave) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO);
+            mac.init(chave);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            // HmacSHA256 existe em todas as JVMs.
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,181 @@
+package mensageria.comum;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cada tipo de pacote, com um conteúdo do seu esquema, tem de sair dos dois codecs igual ao que
+ * entrou; e o CodecBinario tem de dar sempre um quadro mais pequeno do que o CodecJava.
+ */
+public class CodecPacoteTest {
+
+    private static final long HLC = RelogioHibrido.deTimestamp(1_700_000_000_000L) + 3;
+
+    private static Mensagem mensagem(int sequencia) {
+        return new Mensagem(UUID.randomUUID(), "anderson", "Olá, mural nº " + sequencia + "!",
+                1_700_000_000_000L + sequencia, 2, sequencia, HLC + sequencia);
+    }
+
+    private static List<Mensagem> mensagens(int quantidade) {
+        List<Mensagem> lista = new ArrayList<>();
+        for (int i = 1; i <= quantidade; i++) {
+            lista.add(mensagem(i));
+        }
+        return lista;
+    }
+
+    // Um conteúdo de exemplo para cada tipo, do esquema que o CodecBinario usa para ele.
+    private static Map<Pacote.Tipo, Object> exemplos() {
+        Map<Integer, Long> marcas = new HashMap<>();
+        marcas.put(1, 120L);
+        marcas.put(3, 7L);
+        List<UUID> ids = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        Rumores rumores = new Rumores(3, Arrays.asList(
+                new Membro(1, "localhost", 9001, Membro.Estado.VIVO, 0),
+                new Membro(2, "10.0.0.2", 9002, Membro.Estado.SUSPEITO, 4),
+                new Membro(3, "10.0.0.3", 9003, Membro.Estado.MORTO, 9)));
+
+        Map<Pacote.Tipo, Object> exemplos = new EnumMap<>(Pacote.Tipo.class);
+        exemplos.put(Pacote.Tipo.LOGIN, "anderson;123");
+        exemplos.put(Pacote.Tipo.POSTAR_MENSAGEM, mensagem(1));
+        exemplos.put(Pacote.Tipo.LER_MURAL, null);
+        exemplos.put(Pacote.Tipo.LOGIN_OK, "anderson:1700000000000:assinatura");
+        exemplos.put(Pacote.Tipo.LOGIN_FALHA, "Usuário ou senha inválidos.");
+        exemplos.put(Pacote.Tipo.MURAL_ATUALIZADO, mensagens(5));
+        exemplos.put(Pacote.Tipo.REJEITADO, "Nó sobrecarregado.");
+        exemplos.put(Pacote.Tipo.REPLICAR_MSG, mensagem(2));
+        exemplos.put(Pacote.Tipo.PEDIDO_SYNC, marcas);
+        exemplos.put(Pacote.Tipo.RESPOSTA_SYNC, mensagens(3));
+        exemplos.put(Pacote.Tipo.FIM_SYNC, 3L);
+        exemplos.put(Pacote.Tipo.PEDIDO_MERKLE, new int[]{0, 1, 2, 300});
+        exemplos.put(Pacote.Tipo.RESPOSTA_MERKLE, new long[]{-1L, 0L, Long.MAX_VALUE, 42L});
+        exemplos.put(Pacote.Tipo.PEDIDO_IDS_BALDES, new int[]{7, 1023});
+        exemplos.put(Pacote.Tipo.RESPOSTA_IDS_BALDES, ids);
+        exemplos.put(Pacote.Tipo.PEDIDO_MENSAGENS, ids);
+        exemplos.put(Pacote.Tipo.RESPOSTA_MENSAGENS, mensagens(2));
+        exemplos.put(Pacote.Tipo.LER_ULTIMAS, 20L);
+        exemplos.put(Pacote.Tipo.LER_PAGINA, new PedidoPagina(UUID.randomUUID(), 50));
+        exemplos.put(Pacote.Tipo.PAGINA_MURAL, new PaginaMural(mensagens(4), 17, 230));
+        exemplos.put(Pacote.Tipo.REPLICAR_LOTE, mensagens(8));
+        exemplos.put(Pacote.Tipo.POSTAGEM_OK, "Mensagem publicada no mural.");
+        exemplos.put(Pacote.Tipo.PING, rumores);
+        exemplos.put(Pacote.Tipo.PEDIDO_PING, rumores);
+        exemplos.put(Pacote.Tipo.ACK_PING, rumores);
+        exemplos.put(Pacote.Tipo.ASSINAR, new PedidoPagina(-1, 100));
+        exemplos.put(Pacote.Tipo.BUSCAR, new PedidoBusca("olá mundo", "anderson", 1_600_000_000_000L, 1_700_000_000_000L, 40, 20));
+        exemplos.put(Pacote.Tipo.CANCELAR_ASSINATURA, 12L);
+        exemplos.put(Pacote.Tipo.REPLICAR_CONFIRMADA, mensagem(3));
+        exemplos.put(Pacote.Tipo.REPLICA_OK, Durabilidade.ESCRITA.name());
+        return exemplos;
+    }
+
+    private static Pacote pacote(Pacote.Tipo tipo, Object conteudo) {
+        return new Pacote(tipo, conteudo, 987_654_321L, "avisos", "anderson:1700000000000:assinatura", Consistencia.QUORUM);
+    }
+
+    @Test
+    public void todosOsTiposTemExemplo() {
+        assertEquals(Pacote.Tipo.values().length, exemplos().size());
+    }
+
+    @Test
+    public void cadaTipoSobreviveAoCodecBinario() throws IOException {
+        verificarIdaEVolta(CodecBinario.INSTANCIA);
+    }
+
+    @Test
+    public void cadaTipoSobreviveAoCodecJava() throws IOException {
+        verificarIdaEVolta(CodecJava.INSTANCIA);
+    }
+
+    @Test
+    public void cabecalhoSemCamposOpcionaisSobrevive() throws IOException {
+        Pacote original = new Pacote(Pacote.Tipo.LER_ULTIMAS, 5L, 1);
+        for (CodecPacote codec : new CodecPacote[]{CodecBinario.INSTANCIA, CodecJava.INSTANCIA}) {
+            Pacote lido = codec.decodificar(codec.codificar(original));
+            assertEquals(descrever(original), descrever(lido));
+        }
+    }
+
+    @Test
+    public void quadroBinarioEMaisPequenoQueOJava() throws IOException {
+        for (Map.Entry<Pacote.Tipo, Object> exemplo : exemplos().entrySet()) {
+            Pacote original = pacote(exemplo.getKey(), exemplo.getValue());
+            int binario = CodecBinario.INSTANCIA.codificar(original).length;
+            int java = CodecJava.INSTANCIA.codificar(original).length;
+            assertTrue(exemplo.getKey() + ": " + binario + " bytes em binário, " + java + " em Java", binario < java);
+        }
+    }
+
+    private static void verificarIdaEVolta(CodecPacote codec) throws IOException {
+        for (Map.Entry<Pacote.Tipo, Object> exemplo : exemplos().entrySet()) {
+            Pacote original = pacote(exemplo.getKey(), exemplo.getValue());
+            Pacote lido = codec.decodificar(codec.codificar(original));
+            assertEquals(exemplo.getKey().name(), descrever(original), descrever(lido));
+        }
+    }
+
+    // Texto com todos os campos de um pacote e do seu conteúdo (as mensagens só comparam o ID em equals).
+    private static String descrever(Object valor) {
+        if (valor instanceof Pacote) {
+            Pacote p = (Pacote) valor;
+            return p.getTipo() + "|" + p.getIdCorrelacao() + "|" + p.getMural() + "|" + p.getSessao() + "|"
+                    + p.getConsistencia() + "|" + descrever(p.getConteudo());
+        }
+        if (valor instanceof Mensagem) {
+            Mensagem m = (Mensagem) valor;
+            return m.getId() + "|" + m.getAutor() + "|" + m.getConteudo() + "|" + m.getTimestamp() + "|"
+                    + m.getOrigem() + "|" + m.getSequencia() + "|" + m.getHlc();
+        }
+        if (valor instanceof List) {
+            List<String> itens = new ArrayList<>();
+            for (Object item : (List<?>) valor) {
+                itens.add(descrever(item));
+            }
+            return itens.toString();
+        }
+        if (valor instanceof Map) {
+            return new TreeMap<>((Map<?, ?>) valor).toString();
+        }
+        if (valor instanceof int[]) {
+            return Arrays.toString((int[]) valor);
+        }
+        if (valor instanceof long[]) {
+            return Arrays.toString((long[]) valor);
+        }
+        if (valor instanceof PedidoPagina) {
+            PedidoPagina p = (PedidoPagina) valor;
+            return p.getAposMensagem() + "|" + p.getInicio() + "|" + p.getTamanho();
+        }
+        if (valor instanceof PedidoBusca) {
+            PedidoBusca b = (PedidoBusca) valor;
+            return b.getTermos() + "|" + b.getAutor() + "|" + b.getDesde() + "|" + b.getAte() + "|"
+                    + b.getInicio() + "|" + b.getTamanho();
+        }
+        if (valor instanceof PaginaMural) {
+            PaginaMural p = (PaginaMural) valor;
+            return p.getProximoCursor() + "|" + p.getTotal() + "|" + descrever(p.getMensagens());
+        }
+        if (valor instanceof Rumores) {
+            Rumores r = (Rumores) valor;
+            List<String> membros = new ArrayList<>();
+            for (Membro m : r.getMembros()) {
+                membros.add(m.getId() + "|" + m.getHost() + "|" + m.getPorta() + "|" + m.getEstado() + "|" + m.getEncarnacao());
+            }
+            return r.getAlvo() + "|" + membros;
+        }
+        return String.valueOf(valor);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+package mensageria.comum;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Carimbos do relógio híbrido e a ordem total do mural que eles definem (Mensagem.ORDEM_TOTAL).
+ */
+public class RelogioHibridoTest {
+
+    @Test
+    public void carimbosSaoSempreCrescentes() {
+        RelogioHibrido relogio = new RelogioHibrido();
+        long anterior = relogio.agora();
+        for (int i = 0; i < 100_000; i++) {
+            long carimbo = relogio.agora();
+            assertTrue(carimbo > anterior);
+            anterior = carimbo;
+        }
+    }
+
+    @Test
+    public void carimboRecebidoFicaAntesDosSeguintes() {
+        RelogioHibrido relogio = new RelogioHibrido();
+        // Outro nó com o relógio 5 s adiantado: as mensagens aceites aqui a seguir ficam depois da dele.
+        long deOutroNo = RelogioHibrido.deTimestamp(System.currentTimeMillis() + 5_000) + 7;
+        relogio.receber(deOutroNo);
+        assertTrue(relogio.agora() > deOutroNo);
+    }
+
+    @Test
+    public void carimboMuitoAdiantadoNaoArrastaORelogio() {
+        RelogioHibrido relogio = new RelogioHibrido();
+        long adiantado = RelogioHibrido.deTimestamp(System.currentTimeMillis() + 3_600_000);
+        relogio.receber(adiantado);
+        assertTrue(relogio.agora() < adiantado);
+    }
+
+    @Test
+    public void parteFisicaDoCarimbo() {
+        long carimbo = RelogioHibrido.deTimestamp(1_700_000_000_000L) + 5;
+        assertEquals(1_700_000_000_000L, RelogioHibrido.fisico(carimbo));
+    }
+
+    @Test
+    public void ordemTotalPeloHlcDepoisOrigemDepoisId() {
+        long hlc = RelogioHibrido.deTimestamp(1_700_000_000_000L);
+        UUID menor = new UUID(0x1000L, 0);
+        UUID maior = new UUID(0xF000_0000_0000_0000L, 0); // Negativo com sinal: o ID compara-se sem sinal.
+        Mensagem a = new Mensagem(maior, "a", "1", 0, 9, 1, hlc);
+        Mensagem b = new Mensagem(menor, "b", "2", 0, 1, 1, hlc + 1);
+        Mensagem c = new Mensagem(menor, "c", "3", 0, 2, 1, hlc + 1);
+        Mensagem d = new Mensagem(maior, "d", "4", 0, 2, 1, hlc + 1);
+
+        List<Mensagem> lista = new ArrayList<>(Arrays.asList(d, c, b, a));
+        lista.sort(Mensagem.ORDEM_TOTAL);
+        assertEquals(Arrays.asList(a, b, c, d), lista);
+    }
+
+    @Test
+    public void mensagemSemHlcUsaOTimestamp() {
+        Mensagem antiga = new Mensagem(UUID.randomUUID(), "a", "antiga", 1_700_000_000_000L);
+        assertEquals(RelogioHibrido.deTimestamp(1_700_000_000_000L), antiga.getHlc());
+    }
+
+    @Test
+    public void muraisConvergemParaAMesmaOrdemQualquerQueSejaAChegada() {
+        List<Mensagem> mensagens = new ArrayList<>();
+        long base = RelogioHibrido.deTimestamp(1_700_000_000_000L);
+        Random aleatorio = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            // Poucos carimbos distintos, para haver empates desfeitos pela origem e pelo ID.
+            mensagens.add(new Mensagem(UUID.randomUUID(), "autor", "m" + i, 0, 1 + aleatorio.nextInt(3), i + 1,
+                    base + aleatorio.nextInt(20)));
+        }
+        List<Mensagem> esperada = new ArrayList<>(mensagens);
+        esperada.sort(Mensagem.ORDEM_TOTAL);
+
+        Mural umaAUma = new Mural();
+        List<Mensagem> baralhadas = new ArrayList<>(mensagens);
+        Collections.shuffle(baralhadas, aleatorio);
+        for (Mensagem m : baralhadas) {
+            umaAUma.adicionarMensagem(m);
+        }
+
+        Mural emLotes = new Mural();
+        Collections.shuffle(baralhadas, aleatorio);
+        for (int i = 0; i < baralhadas.size(); i += 37) {
+            emLotes.incorporar(baralhadas.subList(i, Math.min(i + 37, baralhadas.size())));
+        }
+
+        assertEquals(esperada, umaAUma.getTodasAsMensagens());
+        assertEquals(esperada, emLotes.getTodasAsMensagens());
+        assertEquals(esperada.subList(150, 200), emLotes.getMensagensAPartirDe(150));
+    }
+
+    @Test
+    public void postagemCarimbadaPorDoisNosFicaComOMenorCarimbo() {
+        long base = RelogioHibrido.deTimestamp(1_700_000_000_000L);
+        UUID id = UUID.randomUUID();
+        // O cliente deixou de esperar pelo nó 1 e reenviou a postagem ao nó 2: os dois carimbaram-na.
+        Mensagem doNo1 = new Mensagem(id, "autor", "reenviada", 0, 1, 2, base + 10);
+        Mensagem doNo2 = new Mensagem(id, "autor", "reenviada", 0, 2, 1, base + 5);
+        List<Mensagem> outras = Arrays.asList(
+                new Mensagem(UUID.randomUUID(), "autor", "a", 0, 1, 1, base + 1),
+                new Mensagem(UUID.randomUUID(), "autor", "b", 0, 2, 2, base + 20),
+                new Mensagem(UUID.randomUUID(), "autor", "c", 0, 1, 3, base + 30));
+
+        Mural noNo1 = new Mural();
+        noNo1.adicionarMensagem(doNo1);
+        noNo1.incorporar(outras);
+        noNo1.incorporar(Collections.singletonList(doNo2));
+        Mural noNo2 = new Mural();
+        noNo2.incorporar(Arrays.asList(outras.get(1), doNo2, doNo1));
+        noNo2.juntarMensagem(outras.get(2));
+        noNo2.juntarMensagem(outras.get(0));
+
+        for (Mural mural : Arrays.asList(noNo1, noNo2)) {
+            List<Mensagem> todas = mural.getTodasAsMensagens();
+            assertEquals(4, todas.size());
+            assertEquals(2, todas.get(1).getOrigem()); // A cópia do nó 2, com o carimbo menor.
+            assertEquals(base + 5, todas.get(1).getHlc());
+            // As duas sequências contam: nenhuma origem fica com um buraco.
+            assertEquals(3L, (long) mural.getMarcasDeAgua().get(1));
+            assertEquals(2L, (long) mural.getMarcasDeAgua().get(2));
+            assertEquals(4, mural.getPaginaPorChegada(0, 10).getMensagens().size());
+        }
+        assertEquals(noNo1.getTodasAsMensagens(), noNo2.getTodasAsMensagens());
+
+        // Um terceiro nó só com a cópia do nó 1 recebe a outra na sincronização e fecha o buraco.
+        Mural noNo3 = new Mural();
+        noNo3.incorporar(Arrays.asList(outras.get(0), doNo1, outras.get(2)));
+        Map<Integer, Long> marcas = noNo3.getMarcasDeAgua();
+        noNo3.incorporar(noNo1.getMensagensApos(marcas));
+        assertEquals(2L, (long) noNo3.getMarcasDeAgua().get(2));
+        assertEquals(2, noNo3.getTodasAsMensagens().get(1).getOrigem());
+    }
+}
\ No newline at end of file
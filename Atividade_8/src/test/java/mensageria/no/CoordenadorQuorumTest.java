@@ -0,0 +1,128 @@
+package mensageria.no;
+
+import mensageria.cliente.ClienteCluster;
+import mensageria.comum.Consistencia;
+import mensageria.comum.Mensagem;
+import mensageria.comum.Pacote;
+import mensageria.comum.PaginaMural;
+import mensageria.comum.PedidoPagina;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Postagens com consistência num cluster de três nós no mesmo processo (fator de replicação 3,
+ * todos guardam o mural padrão): QUORUM e TODAS com todos os nós, e depois com um em baixo; e as
+ * leituras que não se comparam entre réplicas, recusadas quando o cliente pede mais do que UM.
+ */
+public class CoordenadorQuorumTest {
+
+    private static final int PORTA_BASE = 19_471;
+    private static final No[] NOS = new No[3];
+    private static ClienteCluster cliente;
+
+    @BeforeClass
+    public static void iniciarCluster() throws Exception {
+        apagarMurais();
+        Map<Integer, Integer> sementes = new HashMap<>();
+        sementes.put(1, PORTA_BASE);
+        for (int i = 0; i < NOS.length; i++) {
+            NOS[i] = new No(i + 1, PORTA_BASE + i, sementes,
+                    new ConfiguracaoNo().setPeriodoGossipMs(200).setDeslocamentoPortaMetricas(0));
+            new Thread(NOS[i]::iniciar, "teste-no-" + (i + 1)).start();
+        }
+        // iniciar() espera id * 500 ms antes de entrar na rede; depois, as ligações aos peers.
+        Thread.sleep(NOS.length * 500 + 2_500);
+        cliente = new ClienteCluster("localhost", new int[]{PORTA_BASE});
+        cliente.conectar();
+        cliente.setToken((String) cliente.escrever(Pacote.Tipo.LOGIN, "anderson;123", null).getConteudo());
+    }
+
+    @AfterClass
+    public static void pararCluster() {
+        if (cliente != null) {
+            cliente.close();
+        }
+        for (No no : NOS) {
+            if (no != null) {
+                no.parar();
+            }
+        }
+        apagarMurais();
+    }
+
+    private static void apagarMurais() {
+        File[] ficheiros = new File(".").getAbsoluteFile().listFiles((pasta, nome) -> nome.startsWith("mural_no_"));
+        if (ficheiros != null) {
+            for (File ficheiro : ficheiros) {
+                ficheiro.delete();
+            }
+        }
+    }
+
+    private static Pacote postar(Consistencia consistencia, Mensagem mensagem) throws Exception {
+        cliente.setConsistencia(consistencia);
+        return cliente.escrever(Pacote.Tipo.POSTAR_MENSAGEM, mensagem, Pacote.MURAL_PADRAO);
+    }
+
+    @Test
+    public void consistenciaComTodosOsNosEDepoisComUmEmBaixo() throws Exception {
+        Pacote quorum = postar(Consistencia.QUORUM, new Mensagem("anderson", "q1"));
+        assertEquals(Pacote.Tipo.POSTAGEM_OK, quorum.getTipo());
+
+        Mensagem t1 = new Mensagem("anderson", "t1");
+        Pacote todas = postar(Consistencia.TODAS, t1);
+        assertEquals(Pacote.Tipo.POSTAGEM_OK, todas.getTipo());
+        assertTrue((String) todas.getConteudo(), ((String) todas.getConteudo()).contains("3 de 3 réplicas"));
+        // Confirmada com TODAS: já está em todos os nós.
+        for (No no : NOS) {
+            assertTrue(no.getParticao(Pacote.MURAL_PADRAO).getMural().contem(t1));
+        }
+        // Um reenvio da mesma mensagem volta a ser confirmado pelas réplicas, sem a duplicar.
+        assertEquals(Pacote.Tipo.POSTAGEM_OK, postar(Consistencia.TODAS, t1).getTipo());
+
+        NOS[2].parar();
+        // Espera que a pertença (MembrosDaRede) dê o nó 3 como em baixo.
+        Thread.sleep(4_000);
+
+        Pacote todasSemUm = postar(Consistencia.TODAS, new Mensagem("anderson", "t2"));
+        assertEquals(Pacote.Tipo.REJEITADO, todasSemUm.getTipo());
+        Pacote quorumSemUm = postar(Consistencia.QUORUM, new Mensagem("anderson", "q2"));
+        assertEquals(Pacote.Tipo.POSTAGEM_OK, quorumSemUm.getTipo());
+        assertTrue((String) quorumSemUm.getConteudo(), ((String) quorumSemUm.getConteudo()).contains("2 de 3 réplicas"));
+    }
+
+    @Test
+    public void leiturasQueNaoSeComparamEntreReplicasSaoRecusadasAcimaDeUm() throws Exception {
+        postar(Consistencia.QUORUM, new Mensagem("anderson", "para ler"));
+        cliente.setConsistencia(Consistencia.QUORUM);
+        try {
+            Pacote doInicio = cliente.ler(Pacote.Tipo.LER_PAGINA, new PedidoPagina(0, 10), Pacote.MURAL_PADRAO);
+            assertEquals(Pacote.Tipo.PAGINA_MURAL, doInicio.getTipo());
+            assertTrue(((PaginaMural) doInicio.getConteudo()).getMensagens().size() > 0);
+            assertEquals(Pacote.Tipo.REJEITADO, cliente.ler(Pacote.Tipo.LER_PAGINA, new PedidoPagina(1, 10), Pacote.MURAL_PADRAO).getTipo());
+            assertEquals(Pacote.Tipo.REJEITADO, cliente.ler(Pacote.Tipo.LER_MURAL, null, Pacote.MURAL_PADRAO).getTipo());
+        } finally {
+            cliente.setConsistencia(null);
+        }
+        // Sem nível pedido pelo cliente, o mural inteiro continua a ler-se.
+        assertEquals(Pacote.Tipo.MURAL_ATUALIZADO, cliente.ler(Pacote.Tipo.LER_MURAL, null, Pacote.MURAL_PADRAO).getTipo());
+    }
+
+    @Test
+    public void respostasNecessariasPorNivel() {
+        assertEquals(1, Consistencia.UM.respostasNecessarias(3));
+        assertEquals(2, Consistencia.QUORUM.respostasNecessarias(3));
+        assertEquals(3, Consistencia.QUORUM.respostasNecessarias(4));
+        assertEquals(3, Consistencia.TODAS.respostasNecessarias(3));
+        assertEquals(1, Consistencia.QUORUM.respostasNecessarias(1));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,187 @@
+package mensageria.no;
+
+import mensageria.comum.Mensagem;
+import mensageria.comum.Mural;
+import mensageria.comum.RelogioHibrido;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Recuperação do mural a partir do log de escrita: reprodução dos segmentos (também das outras
+ * cópias de uma mensagem), registo interrompido no último segmento e corrupção de um segmento já
+ * fechado.
+ */
+public class LogDeEscritaTest {
+
+    @Rule
+    public TemporaryFolder pasta = new TemporaryFolder();
+
+    private final List<LogDeEscrita> abertos = new ArrayList<>();
+    private final long hlcBase = RelogioHibrido.deTimestamp(System.currentTimeMillis());
+    private long ultimaSequencia;
+
+    @After
+    public void fecharLogs() {
+        for (LogDeEscrita log : abertos) {
+            log.fechar();
+        }
+    }
+
+    private LogDeEscrita novoLog() {
+        LogDeEscrita log = new LogDeEscrita(1, new File(pasta.getRoot(), "mural_no_1").getPath(),
+                new MetricasNo(null), new ConfiguracaoNo());
+        abertos.add(log);
+        return log;
+    }
+
+    private File segmento(long numero) {
+        return new File(pasta.getRoot(), String.format("mural_no_1.wal.%06d", numero));
+    }
+
+    // Mensagens do nó 1 com sequências e carimbos seguidos, para a ordem do mural ser a da escrita.
+    private List<Mensagem> gravar(LogDeEscrita log, int quantidade) throws IOException {
+        List<Mensagem> gravadas = new ArrayList<>();
+        for (int i = 0; i < quantidade; i++) {
+            long sequencia = ++ultimaSequencia;
+            Mensagem m = new Mensagem(UUID.randomUUID(), "anderson", "mensagem " + sequencia % 10,
+                    System.currentTimeMillis(), 1, sequencia, hlcBase + sequencia);
+            log.acrescentar(m);
+            gravadas.add(m);
+        }
+        return gravadas;
+    }
+
+    @Test
+    public void reproduzOsSegmentosPorOrdem() throws IOException {
+        LogDeEscrita log = novoLog();
+        log.recuperar();
+        List<Mensagem> primeiras = gravar(log, 5);
+        log.fechar();
+
+        // Cada recuperação abre um segmento novo: as mensagens seguintes vão para o segmento 2.
+        log = novoLog();
+        log.recuperar();
+        List<Mensagem> seguintes = gravar(log, 3);
+        log.fechar();
+
+        Mural recuperado = novoLog().recuperar();
+        List<Mensagem> esperadas = new ArrayList<>(primeiras);
+        esperadas.addAll(seguintes);
+        assertEquals(esperadas, recuperado.getTodasAsMensagens());
+        assertEquals(8, recuperado.getMaiorSequencia(1));
+    }
+
+    @Test
+    public void registoIncompletoNoUltimoSegmentoEDescartado() throws IOException {
+        LogDeEscrita log = novoLog();
+        log.recuperar();
+        List<Mensagem> gravadas = gravar(log, 4);
+        log.fechar();
+        long tamanhoValido = segmento(1).length();
+        // Uma escrita interrompida: cabeçalho de um registo de 50 bytes e só 2 bytes do payload.
+        Files.write(segmento(1).toPath(), new byte[]{0, 0, 0, 50, 0, 0, 0, 0, 1, 2}, StandardOpenOption.APPEND);
+
+        Mural recuperado = novoLog().recuperar();
+        assertEquals(gravadas, recuperado.getTodasAsMensagens());
+        assertEquals(tamanhoValido, segmento(1).length());
+    }
+
+    @Test
+    public void campoDeTamanhoCortadoNoUltimoSegmentoEDescartado() throws IOException {
+        LogDeEscrita log = novoLog();
+        log.recuperar();
+        List<Mensagem> gravadas = gravar(log, 3);
+        log.fechar();
+        long tamanhoValido = segmento(1).length();
+        // A escrita parou depois de 2 dos 4 bytes do tamanho do registo seguinte.
+        Files.write(segmento(1).toPath(), new byte[]{0, 0}, StandardOpenOption.APPEND);
+
+        Mural recuperado = novoLog().recuperar();
+        assertEquals(gravadas, recuperado.getTodasAsMensagens());
+        assertEquals(tamanhoValido, segmento(1).length());
+    }
+
+    @Test
+    public void outraCopiaDeUmaMensagemVoltaComAReproducao() throws IOException {
+        LogDeEscrita log = novoLog();
+        log.recuperar();
+        Mensagem doNo1 = gravar(log, 1).get(0);
+        // A mesma mensagem carimbada também pelo nó 2, com um carimbo menor (ver Mural.juntarMensagem).
+        Mensagem doNo2 = new Mensagem(doNo1.getId(), doNo1.getAutor(), doNo1.getConteudo(), doNo1.getTimestamp(),
+                2, 1, doNo1.getHlc() - 1);
+        log.acrescentar(doNo2);
+        gravar(log, 1);
+        log.fechar();
+
+        Mural recuperado = novoLog().recuperar();
+        assertEquals(2, recuperado.getTodasAsMensagens().size());
+        assertEquals(2, recuperado.getTodasAsMensagens().get(0).getOrigem());
+        assertEquals(2L, (long) recuperado.getMarcasDeAgua().get(1));
+        assertEquals(1L, (long) recuperado.getMarcasDeAgua().get(2));
+    }
+
+    @Test
+    public void crcInvalidoNoUltimoSegmentoTruncaAPartirDoRegisto() throws IOException {
+        LogDeEscrita log = novoLog();
+        log.recuperar();
+        List<Mensagem> gravadas = gravar(log, 4);
+        log.fechar();
+        long tamanhoRegisto = segmento(1).length() / 4;
+        inverterByte(segmento(1), 3 * tamanhoRegisto - 1); // Último byte do terceiro registo.
+
+        Mural recuperado = novoLog().recuperar();
+        assertEquals(gravadas.subList(0, 2), recuperado.getTodasAsMensagens());
+        assertEquals(2 * tamanhoRegisto, segmento(1).length());
+    }
+
+    @Test
+    public void segmentoFechadoCorrompidoFazARecuperacaoFalharSemOAlterar() throws IOException {
+        LogDeEscrita log = novoLog();
+        log.recuperar();
+        gravar(log, 4);
+        log.fechar();
+        log = novoLog();
+        log.recuperar();
+        gravar(log, 2);
+        log.fechar();
+
+        long tamanhoRegisto = segmento(1).length() / 4;
+        inverterByte(segmento(1), tamanhoRegisto + 10); // No meio do segundo registo do segmento 1.
+        byte[] antes = Files.readAllBytes(segmento(1).toPath());
+
+        try {
+            novoLog().recuperar();
+            fail("A recuperação devia ter falhado no segmento fechado.");
+        } catch (LogDeEscrita.SegmentoCorrompido esperado) {
+            // O segmento não é truncado: as mensagens a seguir ao registo inválido continuam lá.
+        }
+        assertArrayEquals(antes, Files.readAllBytes(segmento(1).toPath()));
+        assertTrue(segmento(2).exists());
+    }
+
+    private static void inverterByte(File arquivo, long posicao) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(arquivo, "rw")) {
+            raf.seek(posicao);
+            int valor = raf.read();
+            raf.seek(posicao);
+            raf.write(valor ^ 0xFF);
+        }
+    }
+}
\ No newline at end of file
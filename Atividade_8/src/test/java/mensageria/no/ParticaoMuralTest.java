@@ -0,0 +1,114 @@
+package mensageria.no;
+
+import mensageria.comum.Durabilidade;
+import mensageria.comum.Mensagem;
+import mensageria.comum.RelogioHibrido;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * O que uma partição responde a quem coordena uma postagem com consistência (ver
+ * CoordenadorQuorum): só uma cópia que chegou ao log conta, e uma postagem que perde a corrida
+ * para a mesma mensagem vinda de outro nó não gasta sequência.
+ */
+public class ParticaoMuralTest {
+
+    private static final int ID_NO = 7;
+
+    private String nome;
+    private ParticaoMural particao;
+
+    @Before
+    public void abrir() {
+        // Os ficheiros ficam no diretório de trabalho dos testes; um mural novo em cada teste.
+        nome = "teste" + Long.toHexString(System.nanoTime());
+        ConfiguracaoNo configuracao = new ConfiguracaoNo();
+        MetricasNo metricas = new MetricasNo(null);
+        particao = new ParticaoMural(ID_NO, nome, metricas, new Assinaturas(ID_NO, metricas, configuracao),
+                new RelogioHibrido(), configuracao);
+    }
+
+    @After
+    public void apagar() {
+        particao.fechar();
+        String prefixo = new File(ParticaoMural.nomeBase(ID_NO, nome)).getName();
+        File[] ficheiros = new File(ParticaoMural.nomeBase(ID_NO, nome)).getAbsoluteFile().getParentFile()
+                .listFiles((pasta, ficheiro) -> ficheiro.startsWith(prefixo + "."));
+        if (ficheiros != null) {
+            for (File ficheiro : ficheiros) {
+                ficheiro.delete();
+            }
+        }
+    }
+
+    private static Mensagem deOutroNo(long sequencia) {
+        return new Mensagem(UUID.randomUUID(), "anderson", "réplica " + sequencia, System.currentTimeMillis(), 2,
+                sequencia, RelogioHibrido.deTimestamp(System.currentTimeMillis()) + sequencia);
+    }
+
+    @Test
+    public void replicaGravadaNoLogConfirma() {
+        Mensagem replica = deOutroNo(1);
+        assertNotEquals(Durabilidade.MEMORIA, particao.gravarReplica(replica));
+        // Repetida (ex: o coordenador voltou a pedir): a cópia que já está no log conta.
+        assertEquals(Durabilidade.ESCRITA, particao.gravarReplica(replica));
+    }
+
+    @Test
+    public void replicaQueSoFicouEmMemoriaNaoConfirma() {
+        particao.fechar(); // A partir daqui, todas as escritas no log falham.
+        Mensagem replica = deOutroNo(1);
+        assertEquals(Durabilidade.MEMORIA, particao.gravarReplica(replica));
+        assertEquals(1, particao.getMural().getTamanho());
+        // A segunda cópia encontra a primeira no mural, mas continua só em memória.
+        assertEquals(Durabilidade.MEMORIA, particao.gravarReplica(replica));
+        assertEquals(Durabilidade.MEMORIA, particao.getDurabilidade(replica.getId()));
+    }
+
+    @Test
+    public void postagemComEscritaFalhadaFicaEmMemoria() {
+        particao.fechar();
+        Mensagem aceite = particao.aceitarPostagem(new Mensagem("anderson", "olá"));
+        assertNotNull(aceite);
+        assertEquals(Durabilidade.MEMORIA, particao.gravarPostagem(aceite));
+        assertEquals(Durabilidade.MEMORIA, particao.getDurabilidade(aceite.getId()));
+    }
+
+    @Test
+    public void postagemGravadaDeixaDeEstarEmMemoria() {
+        Mensagem aceite = particao.aceitarPostagem(new Mensagem("anderson", "olá"));
+        // Aceite mas ainda não escrita: ainda não conta como escrita.
+        assertEquals(Durabilidade.MEMORIA, particao.getDurabilidade(aceite.getId()));
+        assertNotEquals(Durabilidade.MEMORIA, particao.gravarPostagem(aceite));
+        assertEquals(Durabilidade.ESCRITA, particao.getDurabilidade(aceite.getId()));
+    }
+
+    @Test
+    public void postagemRepetidaNaoGastaSequencia() {
+        Mensagem postada = new Mensagem("anderson", "primeira");
+        Mensagem aceite = particao.aceitarPostagem(postada);
+        assertEquals(1, aceite.getSequencia());
+        assertNull(particao.aceitarPostagem(postada));
+        assertEquals(2, particao.aceitarPostagem(new Mensagem("anderson", "segunda")).getSequencia());
+    }
+
+    @Test
+    public void postagemQueJaChegouDeOutroNoNaoGastaSequencia() {
+        Mensagem postada = new Mensagem("anderson", "enviada a dois nós");
+        // O cliente reenviou-a a outro nó, que a aceitou e replicou para aqui primeiro.
+        particao.incorporarMensagens(Collections.singletonList(postada.comOrigem(2, 1, RelogioHibrido.deTimestamp(1))));
+        assertNull(particao.aceitarPostagem(postada));
+        assertEquals(1, particao.aceitarPostagem(new Mensagem("anderson", "outra")).getSequencia());
+    }
+}
\ No newline at end of file